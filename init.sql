@@ -0,0 +1,17 @@
+-- 邮件发送历史（mail.history.enabled=true 时由 MailHistoryStore 批量写入）
+CREATE TABLE IF NOT EXISTS mail_history (
+  mail_id       VARCHAR(64)  NOT NULL PRIMARY KEY,
+  from_address  VARCHAR(255),
+  to_address    TEXT,
+  subject       VARCHAR(500),
+  template_name VARCHAR(255),
+  priority      TINYINT,
+  status        VARCHAR(16)  NOT NULL,
+  retry_count   INT,
+  error_message VARCHAR(1000),
+  create_time   DATETIME(3),
+  send_time     DATETIME(3),
+  update_time   DATETIME(3)  NOT NULL,
+  KEY idx_create_time (create_time, mail_id),
+  KEY idx_status_create_time (status, create_time, mail_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
@@ -0,0 +1,51 @@
+package com.windcore.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 文件元数据存储配置属性类
+ *
+ * @author windcore
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "file.metadata")
+public class FileMetadataProperties {
+
+    /**
+     * 存储引擎：memory（堆内存，默认）、mapped（堆外内存映射日志）
+     */
+    private String store = "memory";
+
+    /**
+     * 内存映射存储配置
+     */
+    private Mapped mapped = new Mapped();
+
+    /**
+     * 堆内存存储的预写日志配置
+     */
+    private Journal journal = new Journal();
+
+    @Data
+    public static class Mapped {
+        private String dir = System.getProperty("user.dir") + "/data/file-metadata";
+        private Integer segmentSize = 64 * 1024 * 1024;
+        private Integer expectedFiles = 1 << 16;
+        private Boolean sync = false;
+        private Long forceIntervalMillis = 1000L;
+        private Double compactionRatio = 0.5;
+        private Long compactionMinBytes = 64L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Journal {
+        private Boolean enabled = false;
+        private String dir = System.getProperty("user.dir") + "/data/file-journal";
+        private Boolean fsync = true;
+        private Integer maxBatch = 256;
+        private Long snapshotThreshold = 64L * 1024 * 1024;
+    }
+}
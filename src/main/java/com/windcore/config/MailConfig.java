@@ -1,10 +1,10 @@
 package com.windcore.config;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.thymeleaf.TemplateEngine;
@@ -21,6 +21,7 @@ import java.util.concurrent.Executor;
  * 
  * @author windcore
  */
+@Slf4j
 @Configuration
 @EnableAsync
 @RequiredArgsConstructor
@@ -29,11 +30,12 @@ public class MailConfig {
     private final MailProperties mailProperties;
 
     /**
-     * 配置JavaMailSender
+     * 配置JavaMailSender，使用连接池复用已认证的SMTP连接
      */
     @Bean
     public JavaMailSender javaMailSender() {
-        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        PooledJavaMailSender mailSender = new PooledJavaMailSender(mailProperties.getPool());
+        mailSender.setHostLimiter(new SmtpHostLimiter(maxConcurrentPerHost()));
         
         MailProperties.Smtp smtp = mailProperties.getSmtp();
         mailSender.setHost(smtp.getHost());
@@ -57,6 +59,20 @@ public class MailConfig {
         return mailSender;
     }
 
+    /**
+     * 同一SMTP服务器的并发会话上限，启用连接池时不超过连接池大小
+     */
+    int maxConcurrentPerHost() {
+        MailProperties.Pool pool = mailProperties.getPool();
+        int configured = Math.max(1, pool.getMaxConcurrentPerHost());
+        if (Boolean.TRUE.equals(pool.getEnabled()) && configured > pool.getMaxTotal()) {
+            log.warn("mail.pool.max-concurrent-per-host({}) 大于 max-total({})，按 max-total 限制",
+                    configured, pool.getMaxTotal());
+            return pool.getMaxTotal();
+        }
+        return configured;
+    }
+
     /**
      * 配置邮件模板引擎
      */
@@ -74,7 +90,7 @@ public class MailConfig {
         ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
         MailProperties.Template template = mailProperties.getTemplate();
         
-        templateResolver.setPrefix(template.getPrefix());
+        templateResolver.setPrefix(classLoaderPath(template.getPrefix()));
         templateResolver.setSuffix(template.getSuffix());
         templateResolver.setTemplateMode(TemplateMode.HTML);
         templateResolver.setCharacterEncoding(template.getEncoding());
@@ -83,8 +99,24 @@ public class MailConfig {
         return templateResolver;
     }
 
+    /**
+     * 转换为类加载器资源路径：ClassLoaderTemplateResolver 不识别 classpath: 前缀和开头的斜杠
+     */
+    public static String classLoaderPath(String path) {
+        if (path == null) {
+            return "";
+        }
+        String result = path.startsWith("classpath:") ? path.substring("classpath:".length()) : path;
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        return result;
+    }
+
     /**
      * 配置异步任务执行器
+     *
+     * 队列满时拒绝（TaskRejectedException），不在调用方线程中执行，避免请求线程被SMTP发送占用。
      */
     @Bean("mailTaskExecutor")
     public Executor mailTaskExecutor() {
@@ -95,9 +127,50 @@ public class MailConfig {
         executor.setMaxPoolSize(async.getMaxPoolSize());
         executor.setQueueCapacity(async.getQueueCapacity());
         executor.setThreadNamePrefix(async.getThreadNamePrefix());
-        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        
+        return executor;
+    }
+
+    /**
+     * 配置批量发送执行器，线程数即同时占用的SMTP连接数
+     *
+     * 队列满时拒绝，由批量发送把未能提交的邮件标记失败，不在请求线程中发送。
+     */
+    @Bean("mailBatchExecutor")
+    public Executor mailBatchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        MailProperties.Batch batch = mailProperties.getBatch();
+        
+        executor.setCorePoolSize(batch.getParallelism());
+        executor.setMaxPoolSize(batch.getParallelism());
+        executor.setQueueCapacity(batch.getQueueCapacity());
+        executor.setThreadNamePrefix("mail-batch-");
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
         executor.initialize();
         
         return executor;
     }
-}
\ No newline at end of file
+
+    /**
+     * 配置群发任务执行器
+     *
+     * 每个群发任务占用一个线程直到收件人文件读完，与发送邮件的线程池分开，避免长时间占满发送线程；
+     * 没有等待队列，同时运行的任务达到上限时拒绝新任务，不在请求线程中执行。
+     */
+    @Bean("mailCampaignExecutor")
+    public Executor mailCampaignExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int concurrency = Math.max(1, mailProperties.getCampaign().getConcurrency());
+
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("mail-campaign-");
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+
+        return executor;
+    }
+}
@@ -4,6 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -36,6 +40,66 @@ public class MailProperties {
      */
     private Async async = new Async();
 
+    /**
+     * SMTP连接池配置
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * 批量发送配置
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 队列消费配置
+     */
+    private Queue queue = new Queue();
+
+    /**
+     * 失败重试配置
+     */
+    private Retry retry = new Retry();
+
+    /**
+     * 附件存储配置
+     */
+    private Attachment attachment = new Attachment();
+
+    /**
+     * 邮件状态存储配置
+     */
+    private Status status = new Status();
+
+    /**
+     * 发送历史持久化配置
+     */
+    private History history = new History();
+
+    /**
+     * 群发任务配置
+     */
+    private Campaign campaign = new Campaign();
+
+    /**
+     * 发送限流配置
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * SMTP熔断和自适应并发配置
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Redis不可用时的本地入队暂存配置
+     */
+    private Spool spool = new Spool();
+
+    /**
+     * 发送请求幂等配置
+     */
+    private Idempotency idempotency = new Idempotency();
+
     @Data
     public static class Smtp {
         private String host = "smtp.qq.com";
@@ -69,4 +133,127 @@ public class MailProperties {
         private Integer queueCapacity = 100;
         private String threadNamePrefix = "mail-async-";
     }
-}
\ No newline at end of file
+
+    @Data
+    public static class Pool {
+        private Boolean enabled = true;
+        private Integer maxTotal = 4;
+        private Integer maxMessagesPerConnection = 100;
+        private Long maxWaitMillis = 10000L;
+        private Long idleTimeoutMillis = 30000L;
+        private Long evictionIntervalMillis = 10000L;
+        private Integer maxConcurrentPerHost = 2;
+    }
+
+    @Data
+    public static class Batch {
+        private Integer chunkSize = 50;
+        private Integer parallelism = 4;
+        private Integer queueCapacity = 1000;
+        private Boolean groupIdentical = false;
+        private Integer maxRecipientsPerMessage = 50;
+    }
+
+    @Data
+    public static class Queue {
+        private String type = "list";
+        private String streamGroup = "mail-workers";
+        private Boolean consumerEnabled = true;
+        private String consumerId;
+        private Integer workers = 4;
+        private Integer blockTimeoutSeconds = 1;
+        private Long minBackoffMillis = 1000L;
+        private Long maxBackoffMillis = 30000L;
+        private Long visibilityTimeoutMillis = 300000L;
+        private Long reaperIntervalMillis = 10000L;
+        private Integer maxDeliveries = 3;
+        private List<Integer> priorityWeights = new ArrayList<>(List.of(16, 8, 4, 2, 1));
+        private Long agingMillis = 60000L;
+        private Integer enqueueBatchSize = 1000;
+    }
+
+    @Data
+    public static class Attachment {
+        private String spoolDir = "./data/mail-attachments";
+        private Integer retentionDays = 7;
+    }
+
+    @Data
+    public static class Retry {
+        private Long initialDelayMillis = 10000L;
+        private Double multiplier = 2.0;
+        private Long maxDelayMillis = 1800000L;
+        private Double jitter = 0.2;
+        private Integer batchSize = 500;
+        private Long pollIntervalMillis = 1000L;
+        private Long leaseMillis = 60000L;
+    }
+
+    @Data
+    public static class Status {
+        private Integer maxSize = 100000;
+        private Long expireMillis = 86400000L;
+        private Integer failedCacheSize = 1000;
+    }
+
+    @Data
+    public static class History {
+        private Boolean enabled = false;
+        private Integer batchSize = 500;
+        private Long flushIntervalMillis = 2000L;
+        private Integer bufferCapacity = 10000;
+    }
+
+    @Data
+    public static class Campaign {
+        private String uploadDir = "./data/mail-campaigns";
+        private Integer maxQueueSize = 100000;
+        private Integer concurrency = 2;
+        private Long staleTimeoutMillis = 300000L;
+    }
+
+    @Data
+    public static class RateLimit {
+        private Boolean enabled = false;
+        private Double relayPerSecond = 10.0;
+        private Integer relayBurst = 20;
+        private Double domainPerSecond = 2.0;
+        private Integer domainBurst = 5;
+        private Long minDeferMillis = 1000L;
+        private Map<String, Bucket> domains = new LinkedHashMap<>();
+
+        @Data
+        public static class Bucket {
+            private Double perSecond;
+            private Integer burst;
+        }
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        private Boolean enabled = true;
+        private Integer windowSize = 20;
+        private Integer minCalls = 10;
+        private Double failureRateThreshold = 0.5;
+        private Long openDurationMillis = 30000L;
+        private Long targetLatencyMillis = 5000L;
+        private Integer minConcurrency = 1;
+    }
+
+    @Data
+    public static class Spool {
+        private Boolean enabled = true;
+        private String dir = "./data/mail-spool";
+        private Integer segmentSize = 16 * 1024 * 1024;
+        private Long maxBytes = 1024L * 1024 * 1024;
+        private Boolean sync = false;
+        private Integer drainBatchSize = 500;
+        private Long drainIntervalMillis = 1000L;
+    }
+
+    @Data
+    public static class Idempotency {
+        private Long ttlSeconds = 86400L;
+        private Long pendingTtlSeconds = 60L;
+    }
+}
@@ -0,0 +1,239 @@
+package com.windcore.config;
+
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 复用SMTP连接的邮件发送器
+ *
+ * {@link JavaMailSenderImpl} 每次发送都会新建连接并完成 STARTTLS 和认证，发送后立即关闭。
+ * 这里用连接池保存已认证的 {@link Transport}：借出前通过 isConnected()（SMTP NOOP）检查连接可用，
+ * 空闲超时的连接由后台回收，单个连接发送数达到上限后关闭重建，避免服务端因单连接消息过多断开。
+ * 设置了 {@link SmtpHostLimiter} 时，每次发送前先获取该服务器的许可，池化和非池化发送都受限制。
+ *
+ * @author windcore
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+    private final MailProperties.Pool poolConfig;
+    private final GenericObjectPool<PooledTransport> pool;
+    private SmtpHostLimiter hostLimiter;
+
+    /**
+     * 池化的连接及其已发送数量
+     */
+    private static final class PooledTransport {
+        final Transport transport;
+        int sentCount;
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+
+    public PooledJavaMailSender(MailProperties.Pool poolConfig) {
+        this.poolConfig = poolConfig;
+
+        GenericObjectPoolConfig<PooledTransport> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(poolConfig.getMaxTotal());
+        config.setMaxIdle(poolConfig.getMaxTotal());
+        config.setMinIdle(0);
+        config.setMaxWait(Duration.ofMillis(poolConfig.getMaxWaitMillis()));
+        config.setTestOnBorrow(true);
+        config.setTestWhileIdle(true);
+        config.setMinEvictableIdleDuration(Duration.ofMillis(poolConfig.getIdleTimeoutMillis()));
+        config.setTimeBetweenEvictionRuns(Duration.ofMillis(poolConfig.getEvictionIntervalMillis()));
+        config.setJmxEnabled(false);
+        this.pool = new GenericObjectPool<>(new TransportFactory(), config);
+    }
+
+    /**
+     * 设置按服务器的并发限制，为null时不限制
+     */
+    public void setHostLimiter(SmtpHostLimiter hostLimiter) {
+        this.hostLimiter = hostLimiter;
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        if (hostLimiter == null) {
+            doSendWithoutLimit(mimeMessages, originalMessages);
+            return;
+        }
+
+        String hostKey = getHost() + ":" + getPort();
+        boolean acquired;
+        try {
+            acquired = hostLimiter.acquire(hostKey, poolConfig.getMaxWaitMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw failAll(mimeMessages, originalMessages, ex);
+        }
+        if (!acquired) {
+            throw failAll(mimeMessages, originalMessages, new MessagingException(
+                    "Too many concurrent SMTP sessions to " + hostKey + " (limit " + hostLimiter.getPermitsPerHost() + ")"));
+        }
+        try {
+            doSendWithoutLimit(mimeMessages, originalMessages);
+        } finally {
+            hostLimiter.release(hostKey);
+        }
+    }
+
+    private void doSendWithoutLimit(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        if (!Boolean.TRUE.equals(poolConfig.getEnabled())) {
+            super.doSend(mimeMessages, originalMessages);
+            return;
+        }
+
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport pooled = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                // 借出连接（连接池会先做NOOP检查）
+                if (pooled == null) {
+                    try {
+                        pooled = pool.borrowObject();
+                    } catch (AuthenticationFailedException ex) {
+                        throw new MailAuthenticationException(ex);
+                    } catch (Exception ex) {
+                        // 无法获取连接，剩余邮件全部失败
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(original(mimeMessages, originalMessages, j), ex);
+                        }
+                        throw new MailSendException("Mail server connection failed", ex, failedMessages);
+                    }
+                }
+
+                MimeMessage mimeMessage = mimeMessages[i];
+                try {
+                    sendMessage(pooled.transport, mimeMessage);
+                    pooled.sentCount++;
+                } catch (Exception ex) {
+                    failedMessages.put(original(mimeMessages, originalMessages, i), ex);
+                    // 连接已断开则丢弃，下一封邮件重新借出
+                    if (!pooled.transport.isConnected()) {
+                        invalidate(pooled);
+                        pooled = null;
+                    }
+                }
+
+                // 达到单连接发送上限，关闭后重建
+                if (pooled != null && pooled.sentCount >= poolConfig.getMaxMessagesPerConnection()) {
+                    invalidate(pooled);
+                    pooled = null;
+                }
+            }
+        } finally {
+            if (pooled != null) {
+                pool.returnObject(pooled);
+            }
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    /**
+     * 当前连接池状态
+     */
+    public String getPoolStatus() {
+        return String.format("active=%d, idle=%d, created=%d, destroyed=%d",
+                pool.getNumActive(), pool.getNumIdle(), pool.getCreatedCount(), pool.getDestroyedCount());
+    }
+
+    @Override
+    public void destroy() {
+        pool.close();
+    }
+
+    private void sendMessage(Transport transport, MimeMessage mimeMessage) throws MessagingException {
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            // 保留调用方显式设置的 Message-ID
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+        Address[] addresses = mimeMessage.getAllRecipients();
+        transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+    }
+
+    private void invalidate(PooledTransport pooled) {
+        try {
+            pool.invalidateObject(pooled);
+        } catch (Exception ex) {
+            log.debug("关闭SMTP连接失败", ex);
+        }
+    }
+
+    private static MailSendException failAll(MimeMessage[] mimeMessages, Object[] originalMessages, Exception ex) {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        for (int i = 0; i < mimeMessages.length; i++) {
+            failedMessages.put(original(mimeMessages, originalMessages, i), ex);
+        }
+        return new MailSendException("Mail server concurrency limit reached", ex, failedMessages);
+    }
+
+    private static Object original(MimeMessage[] mimeMessages, Object[] originalMessages, int index) {
+        return originalMessages != null ? originalMessages[index] : mimeMessages[index];
+    }
+
+    /**
+     * 创建、校验和关闭SMTP连接
+     */
+    private class TransportFactory extends BasePooledObjectFactory<PooledTransport> {
+
+        @Override
+        public PooledTransport create() throws MessagingException {
+            Transport transport = connectTransport();
+            log.debug("新建SMTP连接: {}:{}", getHost(), getPort());
+            return new PooledTransport(transport);
+        }
+
+        @Override
+        public PooledObject<PooledTransport> wrap(PooledTransport pooled) {
+            return new DefaultPooledObject<>(pooled);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<PooledTransport> p) {
+            PooledTransport pooled = p.getObject();
+            return pooled.sentCount < poolConfig.getMaxMessagesPerConnection() && pooled.transport.isConnected();
+        }
+
+        @Override
+        public void destroyObject(PooledObject<PooledTransport> p) {
+            try {
+                p.getObject().transport.close();
+            } catch (MessagingException ex) {
+                log.debug("关闭SMTP连接失败", ex);
+            }
+        }
+    }
+}
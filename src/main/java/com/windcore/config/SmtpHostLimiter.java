@@ -0,0 +1,64 @@
+package com.windcore.config;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按SMTP服务器限制同时进行的发送会话数
+ *
+ * 异步发送、批量发送和队列消费者各有线程池，合计的发送线程数远多于连接池大小。
+ * 发送前按服务器（host:port）获取许可，避免同一服务器的并发会话超过对方的限制而被拒绝或限流；
+ * 启用连接池时许可数不超过 pool.max-total，关闭连接池时同样限制每次新建的连接数。
+ *
+ * @author windcore
+ */
+public class SmtpHostLimiter {
+
+    private final int permitsPerHost;
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    public SmtpHostLimiter(int permitsPerHost) {
+        if (permitsPerHost <= 0) {
+            throw new IllegalArgumentException("permitsPerHost must be positive: " + permitsPerHost);
+        }
+        this.permitsPerHost = permitsPerHost;
+    }
+
+    /**
+     * 获取发送许可
+     *
+     * @param host 服务器标识，一般为 host:port
+     * @param timeoutMillis 最长等待时间
+     * @return 是否获取成功，成功后必须调用 {@link #release}
+     */
+    public boolean acquire(String host, long timeoutMillis) throws InterruptedException {
+        return semaphore(host).tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 归还发送许可
+     */
+    public void release(String host) {
+        semaphore(host).release();
+    }
+
+    /**
+     * 各服务器正在进行的发送数
+     */
+    public Map<String, Integer> getActiveCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        semaphores.forEach((host, semaphore) -> counts.put(host, permitsPerHost - semaphore.availablePermits()));
+        return counts;
+    }
+
+    public int getPermitsPerHost() {
+        return permitsPerHost;
+    }
+
+    private Semaphore semaphore(String host) {
+        return semaphores.computeIfAbsent(host, key -> new Semaphore(permitsPerHost, true));
+    }
+}
@@ -1,5 +1,6 @@
 package com.windcore.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.windcore.dto.*;
 import com.windcore.exception.FileUploadException;
 import com.windcore.model.FileMetadata;
@@ -14,9 +15,13 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,6 +41,13 @@ public class FileUploadController {
     @Autowired
     private FileService fileService;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    
     /**
      * 分片上传
      */
@@ -220,7 +232,7 @@ public class FileUploadController {
      */
     @Operation(
         summary = "查询文件列表",
-        description = "根据业务类型或文件名查询文件列表",
+        description = "根据业务类型或文件名查询文件列表，一次返回全部匹配文件；结果较多时请使用 /list/page 或 /list/stream",
         tags = {"文件查询"}
     )
     @ApiResponses(value = {
@@ -256,6 +268,111 @@ public class FileUploadController {
         }
     }
     
+    /**
+     * 分页查询文件列表（游标分页）
+     */
+    @Operation(
+        summary = "分页查询文件列表",
+        description = "根据业务类型或文件名查询文件列表，按上传时间升序游标分页，使用返回的nextCursor获取下一页",
+        tags = {"文件查询"}
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "成功获取文件列表"),
+        @ApiResponse(responseCode = "400", description = "游标不合法"),
+        @ApiResponse(responseCode = "500", description = "查询文件列表失败")
+    })
+    @GetMapping("/list/page")
+    public ResponseEntity<FilePageResult> getFilePage(
+            @Parameter(description = "业务类型", required = false, example = "avatar")
+            @RequestParam(required = false) String businessType,
+            @Parameter(description = "文件名关键字", required = false, example = "test.jpg")
+            @RequestParam(required = false) String fileName,
+            @Parameter(description = "分页游标，首页不传", required = false)
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "页大小", required = false, example = "20")
+            @RequestParam(required = false, defaultValue = "20") Integer pageSize) {
+        try {
+            FileListCursor after = FileListCursor.decode(cursor);
+            int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+            
+            // 多取一条用于判断是否还有下一页
+            List<FileMetadata> fileList = queryFilePage(businessType, fileName, after, size + 1);
+            FilePageResult result = FilePageResult.of(fileList, size);
+            
+            log.info("文件列表分页查询完成: 文件数量={}, 是否还有更多={}", result.getRecords().size(), result.getHasMore());
+            
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            log.warn("查询文件列表参数错误: cursor={}", cursor, e);
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("查询文件列表失败", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * 流式导出文件列表（NDJSON）
+     */
+    @Operation(
+        summary = "流式查询文件列表",
+        description = "以NDJSON格式（每行一个JSON对象）流式返回全部匹配文件，服务端按页读取并逐页写出，内存占用与结果总数无关",
+        tags = {"文件查询"}
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "成功返回文件列表流"),
+        @ApiResponse(responseCode = "400", description = "查询条件为空")
+    })
+    @GetMapping(value = "/list/stream", produces = NDJSON_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamFileList(
+            @Parameter(description = "业务类型", required = false, example = "avatar")
+            @RequestParam(required = false) String businessType,
+            @Parameter(description = "文件名关键字", required = false, example = "test.jpg")
+            @RequestParam(required = false) String fileName) {
+        if (!StringUtils.hasText(businessType) && !StringUtils.hasText(fileName)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        StreamingResponseBody body = outputStream -> {
+            FileListCursor after = null;
+            long total = 0;
+            while (true) {
+                List<FileMetadata> page = queryFilePage(businessType, fileName, after, STREAM_BATCH_SIZE);
+                for (FileMetadata file : page) {
+                    outputStream.write(objectMapper.writeValueAsBytes(file));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+                total += page.size();
+                
+                if (page.size() < STREAM_BATCH_SIZE) {
+                    break;
+                }
+                after = FileListCursor.of(page.get(page.size() - 1));
+            }
+            log.info("文件列表流式输出完成: 业务类型={}, 文件名关键字={}, 文件数量={}", businessType, fileName, total);
+        };
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))
+                .body(body);
+    }
+    
+    /**
+     * 按查询条件读取一页文件
+     */
+    private List<FileMetadata> queryFilePage(String businessType, String fileName, FileListCursor after, int limit) {
+        if (StringUtils.hasText(businessType)) {
+            log.info("按业务类型查询文件列表: 业务类型={}, 游标={}", businessType, after);
+            return fileService.findByBusinessType(businessType, after, limit);
+        } else if (StringUtils.hasText(fileName)) {
+            log.info("按文件名查询文件列表: 文件名关键字={}, 游标={}", fileName, after);
+            return fileService.findByFileNameLike(fileName, after, limit);
+        }
+        // 未指定查询条件时返回空列表，避免返回所有文件
+        return new ArrayList<>();
+    }
+    
     /**
      * 删除文件
      */
@@ -1,9 +1,18 @@
 package com.windcore.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.windcore.dto.MailHistoryCursor;
+import com.windcore.dto.MailPageResult;
 import com.windcore.model.MailAttachment;
+import com.windcore.model.MailCampaign;
 import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailCampaignService;
+import com.windcore.service.MailIdempotencyStore;
 import com.windcore.service.MailQueueService;
 import com.windcore.service.MailService;
+import com.windcore.service.MailTemplateRenderer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -14,14 +23,17 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 邮件发送控制器
@@ -35,8 +47,20 @@ import java.util.*;
 @Tag(name = "邮件服务", description = "提供邮件发送、状态查询、队列管理等功能")
 public class MailController {
 
+    private static final int MAX_PAGE_SIZE = 500;
+    /**
+     * 批量异步发送单次请求的最大收件人数，更多收件人使用 /campaign 群发
+     */
+    private static final int MAX_BATCH_RECIPIENTS = 10000;
+    private static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+
     private final MailService mailService;
     private final MailQueueService mailQueueService;
+    private final MailAttachmentSpool mailAttachmentSpool;
+    private final MailTemplateRenderer mailTemplateRenderer;
+    private final MailCampaignService mailCampaignService;
+    private final ObjectMapper objectMapper;
+    private final MailIdempotencyStore mailIdempotencyStore;
 
     /**
      * 发送简单文本邮件
@@ -86,17 +110,23 @@ public class MailController {
     })
     @PostMapping("/send/simple")
     public ResponseEntity<Map<String, Object>> sendSimpleMail(
+        @Parameter(description = "幂等键，相同键的重复请求不再发送，直接返回首次请求的邮件ID")
+        @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKey,
         @Parameter(description = "简单邮件请求参数", required = true)
         @RequestBody SimpleMailRequest request) {
         try {
-            String messageId = mailService.sendSimpleMail(
+            MailIdempotencyStore.Result result = mailIdempotencyStore.execute(idempotencyKey, request, () -> mailService.sendSimpleMail(
                 request.getTo(), 
                 request.getSubject(), 
                 request.getContent()
-            );
+            ));
             
-            return ResponseEntity.ok(createSuccessResponse("简单邮件发送成功", messageId));
+            return ResponseEntity.ok(createIdempotentResponse("简单邮件发送成功", result));
             
+        } catch (MailIdempotencyStore.InProgressException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (MailIdempotencyStore.MismatchException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("发送简单邮件失败", e);
             return ResponseEntity.badRequest().body(createErrorResponse("发送失败: " + e.getMessage()));
@@ -117,17 +147,23 @@ public class MailController {
     })
     @PostMapping("/send/html")
     public ResponseEntity<Map<String, Object>> sendHtmlMail(
+        @Parameter(description = "幂等键，相同键的重复请求不再发送，直接返回首次请求的邮件ID")
+        @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKey,
         @Parameter(description = "HTML邮件请求参数", required = true)
         @RequestBody HtmlMailRequest request) {
         try {
-            String messageId = mailService.sendHtmlMail(
+            MailIdempotencyStore.Result result = mailIdempotencyStore.execute(idempotencyKey, request, () -> mailService.sendHtmlMail(
                 request.getTo(), 
                 request.getSubject(), 
                 request.getHtmlContent()
-            );
+            ));
             
-            return ResponseEntity.ok(createSuccessResponse("HTML邮件发送成功", messageId));
+            return ResponseEntity.ok(createIdempotentResponse("HTML邮件发送成功", result));
             
+        } catch (MailIdempotencyStore.InProgressException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (MailIdempotencyStore.MismatchException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("发送HTML邮件失败", e);
             return ResponseEntity.badRequest().body(createErrorResponse("发送失败: " + e.getMessage()));
@@ -148,18 +184,24 @@ public class MailController {
     })
     @PostMapping("/send/template")
     public ResponseEntity<Map<String, Object>> sendTemplateMail(
+        @Parameter(description = "幂等键，相同键的重复请求不再发送，直接返回首次请求的邮件ID")
+        @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKey,
         @Parameter(description = "模板邮件请求参数", required = true)
         @RequestBody TemplateMailRequest request) {
         try {
-            String messageId = mailService.sendTemplateMail(
+            MailIdempotencyStore.Result result = mailIdempotencyStore.execute(idempotencyKey, request, () -> mailService.sendTemplateMail(
                 request.getTo(), 
                 request.getSubject(), 
                 request.getTemplateName(), 
                 request.getTemplateData()
-            );
+            ));
             
-            return ResponseEntity.ok(createSuccessResponse("模板邮件发送成功", messageId));
+            return ResponseEntity.ok(createIdempotentResponse("模板邮件发送成功", result));
             
+        } catch (MailIdempotencyStore.InProgressException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (MailIdempotencyStore.MismatchException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("发送模板邮件失败", e);
             return ResponseEntity.badRequest().body(createErrorResponse("发送失败: " + e.getMessage()));
@@ -192,15 +234,10 @@ public class MailController {
         try {
             List<MailAttachment> attachments = new ArrayList<>();
             
-            // 处理附件
+            // 处理附件：写入附件存储，邮件中只保存句柄
             for (MultipartFile file : files) {
                 if (!file.isEmpty()) {
-                    MailAttachment attachment = new MailAttachment();
-                    attachment.setFileName(file.getOriginalFilename());
-                    attachment.setContentType(file.getContentType());
-                    attachment.setSize(file.getSize());
-                    attachment.setContent(file.getBytes());
-                    attachments.add(attachment);
+                    attachments.add(mailAttachmentSpool.spool(file));
                 }
             }
             
@@ -246,12 +283,20 @@ public class MailController {
             
             List<String> messageIds = mailService.sendBatchMail(mailMessages);
             
-            Map<String, Object> response = createSuccessResponse("批量邮件发送成功", null);
+            long successCount = messageIds.stream().filter(Objects::nonNull).count();
+            
+            Map<String, Object> response = createSuccessResponse("批量邮件发送完成", null);
             response.put("messageIds", messageIds);
             response.put("count", messageIds.size());
+            response.put("successCount", successCount);
+            response.put("failedCount", messageIds.size() - successCount);
             
             return ResponseEntity.ok(response);
             
+        } catch (RejectedExecutionException e) {
+            log.warn("批量发送线程池已满，拒绝批量发送请求");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(createErrorResponse("发送线程池已满，请稍后重试或使用异步发送接口"));
         } catch (Exception e) {
             log.error("批量发送邮件失败", e);
             return ResponseEntity.badRequest().body(createErrorResponse("批量发送失败: " + e.getMessage()));
@@ -272,32 +317,196 @@ public class MailController {
     })
     @PostMapping("/send/async")
     public ResponseEntity<Map<String, Object>> sendAsyncMail(
+        @Parameter(description = "幂等键，相同键的重复请求不再发送，直接返回首次请求的邮件ID")
+        @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKey,
         @Parameter(description = "异步邮件请求参数", required = true)
         @RequestBody AsyncMailRequest request) {
         try {
-            MailMessage mailMessage = new MailMessage();
-            mailMessage.setId(UUID.randomUUID().toString());
-            mailMessage.setTo(Arrays.asList(request.getTo()));
-            mailMessage.setCc(request.getCc() != null ? Arrays.asList(request.getCc()) : null);
-            mailMessage.setBcc(request.getBcc() != null ? Arrays.asList(request.getBcc()) : null);
-            mailMessage.setSubject(request.getSubject());
-            mailMessage.setContent(request.getContent());
-            mailMessage.setTemplateName(request.getTemplateName());
-            mailMessage.setTemplateVariables(request.getTemplateData());
-            mailMessage.setPriority(request.getPriority() != null ? request.getPriority() : 3);
-            mailMessage.setMaxRetryCount(request.getMaxRetryCount() != null ? request.getMaxRetryCount() : 3);
-            
-            // 添加到队列
-            mailQueueService.addToQueue(mailMessage);
+            MailIdempotencyStore.Result result = mailIdempotencyStore.execute(idempotencyKey, request, () -> {
+                MailMessage mailMessage = new MailMessage();
+                mailMessage.setId(UUID.randomUUID().toString());
+                mailMessage.setTo(Arrays.asList(request.getTo()));
+                mailMessage.setCc(request.getCc() != null ? Arrays.asList(request.getCc()) : null);
+                mailMessage.setBcc(request.getBcc() != null ? Arrays.asList(request.getBcc()) : null);
+                mailMessage.setSubject(request.getSubject());
+                mailMessage.setContent(request.getContent());
+                mailMessage.setTemplateName(request.getTemplateName());
+                mailMessage.setTemplateVariables(request.getTemplateData());
+                mailMessage.setPriority(request.getPriority() != null ? request.getPriority() : 3);
+                mailMessage.setMaxRetryCount(request.getMaxRetryCount() != null ? request.getMaxRetryCount() : 3);
+                
+                // 添加到队列
+                mailQueueService.addToQueue(mailMessage);
+                return mailMessage.getId();
+            });
             
-            return ResponseEntity.ok(createSuccessResponse("邮件已添加到发送队列", mailMessage.getId()));
+            return ResponseEntity.ok(createIdempotentResponse("邮件已添加到发送队列", result));
             
+        } catch (MailIdempotencyStore.InProgressException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(createErrorResponse(e.getMessage()));
+        } catch (MailIdempotencyStore.MismatchException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("添加邮件到队列失败", e);
             return ResponseEntity.badRequest().body(createErrorResponse("添加到队列失败: " + e.getMessage()));
         }
     }
 
+    /**
+     * 批量异步发送邮件（批量添加到队列）
+     */
+    @Operation(
+        summary = "批量异步发送邮件",
+        description = "为每个收件人生成一封邮件并批量添加到发送队列，立即返回邮件ID列表，适用于大批量营销或通知邮件",
+        tags = {"邮件队列"}
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "邮件已成功批量添加到发送队列"),
+        @ApiResponse(responseCode = "400", description = "批量添加邮件到队列失败或收件人过多"),
+        @ApiResponse(responseCode = "503", description = "部分邮件已入队后写入失败，返回已入队的邮件ID")
+    })
+    @PostMapping("/send/async/batch")
+    public ResponseEntity<Map<String, Object>> sendAsyncBatchMail(
+        @Parameter(description = "批量异步邮件请求参数", required = true)
+        @RequestBody AsyncBatchMailRequest request) {
+        try {
+            if (request.getToList() == null || request.getToList().isEmpty()) {
+                return ResponseEntity.badRequest().body(createErrorResponse("收件人列表不能为空"));
+            }
+            if (request.getToList().size() > MAX_BATCH_RECIPIENTS) {
+                return ResponseEntity.badRequest().body(createErrorResponse("收件人数量不能超过" + MAX_BATCH_RECIPIENTS
+                        + "，更多收件人请上传收件人文件创建群发任务（POST /api/mail/campaign）"));
+            }
+
+            List<MailMessage> mailMessages = new ArrayList<>(request.getToList().size());
+            for (String to : request.getToList()) {
+                MailMessage mailMessage = new MailMessage();
+                mailMessage.setId(UUID.randomUUID().toString());
+                mailMessage.setTo(Arrays.asList(to));
+                mailMessage.setSubject(request.getSubject());
+                mailMessage.setContent(request.getContent());
+                mailMessage.setTemplateName(request.getTemplateName());
+                mailMessage.setTemplateVariables(request.getTemplateData());
+                mailMessage.setPriority(request.getPriority() != null ? request.getPriority() : 3);
+                mailMessage.setMaxRetryCount(request.getMaxRetryCount() != null ? request.getMaxRetryCount() : 3);
+                mailMessages.add(mailMessage);
+            }
+
+            // 批量添加到队列
+            List<String> messageIds = mailQueueService.addToQueueBatch(mailMessages);
+
+            Map<String, Object> response = createSuccessResponse("邮件已批量添加到发送队列", null);
+            response.put("messageIds", messageIds);
+            response.put("count", messageIds.size());
+
+            return ResponseEntity.ok(response);
+
+        } catch (MailQueueService.PartialEnqueueException e) {
+            // 前面的邮件已入队，返回它们的ID，调用方只需重试其余收件人
+            log.error("批量添加邮件到队列中途失败", e);
+            Map<String, Object> response = createErrorResponse(e.getMessage());
+            response.put("messageIds", e.getQueuedIds());
+            response.put("count", e.getQueuedIds().size());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        } catch (Exception e) {
+            log.error("批量添加邮件到队列失败", e);
+            return ResponseEntity.badRequest().body(createErrorResponse("批量添加到队列失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 创建群发任务
+     */
+    @Operation(
+        summary = "创建模板群发任务",
+        description = "上传收件人文件（CSV需包含表头，NDJSON每行一个JSON对象），email或to列为收件人，其余列作为该收件人的模板变量；任务在后台分批入队",
+        tags = {"邮件发送"}
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "群发任务已创建"),
+        @ApiResponse(responseCode = "400", description = "群发任务创建失败"),
+        @ApiResponse(responseCode = "503", description = "同时运行的群发任务已达上限")
+    })
+    @PostMapping(value = "/campaign", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> startCampaign(
+        @Parameter(description = "邮件模板名称", required = true, example = "welcome")
+        @RequestParam("templateName") String templateName,
+        @Parameter(description = "邮件主题", required = true, example = "欢迎加入")
+        @RequestParam("subject") String subject,
+        @Parameter(description = "所有收件人共用的模板变量（JSON对象）", example = "{\"companyName\":\"企业邮件服务\"}")
+        @RequestParam(value = "variables", required = false) String variables,
+        @Parameter(description = "邮件优先级 (1-5, 1最高)", example = "3")
+        @RequestParam(value = "priority", required = false) Integer priority,
+        @Parameter(description = "收件人文件（.csv 或 .ndjson）", required = true)
+        @RequestParam("file") MultipartFile file) {
+        try {
+            Map<String, Object> sharedVariables = StringUtils.hasText(variables)
+                    ? objectMapper.readValue(variables, new TypeReference<Map<String, Object>>() {})
+                    : null;
+            MailCampaign campaign = mailCampaignService.startCampaign(templateName, subject, sharedVariables, priority, file);
+            
+            Map<String, Object> response = createSuccessResponse("群发任务已创建", null);
+            response.put("campaignId", campaign.getId());
+            response.put("campaign", campaign);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (RejectedExecutionException e) {
+            log.warn("同时运行的群发任务已达上限，拒绝新任务");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(createErrorResponse("同时运行的群发任务已达上限，请稍后重试"));
+        } catch (Exception e) {
+            log.error("创建群发任务失败", e);
+            return ResponseEntity.badRequest().body(createErrorResponse("创建群发任务失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 查询群发任务进度
+     */
+    @GetMapping("/campaign/{campaignId}")
+    public ResponseEntity<Map<String, Object>> getCampaign(
+        @Parameter(description = "群发任务ID", required = true)
+        @PathVariable String campaignId) {
+        try {
+            MailCampaign campaign = mailCampaignService.getCampaign(campaignId);
+            if (campaign == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("群发任务不存在"));
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("campaign", campaign);
+            response.put("timestamp", LocalDateTime.now());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("查询群发任务失败", e);
+            return ResponseEntity.badRequest().body(createErrorResponse("查询群发任务失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 取消群发任务
+     */
+    @PostMapping("/campaign/{campaignId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelCampaign(
+        @Parameter(description = "群发任务ID", required = true)
+        @PathVariable String campaignId) {
+        try {
+            if (mailCampaignService.cancelCampaign(campaignId)) {
+                return ResponseEntity.ok(createSuccessResponse("群发任务已取消，已入队的邮件仍会发送", null));
+            } else {
+                return ResponseEntity.badRequest().body(createErrorResponse("群发任务不存在或已结束"));
+            }
+            
+        } catch (Exception e) {
+            log.error("取消群发任务失败", e);
+            return ResponseEntity.badRequest().body(createErrorResponse("取消群发任务失败: " + e.getMessage()));
+        }
+    }
+
     /**
      * 获取邮件状态
      */
@@ -330,6 +539,51 @@ public class MailController {
         }
     }
 
+    /**
+     * 查询邮件发送历史
+     */
+    @Operation(
+        summary = "查询邮件发送历史",
+        description = "按创建时间倒序游标分页查询邮件发送历史，可按状态过滤；翻页时传入上一页返回的nextCursor",
+        tags = {"邮件状态"}
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "成功获取邮件历史"),
+        @ApiResponse(responseCode = "400", description = "查询参数不合法")
+    })
+    @GetMapping("/history")
+    public ResponseEntity<Map<String, Object>> getMailHistory(
+        @Parameter(description = "邮件状态", required = false, example = "FAILED")
+        @RequestParam(required = false) MailMessage.MailStatus status,
+        @Parameter(description = "分页游标，首页不传", required = false)
+        @RequestParam(required = false) String cursor,
+        @Parameter(description = "页大小", required = false, example = "20")
+        @RequestParam(required = false, defaultValue = "20") Integer pageSize) {
+        try {
+            MailHistoryCursor after = MailHistoryCursor.decode(cursor);
+            int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+            
+            // 多取一条用于判断是否还有下一页
+            List<MailMessage> mailList = mailService.getMailHistory(status, after, size + 1);
+            MailPageResult result = MailPageResult.of(mailList, size);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("records", result.getRecords());
+            response.put("nextCursor", result.getNextCursor());
+            response.put("hasMore", result.getHasMore());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            log.warn("查询邮件历史参数错误: cursor={}", cursor, e);
+            return ResponseEntity.badRequest().body(createErrorResponse("查询参数不合法: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("查询邮件历史失败", e);
+            return ResponseEntity.badRequest().body(createErrorResponse("查询历史失败: " + e.getMessage()));
+        }
+    }
+
     /**
      * 获取队列状态
      */
@@ -351,6 +605,25 @@ public class MailController {
         }
     }
 
+    /**
+     * 获取模板渲染指标
+     */
+    @GetMapping("/template/metrics")
+    public ResponseEntity<Map<String, Object>> getTemplateMetrics() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("templates", mailTemplateRenderer.getMetrics());
+            response.put("timestamp", LocalDateTime.now());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("获取模板渲染指标失败", e);
+            return ResponseEntity.badRequest().body(createErrorResponse("获取模板渲染指标失败: " + e.getMessage()));
+        }
+    }
+
     /**
      * 重新发送失败的邮件
      */
@@ -456,6 +729,17 @@ public class MailController {
         return response;
     }
 
+    /**
+     * 创建幂等请求的成功响应，重复请求带 duplicate 标记
+     */
+    private Map<String, Object> createIdempotentResponse(String message, MailIdempotencyStore.Result result) {
+        Map<String, Object> response = createSuccessResponse(message, result.mailId());
+        if (result.duplicate()) {
+            response.put("duplicate", true);
+        }
+        return response;
+    }
+
     /**
      * 创建错误响应
      */
@@ -581,4 +865,38 @@ public class MailController {
         public Integer getMaxRetryCount() { return maxRetryCount; }
         public void setMaxRetryCount(Integer maxRetryCount) { this.maxRetryCount = maxRetryCount; }
     }
-}
\ No newline at end of file
+
+    @Schema(description = "批量异步邮件请求参数")
+    public static class AsyncBatchMailRequest {
+        @Schema(description = "收件人邮箱地址列表，每个收件人单独生成一封邮件，最多10000个", required = true)
+        private List<String> toList;
+        @Schema(description = "邮件主题", example = "批量异步邮件", required = true)
+        private String subject;
+        @Schema(description = "邮件内容", example = "这是一封批量异步发送的邮件")
+        private String content;
+        @Schema(description = "邮件模板名称", example = "notification")
+        private String templateName;
+        @Schema(description = "模板变量数据")
+        private Map<String, Object> templateData;
+        @Schema(description = "邮件优先级 (1-5, 1最高)", example = "3", minimum = "1", maximum = "5")
+        private Integer priority;
+        @Schema(description = "最大重试次数", example = "3", minimum = "0")
+        private Integer maxRetryCount;
+        
+        // Getters and Setters
+        public List<String> getToList() { return toList; }
+        public void setToList(List<String> toList) { this.toList = toList; }
+        public String getSubject() { return subject; }
+        public void setSubject(String subject) { this.subject = subject; }
+        public String getContent() { return content; }
+        public void setContent(String content) { this.content = content; }
+        public String getTemplateName() { return templateName; }
+        public void setTemplateName(String templateName) { this.templateName = templateName; }
+        public Map<String, Object> getTemplateData() { return templateData; }
+        public void setTemplateData(Map<String, Object> templateData) { this.templateData = templateData; }
+        public Integer getPriority() { return priority; }
+        public void setPriority(Integer priority) { this.priority = priority; }
+        public Integer getMaxRetryCount() { return maxRetryCount; }
+        public void setMaxRetryCount(Integer maxRetryCount) { this.maxRetryCount = maxRetryCount; }
+    }
+}
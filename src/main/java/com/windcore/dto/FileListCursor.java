@@ -0,0 +1,119 @@
+package com.windcore.dto;
+
+import com.windcore.model.FileMetadata;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * 文件列表游标
+ *
+ * 文件列表按 (uploadTime, id) 升序排列，游标记录上一页最后一条记录的排序键，
+ * 下一页从该键之后开始读取。对外以URL安全的Base64字符串传递。
+ *
+ * @author windcore
+ */
+@Getter
+public class FileListCursor implements Comparable<FileListCursor> {
+
+    private static final String SEPARATOR = "|";
+
+    private static final Comparator<FileListCursor> ORDER = Comparator
+            .comparing(FileListCursor::getUploadTime)
+            .thenComparing(FileListCursor::getId);
+
+    /**
+     * 上传时间
+     */
+    private final LocalDateTime uploadTime;
+
+    /**
+     * 文件ID
+     */
+    private final String id;
+
+    public FileListCursor(LocalDateTime uploadTime, String id) {
+        this.uploadTime = uploadTime != null ? uploadTime : LocalDateTime.MIN;
+        this.id = id != null ? id : "";
+    }
+
+    /**
+     * 取文件元数据的排序键
+     */
+    public static FileListCursor of(FileMetadata fileMetadata) {
+        return new FileListCursor(fileMetadata.getUploadTime(), fileMetadata.getId());
+    }
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = uploadTime + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @param token 游标字符串，为空时返回null
+     * @return 游标
+     * @throws IllegalArgumentException 游标格式不合法
+     */
+    public static FileListCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int index = raw.indexOf(SEPARATOR);
+            if (index < 0) {
+                throw new IllegalArgumentException("游标格式不合法");
+            }
+            return new FileListCursor(LocalDateTime.parse(raw.substring(0, index)), raw.substring(index + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("游标格式不合法", e);
+        }
+    }
+
+    /**
+     * 判断文件是否位于游标之后
+     */
+    public boolean isBefore(FileMetadata fileMetadata) {
+        return compareTo(of(fileMetadata)) < 0;
+    }
+
+    @Override
+    public int compareTo(FileListCursor other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileListCursor)) {
+            return false;
+        }
+        FileListCursor that = (FileListCursor) o;
+        return uploadTime.equals(that.uploadTime) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uploadTime, id);
+    }
+
+    @Override
+    public String toString() {
+        return "FileListCursor{" +
+                "uploadTime=" + uploadTime +
+                ", id='" + id + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package com.windcore.dto;
+
+import com.windcore.model.FileMetadata;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * 文件列表分页结果（游标分页）
+ *
+ * @author windcore
+ */
+@Setter
+@Getter
+public class FilePageResult {
+
+    /**
+     * 本页文件列表
+     */
+    private List<FileMetadata> records;
+
+    /**
+     * 下一页游标，没有更多数据时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private Boolean hasMore;
+
+    // 构造函数
+    public FilePageResult() {}
+
+    /**
+     * 根据多取一条的查询结果构建分页结果
+     *
+     * @param fetched 查询结果（最多 pageSize + 1 条）
+     * @param pageSize 页大小
+     */
+    public static FilePageResult of(List<FileMetadata> fetched, int pageSize) {
+        FilePageResult result = new FilePageResult();
+        boolean hasMore = fetched.size() > pageSize;
+        List<FileMetadata> records = hasMore ? fetched.subList(0, pageSize) : fetched;
+        result.records = records;
+        result.hasMore = hasMore;
+        if (hasMore) {
+            result.nextCursor = FileListCursor.of(records.get(records.size() - 1)).encode();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FilePageResult{" +
+                "records=" + (records != null ? records.size() : 0) +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
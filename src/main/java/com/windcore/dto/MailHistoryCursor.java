@@ -0,0 +1,113 @@
+package com.windcore.dto;
+
+import com.windcore.model.MailStatusRecord;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * 邮件历史游标
+ *
+ * 邮件历史按 (createTime, id) 降序排列（最新的在前），游标记录上一页最后一条记录的排序键，
+ * 下一页从该键之后开始读取。对外以URL安全的Base64字符串传递。
+ *
+ * @author windcore
+ */
+@Getter
+public class MailHistoryCursor implements Comparable<MailHistoryCursor> {
+
+    private static final String SEPARATOR = "|";
+
+    private static final Comparator<MailHistoryCursor> ORDER = Comparator
+            .comparing(MailHistoryCursor::getCreateTime)
+            .thenComparing(MailHistoryCursor::getId)
+            .reversed();
+
+    /**
+     * 创建时间
+     */
+    private final LocalDateTime createTime;
+
+    /**
+     * 邮件ID
+     */
+    private final String id;
+
+    public MailHistoryCursor(LocalDateTime createTime, String id) {
+        this.createTime = createTime != null ? createTime : LocalDateTime.MIN;
+        this.id = id != null ? id : "";
+    }
+
+    /**
+     * 取状态记录的排序键
+     */
+    public static MailHistoryCursor of(MailStatusRecord record) {
+        return new MailHistoryCursor(record.getCreateTime(), record.getId());
+    }
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = createTime + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @param token 游标字符串，为空时返回null
+     * @return 游标
+     * @throws IllegalArgumentException 游标格式不合法
+     */
+    public static MailHistoryCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int index = raw.indexOf(SEPARATOR);
+            if (index < 0) {
+                throw new IllegalArgumentException("游标格式不合法");
+            }
+            return new MailHistoryCursor(LocalDateTime.parse(raw.substring(0, index)), raw.substring(index + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("游标格式不合法", e);
+        }
+    }
+
+    @Override
+    public int compareTo(MailHistoryCursor other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MailHistoryCursor)) {
+            return false;
+        }
+        MailHistoryCursor that = (MailHistoryCursor) o;
+        return createTime.equals(that.createTime) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(createTime, id);
+    }
+
+    @Override
+    public String toString() {
+        return "MailHistoryCursor{" +
+                "createTime=" + createTime +
+                ", id='" + id + '\'' +
+                '}';
+    }
+}
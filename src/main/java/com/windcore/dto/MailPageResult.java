@@ -0,0 +1,63 @@
+package com.windcore.dto;
+
+import com.windcore.model.MailMessage;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * 邮件历史分页结果（游标分页）
+ *
+ * @author windcore
+ */
+@Setter
+@Getter
+public class MailPageResult {
+
+    /**
+     * 本页邮件列表
+     */
+    private List<MailMessage> records;
+
+    /**
+     * 下一页游标，没有更多数据时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private Boolean hasMore;
+
+    // 构造函数
+    public MailPageResult() {}
+
+    /**
+     * 根据多取一条的查询结果构建分页结果
+     *
+     * @param fetched 查询结果（最多 pageSize + 1 条）
+     * @param pageSize 页大小
+     */
+    public static MailPageResult of(List<MailMessage> fetched, int pageSize) {
+        MailPageResult result = new MailPageResult();
+        boolean hasMore = fetched.size() > pageSize;
+        List<MailMessage> records = hasMore ? fetched.subList(0, pageSize) : fetched;
+        result.records = records;
+        result.hasMore = hasMore;
+        if (hasMore) {
+            MailMessage last = records.get(records.size() - 1);
+            result.nextCursor = new MailHistoryCursor(last.getCreateTime(), last.getId()).encode();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MailPageResult{" +
+                "records=" + (records != null ? records.size() : 0) +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
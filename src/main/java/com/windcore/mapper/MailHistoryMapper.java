@@ -0,0 +1,68 @@
+package com.windcore.mapper;
+
+import com.windcore.pojo.MailHistory;
+import com.windcore.service.MailHistorySqlProvider;
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 邮件发送历史，建表语句见 init.sql
+ *
+ * <pre>
+ * CREATE TABLE mail_history (
+ *   mail_id       VARCHAR(64)  NOT NULL PRIMARY KEY,
+ *   from_address  VARCHAR(255),
+ *   to_address    TEXT,
+ *   subject       VARCHAR(500),
+ *   template_name VARCHAR(255),
+ *   priority      TINYINT,
+ *   status        VARCHAR(16)  NOT NULL,
+ *   retry_count   INT,
+ *   error_message VARCHAR(1000),
+ *   create_time   DATETIME(3),
+ *   send_time     DATETIME(3),
+ *   update_time   DATETIME(3)  NOT NULL,
+ *   KEY idx_create_time (create_time, mail_id),
+ *   KEY idx_status_create_time (status, create_time, mail_id)
+ * );
+ * </pre>
+ */
+@Mapper
+public interface MailHistoryMapper {
+
+    @Insert({"<script>",
+            "insert into mail_history (mail_id, from_address, to_address, subject, template_name, priority,",
+            "status, retry_count, error_message, create_time, send_time, update_time) values",
+            "<foreach collection='list' item='h' separator=','>",
+            "(#{h.mailId}, #{h.fromAddress}, #{h.toAddress}, #{h.subject}, #{h.templateName}, #{h.priority},",
+            "#{h.status}, #{h.retryCount}, #{h.errorMessage}, #{h.createTime}, #{h.sendTime}, #{h.updateTime})",
+            "</foreach>",
+            "on duplicate key update status = values(status), retry_count = values(retry_count),",
+            "error_message = values(error_message), send_time = values(send_time), update_time = values(update_time)",
+            "</script>"})
+    int upsertBatch(@Param("list") List<MailHistory> histories);
+
+    @Select("select * from mail_history order by create_time desc limit #{offset}, #{size}")
+    @Results(id = "mailHistory", value = {
+            @Result(property = "mailId", column = "mail_id", id = true),
+            @Result(property = "fromAddress", column = "from_address"),
+            @Result(property = "toAddress", column = "to_address"),
+            @Result(property = "subject", column = "subject"),
+            @Result(property = "templateName", column = "template_name"),
+            @Result(property = "priority", column = "priority"),
+            @Result(property = "status", column = "status"),
+            @Result(property = "retryCount", column = "retry_count"),
+            @Result(property = "errorMessage", column = "error_message"),
+            @Result(property = "createTime", column = "create_time"),
+            @Result(property = "sendTime", column = "send_time"),
+            @Result(property = "updateTime", column = "update_time")
+    })
+    List<MailHistory> findPage(@Param("offset") long offset, @Param("size") int size);
+
+    @SelectProvider(type = MailHistorySqlProvider.class, method = "findAfter")
+    @ResultMap("mailHistory")
+    List<MailHistory> findAfter(@Param("status") String status, @Param("createTime") LocalDateTime createTime,
+                                @Param("mailId") String mailId, @Param("limit") int limit);
+}
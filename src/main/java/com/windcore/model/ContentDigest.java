@@ -0,0 +1,198 @@
+package com.windcore.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 文件内容摘要（MD5/SHA-256等）的值类型
+ *
+ * 以原始字节保存摘要，比32/64位十六进制字符串节省约3/4内存，
+ * 可直接作为Map键使用。十六进制编解码基于查表，不使用 String.format。
+ *
+ * @author windcore
+ */
+public final class ContentDigest {
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final byte[] bytes;
+    private final int hash;
+
+    private ContentDigest(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * 由摘要字节创建（复制传入数组）
+     */
+    public static ContentDigest of(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            throw new IllegalArgumentException("摘要不能为空");
+        }
+        return new ContentDigest(bytes.clone());
+    }
+
+    /**
+     * 由摘要计算器输出创建，不复制数组
+     */
+    static ContentDigest wrap(byte[] bytes) {
+        return new ContentDigest(bytes);
+    }
+
+    /**
+     * 解析十六进制摘要（大小写不敏感）
+     *
+     * @throws IllegalArgumentException 格式不合法
+     */
+    public static ContentDigest parse(String hex) {
+        ContentDigest digest = tryParse(hex);
+        if (digest == null) {
+            throw new IllegalArgumentException("摘要格式不合法: " + hex);
+        }
+        return digest;
+    }
+
+    /**
+     * 解析十六进制摘要，格式不合法时返回null
+     */
+    public static ContentDigest tryParse(String hex) {
+        if (hex == null) {
+            return null;
+        }
+        int length = hex.length();
+        if (length == 0 || (length & 1) != 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length >> 1];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = hexValue(hex.charAt(i << 1));
+            int low = hexValue(hex.charAt((i << 1) + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return new ContentDigest(bytes);
+    }
+
+    /**
+     * 摘要字节长度
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * 摘要字节（副本）
+     */
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * 前64位
+     */
+    public long high64() {
+        return readLong(0);
+    }
+
+    /**
+     * 第64-128位
+     */
+    public long low64() {
+        return readLong(8);
+    }
+
+    /**
+     * 小写十六进制字符串
+     */
+    public String toHex() {
+        char[] chars = new char[bytes.length << 1];
+        writeHex(chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 构建以摘要原始字节结尾的二进制键，如 upload:session:{16字节MD5}，
+     * 比十六进制后缀少一半长度
+     */
+    public byte[] toBinaryKey(String prefix) {
+        byte[] head = prefix.getBytes(StandardCharsets.UTF_8);
+        byte[] key = Arrays.copyOf(head, head.length + bytes.length);
+        System.arraycopy(bytes, 0, key, head.length, bytes.length);
+        return key;
+    }
+
+    /**
+     * 判断是否与十六进制摘要相同（大小写不敏感）
+     */
+    public boolean matches(String hex) {
+        if (hex == null || hex.length() != bytes.length << 1) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            int high = hexValue(hex.charAt(i << 1));
+            int low = hexValue(hex.charAt((i << 1) + 1));
+            if (high < 0 || low < 0 || (byte) ((high << 4) | low) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContentDigest)) {
+            return false;
+        }
+        ContentDigest that = (ContentDigest) o;
+        return hash == that.hash && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    private void writeHex(char[] chars, int offset) {
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xFF;
+            chars[offset + (i << 1)] = HEX_CHARS[value >>> 4];
+            chars[offset + (i << 1) + 1] = HEX_CHARS[value & 0x0F];
+        }
+    }
+
+    private long readLong(int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        }
+        return value;
+    }
+
+    private static int hexValue(char c) {
+        return c < 128 ? HEX_VALUES[c] : -1;
+    }
+}
@@ -0,0 +1,50 @@
+package com.windcore.model;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 文件内容摘要算法
+ *
+ * 通过 file.upload.digest-algorithm 按部署选择，客户端上传的文件/分片摘要需使用同一算法。
+ *
+ * @author windcore
+ */
+public enum DigestAlgorithm {
+
+    MD5("MD5", 16),
+    SHA_256("SHA-256", 32);
+
+    private final String jcaName;
+    private final int length;
+
+    DigestAlgorithm(String jcaName, int length) {
+        this.jcaName = jcaName;
+        this.length = length;
+    }
+
+    /**
+     * 摘要字节长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 创建摘要计算器
+     */
+    public MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(jcaName);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(jcaName + "算法不可用", e);
+        }
+    }
+
+    /**
+     * 计算数据摘要
+     */
+    public ContentDigest digest(byte[] data) {
+        return ContentDigest.wrap(newMessageDigest().digest(data));
+    }
+}
@@ -38,6 +38,11 @@ public class MailAttachment {
      */
     private String filePath;
 
+    /**
+     * 附件存储句柄（内容摘要），由 MailAttachmentSpool 生成，发送时从附件存储读取
+     */
+    private String handle;
+
     /**
      * 附件输入流
      */
@@ -0,0 +1,125 @@
+package com.windcore.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 邮件群发任务
+ *
+ * @author windcore
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailCampaign {
+
+    /**
+     * 任务ID
+     */
+    private String id;
+
+    /**
+     * 邮件模板名称
+     */
+    private String templateName;
+
+    /**
+     * 邮件主题
+     */
+    private String subject;
+
+    /**
+     * 收件人文件名
+     */
+    private String fileName;
+
+    /**
+     * 收件人文件格式（CSV、NDJSON）
+     */
+    private String format;
+
+    /**
+     * 任务状态
+     */
+    private CampaignStatus status;
+
+    /**
+     * 收件人文件大小（字节）
+     */
+    private Long fileSize;
+
+    /**
+     * 已读取的字节数，与 fileSize 一起表示入队进度
+     */
+    private Long bytesRead;
+
+    /**
+     * 已读取的收件人行数
+     */
+    private Long totalRows;
+
+    /**
+     * 已入队的邮件数
+     */
+    private Long enqueuedCount;
+
+    /**
+     * 因格式错误或缺少收件人而跳过的行数
+     */
+    private Long skippedCount;
+
+    /**
+     * 发送成功的邮件数
+     */
+    private Long sentCount;
+
+    /**
+     * 重试后仍发送失败的邮件数
+     */
+    private Long failedCount;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 最近一次保存进度的时间，执行节点停止后不再更新
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * 入队完成时间
+     */
+    private LocalDateTime finishTime;
+
+    /**
+     * 错误信息
+     */
+    private String errorMessage;
+
+    /**
+     * 群发任务状态枚举
+     */
+    public enum CampaignStatus {
+        RUNNING("入队中"),
+        COMPLETED("入队完成"),
+        CANCELLED("已取消"),
+        FAILED("失败");
+
+        private final String description;
+
+        CampaignStatus(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
@@ -115,6 +115,11 @@ public class MailMessage {
      */
     private Integer maxRetryCount = 3;
 
+    /**
+     * 所属群发任务ID，非群发邮件为null
+     */
+    private String campaignId;
+
     /**
      * 邮件状态枚举
      */
@@ -0,0 +1,71 @@
+package com.windcore.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 邮件状态记录
+ *
+ * 只保存查询状态需要的字段，不包含正文、模板变量和附件，内存占用与邮件大小无关。
+ *
+ * @author windcore
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailStatusRecord {
+
+    /**
+     * 邮件ID
+     */
+    private String id;
+
+    /**
+     * 邮件状态
+     */
+    private MailMessage.MailStatus status;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 发送时间
+     */
+    private LocalDateTime sendTime;
+
+    /**
+     * 最后更新时间
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * 错误信息
+     */
+    private String errorMessage;
+
+    /**
+     * 重试次数
+     */
+    private Integer retryCount;
+
+    /**
+     * 转换为只包含状态字段的邮件消息
+     */
+    public MailMessage toMailMessage() {
+        return MailMessage.builder()
+                .id(id)
+                .status(status)
+                .createTime(createTime)
+                .sendTime(sendTime)
+                .errorMessage(errorMessage)
+                .retryCount(retryCount)
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package com.windcore.pojo;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class MailHistory {
+
+    private String mailId;
+
+    private String fromAddress;
+
+    private String toAddress;
+
+    private String subject;
+
+    private String templateName;
+
+    private Integer priority;
+
+    private String status;
+
+    private Integer retryCount;
+
+    private String errorMessage;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime sendTime;
+
+    private LocalDateTime updateTime;
+}
@@ -4,20 +4,26 @@ import com.windcore.dto.ChunkUploadResult;
 import com.windcore.dto.FileChunk;
 import com.windcore.dto.UploadProgress;
 import com.windcore.exception.FileUploadException;
+import com.windcore.model.ContentDigest;
+import com.windcore.model.DigestAlgorithm;
 import com.windcore.model.FileMetadata;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +33,9 @@ import java.util.concurrent.TimeUnit;
 /**
  * 分片文件上传服务
  * 
+ * 上传状态保存在 Redis 中，键为前缀加文件摘要的原始字节（见 {@link ContentDigest#toBinaryKey}），
+ * 不使用十六进制字符串，因此通过 RedisCallback 直接读写字节键，值仍使用 RedisTemplate 的序列化器。
+ * 
  * @author windcore
  */
 @Service
@@ -37,15 +46,23 @@ public class ChunkFileUploadService {
     
     private final FileService fileService;
     
+    /**
+     * 文件/分片摘要算法，客户端需使用相同算法计算 fileMd5 和 chunkMd5
+     */
+    private final DigestAlgorithm digestAlgorithm;
+    
     private static final String UPLOAD_SESSION_KEY = "upload:session:";
     private static final String UPLOAD_PROGRESS_KEY = "upload:progress:";
     private static final String UPLOAD_TOTAL_CHUNKS_KEY = "upload:total:";
     private static final String CHUNK_TEMP_DIR = System.getProperty("java.io.tmpdir") + File.separator + "chunks";
     private static final String UPLOAD_DIR = System.getProperty("user.dir") + File.separator + "uploads";
+    private static final long SESSION_TTL_SECONDS = TimeUnit.HOURS.toSeconds(24);
 
-    public ChunkFileUploadService(RedisTemplate<String, Object> redisTemplate, FileService fileService) {
+    public ChunkFileUploadService(RedisTemplate<String, Object> redisTemplate, FileService fileService,
+                                  @Value("${file.upload.digest-algorithm:MD5}") DigestAlgorithm digestAlgorithm) {
         this.redisTemplate = redisTemplate;
         this.fileService = fileService;
+        this.digestAlgorithm = digestAlgorithm;
     }
 
     /**
@@ -53,17 +70,17 @@ public class ChunkFileUploadService {
      */
     public ChunkUploadResult uploadChunk(FileChunk chunk) {
         // 验证分片
-        validateChunk(chunk);
+        ContentDigest fileDigest = validateChunk(chunk);
         
         // 保存分片
-        saveChunk(chunk);
+        saveChunk(chunk, fileDigest);
         
         // 更新上传进度
-        updateUploadProgress(chunk);
+        updateUploadProgress(chunk, fileDigest);
         
         // 检查是否所有分片都上传完成
-        if (isUploadComplete(chunk.getFileMd5())) {
-            return mergeChunks(chunk.getFileMd5());
+        if (isUploadComplete(fileDigest)) {
+            return mergeChunks(fileDigest);
         }
         
         return ChunkUploadResult.inProgress(chunk.getChunkNumber());
@@ -71,8 +88,10 @@ public class ChunkFileUploadService {
     
     /**
      * 验证分片
+     * 
+     * @return 文件摘要
      */
-    private void validateChunk(FileChunk chunk) {
+    private ContentDigest validateChunk(FileChunk chunk) {
         if (chunk == null) {
             throw new FileUploadException("分片数据不能为空");
         }
@@ -91,40 +110,48 @@ public class ChunkFileUploadService {
             throw new FileUploadException("分片序号不合法");
         }
         
-        // 验证MD5
-        String calculatedMd5 = calculateMd5(chunk.getData());
-        if (!calculatedMd5.equals(chunk.getChunkMd5())) {
+        // 验证文件摘要格式
+        ContentDigest fileDigest = ContentDigest.tryParse(chunk.getFileMd5());
+        if (fileDigest == null || fileDigest.length() != digestAlgorithm.getLength()) {
+            throw new FileUploadException("文件MD5格式不合法");
+        }
+        
+        // 验证MD5（按字节比较，不做十六进制格式化）
+        ContentDigest calculatedDigest = digestAlgorithm.digest(chunk.getData());
+        if (!calculatedDigest.matches(chunk.getChunkMd5())) {
             throw new FileUploadException("分片MD5校验失败");
         }
         
         log.info("分片验证通过: 文件MD5={}, 分片号={}/{}", 
-                chunk.getFileMd5(), chunk.getChunkNumber(), chunk.getTotalChunks());
+                fileDigest, chunk.getChunkNumber(), chunk.getTotalChunks());
+        return fileDigest;
     }
     
     /**
      * 保存分片
      */
-    private void saveChunk(FileChunk chunk) {
+    private void saveChunk(FileChunk chunk, ContentDigest fileDigest) {
         try {
             // 保存分片到临时目录
-            Path chunkPath = Paths.get(CHUNK_TEMP_DIR, chunk.getFileMd5(), 
+            Path chunkPath = Paths.get(CHUNK_TEMP_DIR, fileDigest.toHex(), 
                                      String.valueOf(chunk.getChunkNumber()));
             Files.createDirectories(chunkPath.getParent());
             Files.write(chunkPath, chunk.getData());
             
-            // 在Redis中记录分片上传状态
-            String sessionKey = getSessionKey(chunk.getFileMd5());
-            redisTemplate.opsForSet().add(sessionKey, chunk.getChunkNumber());
-            
-            // 设置过期时间（24小时）
-            redisTemplate.expire(sessionKey, 24, TimeUnit.HOURS);
-            
-            // 保存总分片数
-            String totalChunksKey = getTotalChunksKey(chunk.getFileMd5());
-            redisTemplate.opsForValue().set(totalChunksKey, chunk.getTotalChunks(), 24, TimeUnit.HOURS);
+            // 在Redis中记录分片上传状态和总分片数，过期时间24小时
+            byte[] sessionKey = getSessionKey(fileDigest);
+            byte[] totalChunksKey = getTotalChunksKey(fileDigest);
+            byte[] chunkNumber = serialize(chunk.getChunkNumber());
+            byte[] totalChunks = serialize(chunk.getTotalChunks());
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.setCommands().sAdd(sessionKey, chunkNumber);
+                connection.keyCommands().expire(sessionKey, SESSION_TTL_SECONDS);
+                connection.stringCommands().setEx(totalChunksKey, SESSION_TTL_SECONDS, totalChunks);
+                return null;
+            });
             
             log.info("分片保存成功: 文件MD5={}, 分片号={}, 路径={}", 
-                    chunk.getFileMd5(), chunk.getChunkNumber(), chunkPath);
+                    fileDigest, chunk.getChunkNumber(), chunkPath);
             
         } catch (IOException e) {
             throw new FileUploadException("分片保存失败", e);
@@ -134,41 +161,39 @@ public class ChunkFileUploadService {
     /**
      * 更新上传进度
      */
-    private void updateUploadProgress(FileChunk chunk) {
-        String progressKey = getProgressKey(chunk.getFileMd5());
-        String sessionKey = getSessionKey(chunk.getFileMd5());
+    private void updateUploadProgress(FileChunk chunk, ContentDigest fileDigest) {
+        byte[] progressKey = getProgressKey(fileDigest);
         
-        Set<Object> uploadedChunks = redisTemplate.opsForSet().members(sessionKey);
-        int uploadedCount = uploadedChunks != null ? uploadedChunks.size() : 0;
+        int uploadedCount = countUploadedChunks(fileDigest);
         double progress = (double) uploadedCount / chunk.getTotalChunks() * 100;
         
         UploadProgress uploadProgress = UploadProgress.builder()
                 .uploadedChunks(uploadedCount)
                 .totalChunks(chunk.getTotalChunks())
                 .progress(progress)
-                .fileMd5(chunk.getFileMd5())
+                .fileMd5(fileDigest.toHex())
                 .status("uploading")
                 .build();
         
-        redisTemplate.opsForValue().set(progressKey, uploadProgress, 24, TimeUnit.HOURS);
+        byte[] value = serialize(uploadProgress);
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().setEx(progressKey, SESSION_TTL_SECONDS, value));
         
         log.info("上传进度更新: 文件MD5={}, 进度={}/{} ({}%)", 
-                chunk.getFileMd5(), uploadedCount, chunk.getTotalChunks(), String.format("%.2f", progress));
+                fileDigest, uploadedCount, chunk.getTotalChunks(), String.format("%.2f", progress));
     }
     
     /**
      * 检查是否上传完成
      */
-    private boolean isUploadComplete(String fileMd5) {
-        String sessionKey = getSessionKey(fileMd5);
-        Set<Object> uploadedChunks = redisTemplate.opsForSet().members(sessionKey);
-        Integer totalChunks = getTotalChunksFromRedis(fileMd5);
+    private boolean isUploadComplete(ContentDigest fileDigest) {
+        int uploadedCount = countUploadedChunks(fileDigest);
+        Integer totalChunks = getTotalChunksFromRedis(fileDigest);
         
-        boolean isComplete = uploadedChunks != null && totalChunks != null && 
-                           uploadedChunks.size() == totalChunks;
+        boolean isComplete = totalChunks != null && uploadedCount == totalChunks;
         
         log.info("检查上传完成状态: 文件MD5={}, 已上传={}, 总数={}, 完成={}", 
-                fileMd5, uploadedChunks != null ? uploadedChunks.size() : 0, totalChunks, isComplete);
+                fileDigest, uploadedCount, totalChunks, isComplete);
         
         return isComplete;
     }
@@ -176,80 +201,88 @@ public class ChunkFileUploadService {
     /**
      * 合并分片
      */
-    private ChunkUploadResult mergeChunks(String fileMd5) {
+    private ChunkUploadResult mergeChunks(ContentDigest fileDigest) {
         try {
-            String sessionKey = getSessionKey(fileMd5);
-            Set<Object> uploadedChunks = redisTemplate.opsForSet().members(sessionKey);
-            Integer totalChunks = getTotalChunksFromRedis(fileMd5);
+            int uploadedCount = countUploadedChunks(fileDigest);
+            Integer totalChunks = getTotalChunksFromRedis(fileDigest);
             
-            if (uploadedChunks == null || totalChunks == null || uploadedChunks.size() != totalChunks) {
+            if (totalChunks == null || uploadedCount != totalChunks) {
                 throw new FileUploadException("分片不完整，无法合并");
             }
             
-            // 合并文件
-            File mergedFile = mergeAllChunks(fileMd5, totalChunks);
+            // 合并文件，合并过程中同步计算摘要，无需再次读取整个文件
+            File mergedFile = createMergedFile(fileDigest);
+            ContentDigest mergedDigest = mergeAllChunks(fileDigest, totalChunks, mergedFile);
             
             // 验证合并后的文件MD5
-            String mergedFileMd5 = calculateFileMd5(mergedFile);
-            if (!fileMd5.equals(mergedFileMd5)) {
+            if (!fileDigest.equals(mergedDigest)) {
                 throw new FileUploadException("合并后文件MD5校验失败");
             }
             
             // 清理临时文件
-            cleanupTempFiles(fileMd5);
+            cleanupTempFiles(fileDigest);
             
             // 保存文件元数据
-            FileMetadata metadata = saveMergedFile(mergedFile, fileMd5);
+            FileMetadata metadata = saveMergedFile(mergedFile, fileDigest);
             
             // 清理Redis缓存
-            cleanupRedisCache(fileMd5);
+            cleanupRedisCache(fileDigest);
             
-            log.info("文件合并完成: 文件MD5={}, 文件路径={}", fileMd5, metadata.getFilePath());
+            log.info("文件合并完成: 文件MD5={}, 文件路径={}", fileDigest, metadata.getFilePath());
             
             return ChunkUploadResult.completed(metadata);
             
         } catch (Exception e) {
-            log.error("文件合并失败: 文件MD5=" + fileMd5, e);
+            log.error("文件合并失败: 文件MD5=" + fileDigest, e);
             throw new FileUploadException("文件合并失败", e);
         }
     }
     
     /**
-     * 合并所有分片
+     * 创建合并后的目标文件
      */
-    private File mergeAllChunks(String fileMd5, int totalChunks) throws IOException {
+    private File createMergedFile(ContentDigest fileDigest) throws IOException {
         // 创建上传目录
         Path uploadDir = Paths.get(UPLOAD_DIR);
         Files.createDirectories(uploadDir);
         
         // 生成合并后的文件路径
-        String fileName = fileMd5 + "_" + System.currentTimeMillis();
-        File mergedFile = new File(uploadDir.toFile(), fileName);
+        String fileName = fileDigest.toHex() + "_" + System.currentTimeMillis();
+        return new File(uploadDir.toFile(), fileName);
+    }
+    
+    /**
+     * 合并所有分片
+     * 
+     * @return 合并后文件的摘要
+     */
+    private ContentDigest mergeAllChunks(ContentDigest fileDigest, int totalChunks, File mergedFile) throws IOException {
+        MessageDigest messageDigest = digestAlgorithm.newMessageDigest();
+        String chunkDir = fileDigest.toHex();
         
-        try (FileOutputStream fos = new FileOutputStream(mergedFile)) {
+        try (OutputStream out = new DigestOutputStream(new FileOutputStream(mergedFile), messageDigest)) {
             for (int i = 0; i < totalChunks; i++) {
-                Path chunkPath = Paths.get(CHUNK_TEMP_DIR, fileMd5, String.valueOf(i));
+                Path chunkPath = Paths.get(CHUNK_TEMP_DIR, chunkDir, String.valueOf(i));
                 if (!Files.exists(chunkPath)) {
                     throw new IOException("分片文件不存在: " + chunkPath);
                 }
                 
-                byte[] chunkData = Files.readAllBytes(chunkPath);
-                fos.write(chunkData);
+                Files.copy(chunkPath, out);
             }
         }
         
         log.info("分片合并完成: 文件MD5={}, 合并文件={}, 大小={}", 
-                fileMd5, mergedFile.getAbsolutePath(), mergedFile.length());
+                fileDigest, mergedFile.getAbsolutePath(), mergedFile.length());
         
-        return mergedFile;
+        return ContentDigest.of(messageDigest.digest());
     }
     
     /**
      * 清理临时文件
      */
-    private void cleanupTempFiles(String fileMd5) {
+    private void cleanupTempFiles(ContentDigest fileDigest) {
         try {
-            Path tempDir = Paths.get(CHUNK_TEMP_DIR, fileMd5);
+            Path tempDir = Paths.get(CHUNK_TEMP_DIR, fileDigest.toHex());
             if (Files.exists(tempDir)) {
                 Files.walk(tempDir)
                      .sorted((a, b) -> b.compareTo(a)) // 先删除文件，再删除目录
@@ -261,18 +294,18 @@ public class ChunkFileUploadService {
                          }
                      });
             }
-            log.info("临时文件清理完成: 文件MD5={}", fileMd5);
+            log.info("临时文件清理完成: 文件MD5={}", fileDigest);
         } catch (IOException e) {
-            log.warn("清理临时文件失败: 文件MD5=" + fileMd5, e);
+            log.warn("清理临时文件失败: 文件MD5=" + fileDigest, e);
         }
     }
     
     /**
      * 保存合并后的文件元数据
      */
-    private FileMetadata saveMergedFile(File mergedFile, String fileMd5) {
+    private FileMetadata saveMergedFile(File mergedFile, ContentDigest fileDigest) {
         FileMetadata metadata = new FileMetadata();
-        metadata.setFileMd5(fileMd5);
+        metadata.setFileMd5(fileDigest.toHex());
         metadata.setFileName(mergedFile.getName());
         metadata.setSafeFileName(mergedFile.getName());
         metadata.setFilePath(mergedFile.getAbsolutePath());
@@ -285,35 +318,45 @@ public class ChunkFileUploadService {
     /**
      * 清理Redis缓存
      */
-    private void cleanupRedisCache(String fileMd5) {
-        String sessionKey = getSessionKey(fileMd5);
-        String progressKey = getProgressKey(fileMd5);
-        String totalChunksKey = getTotalChunksKey(fileMd5);
+    private void cleanupRedisCache(ContentDigest fileDigest) {
+        byte[] sessionKey = getSessionKey(fileDigest);
+        byte[] progressKey = getProgressKey(fileDigest);
+        byte[] totalChunksKey = getTotalChunksKey(fileDigest);
         
-        redisTemplate.delete(sessionKey);
-        redisTemplate.delete(progressKey);
-        redisTemplate.delete(totalChunksKey);
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.keyCommands().del(sessionKey, progressKey, totalChunksKey));
         
-        log.info("Redis缓存清理完成: 文件MD5={}", fileMd5);
+        log.info("Redis缓存清理完成: 文件MD5={}", fileDigest);
     }
     
     /**
      * 获取上传进度
      */
     public UploadProgress getUploadProgress(String fileMd5) {
-        String progressKey = getProgressKey(fileMd5);
-        UploadProgress progress = (UploadProgress) redisTemplate.opsForValue().get(progressKey);
+        ContentDigest fileDigest = ContentDigest.tryParse(fileMd5);
+        if (fileDigest == null) {
+            return UploadProgress.builder()
+                    .uploadedChunks(0)
+                    .totalChunks(0)
+                    .progress(0.0)
+                    .fileMd5(fileMd5)
+                    .status("not_started")
+                    .build();
+        }
+        
+        byte[] progressKey = getProgressKey(fileDigest);
+        UploadProgress progress = (UploadProgress) deserialize(redisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(progressKey)));
         
         if (progress == null) {
             // 如果缓存中没有进度信息，尝试从Redis Set中计算
-            String sessionKey = getSessionKey(fileMd5);
-            Set<Object> uploadedChunks = redisTemplate.opsForSet().members(sessionKey);
-            Integer totalChunks = getTotalChunksFromRedis(fileMd5);
+            int uploadedCount = countUploadedChunks(fileDigest);
+            Integer totalChunks = getTotalChunksFromRedis(fileDigest);
             
-            if (uploadedChunks != null && totalChunks != null) {
-                double progressValue = (double) uploadedChunks.size() / totalChunks * 100;
+            if (totalChunks != null) {
+                double progressValue = (double) uploadedCount / totalChunks * 100;
                 progress = UploadProgress.builder()
-                        .uploadedChunks(uploadedChunks.size())
+                        .uploadedChunks(uploadedCount)
                         .totalChunks(totalChunks)
                         .progress(progressValue)
                         .fileMd5(fileMd5)
@@ -338,12 +381,19 @@ public class ChunkFileUploadService {
      * 获取已上传的分片列表
      */
     public List<Integer> getUploadedChunks(String fileMd5) {
-        String sessionKey = getSessionKey(fileMd5);
-        Set<Object> uploadedChunks = redisTemplate.opsForSet().members(sessionKey);
-        
         List<Integer> chunkList = new ArrayList<>();
+        ContentDigest fileDigest = ContentDigest.tryParse(fileMd5);
+        if (fileDigest == null) {
+            return chunkList;
+        }
+        
+        byte[] sessionKey = getSessionKey(fileDigest);
+        Set<byte[]> uploadedChunks = redisTemplate.execute(
+                (RedisCallback<Set<byte[]>>) connection -> connection.setCommands().sMembers(sessionKey));
+        
         if (uploadedChunks != null) {
-            for (Object chunk : uploadedChunks) {
+            for (byte[] member : uploadedChunks) {
+                Object chunk = deserialize(member);
                 if (chunk instanceof Integer) {
                     chunkList.add((Integer) chunk);
                 }
@@ -354,68 +404,51 @@ public class ChunkFileUploadService {
     }
     
     /**
-     * 计算MD5
+     * 获取会话键
      */
-    private String calculateMd5(byte[] data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hash = md.digest(data);
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hash) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("MD5算法不可用", e);
-        }
+    private byte[] getSessionKey(ContentDigest fileDigest) {
+        return fileDigest.toBinaryKey(UPLOAD_SESSION_KEY);
     }
     
     /**
-     * 计算文件MD5
+     * 获取进度键
      */
-    private String calculateFileMd5(File file) {
-        try {
-            byte[] fileData = Files.readAllBytes(file.toPath());
-            return calculateMd5(fileData);
-        } catch (IOException e) {
-            throw new RuntimeException("读取文件失败", e);
-        }
+    private byte[] getProgressKey(ContentDigest fileDigest) {
+        return fileDigest.toBinaryKey(UPLOAD_PROGRESS_KEY);
     }
     
     /**
-     * 获取分片键
+     * 获取总分片数键
      */
-    private String getChunkKey(String fileMd5, int chunkNumber) {
-        return "chunk:" + fileMd5 + ":" + chunkNumber;
+    private byte[] getTotalChunksKey(ContentDigest fileDigest) {
+        return fileDigest.toBinaryKey(UPLOAD_TOTAL_CHUNKS_KEY);
     }
     
     /**
-     * 获取会话键
+     * 从Redis获取总分片数
      */
-    private String getSessionKey(String fileMd5) {
-        return UPLOAD_SESSION_KEY + fileMd5;
+    private Integer getTotalChunksFromRedis(ContentDigest fileDigest) {
+        byte[] totalChunksKey = getTotalChunksKey(fileDigest);
+        Object totalChunks = deserialize(redisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(totalChunksKey)));
+        return totalChunks instanceof Integer ? (Integer) totalChunks : null;
     }
     
     /**
-     * 获取进度键
+     * 已上传的分片数
      */
-    private String getProgressKey(String fileMd5) {
-        return UPLOAD_PROGRESS_KEY + fileMd5;
+    private int countUploadedChunks(ContentDigest fileDigest) {
+        byte[] sessionKey = getSessionKey(fileDigest);
+        Long count = redisTemplate.execute((RedisCallback<Long>) connection -> connection.setCommands().sCard(sessionKey));
+        return count != null ? count.intValue() : 0;
     }
     
-    /**
-     * 获取总分片数键
-     */
-    private String getTotalChunksKey(String fileMd5) {
-        return UPLOAD_TOTAL_CHUNKS_KEY + fileMd5;
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
     }
     
-    /**
-     * 从Redis获取总分片数
-     */
-    private Integer getTotalChunksFromRedis(String fileMd5) {
-        String totalChunksKey = getTotalChunksKey(fileMd5);
-        Object totalChunks = redisTemplate.opsForValue().get(totalChunksKey);
-        return totalChunks instanceof Integer ? (Integer) totalChunks : null;
+    private Object deserialize(byte[] value) {
+        return value != null ? redisTemplate.getValueSerializer().deserialize(value) : null;
     }
 }
\ No newline at end of file
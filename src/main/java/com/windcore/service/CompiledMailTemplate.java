@@ -0,0 +1,231 @@
+package com.windcore.service;
+
+import org.unbescape.html.HtmlEscape;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译的邮件模板
+ *
+ * 模板拆分为静态片段和变量片段，渲染时只拼接变量的值，不再经过模板引擎。
+ * 只支持简单模板：th 属性只有双引号写法的 th:text、th:utext 和普通属性（如 th:href），
+ * 表达式只有 ${name} 或 ${name ?: '默认值'}，没有条件、循环和内联表达式。
+ *
+ * @author windcore
+ */
+class CompiledMailTemplate {
+
+    /**
+     * 可预编译的 th 属性，除 text/utext 外都按属性值输出
+     */
+    private static final List<String> SUPPORTED_ATTRIBUTES = List.of("text", "utext", "href", "src", "title", "alt", "value");
+
+    private static final Pattern TH_ATTRIBUTE = Pattern.compile("\\sth:([a-zA-Z-]+)\\s*=\\s*\"([^\"]*)\"");
+
+    /**
+     * 任意写法的 th 属性（th:x、data-th-x，单引号或双引号），用于发现 {@link #TH_ATTRIBUTE} 没有解析到的属性
+     */
+    private static final Pattern ANY_TH_ATTRIBUTE = Pattern.compile("(?<![\\w:-])(?:data-)?th[:-][a-zA-Z-]+\\s*=");
+
+    private static final Pattern VARIABLE_EXPRESSION =
+            Pattern.compile("^\\$\\{\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*(?:\\?:\\s*'([^']*)')?\\s*}$");
+
+    /**
+     * 探测渲染时代替变量值的标记，使用私有区字符，不会被HTML转义
+     */
+    private static final char MARK_START = '\uE000';
+    private static final char MARK_END = '\uE001';
+    private static final Pattern MARK = Pattern.compile(MARK_START + "(\\d+)" + MARK_END);
+
+    /**
+     * 源码中的变量表达式
+     */
+    record Expression(String variable, String defaultValue, String attribute) {
+    }
+
+    /**
+     * 变量片段
+     */
+    private record Slot(String variable, String defaultValue, boolean escape, boolean attribute) {
+    }
+
+    /**
+     * 静态片段，比变量片段多一个
+     */
+    private final String[] fragments;
+    private final Slot[] slots;
+    private final int estimatedLength;
+
+    private CompiledMailTemplate(String[] fragments, Slot[] slots) {
+        this.fragments = fragments;
+        this.slots = slots;
+        int length = 0;
+        for (String fragment : fragments) {
+            length += fragment.length();
+        }
+        this.estimatedLength = length + slots.length * 32;
+    }
+
+    /**
+     * 分析模板源码中的变量表达式
+     *
+     * @return 按出现顺序排列的变量片段，模板不满足预编译条件时返回null
+     */
+    static List<Expression> analyze(String source) {
+        if (source.contains("[[") || source.contains("[(")) {
+            return null;
+        }
+        List<Expression> expressions = new ArrayList<>();
+        Matcher matcher = TH_ATTRIBUTE.matcher(source);
+        while (matcher.find()) {
+            String attribute = matcher.group(1);
+            if (!SUPPORTED_ATTRIBUTES.contains(attribute)) {
+                return null;
+            }
+            Matcher expression = VARIABLE_EXPRESSION.matcher(matcher.group(2).trim());
+            if (!expression.matches()) {
+                return null;
+            }
+            expressions.add(new Expression(expression.group(1), expression.group(2), attribute));
+        }
+        // 有未解析的 th 属性时探测渲染会把其中的变量渲染为空，预编译后该变量会被丢弃
+        Matcher any = ANY_TH_ATTRIBUTE.matcher(source);
+        int attributes = 0;
+        while (any.find()) {
+            attributes++;
+        }
+        if (attributes != expressions.size()) {
+            return null;
+        }
+        return expressions;
+    }
+
+    /**
+     * 探测渲染使用的变量：每个变量的值是带序号的标记
+     */
+    static Map<String, Object> probeVariables(List<Expression> analyzed) {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (Expression expression : analyzed) {
+            String variable = expression.variable();
+            if (!variables.containsKey(variable)) {
+                variables.put(variable, MARK_START + String.valueOf(variables.size()) + MARK_END);
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * 根据探测渲染的结果拆分静态片段
+     *
+     * @param analyzed 源码分析结果
+     * @param probeOutput 使用 {@link #probeVariables} 渲染的结果
+     * @return 预编译模板，标记与源码中的表达式对应不上时返回null
+     */
+    static CompiledMailTemplate compile(List<Expression> analyzed, String probeOutput) {
+        List<String> variableOrder = new ArrayList<>(probeVariables(analyzed).keySet());
+        List<String> fragments = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+        Matcher matcher = MARK.matcher(probeOutput);
+        int last = 0;
+        while (matcher.find()) {
+            int index = slots.size();
+            if (index >= analyzed.size()) {
+                return null;
+            }
+            Expression expected = analyzed.get(index);
+            int variableIndex = Integer.parseInt(matcher.group(1));
+            if (variableIndex >= variableOrder.size() || !variableOrder.get(variableIndex).equals(expected.variable())) {
+                return null;
+            }
+            String attribute = expected.attribute();
+            fragments.add(probeOutput.substring(last, matcher.start()));
+            slots.add(new Slot(expected.variable(), expected.defaultValue(), !"utext".equals(attribute),
+                    !"text".equals(attribute) && !"utext".equals(attribute)));
+            last = matcher.end();
+        }
+        if (slots.size() != analyzed.size()) {
+            return null;
+        }
+        fragments.add(probeOutput.substring(last));
+        return new CompiledMailTemplate(fragments.toArray(new String[0]), slots.toArray(new Slot[0]));
+    }
+
+    /**
+     * 判断能否用预编译模板渲染这组变量
+     *
+     * 只支持字符串、整数和布尔值；属性没有默认值时变量不能为null（模板引擎会删除该属性）
+     */
+    boolean supports(Map<String, Object> variables) {
+        for (Slot slot : slots) {
+            Object value = variables != null ? variables.get(slot.variable) : null;
+            if (value == null) {
+                if (slot.attribute && slot.defaultValue == null) {
+                    return false;
+                }
+            } else if (!(value instanceof CharSequence || value instanceof Integer
+                    || value instanceof Long || value instanceof Boolean)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 渲染模板，调用前需确认 {@link #supports} 返回true
+     */
+    String render(Map<String, Object> variables) {
+        StringBuilder builder = new StringBuilder(estimatedLength);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(fragments[i]);
+            Slot slot = slots[i];
+            Object value = variables != null ? variables.get(slot.variable) : null;
+            String text = value != null ? value.toString() : null;
+            // SpEL 的 ?: 把空字符串也当作没有值
+            if ((text == null || text.isEmpty()) && slot.defaultValue != null) {
+                text = slot.defaultValue;
+            }
+            if (text != null) {
+                builder.append(slot.escape ? HtmlEscape.escapeHtml4Xml(text) : text);
+            }
+        }
+        builder.append(fragments[slots.length]);
+        return builder.toString();
+    }
+
+    /**
+     * 生成校验用的变量，包含需要转义的字符；nullable为true时有默认值或非属性的变量取null
+     */
+    Map<String, Object> sampleVariables(boolean nullable) {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (Slot slot : slots) {
+            variables.put(slot.variable, "<a href=\"x\">&'" + slot.variable + "'中文</a>");
+        }
+        if (nullable) {
+            for (Slot slot : slots) {
+                if (slot.attribute && slot.defaultValue == null) {
+                    continue;
+                }
+                boolean requiredElsewhere = false;
+                for (Slot other : slots) {
+                    if (other.variable.equals(slot.variable) && other.attribute && other.defaultValue == null) {
+                        requiredElsewhere = true;
+                        break;
+                    }
+                }
+                if (!requiredElsewhere) {
+                    variables.put(slot.variable, null);
+                }
+            }
+        }
+        return variables;
+    }
+
+    int getSlotCount() {
+        return slots.length;
+    }
+}
@@ -1,5 +1,6 @@
 package com.windcore.service;
 
+import com.windcore.dto.FileListCursor;
 import com.windcore.model.FileMetadata;
 import java.util.List;
 
@@ -58,6 +59,16 @@ public interface FileService {
      */
     List<FileMetadata> findByBusinessType(String businessType);
     
+    /**
+     * 根据业务类型分页查找文件列表，按 (uploadTime, id) 升序
+     * 
+     * @param businessType 业务类型
+     * @param after 上一页最后一条记录的游标，为null时从头开始
+     * @param limit 最多返回条数
+     * @return 文件列表
+     */
+    List<FileMetadata> findByBusinessType(String businessType, FileListCursor after, int limit);
+    
     /**
      * 根据文件名模糊查询
      * 
@@ -66,6 +77,16 @@ public interface FileService {
      */
     List<FileMetadata> findByFileNameLike(String fileName);
     
+    /**
+     * 根据文件名模糊分页查询，按 (uploadTime, id) 升序
+     * 
+     * @param fileName 文件名关键字
+     * @param after 上一页最后一条记录的游标，为null时从头开始
+     * @param limit 最多返回条数
+     * @return 文件列表
+     */
+    List<FileMetadata> findByFileNameLike(String fileName, FileListCursor after, int limit);
+    
     /**
      * 检查文件是否存在
      * 
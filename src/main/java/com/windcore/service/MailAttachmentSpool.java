@@ -0,0 +1,210 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.model.ContentDigest;
+import com.windcore.model.DigestAlgorithm;
+import com.windcore.model.MailAttachment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 邮件附件存储
+ *
+ * 附件内容写入本地目录一次，按内容摘要命名（与文件上传使用相同的摘要算法），相同内容的附件只保存一份。
+ * 邮件中只保存摘要句柄（{@link MailAttachment#getHandle()}），发送时从文件流式写入MIME正文，
+ * 附件大小不再影响堆内存和Redis占用。
+ *
+ * 多节点部署时 spool-dir 需为共享目录。超过保留时间未被再次引用的附件由定时任务清理。
+ *
+ * @author windcore
+ */
+@Service
+@Slf4j
+public class MailAttachmentSpool {
+
+    private final MailProperties mailProperties;
+
+    private final DigestAlgorithm digestAlgorithm;
+
+    public MailAttachmentSpool(MailProperties mailProperties,
+                               @Value("${file.upload.digest-algorithm:MD5}") DigestAlgorithm digestAlgorithm) {
+        this.mailProperties = mailProperties;
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * 保存上传的附件
+     */
+    public MailAttachment spool(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return spool(file.getOriginalFilename(), file.getContentType(), in);
+        }
+    }
+
+    /**
+     * 将附件内容写入存储，返回只包含句柄的附件
+     */
+    public MailAttachment spool(String fileName, String contentType, InputStream in) throws IOException {
+        Path spoolDir = getSpoolDir();
+        Files.createDirectories(spoolDir);
+
+        // 先写入临时文件并计算摘要，再按摘要移动到最终位置
+        Path tempFile = Files.createTempFile(spoolDir, "spool-", ".tmp");
+        ContentDigest digest;
+        long size;
+        try {
+            MessageDigest messageDigest = digestAlgorithm.newMessageDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), messageDigest)) {
+                size = in.transferTo(out);
+            }
+            digest = ContentDigest.of(messageDigest.digest());
+            Path target = resolvePath(digest.toHex());
+            Files.createDirectories(target.getParent());
+            if (Files.exists(target)) {
+                // 相同内容已存在，刷新修改时间以延长保留期
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                moveAtomically(tempFile, target);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        MailAttachment attachment = new MailAttachment();
+        attachment.setFileName(fileName);
+        attachment.setContentType(contentType);
+        attachment.setSize(size);
+        attachment.setHandle(digest.toHex());
+        log.debug("附件已保存，文件名: {}, 大小: {}, 句柄: {}", fileName, size, attachment.getHandle());
+        return attachment;
+    }
+
+    /**
+     * 将内存中的附件（字节数组或输入流）转存为句柄附件，文件路径附件和已有句柄的附件保持不变
+     */
+    public MailAttachment spool(MailAttachment attachment) throws IOException {
+        if (StringUtils.hasText(attachment.getHandle()) || StringUtils.hasText(attachment.getFilePath())) {
+            return attachment;
+        }
+        InputStream in;
+        if (attachment.getContent() != null) {
+            in = new ByteArrayInputStream(attachment.getContent());
+        } else if (attachment.getInputStream() != null) {
+            in = attachment.getInputStream();
+        } else {
+            return attachment;
+        }
+
+        MailAttachment spooled;
+        try (in) {
+            spooled = spool(attachment.getFileName(), attachment.getContentType(), in);
+        }
+        spooled.setInline(attachment.getInline());
+        spooled.setContentId(attachment.getContentId());
+        return spooled;
+    }
+
+    /**
+     * 根据句柄打开附件，发送时按需读取文件内容
+     */
+    public Resource resolve(String handle) throws FileNotFoundException {
+        ContentDigest digest = ContentDigest.tryParse(handle);
+        if (digest == null) {
+            throw new IllegalArgumentException("无效的附件句柄: " + handle);
+        }
+        Path path = resolvePath(digest.toHex());
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("附件不存在或已过期: " + handle);
+        }
+        return new FileSystemResource(path);
+    }
+
+    /**
+     * 清理超过保留时间的附件
+     */
+    @Scheduled(cron = "0 30 2 * * ?") // 每天凌晨2点30分执行
+    public void cleanupExpiredAttachments() {
+        Path spoolDir = getSpoolDir();
+        if (!Files.isDirectory(spoolDir)) {
+            return;
+        }
+
+        long expireBefore = System.currentTimeMillis()
+                - TimeUnit.DAYS.toMillis(mailProperties.getAttachment().getRetentionDays());
+        int deleted = 0;
+        try (DirectoryStream<Path> buckets = Files.newDirectoryStream(spoolDir)) {
+            for (Path bucket : buckets) {
+                if (!Files.isDirectory(bucket)) {
+                    // 进程异常退出遗留的临时文件
+                    deleted += deleteIfExpired(bucket, expireBefore);
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(bucket)) {
+                    for (Path file : files) {
+                        deleted += deleteIfExpired(file, expireBefore);
+                    }
+                }
+            }
+            log.info("邮件附件清理完成，删除: {}", deleted);
+
+        } catch (IOException e) {
+            log.error("清理邮件附件时发生错误", e);
+        }
+    }
+
+    private int deleteIfExpired(Path file, long expireBefore) {
+        try {
+            if (Files.getLastModifiedTime(file).toMillis() < expireBefore) {
+                Files.deleteIfExists(file);
+                return 1;
+            }
+        } catch (IOException e) {
+            log.warn("删除过期附件失败: {}", file, e);
+        }
+        return 0;
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // 并发写入了相同内容
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 按摘要前两位分目录，避免单个目录文件过多
+     */
+    private Path resolvePath(String hex) {
+        return getSpoolDir().resolve(hex.substring(0, 2)).resolve(hex);
+    }
+
+    private Path getSpoolDir() {
+        return Paths.get(mailProperties.getAttachment().getSpoolDir());
+    }
+}
@@ -0,0 +1,46 @@
+package com.windcore.service;
+
+import com.windcore.model.MailCampaign;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 邮件群发服务接口
+ *
+ * 同一个模板发送给收件人文件（CSV或NDJSON）中的每一行，每行的列作为该收件人的模板变量。
+ *
+ * @author windcore
+ */
+public interface MailCampaignService {
+
+    /**
+     * 创建群发任务，收件人文件保存后在后台逐行入队
+     *
+     * @param templateName 邮件模板名称
+     * @param subject 邮件主题
+     * @param sharedVariables 所有收件人共用的模板变量，行内同名变量优先
+     * @param priority 邮件优先级
+     * @param recipients 收件人文件，email（或 to）列为收件人地址
+     * @return 群发任务
+     */
+    MailCampaign startCampaign(String templateName, String subject, Map<String, Object> sharedVariables,
+                               Integer priority, MultipartFile recipients) throws IOException;
+
+    /**
+     * 查询群发任务进度
+     *
+     * @param campaignId 任务ID
+     * @return 群发任务，不存在时返回null
+     */
+    MailCampaign getCampaign(String campaignId);
+
+    /**
+     * 取消群发任务，已入队的邮件不受影响
+     *
+     * @param campaignId 任务ID
+     * @return 是否成功
+     */
+    boolean cancelCampaign(String campaignId);
+}
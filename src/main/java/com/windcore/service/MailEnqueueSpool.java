@@ -0,0 +1,183 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.storage.MappedAppendLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 邮件入队的本地暂存
+ *
+ * Redis 不可用时，入队的邮件追加写入本地的内存映射日志（{@link MappedAppendLog}），
+ * Redis 恢复后由队列服务按写入顺序转存回 Redis。暂存中还有未转存的邮件时，新入队的邮件同样写入暂存，
+ * 保证同一优先级的邮件仍按入队顺序进入 Redis。
+ *
+ * 每条记录为 [byte 优先级][short 邮件ID长度][邮件ID][邮件编码]，已转存的位置保存在 mail-enqueue.checkpoint，
+ * 重启后从该位置继续转存；全部转存完的段文件被删除。转存在写入 Redis 后才推进位置，
+ * 宕机后会重新读取最后一批，由队列服务跳过 Redis 中已存在的邮件。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+public class MailEnqueueSpool {
+
+    private static final String LOG_PREFIX = "mail-enqueue";
+    private static final String CHECKPOINT_FILE = "mail-enqueue.checkpoint";
+
+    /**
+     * 暂存的一封邮件
+     *
+     * @param address 记录地址
+     * @param priority 优先级
+     * @param mailId 邮件ID
+     * @param payload 邮件编码（MailMessageCodec）
+     */
+    public record Entry(long address, int priority, String mailId, byte[] payload) {
+    }
+
+    private final MailProperties mailProperties;
+
+    private MappedAppendLog appendLog;
+    private Path checkpointFile;
+
+    /**
+     * 下一条待转存记录的地址
+     */
+    private long cursor;
+    private long pendingCount;
+
+    public MailEnqueueSpool(MailProperties mailProperties) {
+        this.mailProperties = mailProperties;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        MailProperties.Spool spool = mailProperties.getSpool();
+        if (!Boolean.TRUE.equals(spool.getEnabled())) {
+            return;
+        }
+        Path dir = Paths.get(spool.getDir());
+        appendLog = new MappedAppendLog(dir, LOG_PREFIX, spool.getSegmentSize());
+        checkpointFile = dir.resolve(CHECKPOINT_FILE);
+        cursor = Files.exists(checkpointFile)
+                ? ByteBuffer.wrap(Files.readAllBytes(checkpointFile)).getLong()
+                : appendLog.startAddress();
+
+        long[] count = new long[1];
+        appendLog.readFrom(cursor, Integer.MAX_VALUE, (address, payload) -> count[0]++);
+        pendingCount = count[0];
+        if (pendingCount > 0) {
+            log.warn("本地暂存中有未转存到Redis的邮件，数量: {}", pendingCount);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (appendLog != null) {
+            appendLog.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return appendLog != null;
+    }
+
+    /**
+     * 是否还有未转存到 Redis 的邮件
+     */
+    public synchronized boolean hasPending() {
+        return pendingCount > 0;
+    }
+
+    public synchronized long getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * 追加一批邮件
+     *
+     * @param mailIds 邮件ID
+     * @param priorities 优先级
+     * @param payloads 邮件编码
+     * @throws IOException 暂存已满或写入失败
+     */
+    public synchronized void append(List<String> mailIds, int[] priorities, byte[][] payloads) throws IOException {
+        if (appendLog == null) {
+            throw new IOException("本地暂存未启用");
+        }
+        MailProperties.Spool spool = mailProperties.getSpool();
+        if (appendLog.usedBytes() > spool.getMaxBytes()) {
+            throw new IOException("本地暂存已满: " + appendLog.usedBytes() + " 字节");
+        }
+        for (int i = 0; i < payloads.length; i++) {
+            byte[] id = mailIds.get(i).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(3 + id.length + payloads[i].length);
+            record.put((byte) priorities[i]).putShort((short) id.length).put(id).put(payloads[i]);
+            appendLog.append(record.array());
+            pendingCount++;
+        }
+        if (Boolean.TRUE.equals(spool.getSync())) {
+            appendLog.force();
+        }
+    }
+
+    /**
+     * 读取待转存的邮件，不推进转存位置
+     *
+     * @param maxEntries 最多读取数量
+     */
+    public synchronized List<Entry> peek(int maxEntries) {
+        List<Entry> entries = new ArrayList<>();
+        if (appendLog == null || pendingCount == 0) {
+            return entries;
+        }
+        appendLog.readFrom(cursor, maxEntries, (address, payload) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            int priority = buffer.get();
+            byte[] id = new byte[buffer.getShort()];
+            buffer.get(id);
+            byte[] body = new byte[buffer.remaining()];
+            buffer.get(body);
+            entries.add(new Entry(address, priority, new String(id, StandardCharsets.UTF_8), body));
+        });
+        return entries;
+    }
+
+    /**
+     * 确认已转存到 lastEntry（含）为止的邮件，保存转存位置并删除已转存完的段文件
+     *
+     * @param entries 已转存的邮件，须为 {@link #peek} 返回的结果
+     */
+    public synchronized void commit(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Entry last = entries.get(entries.size() - 1);
+        // 推进到最后一条之后：再读一条确定下一条的地址，没有时为写入末尾
+        long next = appendLog.readFrom(last.address(), 1, (address, payload) -> { });
+        cursor = next;
+        pendingCount = Math.max(0, pendingCount - entries.size());
+
+        Path tmp = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        Files.write(tmp, ByteBuffer.allocate(Long.BYTES).putLong(cursor).array());
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        int removed = appendLog.truncateBefore(MappedAppendLog.segmentOf(cursor));
+        if (removed > 0) {
+            log.info("已删除转存完的本地暂存段文件，数量: {}", removed);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.windcore.service;
+
+import org.apache.ibatis.jdbc.SQL;
+
+import java.util.Map;
+
+public class MailHistorySqlProvider {
+
+    /**
+     * 游标分页：按 (create_time, mail_id) 降序读取游标之后的记录，走 idx_create_time / idx_status_create_time 索引
+     */
+    public String findAfter(Map<String, Object> params) {
+        return new SQL() {{
+            SELECT("*");
+            FROM("mail_history");
+            if (params.get("status") != null) {
+                WHERE("status = #{status}");
+            }
+            if (params.get("createTime") != null) {
+                WHERE("(create_time < #{createTime} or (create_time = #{createTime} and mail_id < #{mailId}))");
+            }
+            ORDER_BY("create_time desc, mail_id desc");
+            LIMIT("#{limit}");
+        }}.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.dto.MailHistoryCursor;
+import com.windcore.mapper.MailHistoryMapper;
+import com.windcore.model.MailMessage;
+import com.windcore.pojo.MailHistory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 邮件发送历史持久化
+ *
+ * 状态变化先放入有界缓冲区，由定时任务按批写入MySQL，发送线程不等待数据库。
+ * 数据库写入跟不上时丢弃新记录并计数，内存占用不超过 buffer-capacity 条记录。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "mail.history", name = "enabled", havingValue = "true")
+public class MailHistoryStore {
+
+    /**
+     * to_address 为 TEXT（最多65535字节），按 utf8mb4 每字符4字节留出余量
+     */
+    static final int MAX_TO_ADDRESS_LENGTH = 16000;
+    static final int MAX_SUBJECT_LENGTH = 500;
+
+    private final MailHistoryMapper mailHistoryMapper;
+    private final MailProperties mailProperties;
+    private final BlockingQueue<MailHistory> buffer;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public MailHistoryStore(MailHistoryMapper mailHistoryMapper, MailProperties mailProperties) {
+        this.mailHistoryMapper = mailHistoryMapper;
+        this.mailProperties = mailProperties;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, mailProperties.getHistory().getBufferCapacity()));
+    }
+
+    /**
+     * 记录邮件的最新状态，不阻塞调用方
+     */
+    public void record(MailMessage mailMessage) {
+        if (!buffer.offer(toHistory(mailMessage))) {
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped % 1000 == 1) {
+                log.warn("邮件历史缓冲区已满，已丢弃记录数: {}", dropped);
+            }
+        }
+    }
+
+    /**
+     * 按创建时间倒序分页查询历史
+     */
+    public List<MailMessage> findPage(int page, int size) {
+        List<MailMessage> result = new ArrayList<>();
+        for (MailHistory history : mailHistoryMapper.findPage((long) page * size, size)) {
+            result.add(toMailMessage(history));
+        }
+        return result;
+    }
+
+    /**
+     * 按创建时间倒序读取游标之后的一页历史
+     */
+    public List<MailMessage> findPage(MailMessage.MailStatus status, MailHistoryCursor after, int limit) {
+        List<MailMessage> result = new ArrayList<>();
+        List<MailHistory> histories = mailHistoryMapper.findAfter(status != null ? status.name() : null,
+                after != null ? after.getCreateTime() : null, after != null ? after.getId() : null, limit);
+        for (MailHistory history : histories) {
+            result.add(toMailMessage(history));
+        }
+        return result;
+    }
+
+    /**
+     * 将缓冲区中的记录批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${mail.history.flush-interval-millis:2000}")
+    public void flush() {
+        int batchSize = Math.max(1, mailProperties.getHistory().getBatchSize());
+        List<MailHistory> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                mailHistoryMapper.upsertBatch(batch);
+            } catch (Exception e) {
+                log.error("写入邮件历史失败，丢弃记录数: {}", batch.size(), e);
+                droppedCount.addAndGet(batch.size());
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private static MailHistory toHistory(MailMessage mailMessage) {
+        MailHistory history = new MailHistory();
+        history.setMailId(mailMessage.getId());
+        history.setFromAddress(mailMessage.getFrom());
+        history.setToAddress(joinRecipients(mailMessage.getTo()));
+        history.setSubject(mailMessage.getSubject() != null && mailMessage.getSubject().length() > MAX_SUBJECT_LENGTH
+                ? mailMessage.getSubject().substring(0, MAX_SUBJECT_LENGTH) : mailMessage.getSubject());
+        history.setTemplateName(mailMessage.getTemplateName());
+        history.setPriority(mailMessage.getPriority());
+        history.setStatus(mailMessage.getStatus() != null ? mailMessage.getStatus().name() : null);
+        history.setRetryCount(mailMessage.getRetryCount());
+        history.setErrorMessage(MailStatusStore.truncate(mailMessage.getErrorMessage()));
+        history.setCreateTime(mailMessage.getCreateTime());
+        history.setSendTime(mailMessage.getSendTime());
+        history.setUpdateTime(LocalDateTime.now());
+        return history;
+    }
+
+    /**
+     * 拼接收件人，超出列长度时在地址边界处截断，只保留完整的地址
+     */
+    static String joinRecipients(List<String> to) {
+        if (to == null) {
+            return null;
+        }
+        String joined = String.join(",", to);
+        if (joined.length() <= MAX_TO_ADDRESS_LENGTH) {
+            return joined;
+        }
+        int end = joined.lastIndexOf(',', MAX_TO_ADDRESS_LENGTH);
+        return end > 0 ? joined.substring(0, end) : joined.substring(0, MAX_TO_ADDRESS_LENGTH);
+    }
+
+    private static MailMessage toMailMessage(MailHistory history) {
+        return MailMessage.builder()
+                .id(history.getMailId())
+                .from(history.getFromAddress())
+                .to(history.getToAddress() != null ? List.of(history.getToAddress().split(",")) : null)
+                .subject(history.getSubject())
+                .templateName(history.getTemplateName())
+                .priority(history.getPriority())
+                .status(history.getStatus() != null ? MailMessage.MailStatus.valueOf(history.getStatus()) : null)
+                .retryCount(history.getRetryCount())
+                .errorMessage(history.getErrorMessage())
+                .createTime(history.getCreateTime())
+                .sendTime(history.getSendTime())
+                .build();
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.windcore.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.windcore.config.MailProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 发送请求的幂等处理
+ *
+ * 调用方在请求头 Idempotency-Key 中携带幂等键，同一个键在 ttl-seconds 内只发送一次，
+ * 重复请求直接返回首次请求的邮件ID，调用方超时后可以放心重试。
+ * 幂等键与请求内容的摘要绑定，相同的键携带不同的请求内容时返回 {@link MismatchException}。
+ *
+ * 首次请求先以 SET NX 写入“处理中”标记（pending-ttl-seconds），发送期间每隔三分之一有效期续期一次，
+ * 发送耗时超过有效期时重复请求仍被拒绝；发送成功后改为邮件ID。
+ * 处理中收到的重复请求返回 {@link InProgressException}，发送失败时删除自己写入的标记以便调用方重试。
+ * Redis 不可用时不做去重，直接发送。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+public class MailIdempotencyStore {
+
+    private static final String IDEMPOTENCY_KEY = "mail:idempotency:";
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final String PENDING_PREFIX = "\0pending";
+    /**
+     * SHA-256 十六进制摘要长度，保存的值为 "摘要:邮件ID"
+     */
+    private static final int HASH_LENGTH = 64;
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    /**
+     * 仅当值仍为本次请求的处理中标记时删除
+     * KEYS: 幂等键；ARGV: 处理中标记
+     */
+    private static final byte[] RELEASE_SCRIPT = (
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 仅当值仍为本次请求的处理中标记时续期
+     * KEYS: 幂等键；ARGV: 处理中标记, 有效期（毫秒）
+     */
+    private static final byte[] RENEW_SCRIPT = (
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 幂等执行结果
+     *
+     * @param mailId 邮件ID
+     * @param duplicate 是否为重复请求（未重新发送）
+     */
+    public record Result(String mailId, boolean duplicate) {
+    }
+
+    /**
+     * 相同幂等键的请求正在处理中
+     */
+    public static class InProgressException extends RuntimeException {
+        public InProgressException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 相同幂等键的请求内容与首次请求不一致
+     */
+    public static class MismatchException extends RuntimeException {
+        public MismatchException(String message) {
+            super(message);
+        }
+    }
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MailProperties mailProperties;
+    private final ScheduledExecutorService renewScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mail-idempotency-renew");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MailIdempotencyStore(RedisTemplate<String, Object> redisTemplate, MailProperties mailProperties) {
+        this.redisTemplate = redisTemplate;
+        this.mailProperties = mailProperties;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renewScheduler.shutdownNow();
+    }
+
+    /**
+     * 按幂等键执行发送
+     *
+     * @param idempotencyKey 幂等键，为空时直接发送
+     * @param request 请求参数，用于校验重复请求的内容是否一致
+     * @param send 发送操作，返回邮件ID
+     * @return 邮件ID及是否为重复请求
+     */
+    public Result execute(String idempotencyKey, Object request, Supplier<String> send) {
+        if (!StringUtils.hasText(idempotencyKey)) {
+            return new Result(send.get(), false);
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("幂等键长度不能超过" + MAX_KEY_LENGTH);
+        }
+
+        byte[] key = (IDEMPOTENCY_KEY + idempotencyKey).getBytes(StandardCharsets.UTF_8);
+        String requestHash = requestHash(request);
+        byte[] pending = (PENDING_PREFIX + ":" + requestHash + ":" + UUID.randomUUID())
+                .getBytes(StandardCharsets.UTF_8);
+        MailProperties.Idempotency config = mailProperties.getIdempotency();
+        Boolean acquired;
+        byte[] existing = null;
+        try {
+            acquired = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(key, pending, Expiration.seconds(config.getPendingTtlSeconds()), SetOption.SET_IF_ABSENT));
+            if (!Boolean.TRUE.equals(acquired)) {
+                existing = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+            }
+        } catch (Exception e) {
+            log.warn("幂等键检查失败，不做去重直接发送，幂等键: {}: {}", idempotencyKey, e.getMessage());
+            return new Result(send.get(), false);
+        }
+
+        if (!Boolean.TRUE.equals(acquired)) {
+            if (existing == null) {
+                // 标记恰好过期或被删除，按首次请求重新处理
+                return execute(idempotencyKey, request, send);
+            }
+            return duplicate(idempotencyKey, requestHash, new String(existing, StandardCharsets.UTF_8));
+        }
+
+        String mailId;
+        ScheduledFuture<?> renewal = scheduleRenewal(key, pending, config.getPendingTtlSeconds());
+        try {
+            mailId = send.get();
+        } catch (RuntimeException e) {
+            renewal.cancel(false);
+            release(key, pending);
+            throw e;
+        }
+        renewal.cancel(false);
+
+        try {
+            byte[] value = (requestHash + ":" + mailId).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(key, value, Expiration.seconds(config.getTtlSeconds()), SetOption.UPSERT));
+        } catch (Exception e) {
+            log.warn("保存幂等键失败，幂等键: {}, 邮件ID: {}: {}", idempotencyKey, mailId, e.getMessage());
+        }
+        return new Result(mailId, false);
+    }
+
+    /**
+     * 处理已存在的幂等键：校验请求摘要，处理中则拒绝，已完成则返回首次请求的邮件ID
+     */
+    private Result duplicate(String idempotencyKey, String requestHash, String existing) {
+        boolean pending = existing.startsWith(PENDING_PREFIX);
+        String value = pending ? existing.substring(Math.min(existing.length(), PENDING_PREFIX.length() + 1)) : existing;
+        // 旧版本写入的值不带摘要，不做校验
+        if (value.length() > HASH_LENGTH && value.charAt(HASH_LENGTH) == ':'
+                && !value.regionMatches(0, requestHash, 0, HASH_LENGTH)) {
+            throw new MismatchException("幂等键已用于内容不同的请求，请更换幂等键");
+        }
+        if (pending) {
+            throw new InProgressException("相同幂等键的请求正在处理中，请稍后重试");
+        }
+        String mailId = value.length() > HASH_LENGTH && value.charAt(HASH_LENGTH) == ':'
+                ? value.substring(HASH_LENGTH + 1) : value;
+        log.info("重复的发送请求，返回首次请求的邮件ID，幂等键: {}, 邮件ID: {}", idempotencyKey, mailId);
+        return new Result(mailId, true);
+    }
+
+    private ScheduledFuture<?> scheduleRenewal(byte[] key, byte[] pending, long pendingTtlSeconds) {
+        long ttlMillis = pendingTtlSeconds * 1000;
+        byte[] ttl = String.valueOf(ttlMillis).getBytes(StandardCharsets.UTF_8);
+        long interval = Math.max(ttlMillis / 3, 1);
+        return renewScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                        .eval(RENEW_SCRIPT, ReturnType.INTEGER, 1, key, pending, ttl));
+            } catch (Exception e) {
+                log.warn("幂等键处理中标记续期失败: {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void release(byte[] key, byte[] pending) {
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                    .eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, key, pending));
+        } catch (Exception e) {
+            log.warn("删除幂等键处理中标记失败: {}", e.getMessage());
+        }
+    }
+
+    private static String requestHash(Object request) {
+        try {
+            byte[] json = OBJECT_MAPPER.writeValueAsBytes(request);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((request == null ? "" : request.getClass().getName()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("计算请求摘要失败", e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 邮件队列消费者
+ *
+ * 启动若干常驻工作线程，每个线程循环调用 {@link MailQueueService#pollAndProcess(String, int, int)}：
+ * 有积压时连续消费，队列为空时阻塞等待（BLMOVE 或 XREADGROUP BLOCK），Redis 异常时按指数退避重试。
+ * 吞吐量随工作线程数和SMTP连接数增长，不再受定时任务间隔限制。
+ *
+ * 每个工作线程使用固定的消费者ID（主机名:序号），启动时先恢复上次运行中未确认的邮件。
+ * 每次取邮件前向 {@link SmtpCircuitBreaker} 申请许可：熔断打开或超过自适应并发上限时暂停取邮件。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MailQueueConsumer implements SmartLifecycle {
+
+    private final MailQueueService mailQueueService;
+    private final MailProperties mailProperties;
+    private final SmtpCircuitBreaker smtpCircuitBreaker;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+    private volatile CountDownLatch stopSignal;
+
+    @Override
+    public synchronized void start() {
+        MailProperties.Queue queue = mailProperties.getQueue();
+        if (running || !Boolean.TRUE.equals(queue.getConsumerEnabled())) {
+            return;
+        }
+
+        running = true;
+        stopSignal = new CountDownLatch(1);
+        String baseId = StringUtils.hasText(queue.getConsumerId()) ? queue.getConsumerId() : resolveHostName();
+        for (int i = 0; i < queue.getWorkers(); i++) {
+            String consumerId = baseId + ":" + i;
+            int firstBlockPriority = i % 5 + 1;
+            Thread worker = new Thread(() -> consume(consumerId, firstBlockPriority), "mail-queue-consumer-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("邮件队列消费者已启动，消费者ID: {}:0..{}", baseId, queue.getWorkers() - 1);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        // 不中断阻塞中的BRPOP，等待其超时返回，避免连接归还时仍有未完成的阻塞命令
+        running = false;
+        stopSignal.countDown();
+        long waitMillis = TimeUnit.SECONDS.toMillis(mailProperties.getQueue().getBlockTimeoutSeconds()) + 2000;
+        for (Thread worker : workers) {
+            try {
+                worker.join(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+        log.info("邮件队列消费者已停止");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void consume(String consumerId, int firstBlockPriority) {
+        MailProperties.Queue queue = mailProperties.getQueue();
+        long backoff = 0;
+        boolean recovered = false;
+        int blockPriority = firstBlockPriority;
+
+        while (running) {
+            try {
+                if (!recovered) {
+                    mailQueueService.recoverProcessing(consumerId);
+                    recovered = true;
+                }
+                if (!smtpCircuitBreaker.tryAcquire()) {
+                    awaitStop(smtpCircuitBreaker.pauseMillis());
+                    continue;
+                }
+                try {
+                    if (!mailQueueService.pollAndProcess(consumerId, blockPriority, queue.getBlockTimeoutSeconds())) {
+                        // 空闲时轮换阻塞等待的队列
+                        blockPriority = blockPriority % 5 + 1;
+                    }
+                } finally {
+                    smtpCircuitBreaker.release();
+                }
+                backoff = 0;
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                backoff = backoff == 0 ? queue.getMinBackoffMillis() : Math.min(backoff * 2, queue.getMaxBackoffMillis());
+                log.warn("消费邮件队列失败，{}ms后重试: {}", backoff, e.getMessage());
+                awaitStop(backoff);
+            }
+        }
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    private void awaitStop(long millis) {
+        try {
+            stopSignal.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -1,219 +1,81 @@
 package com.windcore.service;
 
 import com.windcore.model.MailMessage;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 /**
  * 邮件队列服务
  * 
+ * 默认基于 Redis List 实现（{@code mail.queue.type=list}），
+ * 也可切换为基于 Redis Streams 消费者组的实现（{@code mail.queue.type=stream}）。
+ * 
  * @author windcore
  */
-@Slf4j
-@Service
-@RequiredArgsConstructor
-public class MailQueueService {
-
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final MailService mailService;
-
-    private static final String MAIL_QUEUE_KEY = "mail:queue";
-    private static final String MAIL_RETRY_QUEUE_KEY = "mail:retry:queue";
-    private static final String MAIL_FAILED_QUEUE_KEY = "mail:failed:queue";
-    private static final String MAIL_PROCESSING_KEY = "mail:processing";
+public interface MailQueueService {
 
     /**
      * 添加邮件到队列
      * 
      * @param mailMessage 邮件消息
      */
-    public void addToQueue(MailMessage mailMessage) {
-        try {
-            // 设置邮件状态为待发送
-            mailMessage.setStatus(MailMessage.MailStatus.PENDING);
-            mailMessage.setCreateTime(LocalDateTime.now());
-            
-            // 根据优先级添加到不同的队列
-            String queueKey = getQueueKeyByPriority(mailMessage.getPriority());
-            
-            // 添加到Redis队列
-            redisTemplate.opsForList().leftPush(queueKey, mailMessage);
-            
-            // 设置邮件信息的过期时间（7天）
-            String mailKey = "mail:info:" + mailMessage.getId();
-            redisTemplate.opsForValue().set(mailKey, mailMessage, 7, TimeUnit.DAYS);
-            
-            log.info("邮件已添加到队列，邮件ID: {}, 优先级: {}", mailMessage.getId(), mailMessage.getPriority());
-            
-        } catch (Exception e) {
-            log.error("添加邮件到队列失败，邮件ID: {}", mailMessage.getId(), e);
-            throw new RuntimeException("添加邮件到队列失败", e);
-        }
-    }
+    void addToQueue(MailMessage mailMessage);
 
     /**
-     * 从队列中获取邮件并发送
+     * 批量添加邮件到队列
+     * 
+     * 全部邮件编码完成后才开始写入，编码失败时不会入队任何邮件。
+     * 
+     * @param mailMessages 邮件消息列表，需已设置ID
+     * @return 邮件ID列表，与入参顺序一致
+     * @throws PartialEnqueueException 前面的批次已入队、后面的批次写入失败
      */
-    @Async("mailTaskExecutor")
-    @Scheduled(fixedDelay = 1000) // 每秒检查一次
-    public void processMailQueue() {
-        try {
-            // 按优先级处理队列（优先级1最高）
-            for (int priority = 1; priority <= 5; priority++) {
-                String queueKey = getQueueKeyByPriority(priority);
-                MailMessage mailMessage = (MailMessage) redisTemplate.opsForList().rightPop(queueKey);
-                
-                if (mailMessage != null) {
-                    processMailMessage(mailMessage);
-                    break; // 处理一封邮件后退出，避免阻塞
-                }
-            }
-            
-        } catch (Exception e) {
-            log.error("处理邮件队列时发生错误", e);
-        }
-    }
+    List<String> addToQueueBatch(List<MailMessage> mailMessages);
 
     /**
-     * 处理重试队列
+     * 从队列中获取一封邮件并发送
+     * 
+     * 邮件在确认前不会从Redis中丢失：进程在发送过程中退出时，
+     * 由超时回收或同一消费者下次启动时的 {@link #recoverProcessing(String)} 恢复。
+     * 投递语义为至少一次：发送时间超过可见性超时的邮件会被回收并再次发送。
+     * 
+     * @param consumerId 消费者ID，每个工作线程唯一且重启后保持不变
+     * @param blockPriority 队列为空时优先阻塞等待的优先级（1-5），空闲时由调用方轮换
+     * @param timeoutSeconds 队列为空时的最长阻塞时间（秒），需小于Redis命令超时时间
+     * @return 是否处理了邮件
      */
-    @Scheduled(fixedDelay = 30000) // 每30秒检查一次重试队列
-    public void processRetryQueue() {
-        try {
-            MailMessage mailMessage = (MailMessage) redisTemplate.opsForList().rightPop(MAIL_RETRY_QUEUE_KEY);
-            
-            if (mailMessage != null) {
-                // 检查是否达到最大重试次数
-                if (mailMessage.getRetryCount() < mailMessage.getMaxRetryCount()) {
-                    log.info("重试发送邮件，邮件ID: {}, 重试次数: {}", 
-                            mailMessage.getId(), mailMessage.getRetryCount());
-                    processMailMessage(mailMessage);
-                } else {
-                    // 达到最大重试次数，移到失败队列
-                    mailMessage.setStatus(MailMessage.MailStatus.FAILED);
-                    redisTemplate.opsForList().leftPush(MAIL_FAILED_QUEUE_KEY, mailMessage);
-                    log.warn("邮件发送失败，已达到最大重试次数，邮件ID: {}", mailMessage.getId());
-                }
-            }
-            
-        } catch (Exception e) {
-            log.error("处理重试队列时发生错误", e);
-        }
-    }
+    boolean pollAndProcess(String consumerId, int blockPriority, int timeoutSeconds);
 
     /**
-     * 处理单个邮件消息
+     * 恢复消费者上次运行中未确认的邮件，消费者启动时调用
+     * 
+     * @param consumerId 消费者ID
+     * @return 恢复的邮件数
      */
-    private void processMailMessage(MailMessage mailMessage) {
-        try {
-            // 添加到处理中集合
-            redisTemplate.opsForSet().add(MAIL_PROCESSING_KEY, mailMessage.getId());
-            
-            // 发送邮件
-            mailService.sendMail(mailMessage);
-            
-            // 发送成功，从处理中集合移除
-            redisTemplate.opsForSet().remove(MAIL_PROCESSING_KEY, mailMessage.getId());
-            
-            log.info("邮件发送成功，邮件ID: {}", mailMessage.getId());
-            
-        } catch (Exception e) {
-            log.error("邮件发送失败，邮件ID: {}", mailMessage.getId(), e);
-            
-            // 从处理中集合移除
-            redisTemplate.opsForSet().remove(MAIL_PROCESSING_KEY, mailMessage.getId());
-            
-            // 增加重试次数
-            mailMessage.setRetryCount(mailMessage.getRetryCount() + 1);
-            mailMessage.setErrorMessage(e.getMessage());
-            
-            // 添加到重试队列
-            if (mailMessage.getRetryCount() < mailMessage.getMaxRetryCount()) {
-                mailMessage.setStatus(MailMessage.MailStatus.RETRY);
-                redisTemplate.opsForList().leftPush(MAIL_RETRY_QUEUE_KEY, mailMessage);
-            } else {
-                mailMessage.setStatus(MailMessage.MailStatus.FAILED);
-                redisTemplate.opsForList().leftPush(MAIL_FAILED_QUEUE_KEY, mailMessage);
-            }
-            
-            // 更新邮件信息
-            String mailKey = "mail:info:" + mailMessage.getId();
-            redisTemplate.opsForValue().set(mailKey, mailMessage, 7, TimeUnit.DAYS);
-        }
-    }
-
-    /**
-     * 根据优先级获取队列键
-     */
-    private String getQueueKeyByPriority(Integer priority) {
-        if (priority == null) {
-            priority = 3; // 默认优先级
-        }
-        return MAIL_QUEUE_KEY + ":" + priority;
-    }
+    int recoverProcessing(String consumerId);
 
     /**
      * 获取队列状态
+     * 
+     * @return 队列状态
      */
-    public QueueStatus getQueueStatus() {
-        QueueStatus status = new QueueStatus();
-        
-        // 统计各优先级队列长度
-        for (int priority = 1; priority <= 5; priority++) {
-            String queueKey = getQueueKeyByPriority(priority);
-            Long size = redisTemplate.opsForList().size(queueKey);
-            status.addPriorityQueueSize(priority, size != null ? size.intValue() : 0);
-        }
-        
-        // 统计重试队列长度
-        Long retrySize = redisTemplate.opsForList().size(MAIL_RETRY_QUEUE_KEY);
-        status.setRetryQueueSize(retrySize != null ? retrySize.intValue() : 0);
-        
-        // 统计失败队列长度
-        Long failedSize = redisTemplate.opsForList().size(MAIL_FAILED_QUEUE_KEY);
-        status.setFailedQueueSize(failedSize != null ? failedSize.intValue() : 0);
-        
-        // 统计处理中的邮件数量
-        Long processingSize = redisTemplate.opsForSet().size(MAIL_PROCESSING_KEY);
-        status.setProcessingCount(processingSize != null ? processingSize.intValue() : 0);
-        
-        return status;
-    }
-
-    /**
-     * 清理失败的邮件（可定期执行）
-     */
-    @Scheduled(cron = "0 0 2 * * ?") // 每天凌晨2点执行
-    public void cleanupFailedMails() {
-        try {
-            // 清理7天前的失败邮件
-            // 这里可以根据实际需求实现清理逻辑
-            log.info("开始清理失败的邮件...");
-            
-            // 示例：清理失败队列中的过期邮件
-            // 实际实现时可以根据邮件的创建时间进行判断
-            
-        } catch (Exception e) {
-            log.error("清理失败邮件时发生错误", e);
-        }
-    }
+    QueueStatus getQueueStatus();
 
     /**
      * 队列状态类
      */
-    public static class QueueStatus {
+    class QueueStatus {
         private final int[] priorityQueueSizes = new int[5]; // 优先级1-5的队列大小
         private int retryQueueSize;
         private int failedQueueSize;
         private int processingCount;
+        private long rateLimitedCount; // 本节点因限流推迟发送的次数
+        private String circuitState; // 本节点SMTP熔断状态
+        private int concurrencyLimit; // 本节点当前的消费并发上限
+        private long spooledCount; // 本节点本地暂存中等待转存到Redis的邮件数
+        private final long[] processedCounts = new long[5]; // 本节点各优先级已处理的首次发送邮件数
+        private final long[] avgWaitMillis = new long[5]; // 本节点各优先级入队到开始发送的平均等待时间
+        private final long[] maxWaitMillis = new long[5]; // 本节点各优先级的最长等待时间
 
         public void addPriorityQueueSize(int priority, int size) {
             if (priority >= 1 && priority <= 5) {
@@ -228,6 +90,14 @@ public class MailQueueService {
             return 0;
         }
 
+        public void addPriorityWaitStats(int priority, long processedCount, long avgWait, long maxWait) {
+            if (priority >= 1 && priority <= 5) {
+                processedCounts[priority - 1] = processedCount;
+                avgWaitMillis[priority - 1] = avgWait;
+                maxWaitMillis[priority - 1] = maxWait;
+            }
+        }
+
         public int getTotalQueueSize() {
             int total = 0;
             for (int size : priorityQueueSizes) {
@@ -243,6 +113,37 @@ public class MailQueueService {
         public int getFailedQueueSize() { return failedQueueSize; }
         public void setFailedQueueSize(int failedQueueSize) { this.failedQueueSize = failedQueueSize; }
         public int getProcessingCount() { return processingCount; }
+        public long[] getProcessedCounts() { return processedCounts; }
+        public long[] getAvgWaitMillis() { return avgWaitMillis; }
+        public long[] getMaxWaitMillis() { return maxWaitMillis; }
         public void setProcessingCount(int processingCount) { this.processingCount = processingCount; }
+        public long getRateLimitedCount() { return rateLimitedCount; }
+        public void setRateLimitedCount(long rateLimitedCount) { this.rateLimitedCount = rateLimitedCount; }
+        public String getCircuitState() { return circuitState; }
+        public void setCircuitState(String circuitState) { this.circuitState = circuitState; }
+        public int getConcurrencyLimit() { return concurrencyLimit; }
+        public void setConcurrencyLimit(int concurrencyLimit) { this.concurrencyLimit = concurrencyLimit; }
+        public long getSpooledCount() { return spooledCount; }
+        public void setSpooledCount(long spooledCount) { this.spooledCount = spooledCount; }
+    }
+
+    /**
+     * 批量入队中途失败：入参中前 {@link #getQueuedIds()} 个邮件已入队，其余邮件均未入队
+     */
+    class PartialEnqueueException extends RuntimeException {
+
+        private final List<String> queuedIds;
+
+        public PartialEnqueueException(List<String> queuedIds, Throwable cause) {
+            super("批量入队中途失败，已入队 " + queuedIds.size() + " 封: " + cause.getMessage(), cause);
+            this.queuedIds = queuedIds;
+        }
+
+        /**
+         * 已入队的邮件ID，与入参顺序一致
+         */
+        public List<String> getQueuedIds() {
+            return queuedIds;
+        }
     }
-}
\ No newline at end of file
+}
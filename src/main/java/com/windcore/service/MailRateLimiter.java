@@ -0,0 +1,192 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 邮件发送限流
+ *
+ * 按SMTP中继和收件人域名分别维护令牌桶，保存在 Redis 的 mail:ratelimit:relay:{host} 和
+ * mail:ratelimit:domain:{domain} 中，多个节点共用同一组令牌桶。
+ * 每封邮件需要同时从中继和每个收件人域名的令牌桶各取一个令牌，由脚本原子地检查和扣减：
+ * 任一令牌桶不足时都不扣减，并返回最早可以发送的等待时间。
+ *
+ * Redis 异常时放行，不因限流不可用而阻塞发送。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+public class MailRateLimiter {
+
+    private static final String RATE_LIMIT_KEY = "mail:ratelimit:";
+
+    /**
+     * 令牌桶：字段 t 为剩余令牌数，ts 为上次更新时间（Redis服务器时间，毫秒）
+     * KEYS: 各令牌桶；ARGV: 每个令牌桶依次为 每秒速率, 容量
+     * 返回 0 表示已扣减令牌，否则为需要等待的毫秒数
+     *
+     * 使用 Redis 的 TIME 而不是各节点的本地时间，节点之间时钟不一致时不会多发或少发令牌
+     */
+    private static final byte[] ACQUIRE_SCRIPT = (
+            "redis.replicate_commands() " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local wait = 0 " +
+            "local tokens = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local rate = tonumber(ARGV[i * 2 - 1]) " +
+            "  local burst = tonumber(ARGV[i * 2]) " +
+            "  local state = redis.call('HMGET', key, 't', 'ts') " +
+            "  local t = tonumber(state[1]) or burst " +
+            "  local ts = tonumber(state[2]) or now " +
+            "  t = math.min(burst, t + math.max(0, now - ts) * rate / 1000) " +
+            "  tokens[i] = t " +
+            "  if t < 1 then wait = math.max(wait, math.ceil((1 - t) * 1000 / rate)) end " +
+            "end " +
+            "if wait > 0 then return wait end " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local rate = tonumber(ARGV[i * 2 - 1]) " +
+            "  local burst = tonumber(ARGV[i * 2]) " +
+            "  redis.call('HMSET', key, 't', tostring(tokens[i] - 1), 'ts', tostring(now)) " +
+            "  redis.call('PEXPIRE', key, math.ceil(burst * 1000 / rate) + 1000) " +
+            "end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MailProperties mailProperties;
+
+    private final LongAdder allowedCount = new LongAdder();
+    private final LongAdder limitedCount = new LongAdder();
+
+    public MailRateLimiter(RedisTemplate<String, Object> redisTemplate, MailProperties mailProperties) {
+        this.redisTemplate = redisTemplate;
+        this.mailProperties = mailProperties;
+    }
+
+    /**
+     * 申请发送一封邮件
+     *
+     * @param mailMessage 邮件
+     * @return 0 表示可以立即发送（令牌已扣减），否则为建议的等待毫秒数
+     */
+    public long acquire(MailMessage mailMessage) {
+        MailProperties.RateLimit rateLimit = mailProperties.getRateLimit();
+        if (!Boolean.TRUE.equals(rateLimit.getEnabled())) {
+            return 0;
+        }
+
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> args = new ArrayList<>();
+        addBucket(keys, args, "relay:" + mailProperties.getSmtp().getHost(),
+                rateLimit.getRelayPerSecond(), rateLimit.getRelayBurst());
+        for (String domain : recipientDomains(mailMessage)) {
+            MailProperties.RateLimit.Bucket bucket = rateLimit.getDomains().get(domain);
+            addBucket(keys, args, "domain:" + domain,
+                    bucket != null && bucket.getPerSecond() != null ? bucket.getPerSecond() : rateLimit.getDomainPerSecond(),
+                    bucket != null && bucket.getBurst() != null ? bucket.getBurst() : rateLimit.getDomainBurst());
+        }
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+        int index = 0;
+        for (byte[] key : keys) {
+            keysAndArgs[index++] = key;
+        }
+        for (byte[] arg : args) {
+            keysAndArgs[index++] = arg;
+        }
+
+        try {
+            Long wait = redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                    .eval(ACQUIRE_SCRIPT, ReturnType.INTEGER, keys.size(), keysAndArgs));
+            if (wait != null && wait > 0) {
+                limitedCount.increment();
+                return wait;
+            }
+            allowedCount.increment();
+            return 0;
+
+        } catch (Exception e) {
+            log.warn("邮件限流检查失败，直接发送，邮件ID: {}: {}", mailMessage.getId(), e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 本节点通过限流检查的邮件数
+     */
+    public long getAllowedCount() {
+        return allowedCount.sum();
+    }
+
+    /**
+     * 本节点因限流推迟发送的次数
+     */
+    public long getLimitedCount() {
+        return limitedCount.sum();
+    }
+
+    /**
+     * 收件人（含抄送、密送）的域名，小写去重
+     */
+    static Set<String> recipientDomains(MailMessage mailMessage) {
+        Set<String> domains = new TreeSet<>();
+        addDomains(domains, mailMessage.getTo());
+        addDomains(domains, mailMessage.getCc());
+        addDomains(domains, mailMessage.getBcc());
+        return domains;
+    }
+
+    private static void addDomains(Set<String> domains, List<String> addresses) {
+        if (addresses == null) {
+            return;
+        }
+        for (String address : addresses) {
+            if (address == null) {
+                continue;
+            }
+            int at = address.lastIndexOf('@');
+            if (at < 0 || at == address.length() - 1) {
+                continue;
+            }
+            String domain = address.substring(at + 1).trim();
+            // 兼容 "名称 <user@example.com>" 格式
+            if (domain.endsWith(">")) {
+                domain = domain.substring(0, domain.length() - 1);
+            }
+            if (!domain.isEmpty()) {
+                domains.add(domain.toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    private static void addBucket(List<byte[]> keys, List<byte[]> args, String name, Double perSecond, Integer burst) {
+        // 速率不大于0表示不限制
+        if (perSecond == null || perSecond <= 0) {
+            return;
+        }
+        keys.add(raw(RATE_LIMIT_KEY + name));
+        args.add(raw(String.valueOf(perSecond)));
+        args.add(raw(String.valueOf(burst != null ? Math.max(1, burst) : 1)));
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,6 @@
 package com.windcore.service;
 
+import com.windcore.dto.MailHistoryCursor;
 import com.windcore.model.MailMessage;
 
 import java.util.List;
@@ -88,6 +89,7 @@ public interface MailService {
      * 
      * @param mailMessage 邮件消息对象
      * @return CompletableFuture<String> 异步结果
+     * @throws java.util.concurrent.RejectedExecutionException 异步线程池已满
      */
     CompletableFuture<String> sendMailAsync(MailMessage mailMessage);
 
@@ -95,7 +97,8 @@ public interface MailService {
      * 批量发送邮件
      * 
      * @param mailMessages 邮件消息列表
-     * @return 发送结果列表
+     * @return 发送结果列表，发送失败的为null
+     * @throws java.util.concurrent.RejectedExecutionException 批量发送线程池已满，没有邮件被发送
      */
     List<String> sendBatchMail(List<MailMessage> mailMessages);
 
@@ -104,6 +107,7 @@ public interface MailService {
      * 
      * @param mailMessages 邮件消息列表
      * @return CompletableFuture<List<String>> 异步结果
+     * @throws java.util.concurrent.RejectedExecutionException 异步线程池已满
      */
     CompletableFuture<List<String>> sendBatchMailAsync(List<MailMessage> mailMessages);
 
@@ -140,6 +144,16 @@ public interface MailService {
      */
     List<MailMessage> getMailHistory(int page, int size);
 
+    /**
+     * 按创建时间倒序获取邮件发送历史（游标分页）
+     * 
+     * @param status 状态过滤，为null时不过滤
+     * @param after 上一页最后一条记录的游标，首页为null
+     * @param limit 最多返回的记录数
+     * @return 邮件列表
+     */
+    List<MailMessage> getMailHistory(MailMessage.MailStatus status, MailHistoryCursor after, int limit);
+
     /**
      * 测试邮件服务连接
      * 
@@ -0,0 +1,237 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.dto.MailHistoryCursor;
+import com.windcore.model.MailMessage;
+import com.windcore.model.MailStatusRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 邮件状态存储
+ *
+ * 内存中只保存状态摘要（{@link MailStatusRecord}），按最后更新时间排列：
+ * 超过 max-size 时淘汰最早更新的记录，超过 expire-millis 未更新的记录在写入和查询时淘汰，
+ * 无论发送多少邮件堆内存都有上限。
+ *
+ * 另外维护按创建时间倒序的有序索引（总索引和按状态的索引），历史查询按游标分页，每页开销与页大小成正比。
+ *
+ * 发送失败的邮件另外保留完整内容（最多 failed-cache-size 封）以便重新发送。
+ * 启用 mail.history.enabled 后状态变化同时批量写入MySQL，历史查询走数据库。
+ *
+ * @author windcore
+ */
+@Service
+public class MailStatusStore {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final MailProperties mailProperties;
+    private final MailHistoryStore mailHistoryStore;
+
+    /**
+     * 状态记录，按更新顺序排列，最早更新的在最前面
+     */
+    private final LinkedHashMap<String, MailStatusRecord> records = new LinkedHashMap<>();
+
+    /**
+     * 发送失败的完整邮件，按失败顺序淘汰
+     */
+    private final LinkedHashMap<String, MailMessage> failedMessages = new LinkedHashMap<>();
+
+    /**
+     * 按 (createTime, id) 降序排列的历史索引，分页读取不需要加锁和排序
+     */
+    private final ConcurrentSkipListMap<MailHistoryCursor, MailStatusRecord> historyIndex = new ConcurrentSkipListMap<>();
+
+    /**
+     * 按状态划分的历史索引
+     */
+    private final Map<MailMessage.MailStatus, ConcurrentSkipListMap<MailHistoryCursor, MailStatusRecord>> statusIndex =
+            new EnumMap<>(MailMessage.MailStatus.class);
+
+    public MailStatusStore(MailProperties mailProperties, ObjectProvider<MailHistoryStore> mailHistoryStore) {
+        this.mailProperties = mailProperties;
+        this.mailHistoryStore = mailHistoryStore.getIfAvailable();
+        for (MailMessage.MailStatus status : MailMessage.MailStatus.values()) {
+            statusIndex.put(status, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * 记录邮件的当前状态
+     */
+    public void update(MailMessage mailMessage) {
+        LocalDateTime now = LocalDateTime.now();
+        MailMessage.MailStatus status = mailMessage.getStatus();
+        synchronized (this) {
+            // 先删除再放入，使记录移动到末尾
+            MailStatusRecord previous = records.remove(mailMessage.getId());
+            LocalDateTime createTime = mailMessage.getCreateTime() != null ? mailMessage.getCreateTime()
+                    : previous != null ? previous.getCreateTime() : now;
+            MailStatusRecord record = MailStatusRecord.builder()
+                    .id(mailMessage.getId())
+                    .status(status)
+                    .createTime(createTime)
+                    .sendTime(mailMessage.getSendTime())
+                    .updateTime(now)
+                    .errorMessage(truncate(mailMessage.getErrorMessage()))
+                    .retryCount(mailMessage.getRetryCount())
+                    .build();
+            records.put(record.getId(), record);
+            if (previous != null) {
+                removeFromIndex(previous);
+            }
+            addToIndex(record);
+            evict(now);
+
+            failedMessages.remove(record.getId());
+            if (status == MailMessage.MailStatus.FAILED || status == MailMessage.MailStatus.RETRY) {
+                failedMessages.put(record.getId(), mailMessage);
+                int failedCacheSize = mailProperties.getStatus().getFailedCacheSize();
+                Iterator<String> iterator = failedMessages.keySet().iterator();
+                while (failedMessages.size() > failedCacheSize && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (mailHistoryStore != null && status != MailMessage.MailStatus.SENDING) {
+            mailHistoryStore.record(mailMessage);
+        }
+    }
+
+    /**
+     * 查询邮件状态
+     *
+     * @return 状态记录，不存在或已淘汰时返回null
+     */
+    public synchronized MailStatusRecord get(String mailId) {
+        MailStatusRecord record = records.get(mailId);
+        if (record != null && isExpired(record, LocalDateTime.now())) {
+            remove(mailId);
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * 获取发送失败邮件的完整内容，用于重新发送
+     */
+    public synchronized MailMessage getFailedMessage(String mailId) {
+        return failedMessages.get(mailId);
+    }
+
+    public synchronized void remove(String mailId) {
+        MailStatusRecord record = records.remove(mailId);
+        if (record != null) {
+            removeFromIndex(record);
+        }
+        failedMessages.remove(mailId);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * 按创建时间倒序读取一页发送历史（游标分页）
+     *
+     * 内存中的记录由有序索引维护，读取一页只遍历该页的记录；启用持久化时查询数据库。
+     *
+     * @param status 状态过滤，为null时不过滤
+     * @param after 上一页最后一条记录的游标，为null时从最新的记录开始
+     * @param limit 最多返回的记录数
+     */
+    public List<MailMessage> getHistory(MailMessage.MailStatus status, MailHistoryCursor after, int limit) {
+        if (mailHistoryStore != null) {
+            return mailHistoryStore.findPage(status, after, limit);
+        }
+
+        NavigableMap<MailHistoryCursor, MailStatusRecord> index = status != null ? statusIndex.get(status) : historyIndex;
+        NavigableMap<MailHistoryCursor, MailStatusRecord> page = after != null ? index.tailMap(after, false) : index;
+        LocalDateTime now = LocalDateTime.now();
+        List<MailMessage> result = new ArrayList<>(Math.min(limit, 256));
+        for (MailStatusRecord record : page.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!isExpired(record, now)) {
+                result.add(record.toMailMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按创建时间倒序分页查询发送历史，启用持久化时查询数据库，否则只包含内存中的记录
+     */
+    public List<MailMessage> getHistory(int page, int size) {
+        if (mailHistoryStore != null) {
+            return mailHistoryStore.findPage(page, size);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        return historyIndex.values().stream()
+                .filter(record -> !isExpired(record, now))
+                .skip((long) page * size)
+                .limit(size)
+                .map(MailStatusRecord::toMailMessage)
+                .toList();
+    }
+
+    private void addToIndex(MailStatusRecord record) {
+        MailHistoryCursor key = MailHistoryCursor.of(record);
+        historyIndex.put(key, record);
+        if (record.getStatus() != null) {
+            statusIndex.get(record.getStatus()).put(key, record);
+        }
+    }
+
+    private void removeFromIndex(MailStatusRecord record) {
+        MailHistoryCursor key = MailHistoryCursor.of(record);
+        historyIndex.remove(key);
+        if (record.getStatus() != null) {
+            statusIndex.get(record.getStatus()).remove(key);
+        }
+    }
+
+    /**
+     * 淘汰超出数量上限和过期的记录，记录按更新时间排列，只需检查头部
+     */
+    private void evict(LocalDateTime now) {
+        int maxSize = mailProperties.getStatus().getMaxSize();
+        Iterator<Map.Entry<String, MailStatusRecord>> iterator = records.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, MailStatusRecord> eldest = iterator.next();
+            if (records.size() <= maxSize && !isExpired(eldest.getValue(), now)) {
+                break;
+            }
+            iterator.remove();
+            removeFromIndex(eldest.getValue());
+            failedMessages.remove(eldest.getKey());
+        }
+    }
+
+    private boolean isExpired(MailStatusRecord record, LocalDateTime now) {
+        return record.getUpdateTime().plusNanos(mailProperties.getStatus().getExpireMillis() * 1_000_000L).isBefore(now);
+    }
+
+    static String truncate(String errorMessage) {
+        if (errorMessage == null || errorMessage.length() <= MAX_ERROR_LENGTH) {
+            return errorMessage;
+        }
+        return errorMessage.substring(0, MAX_ERROR_LENGTH);
+    }
+}
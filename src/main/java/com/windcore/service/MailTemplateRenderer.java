@@ -0,0 +1,193 @@
+package com.windcore.service;
+
+import com.windcore.config.MailConfig;
+import com.windcore.config.MailProperties;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 邮件模板渲染
+ *
+ * 模板第一次使用时尝试预编译（{@link CompiledMailTemplate}）：用标记值渲染一次得到静态片段，
+ * 再用包含特殊字符和null的样例变量分别经模板引擎和预编译模板渲染，结果完全一致才启用。
+ * 之后每个收件人只拼接变量片段，不再经过模板引擎；不满足条件的模板或变量仍由模板引擎渲染。
+ *
+ * 模板缓存关闭（mail.template.cache=false，开发时修改模板立即生效）时不做预编译。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+public class MailTemplateRenderer {
+
+    private final TemplateEngine templateEngine;
+    private final MailProperties mailProperties;
+
+    /**
+     * 预编译结果，不能预编译的模板为空
+     */
+    private final Map<String, Optional<CompiledMailTemplate>> compiledTemplates = new ConcurrentHashMap<>();
+
+    private final Map<String, RenderStats> renderStats = new ConcurrentHashMap<>();
+
+    public MailTemplateRenderer(TemplateEngine templateEngine, MailProperties mailProperties) {
+        this.templateEngine = templateEngine;
+        this.mailProperties = mailProperties;
+    }
+
+    /**
+     * 渲染模板
+     *
+     * @param templateName 模板名称
+     * @param variables 模板变量
+     * @return 渲染结果
+     */
+    public String render(String templateName, Map<String, Object> variables) {
+        long start = System.nanoTime();
+        CompiledMailTemplate compiled = getCompiled(templateName);
+        boolean precompiled = compiled != null && compiled.supports(variables);
+        String content = precompiled ? compiled.render(variables) : process(templateName, variables);
+        renderStats.computeIfAbsent(templateName, key -> new RenderStats())
+                .record(System.nanoTime() - start, precompiled);
+        return content;
+    }
+
+    /**
+     * 各模板的渲染统计
+     */
+    public List<TemplateMetrics> getMetrics() {
+        List<TemplateMetrics> metrics = new ArrayList<>();
+        renderStats.forEach((templateName, stats) -> {
+            TemplateMetrics item = new TemplateMetrics();
+            item.setTemplateName(templateName);
+            item.setPrecompiled(getCompiledIfPresent(templateName) != null);
+            item.setRenderCount(stats.count.sum());
+            item.setPrecompiledCount(stats.precompiledCount.sum());
+            long count = item.getRenderCount();
+            item.setAvgRenderMicros(count > 0 ? stats.totalNanos.sum() / count / 1000 : 0);
+            item.setMaxRenderMicros(stats.maxNanos.get() / 1000);
+            metrics.add(item);
+        });
+        return metrics;
+    }
+
+    /**
+     * 清除预编译结果，模板文件变化后调用
+     */
+    public void evict(String templateName) {
+        compiledTemplates.remove(templateName);
+        templateEngine.clearTemplateCacheFor(templateName);
+    }
+
+    private String process(String templateName, Map<String, Object> variables) {
+        Context context = new Context();
+        if (variables != null) {
+            context.setVariables(variables);
+        }
+        return templateEngine.process(templateName, context);
+    }
+
+    private CompiledMailTemplate getCompiled(String templateName) {
+        if (!Boolean.TRUE.equals(mailProperties.getTemplate().getCache())) {
+            return null;
+        }
+        return compiledTemplates.computeIfAbsent(templateName, key -> Optional.ofNullable(compile(key))).orElse(null);
+    }
+
+    private CompiledMailTemplate getCompiledIfPresent(String templateName) {
+        Optional<CompiledMailTemplate> compiled = compiledTemplates.get(templateName);
+        return compiled != null ? compiled.orElse(null) : null;
+    }
+
+    private CompiledMailTemplate compile(String templateName) {
+        try {
+            String source = loadSource(templateName);
+            if (source == null) {
+                return null;
+            }
+            List<CompiledMailTemplate.Expression> analyzed = CompiledMailTemplate.analyze(source);
+            if (analyzed == null) {
+                log.info("邮件模板包含条件、循环或复杂表达式，使用模板引擎渲染: {}", templateName);
+                return null;
+            }
+
+            CompiledMailTemplate compiled = CompiledMailTemplate.compile(analyzed,
+                    process(templateName, CompiledMailTemplate.probeVariables(analyzed)));
+            if (compiled == null || !verify(templateName, compiled, false) || !verify(templateName, compiled, true)) {
+                log.info("邮件模板预编译结果与模板引擎不一致，使用模板引擎渲染: {}", templateName);
+                return null;
+            }
+            log.info("邮件模板已预编译: {}, 变量片段数: {}", templateName, compiled.getSlotCount());
+            return compiled;
+
+        } catch (Exception e) {
+            log.warn("邮件模板预编译失败，使用模板引擎渲染: {}", templateName, e);
+            return null;
+        }
+    }
+
+    private boolean verify(String templateName, CompiledMailTemplate compiled, boolean nullable) {
+        Map<String, Object> sample = compiled.sampleVariables(nullable);
+        return compiled.supports(sample) && Objects.equals(process(templateName, sample), compiled.render(sample));
+    }
+
+    private String loadSource(String templateName) throws IOException {
+        MailProperties.Template template = mailProperties.getTemplate();
+        String path = MailConfig.classLoaderPath(template.getPrefix()) + templateName + template.getSuffix();
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader() != null
+                ? Thread.currentThread().getContextClassLoader() : getClass().getClassLoader();
+        try (InputStream in = classLoader.getResourceAsStream(path)) {
+            if (in == null) {
+                return null;
+            }
+            return new String(in.readAllBytes(), Charset.forName(template.getEncoding()));
+        }
+    }
+
+    /**
+     * 单个模板的渲染统计
+     */
+    private static class RenderStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder precompiledCount = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean precompiled) {
+            count.increment();
+            if (precompiled) {
+                precompiledCount.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * 模板渲染指标
+     */
+    @Data
+    public static class TemplateMetrics {
+        private String templateName;
+        private boolean precompiled;
+        private long renderCount;
+        private long precompiledCount;
+        private long avgRenderMicros;
+        private long maxRenderMicros;
+    }
+}
@@ -0,0 +1,267 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.util.MailConnectException;
+import org.eclipse.angus.mail.util.SocketConnectException;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * SMTP熔断和自适应并发（本节点）
+ *
+ * 熔断：按最近 window-size 次发送结果统计失败率，达到阈值后打开熔断，队列消费者暂停取邮件，
+ * 避免SMTP服务不可用期间把队列中的邮件逐个取出、失败、耗尽重试次数；
+ * 打开 open-duration-millis 后进入半开状态，只放行一次探测发送，成功则关闭熔断，失败则重新打开。
+ * 熔断打开前已在发送的邮件，其结果在打开和半开期间不影响熔断状态，只有探测发送的结果决定是否关闭。
+ * 探测发送由取得许可的消费线程完成（许可、发送和结果报告在同一线程），按线程识别探测结果。
+ * 只统计连接、网络和认证类失败，收件人被拒、内容被拒等单封邮件的问题不计入。
+ *
+ * 自适应并发（AIMD）：同时处理邮件的消费线程数上限在 [min-concurrency, mail.queue.workers] 之间调整，
+ * 发送耗时不超过 target-latency-millis 时每次成功加 1/上限（约每轮加1），
+ * 超时或失败时减半，服务端变慢时主动降低压力，恢复后逐步回到满并发。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Component
+public class SmtpCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final MailProperties mailProperties;
+
+    private State state = State.CLOSED;
+    private boolean[] outcomes;
+    private int outcomeCount;
+    private int outcomeIndex;
+    private int failureCount;
+    private long openedAt;
+    private Thread probeThread;
+
+    private double concurrencyLimit;
+    private int inFlight;
+
+    public SmtpCircuitBreaker(MailProperties mailProperties) {
+        this.mailProperties = mailProperties;
+        this.outcomes = new boolean[Math.max(1, mailProperties.getCircuitBreaker().getWindowSize())];
+        this.concurrencyLimit = maxConcurrency();
+    }
+
+    /**
+     * 申请处理一封邮件，成功后必须调用 {@link #release()}
+     *
+     * @return 熔断打开、半开状态已有探测或达到并发上限时返回false
+     */
+    public synchronized boolean tryAcquire() {
+        if (!isEnabled()) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < config().getOpenDurationMillis()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            log.info("SMTP熔断进入半开状态，发送探测邮件");
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeThread != null) {
+                return false;
+            }
+            probeThread = Thread.currentThread();
+            inFlight++;
+            return true;
+        }
+        if (inFlight >= (int) concurrencyLimit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 归还处理许可
+     */
+    public synchronized void release() {
+        if (!isEnabled()) {
+            return;
+        }
+        inFlight = Math.max(0, inFlight - 1);
+        // 探测期间没有取到邮件，允许下一次探测
+        if (state == State.HALF_OPEN && isProbe()) {
+            probeThread = null;
+        }
+    }
+
+    /**
+     * 记录一次发送成功
+     *
+     * @param latencyMillis 发送耗时
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && !isProbe())) {
+            // 熔断打开前开始的发送，不能说明服务已恢复
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            close();
+        }
+        record(false);
+        if (latencyMillis > config().getTargetLatencyMillis()) {
+            decreaseLimit();
+        } else {
+            concurrencyLimit = Math.min(maxConcurrency(), concurrencyLimit + 1.0 / concurrencyLimit);
+        }
+    }
+
+    /**
+     * 记录一次发送失败，非连接类失败不计入
+     */
+    public synchronized void onFailure(Throwable error) {
+        if (!isEnabled() || !isTransportFailure(error)) {
+            return;
+        }
+        decreaseLimit();
+        if (state == State.OPEN || (state == State.HALF_OPEN && !isProbe())) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open("探测发送失败");
+            return;
+        }
+        record(true);
+        MailProperties.CircuitBreaker config = config();
+        if (state == State.CLOSED && outcomeCount >= config.getMinCalls()
+                && failureCount >= outcomeCount * config.getFailureRateThreshold()) {
+            open(String.format("最近%d次发送失败%d次", outcomeCount, failureCount));
+        }
+    }
+
+    /**
+     * 未获得许可时建议的等待时间
+     */
+    public synchronized long pauseMillis() {
+        if (state == State.OPEN) {
+            long remaining = config().getOpenDurationMillis() - (System.currentTimeMillis() - openedAt);
+            return Math.max(100, Math.min(1000, remaining));
+        }
+        return 100;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    /**
+     * 判断是否为SMTP连接类失败：连接失败、网络中断或超时、认证失败或服务端 421（服务不可用）
+     *
+     * 其他 IOException（如附件文件读取失败）与SMTP服务是否可用无关，不计入。
+     * 发送失败的异常可能被多层包装，{@link MailSendException} 中每封邮件的异常也需要检查。
+     */
+    static boolean isTransportFailure(Throwable error) {
+        Deque<Throwable> pending = new ArrayDeque<>();
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        pending.add(error);
+        while (!pending.isEmpty()) {
+            Throwable current = pending.poll();
+            if (current == null || !seen.add(current)) {
+                continue;
+            }
+            if (current instanceof SocketException || current instanceof SocketTimeoutException
+                    || current instanceof UnknownHostException || current instanceof SocketConnectException
+                    || current instanceof MailConnectException || current instanceof AuthenticationFailedException
+                    || current instanceof MailAuthenticationException) {
+                return true;
+            }
+            if (current instanceof MessagingException && current.getMessage() != null
+                    && current.getMessage().startsWith("421")) {
+                return true;
+            }
+            if (current instanceof MailSendException mailSendException) {
+                pending.addAll(mailSendException.getFailedMessages().values());
+            }
+            if (current.getCause() != null) {
+                pending.add(current.getCause());
+            }
+        }
+        return false;
+    }
+
+    private void record(boolean failure) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+    }
+
+    private void decreaseLimit() {
+        concurrencyLimit = Math.max(Math.max(1, config().getMinConcurrency()), concurrencyLimit / 2);
+    }
+
+    private boolean isProbe() {
+        return probeThread == Thread.currentThread();
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        probeThread = null;
+        resetWindow();
+        log.warn("SMTP熔断已打开，暂停消费邮件队列{}ms: {}", config().getOpenDurationMillis(), reason);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probeThread = null;
+        resetWindow();
+        log.info("SMTP熔断已关闭，恢复消费邮件队列，当前并发上限: {}", (int) concurrencyLimit);
+    }
+
+    private void resetWindow() {
+        outcomes = new boolean[Math.max(1, config().getWindowSize())];
+        outcomeCount = 0;
+        outcomeIndex = 0;
+        failureCount = 0;
+    }
+
+    private int maxConcurrency() {
+        return Math.max(1, mailProperties.getQueue().getWorkers());
+    }
+
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(config().getEnabled());
+    }
+
+    private MailProperties.CircuitBreaker config() {
+        return mailProperties.getCircuitBreaker();
+    }
+}
@@ -0,0 +1,727 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailAttachment;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailQueueService;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 邮件队列服务公共实现
+ *
+ * 负责入队时的状态维护、邮件发送、延迟重试和失败队列，
+ * 子类只需实现具体的队列结构（入队、可靠出队、确认与恢复）。
+ *
+ * 邮件内容以 {@link MailMessageCodec} 二进制格式只保存一份在 mail:info:{id}，
+ * 各队列、重试集合和失败队列中只保存邮件ID。
+ *
+ * 发送前经 {@link MailRateLimiter} 按中继和收件人域名限流，超出速率的邮件放入重试集合推迟发送，
+ * 不累加重试次数，到期后由 {@link #promoteDueRetries()} 放回发送队列。
+ * 每次发送的结果和耗时报告给 {@link SmtpCircuitBreaker}，由消费者据此暂停消费或调整并发。
+ *
+ * Redis 连接失败或超时时，入队的邮件写入本地暂存 {@link MailEnqueueSpool}，
+ * 由 {@link #drainEnqueueSpool()} 在 Redis 恢复后按写入顺序转存回队列。
+ *
+ * @author windcore
+ */
+@Slf4j
+public abstract class AbstractMailQueueService implements MailQueueService {
+
+    protected static final String MAIL_RETRY_SCHEDULE_KEY = "mail:retry:schedule";
+    /**
+     * 旧版本的重试列表，仅用于转移升级前遗留的邮件
+     */
+    private static final String LEGACY_RETRY_QUEUE_KEY = "mail:retry:queue";
+    /**
+     * 失败队列，条目为邮件ID，邮件内容在 mail:info:{id}（升级前写入的条目是完整的JSON邮件，可用 loadEntry 读取）
+     */
+    protected static final String MAIL_FAILED_QUEUE_KEY = "mail:failed:queue";
+    /**
+     * 无法解析出邮件ID的队列条目，保存原始数据供人工排查
+     */
+    protected static final String MAIL_UNREADABLE_QUEUE_KEY = "mail:failed:unreadable";
+    protected static final String MAIL_INFO_KEY = "mail:info:";
+    protected static final long MAIL_INFO_TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+    /**
+     * 群发任务的发送结果计数（Hash：sent、failed）
+     */
+    static final String CAMPAIGN_STATS_KEY = "mail:campaign:stats:";
+
+    /**
+     * 取出到期的重试邮件并把它们的分数推后到租约到期时间
+     * KEYS: 重试集合；ARGV: 当前时间, 批大小, 租约到期时间
+     */
+    private static final byte[] CLAIM_DUE_SCRIPT = (
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "for _, id in ipairs(ids) do redis.call('ZADD', KEYS[1], ARGV[3], id) end " +
+            "return ids").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 仅当分数仍是租约到期时间时删除，避免删掉转移后再次失败而重新安排的重试
+     * KEYS: 重试集合；ARGV: 成员, 租约到期时间
+     */
+    private static final byte[] RELEASE_SCRIPT = (
+            "if redis.call('ZSCORE', KEYS[1], ARGV[1]) == ARGV[2] then " +
+            "return redis.call('ZREM', KEYS[1], ARGV[1]) end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    protected final RedisTemplate<String, Object> redisTemplate;
+    protected final MailService mailService;
+    protected final MailProperties mailProperties;
+    protected final MailAttachmentSpool mailAttachmentSpool;
+    protected final MailRateLimiter mailRateLimiter;
+    protected final SmtpCircuitBreaker smtpCircuitBreaker;
+    protected final MailEnqueueSpool mailEnqueueSpool;
+    protected final PriorityScheduler priorityScheduler;
+
+    /**
+     * 入队与本地暂存转存的顺序锁，见 {@link #writeOrSpool}
+     */
+    private final ReadWriteLock spoolLock = new ReentrantReadWriteLock();
+
+    /**
+     * 各优先级的排队等待时间统计
+     */
+    private final WaitStats[] waitStats = new WaitStats[5];
+
+    protected AbstractMailQueueService(RedisTemplate<String, Object> redisTemplate, MailService mailService,
+                                       MailProperties mailProperties, MailAttachmentSpool mailAttachmentSpool,
+                                       MailRateLimiter mailRateLimiter, SmtpCircuitBreaker smtpCircuitBreaker,
+                                       MailEnqueueSpool mailEnqueueSpool) {
+        this.redisTemplate = redisTemplate;
+        this.mailService = mailService;
+        this.mailProperties = mailProperties;
+        this.mailAttachmentSpool = mailAttachmentSpool;
+        this.mailRateLimiter = mailRateLimiter;
+        this.smtpCircuitBreaker = smtpCircuitBreaker;
+        this.mailEnqueueSpool = mailEnqueueSpool;
+        this.priorityScheduler = new PriorityScheduler(mailProperties.getQueue().getPriorityWeights(),
+                mailProperties.getQueue().getAgingMillis());
+        for (int i = 0; i < waitStats.length; i++) {
+            waitStats[i] = new WaitStats();
+        }
+    }
+
+    @Override
+    public void addToQueue(MailMessage mailMessage) {
+        try {
+            addToQueueBatch(Collections.singletonList(mailMessage));
+
+        } catch (Exception e) {
+            log.error("添加邮件到队列失败，邮件ID: {}", mailMessage.getId(), e);
+            throw new RuntimeException("添加邮件到队列失败", e);
+        }
+    }
+
+    /**
+     * 批量添加邮件到队列
+     *
+     * 先转存全部附件并编码全部邮件，任何一封失败时不写入任何邮件；
+     * 再按批写入，每批的入队和邮件信息写入通过管道一次性发送并包在 MULTI/EXEC 中，每批全部写入或全部不写入。
+     * 第一批之后的某一批写入失败时抛出 {@link PartialEnqueueException}，带上已入队的邮件ID。
+     * Redis 不可用时写入本地暂存。
+     */
+    @Override
+    public List<String> addToQueueBatch(List<MailMessage> mailMessages) {
+        int size = mailMessages.size();
+        List<String> mailIds = new ArrayList<>(size);
+        int[] priorities = new int[size];
+        byte[][] payloads = new byte[size][];
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < size; i++) {
+            MailMessage mailMessage = mailMessages.get(i);
+            mailIds.add(mailMessage.getId());
+            // 设置邮件状态为待发送
+            mailMessage.setStatus(MailMessage.MailStatus.PENDING);
+            mailMessage.setCreateTime(now);
+            spoolAttachments(mailMessage);
+            priorities[i] = normalizePriority(mailMessage.getPriority());
+            payloads[i] = MailMessageCodec.encode(mailMessage);
+        }
+
+        int batchSize = Math.max(1, mailProperties.getQueue().getEnqueueBatchSize());
+        for (int from = 0; from < size; from += batchSize) {
+            int to = Math.min(from + batchSize, size);
+            try {
+                writeOrSpool(mailIds.subList(from, to), Arrays.copyOfRange(priorities, from, to),
+                        Arrays.copyOfRange(payloads, from, to));
+            } catch (RuntimeException e) {
+                if (from == 0) {
+                    throw e;
+                }
+                log.error("批量添加邮件到队列中途失败，已入队: {}, 未入队: {}", from, size - from, e);
+                throw new PartialEnqueueException(new ArrayList<>(mailIds.subList(0, from)), e);
+            }
+        }
+
+        if (mailIds.size() == 1) {
+            log.info("邮件已添加到队列，邮件ID: {}, 优先级: {}", mailIds.get(0), mailMessages.get(0).getPriority());
+        } else {
+            log.info("邮件已批量添加到队列，数量: {}", mailIds.size());
+        }
+        return mailIds;
+    }
+
+    @Override
+    public QueueStatus getQueueStatus() {
+        QueueStatus status = new QueueStatus();
+
+        // 统计各优先级队列长度
+        for (int priority = 1; priority <= 5; priority++) {
+            status.addPriorityQueueSize(priority, (int) queueSize(priority));
+        }
+
+        // 统计等待重试的邮件数
+        Long retrySize = redisTemplate.opsForZSet().zCard(MAIL_RETRY_SCHEDULE_KEY);
+        status.setRetryQueueSize(retrySize != null ? retrySize.intValue() : 0);
+
+        // 统计失败队列长度
+        Long failedSize = redisTemplate.opsForList().size(MAIL_FAILED_QUEUE_KEY);
+        status.setFailedQueueSize(failedSize != null ? failedSize.intValue() : 0);
+
+        // 统计处理中的邮件数量
+        status.setProcessingCount((int) processingCount());
+        status.setRateLimitedCount(mailRateLimiter.getLimitedCount());
+        status.setCircuitState(smtpCircuitBreaker.getState().name());
+        status.setConcurrencyLimit(smtpCircuitBreaker.getConcurrencyLimit());
+        status.setSpooledCount(mailEnqueueSpool.getPendingCount());
+
+        // 统计各优先级的排队等待时间
+        for (int priority = 1; priority <= 5; priority++) {
+            WaitStats stats = waitStats[priority - 1];
+            long count = stats.count.sum();
+            status.addPriorityWaitStats(priority, count, count > 0 ? stats.totalMillis.sum() / count : 0, stats.maxMillis.get());
+        }
+
+        return status;
+    }
+
+    /**
+     * 将到期的重试邮件批量转移回发送队列
+     *
+     * 到期邮件先由脚本原子地把下次执行时间推后一个租约周期再返回，多个节点同时执行时不会重复转移；
+     * 写入发送队列后再从重试集合中删除，节点在两步之间宕机时邮件在租约到期后重新可见。
+     */
+    @Scheduled(fixedDelayString = "${mail.retry.poll-interval-millis:1000}")
+    public void promoteDueRetries() {
+        try {
+            MailProperties.Retry retry = mailProperties.getRetry();
+            int promoted = drainLegacyRetryQueue(retry.getBatchSize());
+            List<String> due;
+            do {
+                long leaseUntil = System.currentTimeMillis() + retry.getLeaseMillis();
+                due = claimDueRetries(retry.getBatchSize(), leaseUntil);
+                for (String mailId : due) {
+                    promoted += promoteRetry(mailId, leaseUntil) ? 1 : 0;
+                }
+            } while (due.size() >= retry.getBatchSize());
+
+            if (promoted > 0) {
+                log.info("到期重试邮件已转移到发送队列，数量: {}", promoted);
+            }
+
+        } catch (Exception e) {
+            log.error("转移到期重试邮件时发生错误", e);
+        }
+    }
+
+    /**
+     * 清理失败的邮件（可定期执行）
+     */
+    @Scheduled(cron = "0 0 2 * * ?") // 每天凌晨2点执行
+    public void cleanupFailedMails() {
+        try {
+            // 清理7天前的失败邮件
+            // 这里可以根据实际需求实现清理逻辑
+            log.info("开始清理失败的邮件...");
+
+            // 示例：清理失败队列中的过期邮件
+            // 实际实现时可以根据邮件的创建时间进行判断
+
+        } catch (Exception e) {
+            log.error("清理失败邮件时发生错误", e);
+        }
+    }
+
+    /**
+     * 将一批邮件写入 Redis；Redis 不可用或本地暂存中还有未转存的邮件时写入本地暂存
+     *
+     * 检查暂存、直接写入和追加暂存都在读锁内，转存确认（暂存清空的时刻）持有写锁：
+     * 看到暂存为空而直接写入的邮件，不会排在之前已追加到暂存的邮件前面。
+     */
+    private void writeOrSpool(List<String> mailIds, int[] priorities, byte[][] payloads) {
+        spoolLock.readLock().lock();
+        try {
+            if (!mailEnqueueSpool.hasPending()) {
+                try {
+                    writeBatch(mailIds, priorities, payloads);
+                    return;
+                } catch (RedisConnectionFailureException | QueryTimeoutException e) {
+                    if (!mailEnqueueSpool.isEnabled()) {
+                        throw e;
+                    }
+                    log.warn("Redis不可用，邮件写入本地暂存，数量: {}: {}", mailIds.size(), e.getMessage());
+                }
+            }
+            try {
+                mailEnqueueSpool.append(mailIds, priorities, payloads);
+            } catch (IOException e) {
+                throw new UncheckedIOException("邮件写入本地暂存失败", e);
+            }
+        } finally {
+            spoolLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 通过管道写入邮件信息和队列条目，每批只有一次网络往返
+     */
+    private void writeBatch(List<String> mailIds, int[] priorities, byte[][] payloads) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // 事务保证一批邮件全部写入或全部不写入，连接中断时不会留下写了一半的批次
+            connection.multi();
+            for (int i = 0; i < payloads.length; i++) {
+                // 邮件内容只保存一份（过期时间7天），队列中只保存邮件ID
+                String mailId = mailIds.get(i);
+                connection.stringCommands().setEx(rawKey(MAIL_INFO_KEY + mailId), MAIL_INFO_TTL_SECONDS, payloads[i]);
+                // 根据优先级添加到不同的队列
+                enqueue(connection, priorities[i], rawKey(mailId));
+            }
+            connection.exec();
+            return null;
+        });
+    }
+
+    /**
+     * 将本地暂存的邮件按写入顺序转存到 Redis
+     *
+     * 每批写入成功后才推进转存位置；Redis 仍不可用时保留在暂存中，下次继续。
+     * 转存是幂等的：邮件信息和队列条目在同一个事务中写入，mail:info:{id} 已存在的邮件说明已经入队，跳过不再写入。
+     * 这覆盖两种情况：写入 Redis 超时但实际已执行、随后被写入暂存的批次；
+     * 以及写入 Redis 后、保存转存位置前进程退出而重新转存的批次。
+     */
+    @Scheduled(fixedDelayString = "${mail.spool.drain-interval-millis:1000}")
+    public void drainEnqueueSpool() {
+        if (!mailEnqueueSpool.hasPending()) {
+            return;
+        }
+        int drained = 0;
+        try {
+            int batchSize = Math.max(1, mailProperties.getSpool().getDrainBatchSize());
+            List<MailEnqueueSpool.Entry> entries;
+            while (!(entries = mailEnqueueSpool.peek(batchSize)).isEmpty()) {
+                List<String> mailIds = new ArrayList<>(entries.size());
+                int[] priorities = new int[entries.size()];
+                byte[][] payloads = new byte[entries.size()][];
+                List<Boolean> queued = queuedMails(entries);
+                int count = 0;
+                for (int i = 0; i < entries.size(); i++) {
+                    MailEnqueueSpool.Entry entry = entries.get(i);
+                    if (Boolean.TRUE.equals(queued.get(i))) {
+                        log.info("本地暂存的邮件已在Redis中，跳过转存，邮件ID: {}", entry.mailId());
+                        continue;
+                    }
+                    mailIds.add(entry.mailId());
+                    priorities[count] = entry.priority();
+                    payloads[count++] = entry.payload();
+                }
+                if (count > 0) {
+                    writeBatch(mailIds, Arrays.copyOf(priorities, count), Arrays.copyOf(payloads, count));
+                }
+                spoolLock.writeLock().lock();
+                try {
+                    mailEnqueueSpool.commit(entries);
+                } finally {
+                    spoolLock.writeLock().unlock();
+                }
+                drained += count;
+            }
+        } catch (Exception e) {
+            log.warn("本地暂存的邮件转存到Redis失败，稍后重试: {}", e.getMessage());
+        }
+        if (drained > 0) {
+            log.info("本地暂存的邮件已转存到Redis，数量: {}, 剩余: {}", drained, mailEnqueueSpool.getPendingCount());
+        }
+    }
+
+    /**
+     * 暂存中的邮件是否已经写入 Redis（mail:info:{id} 已存在）
+     */
+    private List<Boolean> queuedMails(List<MailEnqueueSpool.Entry> entries) {
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (MailEnqueueSpool.Entry entry : entries) {
+                connection.keyCommands().exists(rawKey(MAIL_INFO_KEY + entry.mailId()));
+            }
+            return null;
+        });
+        List<Boolean> queued = new ArrayList<>(entries.size());
+        for (Object result : results) {
+            queued.add(Boolean.TRUE.equals(result));
+        }
+        return queued;
+    }
+
+    /**
+     * 在给定连接上将队列条目（邮件ID）写入指定优先级的队列，连接可能处于管道模式
+     */
+    protected abstract void enqueue(RedisConnection connection, int priority, byte[] entry);
+
+    /**
+     * 保存邮件内容并将邮件ID写入指定优先级的队列
+     */
+    protected void enqueue(int priority, MailMessage mailMessage) {
+        byte[] body = MailMessageCodec.encode(mailMessage);
+        byte[] entry = rawKey(mailMessage.getId());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().setEx(rawKey(MAIL_INFO_KEY + mailMessage.getId()), MAIL_INFO_TTL_SECONDS, body);
+            enqueue(connection, priority, entry);
+            return null;
+        });
+    }
+
+    /**
+     * 指定优先级队列中等待消费的邮件数
+     */
+    protected abstract long queueSize(int priority);
+
+    /**
+     * 已取出但尚未确认的邮件数
+     */
+    protected abstract long processingCount();
+
+    /**
+     * 处理单个邮件消息，失败时转入重试或失败队列
+     */
+    protected void processMailMessage(MailMessage mailMessage) {
+        long rateLimitWait = mailRateLimiter.acquire(mailMessage);
+        if (rateLimitWait > 0) {
+            deferMessage(mailMessage, rateLimitWait);
+            return;
+        }
+
+        recordWait(mailMessage);
+        try {
+            // 发送邮件（先清除上次失败留下的状态，便于判断本次失败是否已被标记）
+            mailMessage.setStatus(MailMessage.MailStatus.SENDING);
+            long start = System.currentTimeMillis();
+            mailService.sendMail(mailMessage);
+            smtpCircuitBreaker.onSuccess(System.currentTimeMillis() - start);
+            recordCampaignResult(mailMessage, "sent");
+
+            log.info("邮件发送成功，邮件ID: {}", mailMessage.getId());
+
+        } catch (Exception e) {
+            log.error("邮件发送失败，邮件ID: {}", mailMessage.getId(), e);
+            smtpCircuitBreaker.onFailure(e);
+
+            // MailService 已在失败时累加重试次数并标记为 RETRY 或 FAILED，未标记时在这里补充
+            MailMessage.MailStatus status = mailMessage.getStatus();
+            if (status != MailMessage.MailStatus.RETRY && status != MailMessage.MailStatus.FAILED) {
+                int retryCount = mailMessage.getRetryCount() != null ? mailMessage.getRetryCount() : 0;
+                int maxRetryCount = mailMessage.getMaxRetryCount() != null ? mailMessage.getMaxRetryCount() : 0;
+                mailMessage.setErrorMessage(e.getMessage());
+                if (retryCount < maxRetryCount) {
+                    mailMessage.setRetryCount(retryCount + 1);
+                    mailMessage.setStatus(MailMessage.MailStatus.RETRY);
+                } else {
+                    mailMessage.setStatus(MailMessage.MailStatus.FAILED);
+                }
+            }
+
+            // 更新邮件信息，重试时由 promoteDueRetries 从这里读取
+            saveMessage(mailMessage);
+
+            if (mailMessage.getStatus() == MailMessage.MailStatus.RETRY) {
+                scheduleRetry(mailMessage);
+            } else {
+                pushFailed(mailMessage);
+                log.warn("邮件发送失败，已达到最大重试次数，邮件ID: {}", mailMessage.getId());
+            }
+        }
+    }
+
+    /**
+     * 已标记为失败并保存的邮件移入失败队列，计入所属群发任务
+     */
+    protected void pushFailed(MailMessage mailMessage) {
+        byte[] entry = rawKey(mailMessage.getId());
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.listCommands().lPush(rawKey(MAIL_FAILED_QUEUE_KEY), entry));
+        recordCampaignResult(mailMessage, "failed");
+    }
+
+    /**
+     * 群发邮件的最终结果计入所属群发任务
+     */
+    private void recordCampaignResult(MailMessage mailMessage, String field) {
+        if (mailMessage.getCampaignId() == null) {
+            return;
+        }
+        try {
+            byte[] key = rawKey(CAMPAIGN_STATS_KEY + mailMessage.getCampaignId());
+            byte[] hashField = field.getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.hashCommands().hIncrBy(key, hashField, 1));
+        } catch (Exception e) {
+            log.warn("更新群发任务发送统计失败，任务ID: {}", mailMessage.getCampaignId(), e);
+        }
+    }
+
+    /**
+     * 按指数退避加随机抖动计算下次重试时间，写入重试集合
+     */
+    protected void scheduleRetry(MailMessage mailMessage) {
+        long delay = retryDelayMillis(mailMessage.getRetryCount() != null ? mailMessage.getRetryCount() : 1);
+        redisTemplate.opsForZSet().add(MAIL_RETRY_SCHEDULE_KEY, mailMessage.getId(), System.currentTimeMillis() + delay);
+        log.info("邮件将在{}ms后重试，邮件ID: {}, 重试次数: {}", delay, mailMessage.getId(), mailMessage.getRetryCount());
+    }
+
+    /**
+     * 因限流推迟发送：写入重试集合但不改变状态和重试次数
+     *
+     * 在等待时间上加最多20%的随机延迟，避免同一域名推迟的邮件在同一时刻再次争抢令牌。
+     */
+    protected void deferMessage(MailMessage mailMessage, long waitMillis) {
+        long delay = Math.max(waitMillis, mailProperties.getRateLimit().getMinDeferMillis());
+        delay += ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+        // 升级前的队列条目不一定有 mail:info，先保存，到期转移时从这里读取
+        saveMessage(mailMessage);
+        redisTemplate.opsForZSet().add(MAIL_RETRY_SCHEDULE_KEY, mailMessage.getId(), System.currentTimeMillis() + delay);
+        log.debug("邮件发送超出限流速率，{}ms后发送，邮件ID: {}", delay, mailMessage.getId());
+    }
+
+    /**
+     * 第 retryCount 次重试前的等待时间
+     */
+    protected long retryDelayMillis(int retryCount) {
+        MailProperties.Retry retry = mailProperties.getRetry();
+        double delay = retry.getInitialDelayMillis() * Math.pow(retry.getMultiplier(), Math.max(0, retryCount - 1));
+        delay = Math.min(delay, retry.getMaxDelayMillis());
+        // 抖动避免大量同时失败的邮件在同一时刻重试
+        double jitter = retry.getJitter() != null ? retry.getJitter() : 0;
+        if (jitter > 0) {
+            delay *= 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        }
+        return Math.max(0, (long) delay);
+    }
+
+    private int drainLegacyRetryQueue(int batchSize) {
+        int drained = 0;
+        Object value;
+        while (drained < batchSize && (value = redisTemplate.opsForList().rightPop(LEGACY_RETRY_QUEUE_KEY)) != null) {
+            if (value instanceof MailMessage mailMessage) {
+                enqueue(normalizePriority(mailMessage.getPriority()), mailMessage);
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    private List<String> claimDueRetries(int batchSize, long leaseUntil) {
+        long now = System.currentTimeMillis();
+        byte[] key = rawKey(MAIL_RETRY_SCHEDULE_KEY);
+        List<byte[]> members = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.scriptingCommands().eval(CLAIM_DUE_SCRIPT, ReturnType.MULTI, 1, key,
+                        rawKey(String.valueOf(now)), rawKey(String.valueOf(batchSize)), rawKey(String.valueOf(leaseUntil))));
+        List<String> mailIds = new ArrayList<>();
+        if (members != null) {
+            for (byte[] member : members) {
+                Object mailId = redisTemplate.getValueSerializer().deserialize(member);
+                if (mailId != null) {
+                    mailIds.add(mailId.toString());
+                }
+            }
+        }
+        return mailIds;
+    }
+
+    private boolean promoteRetry(String mailId, long leaseUntil) {
+        MailMessage mailMessage = loadMessage(mailId);
+        if (mailMessage != null) {
+            byte[] entry = rawKey(mailId);
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                enqueue(connection, normalizePriority(mailMessage.getPriority()), entry);
+                return null;
+            });
+        } else {
+            log.warn("重试邮件信息已过期，放弃重试，邮件ID: {}", mailId);
+        }
+        byte[] key = rawKey(MAIL_RETRY_SCHEDULE_KEY);
+        byte[] member = serializeValue(mailId);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                .eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, key, member, rawKey(String.valueOf(leaseUntil))));
+        return mailMessage != null;
+    }
+
+    /**
+     * 将内存中的附件转存到附件存储，队列中的邮件只携带附件句柄
+     */
+    private void spoolAttachments(MailMessage mailMessage) {
+        List<MailAttachment> attachments = mailMessage.getAttachments();
+        if (attachments == null || attachments.isEmpty()) {
+            return;
+        }
+        List<MailAttachment> spooled = new ArrayList<>(attachments.size());
+        try {
+            for (MailAttachment attachment : attachments) {
+                spooled.add(mailAttachmentSpool.spool(attachment));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存邮件附件失败，邮件ID: " + mailMessage.getId(), e);
+        }
+        mailMessage.setAttachments(spooled);
+    }
+
+    /**
+     * 记录首次发送的邮件从入队到开始发送的等待时间，重试邮件包含退避时间不计入
+     */
+    private void recordWait(MailMessage mailMessage) {
+        if (mailMessage.getCreateTime() == null || (mailMessage.getRetryCount() != null && mailMessage.getRetryCount() > 0)) {
+            return;
+        }
+        long wait = Math.max(0, Duration.between(mailMessage.getCreateTime(), LocalDateTime.now()).toMillis());
+        WaitStats stats = waitStats[normalizePriority(mailMessage.getPriority()) - 1];
+        stats.count.increment();
+        stats.totalMillis.add(wait);
+        stats.maxMillis.accumulateAndGet(wait, Math::max);
+    }
+
+    /**
+     * 将无法加载邮件的队列条目移出队列，避免反复被消费
+     *
+     * 能得到邮件ID的条目（邮件信息已过期或损坏）以邮件ID放入失败队列，与发送失败的邮件格式一致；
+     * 无法解析的原始数据放入 mail:failed:unreadable。
+     */
+    protected void pushFailed(byte[] raw) {
+        String mailId = entryMailId(raw);
+        if (mailId != null) {
+            log.error("队列中的邮件信息已过期或损坏，已移入失败队列，邮件ID: {}", mailId);
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.listCommands().lPush(rawKey(MAIL_FAILED_QUEUE_KEY), rawKey(mailId)));
+        } else {
+            log.error("无法解析队列中的邮件，已移入 {}", MAIL_UNREADABLE_QUEUE_KEY);
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.listCommands().lPush(rawKey(MAIL_UNREADABLE_QUEUE_KEY), raw));
+        }
+    }
+
+    /**
+     * 根据队列条目加载邮件，无法解析或邮件信息已过期时返回null
+     *
+     * 队列条目为邮件ID，邮件内容保存在 mail:info:{id}；升级前写入的条目是完整的JSON邮件，仍可直接解析。
+     */
+    protected MailMessage loadEntry(byte[] entry) {
+        if (isLegacyEntry(entry)) {
+            return deserialize(entry);
+        }
+        return loadMessage(new String(entry, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 队列条目对应的邮件ID，不读取邮件内容
+     */
+    protected String entryMailId(byte[] entry) {
+        if (isLegacyEntry(entry)) {
+            MailMessage mailMessage = deserialize(entry);
+            return mailMessage != null ? mailMessage.getId() : null;
+        }
+        return new String(entry, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取 mail:info:{id} 中保存的邮件
+     */
+    protected MailMessage loadMessage(String mailId) {
+        byte[] key = rawKey(MAIL_INFO_KEY + mailId);
+        byte[] body = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        if (body == null) {
+            return null;
+        }
+        if (!MailMessageCodec.isEncoded(body)) {
+            return deserialize(body);
+        }
+        try {
+            return MailMessageCodec.decode(body);
+        } catch (IllegalArgumentException e) {
+            log.error("邮件信息损坏，邮件ID: {}", mailId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存邮件信息，过期时间7天
+     */
+    protected void saveMessage(MailMessage mailMessage) {
+        byte[] key = rawKey(MAIL_INFO_KEY + mailMessage.getId());
+        byte[] body = MailMessageCodec.encode(mailMessage);
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().setEx(key, MAIL_INFO_TTL_SECONDS, body));
+    }
+
+    /**
+     * 解析升级前写入的JSON邮件，无法解析时返回null
+     */
+    protected MailMessage deserialize(byte[] raw) {
+        try {
+            Object value = redisTemplate.getValueSerializer().deserialize(raw);
+            return value instanceof MailMessage ? (MailMessage) value : null;
+        } catch (SerializationException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected byte[] serializeValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    private static boolean isLegacyEntry(byte[] entry) {
+        return entry.length > 0 && entry[0] == '{';
+    }
+
+    protected static int normalizePriority(Integer priority) {
+        if (priority == null || priority < 1 || priority > 5) {
+            return 3; // 默认优先级
+        }
+        return priority;
+    }
+
+    protected static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class WaitStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalMillis = new LongAdder();
+        final AtomicLong maxMillis = new AtomicLong();
+    }
+}
@@ -0,0 +1,305 @@
+package com.windcore.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 群发收件人文件的流式读取
+ *
+ * 每次只解析一行，内存占用与文件大小无关。
+ * CSV：第一行为表头，支持双引号包裹的字段（字段内可含逗号、换行和两个双引号表示的引号）。
+ * NDJSON：每行一个JSON对象，空行忽略。
+ * 单条记录最多 {@link #MAX_RECORD_LENGTH} 个字符，超过时（如引号未闭合）该记录返回错误，
+ * 丢弃当前行的剩余部分后从下一行继续解析。
+ *
+ * @author windcore
+ */
+class CampaignRecipientReader implements Closeable {
+
+    static final String FORMAT_CSV = "CSV";
+    static final String FORMAT_NDJSON = "NDJSON";
+
+    /**
+     * 单条记录的最大字符数
+     */
+    static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private static final TypeReference<LinkedHashMap<String, Object>> ROW_TYPE = new TypeReference<>() {
+    };
+
+    /**
+     * 一行收件人数据，解析失败时 values 为null
+     */
+    record Row(long lineNumber, Map<String, Object> values, String error) {
+    }
+
+    private final String format;
+    private final CountingInputStream counter;
+    private final Reader reader;
+    private final ObjectMapper objectMapper;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+
+    private List<String> header;
+    private long lineNumber;
+
+    /**
+     * 上一次 {@link #readLine(int)} 读到的行是否超过长度上限而被截断
+     */
+    private boolean lineTruncated;
+
+    CampaignRecipientReader(InputStream in, String format, ObjectMapper objectMapper) {
+        this.format = format;
+        this.counter = new CountingInputStream(in);
+        this.reader = new InputStreamReader(counter, StandardCharsets.UTF_8);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 根据文件名和内容类型判断格式
+     *
+     * @return 格式，无法识别时返回null
+     */
+    static String detectFormat(String fileName, String contentType) {
+        String name = fileName != null ? fileName.toLowerCase() : "";
+        if (name.endsWith(".csv") || (contentType != null && contentType.contains("csv"))) {
+            return FORMAT_CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")
+                || (contentType != null && contentType.contains("ndjson"))) {
+            return FORMAT_NDJSON;
+        }
+        return null;
+    }
+
+    /**
+     * 读取下一行
+     *
+     * @return 收件人数据，文件结束时返回null
+     */
+    Row next() throws IOException {
+        return FORMAT_CSV.equals(format) ? nextCsv() : nextJson();
+    }
+
+    /**
+     * 已读取的字节数（含缓冲区预读）
+     */
+    long getBytesRead() {
+        return counter.count;
+    }
+
+    private Row nextJson() throws IOException {
+        String line;
+        while ((line = readLine(MAX_RECORD_LENGTH)) != null) {
+            lineNumber++;
+            if (lineTruncated) {
+                return new Row(lineNumber, null, tooLong());
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                return new Row(lineNumber, objectMapper.readValue(line, ROW_TYPE), null);
+            } catch (JsonProcessingException e) {
+                return new Row(lineNumber, null, "JSON格式错误: " + e.getOriginalMessage());
+            }
+        }
+        return null;
+    }
+
+    private Row nextCsv() throws IOException {
+        if (header == null) {
+            List<String> fields = readRecord();
+            if (fields == null) {
+                return null;
+            }
+            if (lineTruncated) {
+                throw new IOException("CSV表头" + tooLong());
+            }
+            // 去掉UTF-8 BOM
+            if (!fields.isEmpty() && fields.get(0).startsWith("\uFEFF")) {
+                fields.set(0, fields.get(0).substring(1));
+            }
+            header = new ArrayList<>(fields.size());
+            for (String field : fields) {
+                header.add(field.trim());
+            }
+        }
+
+        List<String> fields;
+        do {
+            fields = readRecord();
+            if (fields == null) {
+                return null;
+            }
+        } while (!lineTruncated && fields.size() == 1 && fields.get(0).isEmpty());
+
+        if (lineTruncated) {
+            return new Row(lineNumber, null, tooLong());
+        }
+        if (fields.size() > header.size()) {
+            return new Row(lineNumber, null, "列数多于表头: " + fields.size());
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            values.put(header.get(i), fields.get(i));
+        }
+        return new Row(lineNumber, values, null);
+    }
+
+    /**
+     * 读取一条CSV记录，引号内的换行属于同一条记录
+     *
+     * 记录超过长度上限时设置 lineTruncated 并返回已解析的部分，下次从下一行开始读取
+     */
+    private List<String> readRecord() throws IOException {
+        String line = readLine(MAX_RECORD_LENGTH);
+        if (line == null) {
+            return null;
+        }
+        lineNumber++;
+        int remaining = MAX_RECORD_LENGTH - line.length();
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i >= line.length()) {
+                if (!quoted || lineTruncated) {
+                    break;
+                }
+                // 引号内换行，继续读取下一行
+                String nextLine = readLine(remaining);
+                if (nextLine == null) {
+                    break;
+                }
+                lineNumber++;
+                remaining -= nextLine.length();
+                field.append('\n');
+                line = nextLine;
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * 读取一行（不含行尾的换行符），超过 maxLength 的部分丢弃并设置 lineTruncated
+     *
+     * @return 一行内容，文件结束时返回null
+     */
+    private String readLine(int maxLength) throws IOException {
+        lineTruncated = false;
+        StringBuilder line = null;
+        while (true) {
+            if (position >= limit) {
+                int read = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                limit = Math.max(read, 0);
+                if (read < 0) {
+                    return line != null ? stripCarriageReturn(line) : null;
+                }
+            }
+            if (line == null) {
+                line = new StringBuilder();
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int length = position - start;
+            int room = Math.max(0, maxLength - line.length());
+            if (length > room) {
+                lineTruncated = true;
+                length = room;
+            }
+            line.append(buffer, start, length);
+            if (position < limit) {
+                // 跳过换行符
+                position++;
+                return stripCarriageReturn(line);
+            }
+        }
+    }
+
+    private static String stripCarriageReturn(StringBuilder line) {
+        int length = line.length();
+        return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+    }
+
+    private static String tooLong() {
+        return "记录超过" + MAX_RECORD_LENGTH + "个字符（可能有未闭合的引号），已跳过";
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * 统计已读取字节数的输入流
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.windcore.service.impl;
+
+import com.windcore.model.FileMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 文件元数据二进制记录编解码
+ *
+ * 记录首字节为类型：PUT 携带完整的文件元数据，DELETE 只携带文件ID，
+ * ID_MARK 携带下一个可分配的ID（压缩删除旧记录后保证已用过的ID不会再分配）。
+ * 内存映射存储与元数据日志共用该格式。
+ *
+ * @author windcore
+ */
+final class FileMetadataCodec {
+
+    static final byte RECORD_PUT = 1;
+    static final byte RECORD_DELETE = 2;
+    static final byte RECORD_ID_MARK = 3;
+
+    private FileMetadataCodec() {
+    }
+
+    static byte[] encode(FileMetadata fileMetadata) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RECORD_PUT);
+            out.writeLong(fileMetadata.getFileSize());
+            LocalDateTime uploadTime = fileMetadata.getUploadTime();
+            out.writeLong(uploadTime != null ? uploadTime.toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE);
+            out.writeInt(uploadTime != null ? uploadTime.getNano() : 0);
+            writeString(out, fileMetadata.getId());
+            writeString(out, fileMetadata.getFileName());
+            writeString(out, fileMetadata.getSafeFileName());
+            writeString(out, fileMetadata.getFilePath());
+            writeString(out, fileMetadata.getFileType());
+            writeString(out, fileMetadata.getFileMd5());
+            writeString(out, fileMetadata.getBusinessType());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] encodeDelete(String id) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RECORD_DELETE);
+            writeString(out, id);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] encodeIdMark(long nextId) {
+        return ByteBuffer.allocate(9).put(RECORD_ID_MARK).putLong(nextId).array();
+    }
+
+    static long decodeIdMark(byte[] record) {
+        return ByteBuffer.wrap(record, 1, 8).getLong();
+    }
+
+    static FileMetadata decode(byte[] record) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            in.readByte();
+            FileMetadata fileMetadata = new FileMetadata();
+            fileMetadata.setFileSize(in.readLong());
+            long epochSecond = in.readLong();
+            int nano = in.readInt();
+            if (epochSecond != Long.MIN_VALUE) {
+                fileMetadata.setUploadTime(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+            }
+            fileMetadata.setId(readString(in));
+            fileMetadata.setFileName(readString(in));
+            fileMetadata.setSafeFileName(readString(in));
+            fileMetadata.setFilePath(readString(in));
+            fileMetadata.setFileType(readString(in));
+            fileMetadata.setFileMd5(readString(in));
+            fileMetadata.setBusinessType(readString(in));
+            return fileMetadata;
+        } catch (IOException e) {
+            throw new UncheckedIOException("文件元数据记录损坏", e);
+        }
+    }
+
+    static String decodeDeletedId(byte[] record) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            in.readByte();
+            return readString(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("文件元数据记录损坏", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
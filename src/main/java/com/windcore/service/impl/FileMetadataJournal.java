@@ -0,0 +1,525 @@
+package com.windcore.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 文件元数据预写日志（WAL）与快照
+ *
+ * 日志按代（generation）分文件：journal-{代}.log 记录该代内的全部变更，
+ * snapshot-{代}.dat 为该代开始时的完整状态。两者记录格式均为 [int 长度][int CRC32][数据]。
+ * 恢复时加载最新的快照，再按顺序回放不早于该代的日志，耗时与快照大小加上最近一代的日志成正比。
+ *
+ * 写入采用组提交：调用方按变更顺序入队并等待返回的 Future，
+ * 写线程把队列中累积的记录合并为一次写入和一次 fsync。
+ * 记录落盘后写线程按日志顺序执行各自的 onDurable 回调（把变更应用到内存），再完成 Future，
+ * 因此内存中只有已落盘的状态，且应用顺序与回放顺序一致。
+ *
+ * 写入或切换日志失败后日志进入失败状态，之后的写入全部失败：失败位置可能留下不完整的记录，
+ * 继续追加的记录在回放时会被截断丢弃。
+ *
+ * @author windcore
+ */
+@Slf4j
+class FileMetadataJournal implements Closeable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final boolean fsync;
+    private final int maxBatch;
+    private final long snapshotThreshold;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "file-journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean snapshotting = new AtomicBoolean(false);
+
+    private Thread writerThread;
+    private FileChannel channel;
+
+    /**
+     * 当前写入的代，只在调用方持有变更锁时修改
+     */
+    private long generation;
+
+    /**
+     * 当前代已入队的字节数，用于判断是否需要快照
+     */
+    private volatile long generationBytes;
+
+    private volatile boolean closed;
+
+    /**
+     * 写入失败的原因，非null时日志不再接受写入
+     */
+    private volatile IOException failure;
+
+    /**
+     * 待写入项：普通记录，或切换到新一代的标记
+     */
+    private static final class Entry {
+        final byte[] record;
+        final Runnable onDurable;
+        final long rotateTo;
+        final Supplier<Iterable<byte[]>> snapshotState;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Entry(byte[] record, Runnable onDurable) {
+            this.record = record;
+            this.onDurable = onDurable;
+            this.rotateTo = 0;
+            this.snapshotState = null;
+        }
+
+        Entry(long rotateTo, Supplier<Iterable<byte[]>> snapshotState) {
+            this.record = null;
+            this.onDurable = null;
+            this.rotateTo = rotateTo;
+            this.snapshotState = snapshotState;
+        }
+    }
+
+    FileMetadataJournal(Path directory, boolean fsync, int maxBatch, long snapshotThreshold) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.maxBatch = maxBatch;
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    /**
+     * 恢复状态并开始写入新的一代，必须在其他方法之前调用一次
+     *
+     * @param visitor 按顺序接收快照和日志中的每条记录
+     */
+    void open(Consumer<byte[]> visitor) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        TreeMap<Long, Path> journals = list(JOURNAL_PREFIX, JOURNAL_SUFFIX);
+
+        long start = System.currentTimeMillis();
+        long fromGeneration = Long.MIN_VALUE;
+        if (!snapshots.isEmpty()) {
+            fromGeneration = snapshots.lastKey();
+            // 快照是原子重命名产生的，应当完整；损坏说明存储出错，不做静默恢复
+            if (!readAll(snapshots.lastEntry().getValue(), visitor)) {
+                throw new IOException("文件元数据快照损坏: " + snapshots.lastEntry().getValue());
+            }
+        }
+        int replayed = 0;
+        for (var journal : journals.tailMap(fromGeneration, true).entrySet()) {
+            if (!readAll(journal.getValue(), visitor)) {
+                log.warn("文件元数据日志尾部不完整，已忽略之后的内容: {}", journal.getValue());
+            }
+            replayed++;
+        }
+
+        long last = Math.max(snapshots.isEmpty() ? 0 : snapshots.lastKey(), journals.isEmpty() ? 0 : journals.lastKey());
+        generation = last + 1;
+        channel = openJournal(generation);
+        deleteTemporaryFiles();
+
+        writerThread = new Thread(this::writeLoop, "file-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("文件元数据日志恢复完成: 快照代={}, 回放日志数={}, 当前代={}, 耗时={}ms",
+                snapshots.isEmpty() ? "无" : snapshots.lastKey(), replayed, generation,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 追加记录，调用方需保证入队顺序与变更顺序一致（持有变更锁时调用）
+     *
+     * @param record 记录
+     * @param onDurable 记录落盘后在写线程中按日志顺序执行，用于把变更应用到内存
+     * @return 记录写入（并按配置 fsync）且 onDurable 执行完后完成的 Future
+     */
+    CompletableFuture<Void> append(byte[] record, Runnable onDurable) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("文件元数据日志已关闭"));
+        }
+        if (failure != null) {
+            return CompletableFuture.failedFuture(new IOException("文件元数据日志写入失败，已停止写入", failure));
+        }
+        Entry entry = new Entry(record, onDurable);
+        generationBytes += HEADER_SIZE + record.length;
+        queue.add(entry);
+        return entry.future;
+    }
+
+    /**
+     * 当前代的日志是否已超过快照阈值
+     */
+    boolean shouldSnapshot() {
+        return generationBytes >= snapshotThreshold && !snapshotting.get();
+    }
+
+    /**
+     * 切换到新一代并异步写入快照
+     *
+     * 调用方需持有变更锁以保证切代标记与记录的顺序。写线程处理到切代标记时，之前的记录都已应用到内存，
+     * 此时在写线程中调用 state 取得完整状态，随后在后台线程中迭代写入快照，
+     * 因此 state 返回的内容在此之后不能再被修改。
+     */
+    void snapshot(Supplier<Iterable<byte[]>> state) {
+        if (closed || failure != null || !snapshotting.compareAndSet(false, true)) {
+            return;
+        }
+        long snapshotGeneration = ++generation;
+        generationBytes = 0;
+        queue.add(new Entry(snapshotGeneration, state));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // 先等写线程写完队列中的记录（它可能还会提交快照任务）。不能中断写线程：
+            // 中断会让正在进行的 FileChannel 写入或 fsync 抛出 ClosedByInterruptException，使剩余记录全部失败
+            if (writerThread != null) {
+                writerThread.join(TimeUnit.SECONDS.toMillis(30));
+            }
+            snapshotExecutor.shutdown();
+            snapshotExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.future.completeExceptionally(new IOException("文件元数据日志已关闭"));
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // ---------------------------------------------------------------- 写线程
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // 关闭时不中断写线程，它在队列为空且已关闭时自行退出
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 写入一批记录；遇到切代标记时先刷完当前文件再切换
+     */
+    private void writeBatch(List<Entry> batch) {
+        int from = 0;
+        for (int i = 0; i <= batch.size(); i++) {
+            if (i < batch.size() && batch.get(i).record != null) {
+                continue;
+            }
+            List<Entry> records = batch.subList(from, i);
+            if (failure != null) {
+                complete(records, failure);
+            } else {
+                try {
+                    writeAndForce(records);
+                    complete(records, null);
+                } catch (IOException e) {
+                    log.error("写入文件元数据日志失败，停止写入", e);
+                    failure = e;
+                    complete(records, e);
+                }
+            }
+            if (i < batch.size()) {
+                rotate(batch.get(i));
+            }
+            from = i + 1;
+        }
+    }
+
+    /**
+     * 切换到新一代日志，并取得切换时刻的状态交给后台线程写入快照
+     */
+    private void rotate(Entry rotate) {
+        if (failure != null) {
+            snapshotting.set(false);
+            rotate.future.completeExceptionally(failure);
+            return;
+        }
+        Iterable<byte[]> state;
+        try {
+            FileChannel next = openJournal(rotate.rotateTo);
+            channel.close();
+            channel = next;
+            state = rotate.snapshotState.get();
+            rotate.future.complete(null);
+        } catch (IOException e) {
+            log.error("切换文件元数据日志失败，停止写入: 代=" + rotate.rotateTo, e);
+            failure = e;
+            snapshotting.set(false);
+            rotate.future.completeExceptionally(e);
+            return;
+        }
+
+        long snapshotGeneration = rotate.rotateTo;
+        try {
+            snapshotExecutor.execute(() -> {
+                try {
+                    writeSnapshot(snapshotGeneration, state.iterator());
+                    deleteBefore(snapshotGeneration);
+                } catch (Exception e) {
+                    log.error("写入文件元数据快照失败: 代=" + snapshotGeneration, e);
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            snapshotting.set(false);
+            log.warn("日志已关闭，跳过快照: 代={}", snapshotGeneration);
+        }
+    }
+
+    private void writeAndForce(List<Entry> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        int size = 0;
+        for (Entry entry : records) {
+            size += HEADER_SIZE + entry.record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Entry entry : records) {
+            putRecord(buffer, entry.record);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private static void complete(List<Entry> records, Throwable error) {
+        for (Entry entry : records) {
+            if (error != null) {
+                entry.future.completeExceptionally(error);
+                continue;
+            }
+            try {
+                if (entry.onDurable != null) {
+                    entry.onDurable.run();
+                }
+                entry.future.complete(null);
+            } catch (RuntimeException e) {
+                log.error("应用文件元数据变更失败", e);
+                entry.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 快照
+
+    /**
+     * 先写临时文件并 fsync，再原子重命名，保证任何时刻存在的快照都是完整的
+     */
+    private void writeSnapshot(long snapshotGeneration, Iterator<byte[]> records) throws IOException {
+        Path temp = directory.resolve(fileName(SNAPSHOT_PREFIX, snapshotGeneration, ".tmp"));
+        Path target = directory.resolve(fileName(SNAPSHOT_PREFIX, snapshotGeneration, SNAPSHOT_SUFFIX));
+        long start = System.currentTimeMillis();
+        int count = 0;
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+            while (records.hasNext()) {
+                byte[] record = records.next();
+                if (buffer.remaining() < HEADER_SIZE + record.length) {
+                    drain(out, buffer);
+                    if (buffer.capacity() < HEADER_SIZE + record.length) {
+                        buffer = ByteBuffer.allocate(HEADER_SIZE + record.length);
+                    }
+                }
+                putRecord(buffer, record);
+                count++;
+            }
+            drain(out, buffer);
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+
+        log.info("文件元数据快照完成: 代={}, 记录数={}, 耗时={}ms",
+                snapshotGeneration, count, System.currentTimeMillis() - start);
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 快照落盘后，更早的快照和日志都不再需要
+     */
+    private void deleteBefore(long snapshotGeneration) throws IOException {
+        for (Path path : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(snapshotGeneration, false).values()) {
+            Files.deleteIfExists(path);
+        }
+        for (Path path : list(JOURNAL_PREFIX, JOURNAL_SUFFIX).headMap(snapshotGeneration, false).values()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void deleteTemporaryFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (path.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private void forceDirectory() {
+        // 部分平台（如Windows）不支持对目录 fsync，忽略即可
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("目录fsync不受支持: {}", directory);
+        }
+    }
+
+    // ---------------------------------------------------------------- 文件
+
+    private FileChannel openJournal(long journalGeneration) throws IOException {
+        Path path = directory.resolve(fileName(JOURNAL_PREFIX, journalGeneration, JOURNAL_SUFFIX));
+        FileChannel journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.position(journal.size());
+        return journal;
+    }
+
+    /**
+     * 顺序读取文件中的记录，遇到不完整或校验失败的记录时停止
+     *
+     * @return 文件是否完整读完
+     */
+    private static boolean readAll(Path path, Consumer<byte[]> visitor) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            while (true) {
+                header.clear();
+                if (!readFully(in, header)) {
+                    return header.position() == 0;
+                }
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length <= 0 || length > in.size() - in.position()) {
+                    return false;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                if (!readFully(in, payload)) {
+                    return false;
+                }
+                crc.reset();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    return false;
+                }
+                visitor.accept(payload.array());
+            }
+        } catch (EOFException | InterruptedIOException e) {
+            return false;
+        }
+    }
+
+    private static boolean readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putRecord(ByteBuffer buffer, byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+    }
+
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    try {
+                        result.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), path);
+                    } catch (NumberFormatException e) {
+                        log.warn("忽略无法识别的文件: {}", path);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String fileName(String prefix, long fileGeneration, String suffix) {
+        return String.format("%s%016d%s", prefix, fileGeneration, suffix);
+    }
+}
@@ -0,0 +1,282 @@
+package com.windcore.service.impl;
+
+import com.windcore.dto.FileListCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 文件名三元组(trigram)倒排索引
+ *
+ * 文件名统一转为小写后切分为连续的三字符片段，每个片段对应一个按 (uploadTime, id) 排序的文件集合。
+ * 查询时从最小的集合中按顺序逐个取候选，检查其他片段是否都包含该文件，再用 contains 校验，
+ * 分页查询直接从游标之后开始，取满一页即停止，内存占用和单页耗时都与页大小相关，而不是与命中总数相关。
+ *
+ * 同一文件ID的更新按ID加锁串行执行：先写入新文件名的三元组，再切换ID对应的排序键和文件名，最后删除不再需要的三元组。
+ * 查询以ID当前的排序键和文件名做最终校验，因此改名过程中的查询要么命中旧名，要么命中新名，不会两者都漏掉。
+ *
+ * 关键字少于 {@value #GRAM_SIZE} 个字符时无法使用三元组，退化为按顺序扫描文件名，
+ * 调用方可通过 {@link #isIndexed(String)} 判断。
+ *
+ * @author windcore
+ */
+public class FileNameIndex {
+
+    /**
+     * 可使用索引的最短关键字长度
+     */
+    public static final int GRAM_SIZE = 3;
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * 三元组 -> 按排序键排列的文件集合
+     */
+    private final Map<Long, Posting> postings = new ConcurrentHashMap<>();
+
+    /**
+     * 文件ID -> 当前排序键
+     */
+    private final Map<String, FileListCursor> sortKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 排序键 -> 规范化后的文件名（用于候选校验和短关键字查询）
+     */
+    private final NavigableMap<FileListCursor, String> normalizedNames = new ConcurrentSkipListMap<>();
+
+    /**
+     * 按文件ID分段的更新锁
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * 一个三元组对应的文件集合；跳表的 size() 需要遍历，单独计数用于选择最小的集合
+     */
+    private static final class Posting {
+        final NavigableSet<FileListCursor> keys = new ConcurrentSkipListSet<>();
+        volatile int size;
+    }
+
+    public FileNameIndex() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 添加或替换文件名索引
+     *
+     * @param key 文件的排序键（上传时间和ID）
+     * @param fileName 文件名
+     */
+    public void add(FileListCursor key, String fileName) {
+        if (key == null) {
+            return;
+        }
+        String id = key.getId();
+        if (fileName == null) {
+            remove(id);
+            return;
+        }
+
+        String normalized = normalize(fileName);
+        synchronized (lock(id)) {
+            FileListCursor previousKey = sortKeys.get(id);
+            String previous = previousKey != null ? normalizedNames.get(previousKey) : null;
+            if (key.equals(previousKey) && normalized.equals(previous)) {
+                return;
+            }
+            Set<Long> added = grams(normalized);
+            for (long gram : added) {
+                postings.compute(gram, (k, posting) -> {
+                    Posting target = posting != null ? posting : new Posting();
+                    if (target.keys.add(key)) {
+                        target.size++;
+                    }
+                    return target;
+                });
+            }
+            // 切换点：排序键不变时为文件名的替换，否则为 sortKeys 的替换，此后的查询按新文件名校验
+            normalizedNames.put(key, normalized);
+            sortKeys.put(id, key);
+            if (previousKey != null) {
+                Set<Long> stale = grams(previous);
+                if (previousKey.equals(key)) {
+                    stale.removeAll(added);
+                } else {
+                    normalizedNames.remove(previousKey);
+                }
+                removePostings(previousKey, stale);
+            }
+        }
+    }
+
+    /**
+     * 移除文件名索引
+     *
+     * @param id 文件ID
+     */
+    public void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (lock(id)) {
+            FileListCursor key = sortKeys.remove(id);
+            if (key == null) {
+                return;
+            }
+            String normalized = normalizedNames.remove(key);
+            if (normalized != null) {
+                removePostings(key, grams(normalized));
+            }
+        }
+    }
+
+    /**
+     * 关键字是否可以使用三元组索引，否则查询需要按顺序扫描文件名
+     *
+     * @param keyword 文件名关键字
+     */
+    public static boolean isIndexed(String keyword) {
+        return keyword != null && keyword.length() >= GRAM_SIZE;
+    }
+
+    /**
+     * 按关键字查找文件名包含该关键字的文件ID
+     *
+     * @param keyword 文件名关键字
+     * @return 匹配的文件ID列表，按 (uploadTime, id) 升序
+     */
+    public List<String> search(String keyword) {
+        return search(keyword, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 按关键字分页查找文件名包含该关键字的文件ID
+     *
+     * 关键字不足 {@value #GRAM_SIZE} 个字符时从游标处顺序扫描文件名，取满一页即停止，
+     * 命中稀疏时单页耗时可能与文件总数成正比。
+     *
+     * @param keyword 文件名关键字
+     * @param after 上一页最后一条记录的游标，为null时从头开始
+     * @param limit 最多返回条数
+     * @return 匹配的文件ID列表，按 (uploadTime, id) 升序
+     */
+    public List<String> search(String keyword, FileListCursor after, int limit) {
+        List<String> result = new ArrayList<>();
+        if (keyword == null || keyword.isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        String normalized = normalize(keyword);
+
+        // 关键字不足三个字符时无法使用三元组，直接在规范化文件名上匹配
+        if (normalized.length() < GRAM_SIZE) {
+            NavigableMap<FileListCursor, String> names = after != null
+                    ? normalizedNames.tailMap(after, false) : normalizedNames;
+            for (Map.Entry<FileListCursor, String> entry : names.entrySet()) {
+                if (entry.getValue().contains(normalized) && isCurrent(entry.getKey())) {
+                    result.add(entry.getKey().getId());
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+
+        List<Posting> candidates = new ArrayList<>();
+        for (long gram : grams(normalized)) {
+            Posting posting = postings.get(gram);
+            if (posting == null) {
+                return result;
+            }
+            candidates.add(posting);
+        }
+        candidates.sort(Comparator.comparingInt(posting -> posting.size));
+
+        NavigableSet<FileListCursor> smallest = candidates.get(0).keys;
+        for (FileListCursor key : after != null ? smallest.tailSet(after, false) : smallest) {
+            if (!containsInAll(candidates, key)) {
+                continue;
+            }
+            // 三元组命中不代表连续出现，需要校验
+            String name = normalizedNames.get(key);
+            if (name != null && name.contains(normalized) && isCurrent(key)) {
+                result.add(key.getId());
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        postings.clear();
+        sortKeys.clear();
+        normalizedNames.clear();
+    }
+
+    private void removePostings(FileListCursor key, Set<Long> grams) {
+        for (long gram : grams) {
+            postings.computeIfPresent(gram, (k, posting) -> {
+                if (posting.keys.remove(key)) {
+                    posting.size--;
+                }
+                return posting.size == 0 ? null : posting;
+            });
+        }
+    }
+
+    /**
+     * 排序键是否为该文件当前的排序键（上传时间变更后旧键可能仍短暂存在）
+     */
+    private boolean isCurrent(FileListCursor key) {
+        return key.equals(sortKeys.get(key.getId()));
+    }
+
+    private Object lock(String id) {
+        return locks[(id.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private boolean containsInAll(List<Posting> postingList, FileListCursor key) {
+        for (int i = 1; i < postingList.size(); i++) {
+            if (!postingList.get(i).keys.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 切分三元组，每个三元组按字符编码压缩为一个long
+     */
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            long gram = ((long) text.charAt(i) << 32)
+                    | ((long) text.charAt(i + 1) << 16)
+                    | text.charAt(i + 2);
+            grams.add(gram);
+        }
+        return grams;
+    }
+}
@@ -1,42 +1,109 @@
 package com.windcore.service.impl;
 
+import com.windcore.config.FileMetadataProperties;
+import com.windcore.dto.FileListCursor;
+import com.windcore.model.ContentDigest;
 import com.windcore.model.FileMetadata;
 import com.windcore.service.FileService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 文件服务实现类
  * 注意：这是一个简单的内存实现，实际项目中应该使用数据库
+ * 默认启用，file.metadata.store=mapped 时切换为 {@link MappedFileServiceImpl}
+ * file.metadata.journal.enabled=true 时变更写入预写日志并定期快照，重启后自动恢复：
+ * 变更先写入日志，落盘后才由日志写线程按日志顺序应用到内存，写入失败时内存不变，
+ * 内存中的状态始终与重启后回放的结果一致。尚未落盘的变更记录在 pending 中，供后续的写操作读取最新状态。
+ * 存储中的对象不会再被修改（写时复制），快照可以在锁外读取。
  * 
  * @author windcore
  */
 @Service
+@ConditionalOnProperty(prefix = "file.metadata", name = "store", havingValue = "memory", matchIfMissing = true)
 public class FileServiceImpl implements FileService {
     
     private static final Logger log = LoggerFactory.getLogger(FileServiceImpl.class);
     
     // 内存存储，实际项目中应该使用数据库
     private final Map<String, FileMetadata> fileStore = new ConcurrentHashMap<>();
-    private final Map<String, String> md5Index = new ConcurrentHashMap<>();
+    // MD5以原始字节作为键，避免保存十六进制字符串
+    private final Map<ContentDigest, String> md5Index = new ConcurrentHashMap<>();
+    private final FileNameIndex fileNameIndex = new FileNameIndex();
+    // 业务类型 -> 按 (uploadTime, id) 排序的文件ID，用于游标分页
+    private final Map<String, NavigableMap<FileListCursor, String>> businessTypeIndex = new ConcurrentHashMap<>();
     private final AtomicLong idGenerator = new AtomicLong(1);
     
+    private final FileMetadataProperties properties;
+    // 串行化变更，保证日志顺序与内存状态一致；读操作不加锁
+    private final ReentrantLock mutationLock = new ReentrantLock();
+    // 预写日志，未启用时为null
+    private FileMetadataJournal journal;
+    // 已写入日志、尚未落盘的变更（值的 state 为null表示删除），只在变更锁内写入
+    private final Map<String, PendingChange> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * 一次待落盘的变更
+     */
+    private static final class PendingChange {
+        final FileMetadata state;
+        CompletableFuture<Void> durable;
+        
+        PendingChange(FileMetadata state) {
+            this.state = state;
+        }
+    }
+    
+    public FileServiceImpl(FileMetadataProperties properties) {
+        this.properties = properties;
+    }
+    
+    @PostConstruct
+    public void init() throws IOException {
+        FileMetadataProperties.Journal config = properties.getJournal();
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return;
+        }
+        FileMetadataJournal opened = new FileMetadataJournal(Paths.get(config.getDir()), config.getFsync(),
+                config.getMaxBatch(), config.getSnapshotThreshold());
+        opened.open(this::replay);
+        journal = opened;
+        log.info("文件元数据预写日志已启用: 目录={}, 文件数={}", config.getDir(), fileStore.size());
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+    
     @Override
     public FileMetadata findByMd5(String md5) {
         if (md5 == null || md5.trim().isEmpty()) {
             return null;
         }
         
-        String id = md5Index.get(md5);
+        ContentDigest digest = ContentDigest.tryParse(md5);
+        String id = digest != null ? md5Index.get(digest) : null;
         if (id != null) {
             return fileStore.get(id);
         }
@@ -67,13 +134,17 @@ public class FileServiceImpl implements FileService {
             fileMetadata.setUploadTime(LocalDateTime.now());
         }
         
-        // 保存到存储
-        fileStore.put(fileMetadata.getId(), fileMetadata);
-        
-        // 更新MD5索引
-        if (fileMetadata.getFileMd5() != null) {
-            md5Index.put(fileMetadata.getFileMd5(), fileMetadata.getId());
+        // 存储副本，调用方之后修改传入的对象不影响存储和快照
+        FileMetadata stored = copyOf(fileMetadata);
+        byte[] record = journal != null ? FileMetadataCodec.encode(stored) : null;
+        PendingChange change;
+        mutationLock.lock();
+        try {
+            change = stage(stored.getId(), stored, record);
+        } finally {
+            mutationLock.unlock();
         }
+        awaitDurable(stored.getId(), change);
         
         log.info("保存文件元数据: {}", fileMetadata);
         return fileMetadata;
@@ -85,33 +156,46 @@ public class FileServiceImpl implements FileService {
             throw new IllegalArgumentException("文件元数据或ID不能为空");
         }
         
-        FileMetadata existing = fileStore.get(fileMetadata.getId());
-        if (existing == null) {
-            throw new IllegalArgumentException("文件不存在: " + fileMetadata.getId());
-        }
-        
-        // 更新字段
-        if (fileMetadata.getFileName() != null) {
-            existing.setFileName(fileMetadata.getFileName());
-        }
-        if (fileMetadata.getSafeFileName() != null) {
-            existing.setSafeFileName(fileMetadata.getSafeFileName());
-        }
-        if (fileMetadata.getFilePath() != null) {
-            existing.setFilePath(fileMetadata.getFilePath());
-        }
-        if (fileMetadata.getFileType() != null) {
-            existing.setFileType(fileMetadata.getFileType());
-        }
-        if (fileMetadata.getFileSize() > 0) {
-            existing.setFileSize(fileMetadata.getFileSize());
-        }
-        if (fileMetadata.getBusinessType() != null) {
-            existing.setBusinessType(fileMetadata.getBusinessType());
+        FileMetadata updated;
+        PendingChange change;
+        mutationLock.lock();
+        try {
+            FileMetadata existing = latest(fileMetadata.getId());
+            if (existing == null) {
+                throw new IllegalArgumentException("文件不存在: " + fileMetadata.getId());
+            }
+            
+            // 写时复制：已存储的对象不再被修改，快照可以在锁外安全地读取
+            updated = copyOf(existing);
+            
+            // 更新字段
+            if (fileMetadata.getFileName() != null) {
+                updated.setFileName(fileMetadata.getFileName());
+            }
+            if (fileMetadata.getSafeFileName() != null) {
+                updated.setSafeFileName(fileMetadata.getSafeFileName());
+            }
+            if (fileMetadata.getFilePath() != null) {
+                updated.setFilePath(fileMetadata.getFilePath());
+            }
+            if (fileMetadata.getFileType() != null) {
+                updated.setFileType(fileMetadata.getFileType());
+            }
+            if (fileMetadata.getFileSize() > 0) {
+                updated.setFileSize(fileMetadata.getFileSize());
+            }
+            if (fileMetadata.getBusinessType() != null) {
+                updated.setBusinessType(fileMetadata.getBusinessType());
+            }
+            
+            change = stage(updated.getId(), updated, journal != null ? FileMetadataCodec.encode(updated) : null);
+        } finally {
+            mutationLock.unlock();
         }
+        awaitDurable(updated.getId(), change);
         
-        log.info("更新文件元数据: {}", existing);
-        return existing;
+        log.info("更新文件元数据: {}", updated);
+        return copyOf(updated);
     }
     
     @Override
@@ -120,16 +204,22 @@ public class FileServiceImpl implements FileService {
             return false;
         }
         
-        FileMetadata fileMetadata = fileStore.remove(id);
-        if (fileMetadata != null) {
-            // 移除MD5索引
-            if (fileMetadata.getFileMd5() != null) {
-                md5Index.remove(fileMetadata.getFileMd5());
+        FileMetadata fileMetadata;
+        PendingChange change;
+        mutationLock.lock();
+        try {
+            fileMetadata = latest(id);
+            if (fileMetadata == null) {
+                return false;
             }
-            log.info("删除文件元数据: {}", fileMetadata);
-            return true;
+            change = stage(id, null, journal != null ? FileMetadataCodec.encodeDelete(id) : null);
+        } finally {
+            mutationLock.unlock();
         }
-        return false;
+        awaitDurable(id, change);
+        
+        log.info("删除文件元数据: {}", fileMetadata);
+        return true;
     }
     
     @Override
@@ -138,9 +228,27 @@ public class FileServiceImpl implements FileService {
             return new ArrayList<>();
         }
         
-        return fileStore.values().stream()
-                .filter(file -> businessType.equals(file.getBusinessType()))
-                .collect(Collectors.toList());
+        NavigableMap<FileListCursor, String> index = businessTypeIndex.get(businessType);
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        return resolve(index.values(), Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public List<FileMetadata> findByBusinessType(String businessType, FileListCursor after, int limit) {
+        if (businessType == null || businessType.trim().isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        
+        NavigableMap<FileListCursor, String> index = businessTypeIndex.get(businessType);
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        
+        // 跳表上直接定位到游标之后，只读取一页数据
+        NavigableMap<FileListCursor, String> page = after != null ? index.tailMap(after, false) : index;
+        return resolve(page.values(), limit);
     }
     
     @Override
@@ -149,16 +257,31 @@ public class FileServiceImpl implements FileService {
             return new ArrayList<>();
         }
         
-        String keyword = fileName.toLowerCase();
-        return fileStore.values().stream()
-                .filter(file -> file.getFileName() != null && 
-                               file.getFileName().toLowerCase().contains(keyword))
-                .collect(Collectors.toList());
+        // 通过三元组索引获取候选文件，避免全量扫描
+        List<FileMetadata> result = new ArrayList<>();
+        for (String id : fileNameIndex.search(fileName)) {
+            FileMetadata file = fileStore.get(id);
+            if (file != null) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<FileMetadata> findByFileNameLike(String fileName, FileListCursor after, int limit) {
+        if (fileName == null || fileName.trim().isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        
+        // 索引按 (uploadTime, id) 排序，从游标之后逐个校验候选，取满一页即停止
+        return resolve(fileNameIndex.search(fileName, after, limit), limit);
     }
     
     @Override
     public boolean existsByMd5(String md5) {
-        return md5 != null && md5Index.containsKey(md5);
+        ContentDigest digest = ContentDigest.tryParse(md5);
+        return digest != null && md5Index.containsKey(digest);
     }
     
     @Override
@@ -172,8 +295,174 @@ public class FileServiceImpl implements FileService {
             return 0;
         }
         
-        return fileStore.values().stream()
-                .filter(file -> businessType.equals(file.getBusinessType()))
-                .count();
+        NavigableMap<FileListCursor, String> index = businessTypeIndex.get(businessType);
+        return index != null ? index.size() : 0;
+    }
+    
+    /**
+     * 写入存储和各索引，由日志写线程、持有变更锁的调用方（未启用日志时）或回放单线程调用
+     */
+    private void applySave(FileMetadata fileMetadata) {
+        FileMetadata previous = fileStore.put(fileMetadata.getId(), fileMetadata);
+        if (previous != null) {
+            removeMd5Index(previous);
+            removeBusinessTypeIndex(previous);
+        }
+        addBusinessTypeIndex(fileMetadata);
+        
+        // 更新MD5索引
+        ContentDigest digest = ContentDigest.tryParse(fileMetadata.getFileMd5());
+        if (digest != null) {
+            md5Index.put(digest, fileMetadata.getId());
+        }
+        
+        // 更新文件名索引
+        fileNameIndex.add(FileListCursor.of(fileMetadata), fileMetadata.getFileName());
+    }
+    
+    /**
+     * 从存储和各索引中移除，调用线程同 {@link #applySave}
+     */
+    private FileMetadata applyDelete(String id) {
+        FileMetadata fileMetadata = fileStore.remove(id);
+        if (fileMetadata != null) {
+            removeMd5Index(fileMetadata);
+            fileNameIndex.remove(id);
+            removeBusinessTypeIndex(fileMetadata);
+        }
+        return fileMetadata;
+    }
+    
+    private void removeMd5Index(FileMetadata fileMetadata) {
+        ContentDigest digest = ContentDigest.tryParse(fileMetadata.getFileMd5());
+        if (digest != null) {
+            md5Index.remove(digest, fileMetadata.getId());
+        }
+    }
+    
+    /**
+     * 写操作看到的最新状态：尚未落盘的变更优先，调用方需持有变更锁
+     */
+    private FileMetadata latest(String id) {
+        PendingChange change = pending.get(id);
+        return change != null ? change.state : fileStore.get(id);
+    }
+    
+    /**
+     * 提交一次变更，调用方需持有变更锁以保证日志顺序与变更顺序一致
+     * 
+     * 未启用日志时直接应用到内存；否则写入日志，落盘后由日志写线程应用。
+     * 
+     * @param state 新状态，为null表示删除
+     */
+    private PendingChange stage(String id, FileMetadata state, byte[] record) {
+        PendingChange change = new PendingChange(state);
+        if (journal == null) {
+            apply(id, state);
+            return change;
+        }
+        pending.put(id, change);
+        change.durable = journal.append(record, () -> apply(id, state));
+        if (journal.shouldSnapshot()) {
+            journal.snapshot(this::snapshotState);
+        }
+        return change;
+    }
+    
+    /**
+     * 在锁外等待日志落盘，等待期间其他线程的记录可以合并到同一批 fsync
+     */
+    private void awaitDurable(String id, PendingChange change) {
+        if (change.durable == null) {
+            return;
+        }
+        try {
+            change.durable.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("写入文件元数据日志失败", e.getCause());
+        } finally {
+            pending.remove(id, change);
+        }
+    }
+    
+    private void apply(String id, FileMetadata state) {
+        if (state != null) {
+            applySave(state);
+        } else {
+            applyDelete(id);
+        }
+    }
+    
+    /**
+     * 快照内容，由日志写线程在切代时调用，此时内存恰好包含切代之前的全部记录
+     */
+    private Iterable<byte[]> snapshotState() {
+        List<FileMetadata> files = new ArrayList<>(fileStore.values());
+        return () -> files.stream().map(FileMetadataCodec::encode).iterator();
+    }
+    
+    private void replay(byte[] record) {
+        if (record[0] == FileMetadataCodec.RECORD_PUT) {
+            FileMetadata fileMetadata = FileMetadataCodec.decode(record);
+            applySave(fileMetadata);
+            observeId(fileMetadata.getId());
+        } else if (record[0] == FileMetadataCodec.RECORD_DELETE) {
+            applyDelete(FileMetadataCodec.decodeDeletedId(record));
+        }
+    }
+    
+    private void observeId(String id) {
+        if (id != null && !id.isEmpty() && id.length() < 19 && id.chars().allMatch(Character::isDigit)) {
+            idGenerator.accumulateAndGet(Long.parseLong(id) + 1, Math::max);
+        }
+    }
+    
+    private static FileMetadata copyOf(FileMetadata source) {
+        FileMetadata copy = new FileMetadata();
+        copy.setId(source.getId());
+        copy.setFileName(source.getFileName());
+        copy.setSafeFileName(source.getSafeFileName());
+        copy.setFilePath(source.getFilePath());
+        copy.setFileType(source.getFileType());
+        copy.setFileSize(source.getFileSize());
+        copy.setFileMd5(source.getFileMd5());
+        copy.setBusinessType(source.getBusinessType());
+        copy.setUploadTime(source.getUploadTime());
+        return copy;
+    }
+    
+    /**
+     * 按ID顺序读取文件元数据
+     */
+    private List<FileMetadata> resolve(Iterable<String> ids, int limit) {
+        List<FileMetadata> result = new ArrayList<>();
+        for (String id : ids) {
+            if (result.size() >= limit) {
+                break;
+            }
+            FileMetadata file = fileStore.get(id);
+            if (file != null) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+    
+    private void addBusinessTypeIndex(FileMetadata fileMetadata) {
+        if (fileMetadata.getBusinessType() == null) {
+            return;
+        }
+        businessTypeIndex.computeIfAbsent(fileMetadata.getBusinessType(), k -> new ConcurrentSkipListMap<>())
+                .put(FileListCursor.of(fileMetadata), fileMetadata.getId());
+    }
+    
+    private void removeBusinessTypeIndex(FileMetadata fileMetadata) {
+        if (fileMetadata.getBusinessType() == null) {
+            return;
+        }
+        NavigableMap<FileListCursor, String> index = businessTypeIndex.get(fileMetadata.getBusinessType());
+        if (index != null) {
+            index.remove(FileListCursor.of(fileMetadata));
+        }
     }
 }
\ No newline at end of file
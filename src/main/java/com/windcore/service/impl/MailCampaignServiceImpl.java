@@ -0,0 +1,353 @@
+package com.windcore.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailCampaign;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailCampaignService;
+import com.windcore.service.MailQueueService;
+import com.windcore.service.MailTemplateRenderer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 邮件群发服务实现类
+ *
+ * 收件人文件先完整保存到本地（请求结束后上传的临时文件会被删除），再由后台线程逐行读取：
+ * 每行与共用变量合并为模板变量，攒满一批（mail.queue.enqueue-batch-size）后批量入队，
+ * 内存中最多只有一批邮件。模板在发送时渲染，队列中只保存模板名和变量。
+ *
+ * 发送队列积压超过 mail.campaign.max-queue-size 时暂停入队，避免百万级任务一次性占满Redis。
+ * 任务进度保存在Redis（7天过期），任意节点都可以查询和取消。
+ *
+ * 任务在独立的 mailCampaignExecutor 中执行，每个节点最多同时运行 mail.campaign.concurrency 个任务，
+ * 超出时直接拒绝。执行节点停止后任务不会在其他节点继续：运行中的任务超过 stale-timeout-millis
+ * 没有更新进度时，查询时标记为失败，需要重新创建任务。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+public class MailCampaignServiceImpl implements MailCampaignService {
+
+    private static final String CAMPAIGN_KEY = "mail:campaign:";
+    private static final String CAMPAIGN_CANCEL_KEY = "mail:campaign:cancel:";
+    private static final Duration CAMPAIGN_TTL = Duration.ofDays(7);
+    private static final long THROTTLE_SLEEP_MILLIS = 1000;
+    private static final byte[] STAT_SENT = "sent".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STAT_FAILED = "failed".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ZERO = "0".getBytes(StandardCharsets.UTF_8);
+
+    private final MailQueueService mailQueueService;
+    private final MailTemplateRenderer mailTemplateRenderer;
+    private final MailProperties mailProperties;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Executor mailCampaignExecutor;
+
+    public MailCampaignServiceImpl(MailQueueService mailQueueService, MailTemplateRenderer mailTemplateRenderer,
+                                   MailProperties mailProperties, RedisTemplate<String, Object> redisTemplate,
+                                   ObjectMapper objectMapper, @Qualifier("mailCampaignExecutor") Executor mailCampaignExecutor) {
+        this.mailQueueService = mailQueueService;
+        this.mailTemplateRenderer = mailTemplateRenderer;
+        this.mailProperties = mailProperties;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.mailCampaignExecutor = mailCampaignExecutor;
+    }
+
+    @Override
+    public MailCampaign startCampaign(String templateName, String subject, Map<String, Object> sharedVariables,
+                                      Integer priority, MultipartFile recipients) throws IOException {
+        if (!StringUtils.hasText(templateName)) {
+            throw new IllegalArgumentException("邮件模板名称不能为空");
+        }
+        if (recipients == null || recipients.isEmpty()) {
+            throw new IllegalArgumentException("收件人文件不能为空");
+        }
+        String format = CampaignRecipientReader.detectFormat(recipients.getOriginalFilename(), recipients.getContentType());
+        if (format == null) {
+            throw new IllegalArgumentException("不支持的收件人文件格式，仅支持 CSV 和 NDJSON");
+        }
+
+        MailCampaign campaign = MailCampaign.builder()
+                .id(generateCampaignId())
+                .templateName(templateName)
+                .subject(subject)
+                .fileName(recipients.getOriginalFilename())
+                .format(format)
+                .status(MailCampaign.CampaignStatus.RUNNING)
+                .fileSize(recipients.getSize())
+                .bytesRead(0L)
+                .totalRows(0L)
+                .enqueuedCount(0L)
+                .skippedCount(0L)
+                .createTime(LocalDateTime.now())
+                .build();
+
+        Path uploadDir = Paths.get(mailProperties.getCampaign().getUploadDir());
+        Files.createDirectories(uploadDir);
+        Path file = uploadDir.resolve(campaign.getId());
+        try (InputStream in = recipients.getInputStream()) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        saveCampaign(campaign);
+        initStats(campaign.getId());
+
+        Map<String, Object> shared = sharedVariables != null ? sharedVariables : Collections.emptyMap();
+        int mailPriority = priority != null ? priority : 3;
+        try {
+            mailCampaignExecutor.execute(() -> runCampaign(campaign, file, shared, mailPriority));
+        } catch (RejectedExecutionException e) {
+            Files.deleteIfExists(file);
+            finish(campaign, MailCampaign.CampaignStatus.FAILED, "同时运行的群发任务已达上限，请稍后重试");
+            throw e;
+        }
+
+        log.info("群发任务已创建，任务ID: {}, 模板: {}, 文件: {}, 大小: {}",
+                campaign.getId(), templateName, campaign.getFileName(), campaign.getFileSize());
+        return campaign;
+    }
+
+    @Override
+    public MailCampaign getCampaign(String campaignId) {
+        Object value = redisTemplate.opsForValue().get(CAMPAIGN_KEY + campaignId);
+        if (!(value instanceof MailCampaign campaign)) {
+            return null;
+        }
+        if (isStale(campaign)) {
+            log.warn("群发任务长时间没有更新进度，执行节点可能已停止，标记为失败，任务ID: {}", campaignId);
+            finish(campaign, MailCampaign.CampaignStatus.FAILED, "执行节点已停止，任务未完成，请重新创建任务");
+        }
+
+        // 发送结果由队列消费者在发送后累加
+        byte[] statsKey = statsKey(campaignId);
+        List<byte[]> stats = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(statsKey, STAT_SENT, STAT_FAILED));
+        campaign.setSentCount(parseCount(stats, 0));
+        campaign.setFailedCount(parseCount(stats, 1));
+        return campaign;
+    }
+
+    @Override
+    public boolean cancelCampaign(String campaignId) {
+        MailCampaign campaign = getCampaign(campaignId);
+        if (campaign == null || campaign.getStatus() != MailCampaign.CampaignStatus.RUNNING) {
+            return false;
+        }
+        // 由执行任务的节点在下一批入队前检查
+        redisTemplate.opsForValue().set(CAMPAIGN_CANCEL_KEY + campaignId, Boolean.TRUE, CAMPAIGN_TTL);
+        log.info("群发任务已请求取消，任务ID: {}", campaignId);
+        return true;
+    }
+
+    /**
+     * 逐行读取收件人文件并分批入队
+     */
+    private void runCampaign(MailCampaign campaign, Path file, Map<String, Object> shared, int priority) {
+        int batchSize = Math.max(1, mailProperties.getQueue().getEnqueueBatchSize());
+        List<MailMessage> batch = new ArrayList<>(batchSize);
+        boolean templateChecked = false;
+
+        try (CampaignRecipientReader reader = new CampaignRecipientReader(
+                Files.newInputStream(file), campaign.getFormat(), objectMapper)) {
+            CampaignRecipientReader.Row row;
+            while ((row = reader.next()) != null) {
+                campaign.setTotalRows(campaign.getTotalRows() + 1);
+                MailMessage mailMessage = row.values() != null ? buildMessage(campaign, row.values(), shared, priority) : null;
+                if (mailMessage == null) {
+                    campaign.setSkippedCount(campaign.getSkippedCount() + 1);
+                    log.debug("群发任务跳过第{}行，任务ID: {}, 原因: {}", row.lineNumber(), campaign.getId(),
+                            row.error() != null ? row.error() : "缺少有效的收件人地址");
+                    continue;
+                }
+
+                // 第一封邮件入队前检查模板能否渲染，避免整个任务的邮件都发送失败
+                if (!templateChecked) {
+                    mailTemplateRenderer.render(campaign.getTemplateName(), mailMessage.getTemplateVariables());
+                    templateChecked = true;
+                }
+
+                batch.add(mailMessage);
+                if (batch.size() >= batchSize) {
+                    if (!enqueue(campaign, batch, reader)) {
+                        finish(campaign, MailCampaign.CampaignStatus.CANCELLED, null);
+                        return;
+                    }
+                }
+            }
+            if (!batch.isEmpty() && !enqueue(campaign, batch, reader)) {
+                finish(campaign, MailCampaign.CampaignStatus.CANCELLED, null);
+                return;
+            }
+            campaign.setBytesRead(campaign.getFileSize());
+            finish(campaign, MailCampaign.CampaignStatus.COMPLETED, null);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("群发任务被中断，任务ID: {}", campaign.getId());
+            finish(campaign, MailCampaign.CampaignStatus.FAILED, "服务关闭，任务中断");
+        } catch (Exception e) {
+            log.error("群发任务执行失败，任务ID: {}", campaign.getId(), e);
+            finish(campaign, MailCampaign.CampaignStatus.FAILED, e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("删除群发收件人文件失败: {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * 入队一批邮件并更新进度
+     *
+     * @return false 表示任务已被取消
+     */
+    private boolean enqueue(MailCampaign campaign, List<MailMessage> batch, CampaignRecipientReader reader)
+            throws InterruptedException {
+        if (!waitForQueueCapacity(campaign)) {
+            return false;
+        }
+        mailQueueService.addToQueueBatch(batch);
+        campaign.setEnqueuedCount(campaign.getEnqueuedCount() + batch.size());
+        campaign.setBytesRead(Math.min(reader.getBytesRead(), campaign.getFileSize()));
+        batch.clear();
+        saveCampaign(campaign);
+        return true;
+    }
+
+    /**
+     * 发送队列积压过多时等待消费，等待期间定期保存进度，避免被其他节点当作已停止的任务
+     *
+     * @return false 表示等待期间任务被取消
+     */
+    private boolean waitForQueueCapacity(MailCampaign campaign) throws InterruptedException {
+        int maxQueueSize = mailProperties.getCampaign().getMaxQueueSize();
+        long heartbeatMillis = Math.max(THROTTLE_SLEEP_MILLIS, mailProperties.getCampaign().getStaleTimeoutMillis() / 3);
+        while (true) {
+            if (isCancelled(campaign.getId())) {
+                return false;
+            }
+            if (maxQueueSize <= 0 || mailQueueService.getQueueStatus().getTotalQueueSize() < maxQueueSize) {
+                return true;
+            }
+            Thread.sleep(THROTTLE_SLEEP_MILLIS);
+            if (Duration.between(campaign.getUpdateTime(), LocalDateTime.now()).toMillis() >= heartbeatMillis) {
+                saveCampaign(campaign);
+            }
+        }
+    }
+
+    /**
+     * 运行中的任务超过 stale-timeout-millis 没有保存进度
+     */
+    private boolean isStale(MailCampaign campaign) {
+        if (campaign.getStatus() != MailCampaign.CampaignStatus.RUNNING) {
+            return false;
+        }
+        LocalDateTime updateTime = campaign.getUpdateTime() != null ? campaign.getUpdateTime() : campaign.getCreateTime();
+        return updateTime != null && Duration.between(updateTime, LocalDateTime.now()).toMillis()
+                > mailProperties.getCampaign().getStaleTimeoutMillis();
+    }
+
+    private MailMessage buildMessage(MailCampaign campaign, Map<String, Object> values, Map<String, Object> shared,
+                                     int priority) {
+        Object to = values.remove("email");
+        if (to == null) {
+            to = values.remove("to");
+        }
+        String address = to != null ? to.toString().trim() : "";
+        if (address.indexOf('@') <= 0) {
+            return null;
+        }
+
+        Map<String, Object> variables = new HashMap<>(shared);
+        variables.putAll(values);
+        variables.putIfAbsent("email", address);
+
+        MailMessage mailMessage = new MailMessage();
+        mailMessage.setId(UUID.randomUUID().toString());
+        mailMessage.setCampaignId(campaign.getId());
+        mailMessage.setFrom(mailProperties.getSender().getFrom());
+        mailMessage.setFromName(mailProperties.getSender().getName());
+        mailMessage.setTo(Arrays.asList(address));
+        mailMessage.setSubject(campaign.getSubject());
+        mailMessage.setTemplateName(campaign.getTemplateName());
+        mailMessage.setTemplateVariables(variables);
+        mailMessage.setIsHtml(true);
+        mailMessage.setPriority(priority);
+        return mailMessage;
+    }
+
+    private void finish(MailCampaign campaign, MailCampaign.CampaignStatus status, String errorMessage) {
+        campaign.setStatus(status);
+        campaign.setErrorMessage(errorMessage);
+        campaign.setFinishTime(LocalDateTime.now());
+        saveCampaign(campaign);
+        redisTemplate.delete(CAMPAIGN_CANCEL_KEY + campaign.getId());
+        log.info("群发任务结束，任务ID: {}, 状态: {}, 总行数: {}, 入队: {}, 跳过: {}", campaign.getId(), status,
+                campaign.getTotalRows(), campaign.getEnqueuedCount(), campaign.getSkippedCount());
+    }
+
+    private boolean isCancelled(String campaignId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(CAMPAIGN_CANCEL_KEY + campaignId));
+    }
+
+    private void saveCampaign(MailCampaign campaign) {
+        campaign.setUpdateTime(LocalDateTime.now());
+        redisTemplate.opsForValue().set(CAMPAIGN_KEY + campaign.getId(), campaign, CAMPAIGN_TTL);
+    }
+
+    /**
+     * 预先创建发送结果计数并设置过期时间，消费者累加计数时不会改变过期时间
+     */
+    private void initStats(String campaignId) {
+        byte[] key = statsKey(campaignId);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSetNX(key, STAT_SENT, ZERO);
+            connection.hashCommands().hSetNX(key, STAT_FAILED, ZERO);
+            connection.keyCommands().expire(key, CAMPAIGN_TTL.getSeconds());
+            return null;
+        });
+    }
+
+    private static byte[] statsKey(String campaignId) {
+        return (AbstractMailQueueService.CAMPAIGN_STATS_KEY + campaignId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long parseCount(List<byte[]> values, int index) {
+        if (values == null || values.size() <= index || values.get(index) == null) {
+            return 0;
+        }
+        return Long.parseLong(new String(values.get(index), StandardCharsets.UTF_8));
+    }
+
+    private String generateCampaignId() {
+        return "CAMPAIGN_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,518 @@
+package com.windcore.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.windcore.model.MailAttachment;
+import com.windcore.model.MailMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 队列邮件的二进制编解码
+ *
+ * 格式：魔数 + 版本，随后是若干字段 [标签][长度][值]，以标签0结束。整数使用变长编码，
+ * 附件内容直接写入原始字节。解码时跳过未知标签，新增字段只需分配新标签，旧数据仍可读取。
+ *
+ * 模板变量支持字符串、数字、布尔、日期时间、列表和Map，其他对象先转换为Map/List再写入。
+ * 日期时间（java.time 类型和 Date）按原类型写入，读出后模板中仍可按日期格式化；
+ * 其他对象中的日期时间属性转换为ISO-8601字符串。
+ *
+ * @author windcore
+ */
+final class MailMessageCodec {
+
+    static final byte MAGIC = (byte) 0xB7;
+    static final byte VERSION = 1;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_ID = 1;
+    private static final int TAG_FROM = 2;
+    private static final int TAG_FROM_NAME = 3;
+    private static final int TAG_TO = 4;
+    private static final int TAG_CC = 5;
+    private static final int TAG_BCC = 6;
+    private static final int TAG_SUBJECT = 7;
+    private static final int TAG_CONTENT = 8;
+    private static final int TAG_IS_HTML = 9;
+    private static final int TAG_TEMPLATE_NAME = 10;
+    private static final int TAG_TEMPLATE_VARIABLES = 11;
+    private static final int TAG_ATTACHMENT = 12;
+    private static final int TAG_PRIORITY = 13;
+    private static final int TAG_STATUS = 14;
+    private static final int TAG_CREATE_TIME = 15;
+    private static final int TAG_SEND_TIME = 16;
+    private static final int TAG_ERROR_MESSAGE = 17;
+    private static final int TAG_RETRY_COUNT = 18;
+    private static final int TAG_MAX_RETRY_COUNT = 19;
+    private static final int TAG_CAMPAIGN_ID = 20;
+
+    private static final int ATTACHMENT_FILE_NAME = 1;
+    private static final int ATTACHMENT_CONTENT_TYPE = 2;
+    private static final int ATTACHMENT_SIZE = 3;
+    private static final int ATTACHMENT_FILE_PATH = 4;
+    private static final int ATTACHMENT_CONTENT = 5;
+    private static final int ATTACHMENT_INLINE = 6;
+    private static final int ATTACHMENT_CONTENT_ID = 7;
+    private static final int ATTACHMENT_HANDLE = 8;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_LONG = 2;
+    private static final byte VALUE_DOUBLE = 3;
+    private static final byte VALUE_TRUE = 4;
+    private static final byte VALUE_FALSE = 5;
+    private static final byte VALUE_LIST = 6;
+    private static final byte VALUE_MAP = 7;
+    private static final byte VALUE_INT = 8;
+    private static final byte VALUE_DECIMAL = 9;
+    private static final byte VALUE_BIG_INTEGER = 10;
+    private static final byte VALUE_TEMPORAL = 11;
+
+    private static final byte TEMPORAL_LOCAL_DATE_TIME = 1;
+    private static final byte TEMPORAL_LOCAL_DATE = 2;
+    private static final byte TEMPORAL_LOCAL_TIME = 3;
+    private static final byte TEMPORAL_INSTANT = 4;
+    private static final byte TEMPORAL_OFFSET_DATE_TIME = 5;
+    private static final byte TEMPORAL_ZONED_DATE_TIME = 6;
+    private static final byte TEMPORAL_DATE = 7;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private MailMessageCodec() {
+    }
+
+    /**
+     * 是否为本编解码器写入的数据
+     */
+    static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= 2 && data[0] == MAGIC;
+    }
+
+    static byte[] encode(MailMessage mailMessage) {
+        Writer out = new Writer(256);
+        out.buffer.write(MAGIC);
+        out.buffer.write(VERSION);
+        out.string(TAG_ID, mailMessage.getId());
+        out.string(TAG_FROM, mailMessage.getFrom());
+        out.string(TAG_FROM_NAME, mailMessage.getFromName());
+        out.strings(TAG_TO, mailMessage.getTo());
+        out.strings(TAG_CC, mailMessage.getCc());
+        out.strings(TAG_BCC, mailMessage.getBcc());
+        out.string(TAG_SUBJECT, mailMessage.getSubject());
+        out.string(TAG_CONTENT, mailMessage.getContent());
+        out.bool(TAG_IS_HTML, mailMessage.getIsHtml());
+        out.string(TAG_TEMPLATE_NAME, mailMessage.getTemplateName());
+        if (mailMessage.getTemplateVariables() != null) {
+            Writer value = new Writer(64);
+            value.value(mailMessage.getTemplateVariables());
+            out.bytes(TAG_TEMPLATE_VARIABLES, value.buffer.toByteArray());
+        }
+        if (mailMessage.getAttachments() != null) {
+            for (MailAttachment attachment : mailMessage.getAttachments()) {
+                out.bytes(TAG_ATTACHMENT, encodeAttachment(attachment));
+            }
+        }
+        out.number(TAG_PRIORITY, mailMessage.getPriority());
+        out.string(TAG_STATUS, mailMessage.getStatus() != null ? mailMessage.getStatus().name() : null);
+        out.time(TAG_CREATE_TIME, mailMessage.getCreateTime());
+        out.time(TAG_SEND_TIME, mailMessage.getSendTime());
+        out.string(TAG_ERROR_MESSAGE, mailMessage.getErrorMessage());
+        out.number(TAG_RETRY_COUNT, mailMessage.getRetryCount());
+        out.number(TAG_MAX_RETRY_COUNT, mailMessage.getMaxRetryCount());
+        out.string(TAG_CAMPAIGN_ID, mailMessage.getCampaignId());
+        out.varint(TAG_END);
+        return out.buffer.toByteArray();
+    }
+
+    static MailMessage decode(byte[] data) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("不是有效的邮件数据");
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data, 2, data.length - 2);
+            MailMessage mailMessage = new MailMessage();
+            // 字段缺失时保持未设置（null），与写入时一致
+            mailMessage.setIsHtml(null);
+            mailMessage.setPriority(null);
+            mailMessage.setStatus(null);
+            mailMessage.setRetryCount(null);
+            mailMessage.setMaxRetryCount(null);
+            int tag;
+            while ((tag = readVarint(in)) != TAG_END) {
+                ByteBuffer field = slice(in, readVarint(in));
+                switch (tag) {
+                    case TAG_ID -> mailMessage.setId(readString(field));
+                    case TAG_FROM -> mailMessage.setFrom(readString(field));
+                    case TAG_FROM_NAME -> mailMessage.setFromName(readString(field));
+                    case TAG_TO -> mailMessage.setTo(readStrings(field));
+                    case TAG_CC -> mailMessage.setCc(readStrings(field));
+                    case TAG_BCC -> mailMessage.setBcc(readStrings(field));
+                    case TAG_SUBJECT -> mailMessage.setSubject(readString(field));
+                    case TAG_CONTENT -> mailMessage.setContent(readString(field));
+                    case TAG_IS_HTML -> mailMessage.setIsHtml(field.get() != 0);
+                    case TAG_TEMPLATE_NAME -> mailMessage.setTemplateName(readString(field));
+                    case TAG_TEMPLATE_VARIABLES -> mailMessage.setTemplateVariables(castMap(readValue(field)));
+                    case TAG_ATTACHMENT -> {
+                        if (mailMessage.getAttachments() == null) {
+                            mailMessage.setAttachments(new ArrayList<>());
+                        }
+                        mailMessage.getAttachments().add(decodeAttachment(field));
+                    }
+                    case TAG_PRIORITY -> mailMessage.setPriority((int) readVarlong(field));
+                    case TAG_STATUS -> mailMessage.setStatus(MailMessage.MailStatus.valueOf(readString(field)));
+                    case TAG_CREATE_TIME -> mailMessage.setCreateTime(readTime(field));
+                    case TAG_SEND_TIME -> mailMessage.setSendTime(readTime(field));
+                    case TAG_ERROR_MESSAGE -> mailMessage.setErrorMessage(readString(field));
+                    case TAG_RETRY_COUNT -> mailMessage.setRetryCount((int) readVarlong(field));
+                    case TAG_MAX_RETRY_COUNT -> mailMessage.setMaxRetryCount((int) readVarlong(field));
+                    case TAG_CAMPAIGN_ID -> mailMessage.setCampaignId(readString(field));
+                    default -> {
+                        // 新版本写入的字段，忽略
+                    }
+                }
+            }
+            return mailMessage;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("邮件数据损坏", e);
+        }
+    }
+
+    private static byte[] encodeAttachment(MailAttachment attachment) {
+        Writer out = new Writer(64);
+        out.string(ATTACHMENT_FILE_NAME, attachment.getFileName());
+        out.string(ATTACHMENT_CONTENT_TYPE, attachment.getContentType());
+        out.number(ATTACHMENT_SIZE, attachment.getSize());
+        out.string(ATTACHMENT_FILE_PATH, attachment.getFilePath());
+        out.bytes(ATTACHMENT_CONTENT, attachment.getContent());
+        out.bool(ATTACHMENT_INLINE, attachment.getInline());
+        out.string(ATTACHMENT_CONTENT_ID, attachment.getContentId());
+        out.string(ATTACHMENT_HANDLE, attachment.getHandle());
+        out.varint(TAG_END);
+        return out.buffer.toByteArray();
+    }
+
+    private static MailAttachment decodeAttachment(ByteBuffer in) {
+        MailAttachment attachment = new MailAttachment();
+        attachment.setInline(null);
+        int tag;
+        while ((tag = readVarint(in)) != TAG_END) {
+            ByteBuffer field = slice(in, readVarint(in));
+            switch (tag) {
+                case ATTACHMENT_FILE_NAME -> attachment.setFileName(readString(field));
+                case ATTACHMENT_CONTENT_TYPE -> attachment.setContentType(readString(field));
+                case ATTACHMENT_SIZE -> attachment.setSize(readVarlong(field));
+                case ATTACHMENT_FILE_PATH -> attachment.setFilePath(readString(field));
+                case ATTACHMENT_CONTENT -> {
+                    byte[] content = new byte[field.remaining()];
+                    field.get(content);
+                    attachment.setContent(content);
+                }
+                case ATTACHMENT_INLINE -> attachment.setInline(field.get() != 0);
+                case ATTACHMENT_CONTENT_ID -> attachment.setContentId(readString(field));
+                case ATTACHMENT_HANDLE -> attachment.setHandle(readString(field));
+                default -> {
+                    // 新版本写入的字段，忽略
+                }
+            }
+        }
+        return attachment;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer field = in.slice();
+        field.limit(length);
+        in.position(in.position() + length);
+        return field;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer in) {
+        int count = readVarint(in);
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(slice(in, readVarint(in))));
+        }
+        return values;
+    }
+
+    private static LocalDateTime readTime(ByteBuffer in) {
+        long epochSecond = zigzagDecode(readVarlong(in));
+        int nano = readVarint(in);
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    private static Object readValue(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return readString(slice(in, readVarint(in)));
+            case VALUE_INT:
+                return (int) zigzagDecode(readVarlong(in));
+            case VALUE_LONG:
+                return zigzagDecode(readVarlong(in));
+            case VALUE_DOUBLE:
+                return in.getDouble();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_DECIMAL:
+                return new BigDecimal(readString(slice(in, readVarint(in))));
+            case VALUE_BIG_INTEGER:
+                return new BigInteger(readString(slice(in, readVarint(in))));
+            case VALUE_TEMPORAL:
+                return readTemporal(in.get(), readString(slice(in, readVarint(in))));
+            case VALUE_LIST: {
+                int count = readVarint(in);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case VALUE_MAP: {
+                int count = readVarint(in);
+                Map<String, Object> map = new LinkedHashMap<>(count * 4 / 3 + 1);
+                for (int i = 0; i < count; i++) {
+                    String key = readString(slice(in, readVarint(in)));
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("未知的模板变量类型: " + type);
+        }
+    }
+
+    private static Object readTemporal(byte kind, String text) {
+        return switch (kind) {
+            case TEMPORAL_LOCAL_DATE_TIME -> LocalDateTime.parse(text);
+            case TEMPORAL_LOCAL_DATE -> LocalDate.parse(text);
+            case TEMPORAL_LOCAL_TIME -> LocalTime.parse(text);
+            case TEMPORAL_INSTANT -> Instant.parse(text);
+            case TEMPORAL_OFFSET_DATE_TIME -> OffsetDateTime.parse(text);
+            case TEMPORAL_ZONED_DATE_TIME -> ZonedDateTime.parse(text);
+            case TEMPORAL_DATE -> Date.from(Instant.parse(text));
+            default -> throw new IllegalArgumentException("未知的日期时间类型: " + kind);
+        };
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        long value = readVarlong(in);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("变长整数溢出");
+        }
+        return (int) value;
+    }
+
+    private static long readVarlong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数溢出");
+    }
+
+    private static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 字段写入器，值为null的字段不写入
+     */
+    private static final class Writer {
+
+        final ByteArrayOutputStream buffer;
+
+        Writer(int initialSize) {
+            this.buffer = new ByteArrayOutputStream(initialSize);
+        }
+
+        void string(int tag, String value) {
+            if (value != null) {
+                bytes(tag, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void strings(int tag, Collection<String> values) {
+            if (values == null) {
+                return;
+            }
+            Writer field = new Writer(32);
+            field.varint(values.size());
+            for (String value : values) {
+                byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+                field.varint(bytes.length);
+                field.buffer.writeBytes(bytes);
+            }
+            bytes(tag, field.buffer.toByteArray());
+        }
+
+        void bytes(int tag, byte[] value) {
+            if (value == null) {
+                return;
+            }
+            varint(tag);
+            varint(value.length);
+            buffer.writeBytes(value);
+        }
+
+        void bool(int tag, Boolean value) {
+            if (value != null) {
+                bytes(tag, new byte[]{(byte) (value ? 1 : 0)});
+            }
+        }
+
+        void number(int tag, Number value) {
+            if (value != null) {
+                Writer field = new Writer(10);
+                field.varint(value.longValue());
+                bytes(tag, field.buffer.toByteArray());
+            }
+        }
+
+        void time(int tag, LocalDateTime value) {
+            if (value != null) {
+                Writer field = new Writer(16);
+                field.varint(zigzagEncode(value.toEpochSecond(ZoneOffset.UTC)));
+                field.varint(value.getNano());
+                bytes(tag, field.buffer.toByteArray());
+            }
+        }
+
+        void value(Object value) {
+            if (value == null) {
+                buffer.write(VALUE_NULL);
+            } else if (value instanceof String || value instanceof Character || value instanceof Enum) {
+                buffer.write(VALUE_STRING);
+                lengthPrefixed(value.toString());
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                buffer.write(VALUE_INT);
+                varint(zigzagEncode(((Number) value).longValue()));
+            } else if (value instanceof Long) {
+                buffer.write(VALUE_LONG);
+                varint(zigzagEncode((Long) value));
+            } else if (value instanceof Double || value instanceof Float) {
+                buffer.write(VALUE_DOUBLE);
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    buffer.write((int) (bits >>> shift));
+                }
+            } else if (value instanceof BigDecimal) {
+                buffer.write(VALUE_DECIMAL);
+                lengthPrefixed(value.toString());
+            } else if (value instanceof BigInteger) {
+                buffer.write(VALUE_BIG_INTEGER);
+                lengthPrefixed(value.toString());
+            } else if (value instanceof Boolean) {
+                buffer.write((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+            } else if (temporalKind(value) != 0) {
+                buffer.write(VALUE_TEMPORAL);
+                buffer.write(temporalKind(value));
+                // java.sql.Date 等子类不支持 toInstant()，统一按毫秒转换
+                lengthPrefixed(value instanceof Date date ? Instant.ofEpochMilli(date.getTime()).toString() : value.toString());
+            } else if (value instanceof Collection<?> collection) {
+                buffer.write(VALUE_LIST);
+                varint(collection.size());
+                for (Object element : collection) {
+                    value(element);
+                }
+            } else if (value instanceof Object[] array) {
+                value(Arrays.asList(array));
+            } else if (value instanceof Map<?, ?> map) {
+                buffer.write(VALUE_MAP);
+                varint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    lengthPrefixed(String.valueOf(entry.getKey()));
+                    value(entry.getValue());
+                }
+            } else {
+                // 其他对象按属性转换为Map/List，模板中仍可按属性名访问
+                Object converted = OBJECT_MAPPER.convertValue(value, Object.class);
+                if (converted == null || converted.getClass() == value.getClass()) {
+                    buffer.write(VALUE_STRING);
+                    lengthPrefixed(String.valueOf(value));
+                } else {
+                    value(converted);
+                }
+            }
+        }
+
+        private static byte temporalKind(Object value) {
+            if (value instanceof LocalDateTime) {
+                return TEMPORAL_LOCAL_DATE_TIME;
+            } else if (value instanceof LocalDate) {
+                return TEMPORAL_LOCAL_DATE;
+            } else if (value instanceof LocalTime) {
+                return TEMPORAL_LOCAL_TIME;
+            } else if (value instanceof Instant) {
+                return TEMPORAL_INSTANT;
+            } else if (value instanceof OffsetDateTime) {
+                return TEMPORAL_OFFSET_DATE_TIME;
+            } else if (value instanceof ZonedDateTime) {
+                return TEMPORAL_ZONED_DATE_TIME;
+            } else if (value instanceof Date) {
+                return TEMPORAL_DATE;
+            }
+            return 0;
+        }
+
+        void lengthPrefixed(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            buffer.writeBytes(bytes);
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.write((int) value);
+        }
+    }
+}
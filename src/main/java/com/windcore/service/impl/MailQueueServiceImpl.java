@@ -0,0 +1,313 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisListCommands.Direction;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于 Redis List 的邮件队列服务实现
+ *
+ * 每个优先级一个列表 mail:queue:{priority}，消费者通过 Lua 脚本把邮件从队列移入自己的处理列表
+ * mail:processing:{consumerId}，并在同一个脚本中登记可见性截止时间，处理列表中的每封邮件都有截止时间，
+ * 消费者崩溃后即使不再以相同的ID启动，邮件也会被超时回收。默认启用（mail.queue.type=list）。
+ *
+ * 截止时间集合 mail:processing:deadlines 的成员为 "{consumerId}|{队列条目}" 的原始字节，
+ * 回收时可以直接定位处理列表和条目，不需要读取整个处理列表。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "mail.queue", name = "type", havingValue = "list", matchIfMissing = true)
+public class MailQueueServiceImpl extends AbstractMailQueueService {
+
+    private static final String MAIL_QUEUE_KEY = "mail:queue";
+    private static final String MAIL_PROCESSING_KEY = "mail:processing";
+    private static final String MAIL_PROCESSING_DEADLINE_KEY = "mail:processing:deadlines";
+
+    /**
+     * 按优先级从高到低排列的队列键（键序列化器为UTF-8字符串）
+     */
+    private static final byte[][] PRIORITY_QUEUE_KEYS = new byte[5][];
+
+    static {
+        for (int priority = 1; priority <= 5; priority++) {
+            PRIORITY_QUEUE_KEYS[priority - 1] = rawKey(getQueueKeyByPriority(priority));
+        }
+    }
+
+    /**
+     * 依次尝试各优先级队列，把第一封邮件移入处理列表并登记截止时间
+     * KEYS: 处理列表, 截止时间集合, 按顺序排列的优先级队列；ARGV: 截止时间成员前缀, 截止时间
+     * 返回 {队列在KEYS中的序号(从1开始), 队列条目}，全部为空时返回空列表
+     */
+    private static final byte[] MOVE_SCRIPT = (
+            "for i = 3, #KEYS do " +
+            "  local entry = redis.call('LMOVE', KEYS[i], KEYS[1], 'RIGHT', 'LEFT') " +
+            "  if entry then " +
+            "    redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1] .. entry) " +
+            "    return {i - 2, entry} " +
+            "  end " +
+            "end " +
+            "return {}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 将处理中的邮件原子地放回队列：仅当它仍在处理列表中时才放回，避免与确认并发时重复投递
+     * KEYS: 处理列表, 目标队列, 截止时间集合；ARGV: 队列条目, 截止时间成员
+     */
+    private static final byte[] REQUEUE_SCRIPT = (
+            "local removed = redis.call('LREM', KEYS[1], 1, ARGV[1]) " +
+            "if removed > 0 then redis.call('RPUSH', KEYS[2], ARGV[1]) end " +
+            "redis.call('ZREM', KEYS[3], ARGV[2]) " +
+            "return removed").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 确认邮件：从处理列表删除并清除截止时间
+     * KEYS: 处理列表, 截止时间集合；ARGV: 队列条目, 截止时间成员
+     */
+    private static final byte[] ACK_SCRIPT = (
+            "redis.call('ZREM', KEYS[2], ARGV[2]) " +
+            "return redis.call('LREM', KEYS[1], 1, ARGV[1])").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte MEMBER_SEPARATOR = '|';
+
+    public MailQueueServiceImpl(RedisTemplate<String, Object> redisTemplate, MailService mailService,
+                                MailProperties mailProperties, MailAttachmentSpool mailAttachmentSpool,
+                                MailRateLimiter mailRateLimiter, SmtpCircuitBreaker smtpCircuitBreaker,
+                                MailEnqueueSpool mailEnqueueSpool) {
+        super(redisTemplate, mailService, mailProperties, mailAttachmentSpool, mailRateLimiter, smtpCircuitBreaker,
+                mailEnqueueSpool);
+    }
+
+    @Override
+    protected void enqueue(RedisConnection connection, int priority, byte[] entry) {
+        // 添加到Redis队列
+        connection.listCommands().lPush(PRIORITY_QUEUE_KEYS[priority - 1], entry);
+    }
+
+    /**
+     * 从队列中获取一封邮件并发送（可靠消费）
+     *
+     * 邮件由 {@link #MOVE_SCRIPT} 原子地从优先级队列移入消费者自己的处理列表并登记可见性截止时间，
+     * 处理完成（成功或已转入重试/失败队列）后才从处理列表中确认删除。
+     *
+     * 按 {@link PriorityScheduler} 给出的顺序在一次脚本调用中依次尝试各队列；全部为空时在 blockPriority
+     * 对应的队列上执行 BLMOVE 阻塞等待。BLMOVE 的源和目标是同一个队列、弹出和放回都在右端，
+     * 不改变队列内容，只用来等待新邮件，醒来后再通过脚本取出，保证取出和登记截止时间始终是原子的。
+     * 其他队列的新邮件最迟在一个阻塞周期后被取到。
+     */
+    @Override
+    public boolean pollAndProcess(String consumerId, int blockPriority, int timeoutSeconds) {
+        byte[] processingKey = rawKey(getProcessingKey(consumerId));
+        int[] order = priorityScheduler.nextOrder();
+        byte[] raw = moveToProcessing(consumerId, processingKey, order);
+        if (raw == null) {
+            byte[] blockKey = PRIORITY_QUEUE_KEYS[blockPriority - 1];
+            byte[] woken = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.listCommands()
+                    .bLMove(blockKey, blockKey, Direction.RIGHT, Direction.RIGHT, timeoutSeconds));
+            if (woken == null) {
+                return false;
+            }
+            raw = moveToProcessing(consumerId, processingKey, new int[]{blockPriority});
+            if (raw == null) {
+                // 已被其他消费者取走
+                return false;
+            }
+        }
+        byte[] member = deadlineMember(consumerId, raw);
+
+        MailMessage mailMessage = loadEntry(raw);
+        if (mailMessage == null) {
+            acknowledge(processingKey, raw, member);
+            pushFailed(raw);
+            return true;
+        }
+
+        processMailMessage(mailMessage);
+
+        // 确认：从处理列表移除
+        acknowledge(processingKey, raw, member);
+        return true;
+    }
+
+    /**
+     * 按给定顺序取出一封邮件并登记截止时间，全部为空时返回null
+     */
+    private byte[] moveToProcessing(String consumerId, byte[] processingKey, int[] order) {
+        byte[][] keysAndArgs = new byte[order.length + 4][];
+        keysAndArgs[0] = processingKey;
+        keysAndArgs[1] = rawKey(MAIL_PROCESSING_DEADLINE_KEY);
+        for (int i = 0; i < order.length; i++) {
+            keysAndArgs[i + 2] = PRIORITY_QUEUE_KEYS[order[i] - 1];
+        }
+        keysAndArgs[order.length + 2] = rawKey(consumerId + (char) MEMBER_SEPARATOR);
+        long deadline = System.currentTimeMillis() + mailProperties.getQueue().getVisibilityTimeoutMillis();
+        keysAndArgs[order.length + 3] = rawKey(String.valueOf(deadline));
+        List<Object> result = redisTemplate.execute((RedisCallback<List<Object>>) connection -> connection
+                .scriptingCommands().eval(MOVE_SCRIPT, ReturnType.MULTI, order.length + 2, keysAndArgs));
+
+        // 取到邮件的队列和排在它之前的空队列都记为已访问，避免空队列因老化一直排在前面
+        boolean found = result != null && !result.isEmpty();
+        int visited = found ? ((Long) result.get(0)).intValue() : order.length;
+        for (int i = 0; i < visited; i++) {
+            priorityScheduler.visited(order[i]);
+        }
+        return found ? (byte[]) result.get(1) : null;
+    }
+
+    private Long acknowledge(byte[] processingKey, byte[] raw, byte[] member) {
+        byte[] deadlineKey = rawKey(MAIL_PROCESSING_DEADLINE_KEY);
+        return redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                .eval(ACK_SCRIPT, ReturnType.INTEGER, 2, processingKey, deadlineKey, raw, member));
+    }
+
+    /**
+     * 将消费者处理列表中的全部邮件放回队列
+     */
+    @Override
+    public int recoverProcessing(String consumerId) {
+        byte[] processingKey = rawKey(getProcessingKey(consumerId));
+        List<byte[]> raws = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange(processingKey, 0, -1));
+        int recovered = 0;
+        if (raws != null) {
+            for (byte[] raw : raws) {
+                recovered += requeue(processingKey, raw, deadlineMember(consumerId, raw));
+            }
+        }
+        if (recovered > 0) {
+            log.warn("已恢复消费者未确认的邮件，消费者: {}, 数量: {}", consumerId, recovered);
+        }
+        return recovered;
+    }
+
+    /**
+     * 回收可见性超时的邮件：发送超时或消费者已退出，放回原优先级队列
+     */
+    @Scheduled(fixedDelayString = "${mail.queue.reaper-interval-millis:10000}")
+    public void requeueExpiredMessages() {
+        try {
+            byte[] deadlineKey = rawKey(MAIL_PROCESSING_DEADLINE_KEY);
+            long now = System.currentTimeMillis();
+            Set<byte[]> expired = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> connection
+                    .zSetCommands().zRangeByScore(deadlineKey, 0, now, 0, 100));
+            if (expired == null || expired.isEmpty()) {
+                return;
+            }
+
+            int requeued = 0;
+            for (byte[] member : expired) {
+                requeued += requeueExpired(member);
+            }
+            log.info("可见性超时回收完成，超时: {}, 放回队列: {}", expired.size(), requeued);
+
+        } catch (Exception e) {
+            log.error("回收超时邮件时发生错误", e);
+        }
+    }
+
+    @Override
+    protected long queueSize(int priority) {
+        Long size = redisTemplate.opsForList().size(getQueueKeyByPriority(priority));
+        return size != null ? size : 0;
+    }
+
+    @Override
+    protected long processingCount() {
+        Long size = redisTemplate.opsForZSet().zCard(MAIL_PROCESSING_DEADLINE_KEY);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * 按截止时间成员放回邮件，成员中已包含消费者ID和队列条目，不需要扫描处理列表
+     */
+    private int requeueExpired(byte[] member) {
+        byte[] deadlineKey = rawKey(MAIL_PROCESSING_DEADLINE_KEY);
+        // 升级前的成员是JSON字符串 "consumerId|mailId"，对应的队列条目即邮件ID
+        byte[] value = member.length > 1 && member[0] == '"' && member[member.length - 1] == '"'
+                ? Arrays.copyOfRange(member, 1, member.length - 1) : member;
+        int separator = indexOf(value, MEMBER_SEPARATOR);
+        if (separator < 0) {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.zSetCommands().zRem(deadlineKey, member));
+            return 0;
+        }
+        String consumerId = new String(value, 0, separator, StandardCharsets.UTF_8);
+        byte[] raw = Arrays.copyOfRange(value, separator + 1, value.length);
+        byte[] processingKey = rawKey(getProcessingKey(consumerId));
+        int requeued = requeue(processingKey, raw, member);
+        if (requeued > 0) {
+            log.warn("邮件处理超时，放回队列，邮件ID: {}, 消费者: {}", entryMailId(raw), consumerId);
+        }
+        return requeued;
+    }
+
+    /**
+     * 放回邮件并清除截止时间，邮件已被确认（不在处理列表中）时只清除截止时间
+     */
+    private int requeue(byte[] processingKey, byte[] raw, byte[] member) {
+        MailMessage mailMessage = loadEntry(raw);
+        if (mailMessage == null) {
+            Long removed = acknowledge(processingKey, raw, member);
+            if (removed != null && removed > 0) {
+                pushFailed(raw);
+            }
+            return 0;
+        }
+        byte[] queueKey = rawKey(getQueueKeyByPriority(normalizePriority(mailMessage.getPriority())));
+        byte[] deadlineKey = rawKey(MAIL_PROCESSING_DEADLINE_KEY);
+        Long removed = redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                .eval(REQUEUE_SCRIPT, ReturnType.INTEGER, 3, processingKey, queueKey, deadlineKey, raw, member));
+        return removed != null ? removed.intValue() : 0;
+    }
+
+    /**
+     * 根据优先级获取队列键
+     */
+    private static String getQueueKeyByPriority(int priority) {
+        return MAIL_QUEUE_KEY + ":" + priority;
+    }
+
+    /**
+     * 获取消费者的处理列表键
+     */
+    private static String getProcessingKey(String consumerId) {
+        return MAIL_PROCESSING_KEY + ":" + consumerId;
+    }
+
+    /**
+     * 截止时间成员："{consumerId}|{队列条目}"
+     */
+    private static byte[] deadlineMember(String consumerId, byte[] raw) {
+        byte[] prefix = rawKey(consumerId + (char) MEMBER_SEPARATOR);
+        byte[] member = Arrays.copyOf(prefix, prefix.length + raw.length);
+        System.arraycopy(raw, 0, member, prefix.length, raw.length);
+        return member;
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
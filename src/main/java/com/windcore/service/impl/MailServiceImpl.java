@@ -1,13 +1,20 @@
 package com.windcore.service.impl;
 
 import com.windcore.config.MailProperties;
+import com.windcore.dto.MailHistoryCursor;
 import com.windcore.model.MailAttachment;
 import com.windcore.model.MailMessage;
+import com.windcore.model.MailStatusRecord;
+import com.windcore.service.MailAttachmentSpool;
 import com.windcore.service.MailService;
-import lombok.RequiredArgsConstructor;
+import com.windcore.service.MailStatusStore;
+import com.windcore.service.MailTemplateRenderer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -15,17 +22,22 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
+import jakarta.mail.Address;
+import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 邮件服务实现类
@@ -34,17 +46,25 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MailServiceImpl implements MailService {
 
     private final JavaMailSender javaMailSender;
-    private final TemplateEngine templateEngine;
+    private final MailTemplateRenderer mailTemplateRenderer;
     private final MailProperties mailProperties;
+    private final Executor mailBatchExecutor;
+    private final MailAttachmentSpool mailAttachmentSpool;
+    private final MailStatusStore mailStatusStore;
 
-    /**
-     * 邮件存储（实际项目中应使用数据库）
-     */
-    private final Map<String, MailMessage> mailStore = new ConcurrentHashMap<>();
+    public MailServiceImpl(JavaMailSender javaMailSender, MailTemplateRenderer mailTemplateRenderer,
+                           MailProperties mailProperties, @Qualifier("mailBatchExecutor") Executor mailBatchExecutor,
+                           MailAttachmentSpool mailAttachmentSpool, MailStatusStore mailStatusStore) {
+        this.javaMailSender = javaMailSender;
+        this.mailTemplateRenderer = mailTemplateRenderer;
+        this.mailProperties = mailProperties;
+        this.mailBatchExecutor = mailBatchExecutor;
+        this.mailAttachmentSpool = mailAttachmentSpool;
+        this.mailStatusStore = mailStatusStore;
+    }
 
     @Override
     public String sendSimpleMail(String to, String subject, String content) {
@@ -113,11 +133,9 @@ public class MailServiceImpl implements MailService {
     @Override
     public String sendMail(MailMessage mailMessage) {
         try {
-            // 保存邮件信息
-            mailStore.put(mailMessage.getId(), mailMessage);
-            
             // 更新状态为发送中
             mailMessage.setStatus(MailMessage.MailStatus.SENDING);
+            mailStatusStore.update(mailMessage);
             
             if (mailMessage.getIsHtml() || StringUtils.hasText(mailMessage.getTemplateName())) {
                 sendMimeMessage(mailMessage);
@@ -128,6 +146,7 @@ public class MailServiceImpl implements MailService {
             // 更新状态为发送成功
             mailMessage.setStatus(MailMessage.MailStatus.SUCCESS);
             mailMessage.setSendTime(LocalDateTime.now());
+            mailStatusStore.update(mailMessage);
             
             log.info("邮件发送成功，邮件ID: {}, 收件人: {}", mailMessage.getId(), mailMessage.getTo());
             return mailMessage.getId();
@@ -135,15 +154,7 @@ public class MailServiceImpl implements MailService {
         } catch (Exception e) {
             log.error("邮件发送失败，邮件ID: {}, 错误信息: {}", mailMessage.getId(), e.getMessage(), e);
             
-            // 更新状态为发送失败
-            mailMessage.setStatus(MailMessage.MailStatus.FAILED);
-            mailMessage.setErrorMessage(e.getMessage());
-            
-            // 如果重试次数未达到上限，标记为重试
-            if (mailMessage.getRetryCount() < mailMessage.getMaxRetryCount()) {
-                mailMessage.setRetryCount(mailMessage.getRetryCount() + 1);
-                mailMessage.setStatus(MailMessage.MailStatus.RETRY);
-            }
+            markFailed(mailMessage, e);
             
             throw new RuntimeException("邮件发送失败: " + e.getMessage(), e);
         }
@@ -162,18 +173,289 @@ public class MailServiceImpl implements MailService {
 
     @Override
     public List<String> sendBatchMail(List<MailMessage> mailMessages) {
-        List<String> results = new ArrayList<>();
-        for (MailMessage mailMessage : mailMessages) {
+        if (CollectionUtils.isEmpty(mailMessages)) {
+            return new ArrayList<>();
+        }
+        
+        // 先构建全部MIME邮件（内容相同的邮件可合并为一封），构建失败的邮件直接标记失败
+        List<MimeMessage> mimeMessages = new ArrayList<>(mailMessages.size());
+        Map<MimeMessage, List<MailMessage>> owners = new IdentityHashMap<>();
+        int groupedCount = 0;
+        for (List<MailMessage> group : groupIdentical(mailMessages)) {
+            for (MailMessage mailMessage : group) {
+                mailMessage.setStatus(MailMessage.MailStatus.SENDING);
+                mailStatusStore.update(mailMessage);
+            }
             try {
-                String mailId = sendMail(mailMessage);
-                results.add(mailId);
+                MimeMessage mimeMessage = group.size() == 1 ? buildMimeMessage(group.get(0)) : buildGroupMessage(group);
+                mimeMessages.add(mimeMessage);
+                owners.put(mimeMessage, group);
+                groupedCount += group.size() > 1 ? group.size() : 0;
             } catch (Exception e) {
-                log.error("批量发送邮件失败，邮件ID: {}", mailMessage.getId(), e);
+                for (MailMessage mailMessage : group) {
+                    log.error("构建邮件失败，邮件ID: {}", mailMessage.getId(), e);
+                    markBatchFailed(mailMessage, e);
+                }
+            }
+        }
+        if (groupedCount > 0) {
+            log.info("批量邮件合并发送，合并邮件数: {}, 实际发送邮件数: {}", groupedCount, mimeMessages.size());
+        }
+        
+        // 按连接分组：每组在一个SMTP连接上连续发送，多组并行；
+        // 发送线程池已满时不在请求线程中发送，未能提交的组标记失败，一组都没有提交时抛出拒绝异常
+        int chunkSize = Math.max(1, mailProperties.getBatch().getChunkSize());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        RejectedExecutionException rejected = null;
+        for (int from = 0; from < mimeMessages.size(); from += chunkSize) {
+            List<MimeMessage> chunk = mimeMessages.subList(from, Math.min(from + chunkSize, mimeMessages.size()));
+            if (rejected == null) {
+                try {
+                    futures.add(CompletableFuture.runAsync(() -> sendChunk(chunk, owners), mailBatchExecutor));
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    log.warn("批量发送线程池已满，剩余邮件不再发送，剩余数: {}", mimeMessages.size() - from);
+                    rejected = e;
+                }
+            }
+            for (MimeMessage mimeMessage : chunk) {
+                for (MailMessage mailMessage : owners.get(mimeMessage)) {
+                    markBatchFailed(mailMessage, rejected);
+                }
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        if (rejected != null && futures.isEmpty()) {
+            throw rejected;
+        }
+        
+        List<String> results = new ArrayList<>(mailMessages.size());
+        int successCount = 0;
+        for (MailMessage mailMessage : mailMessages) {
+            if (mailMessage.getStatus() == MailMessage.MailStatus.SUCCESS) {
+                results.add(mailMessage.getId());
+                successCount++;
+            } else {
                 results.add(null);
             }
         }
+        log.info("批量邮件发送完成，总数: {}, 成功: {}, 失败: {}",
+                mailMessages.size(), successCount, mailMessages.size() - successCount);
         return results;
     }
+    
+    /**
+     * 在同一个SMTP连接上发送一组邮件，并按邮件更新发送结果
+     *
+     * 合并发送的邮件因部分收件人被拒收（{@link SendFailedException} 带有无效地址）而整封退回时，
+     * 被拒收的收件人标记失败，其余收件人改为单独发送，避免一个无效地址影响同组的其他收件人；
+     * 其他原因（连接断开、发件人被拒、内容被拒等）与收件人无关，整组作为一封邮件标记失败，不拆开重发。
+     */
+    private void sendChunk(List<MimeMessage> chunk, Map<MimeMessage, List<MailMessage>> owners) {
+        Map<Object, Exception> failedMessages = Collections.emptyMap();
+        try {
+            javaMailSender.send(chunk.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            failedMessages = e.getFailedMessages();
+            if (failedMessages.isEmpty()) {
+                failedMessages = failAll(chunk, e);
+            }
+        } catch (Exception e) {
+            failedMessages = failAll(chunk, e);
+        }
+        
+        LocalDateTime sendTime = LocalDateTime.now();
+        List<MailMessage> ungrouped = new ArrayList<>();
+        for (MimeMessage mimeMessage : chunk) {
+            List<MailMessage> group = owners.get(mimeMessage);
+            Exception error = failedMessages.get(mimeMessage);
+            if (error == null) {
+                for (MailMessage mailMessage : group) {
+                    mailMessage.setStatus(MailMessage.MailStatus.SUCCESS);
+                    mailMessage.setSendTime(sendTime);
+                    mailStatusStore.update(mailMessage);
+                }
+            } else if (group.size() > 1) {
+                Set<String> rejected = rejectedRecipients(error);
+                if (rejected.isEmpty()) {
+                    log.error("合并发送的邮件失败，收件人数: {}, 错误信息: {}", group.size(), error.getMessage());
+                    for (MailMessage mailMessage : group) {
+                        markBatchFailed(mailMessage, error);
+                    }
+                    continue;
+                }
+                log.warn("合并发送的邮件有收件人被拒收，其余收件人改为单独发送，收件人数: {}, 拒收数: {}",
+                        group.size(), rejected.size());
+                for (MailMessage mailMessage : group) {
+                    if (rejected.contains(normalizeAddress(mailMessage.getTo().get(0)))) {
+                        markBatchFailed(mailMessage, error);
+                    } else {
+                        ungrouped.add(mailMessage);
+                    }
+                }
+            } else {
+                MailMessage mailMessage = group.get(0);
+                log.error("批量发送邮件失败，邮件ID: {}, 错误信息: {}", mailMessage.getId(), error.getMessage());
+                markBatchFailed(mailMessage, error);
+            }
+        }
+        
+        if (!ungrouped.isEmpty()) {
+            List<MimeMessage> single = new ArrayList<>(ungrouped.size());
+            Map<MimeMessage, List<MailMessage>> singleOwners = new IdentityHashMap<>();
+            for (MailMessage mailMessage : ungrouped) {
+                try {
+                    MimeMessage mimeMessage = buildMimeMessage(mailMessage);
+                    single.add(mimeMessage);
+                    singleOwners.put(mimeMessage, Collections.singletonList(mailMessage));
+                } catch (Exception e) {
+                    log.error("构建邮件失败，邮件ID: {}", mailMessage.getId(), e);
+                    markBatchFailed(mailMessage, e);
+                }
+            }
+            if (!single.isEmpty()) {
+                sendChunk(single, singleOwners);
+            }
+        }
+    }
+    
+    /**
+     * 发送异常中被服务器拒收的收件人地址（小写），异常与具体收件人无关时返回空集合
+     */
+    private static Set<String> rejectedRecipients(Exception error) {
+        Set<String> rejected = new HashSet<>();
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SendFailedException sendFailed && sendFailed.getInvalidAddresses() != null) {
+                for (Address address : sendFailed.getInvalidAddresses()) {
+                    rejected.add(address instanceof InternetAddress internetAddress
+                            ? internetAddress.getAddress().toLowerCase(Locale.ROOT)
+                            : normalizeAddress(address.toString()));
+                }
+            }
+        }
+        return rejected;
+    }
+
+    private static String normalizeAddress(String address) {
+        try {
+            return new InternetAddress(address).getAddress().toLowerCase(Locale.ROOT);
+        } catch (AddressException e) {
+            return address.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static Map<Object, Exception> failAll(List<MimeMessage> chunk, Exception e) {
+        Map<Object, Exception> failedMessages = new IdentityHashMap<>();
+        for (MimeMessage mimeMessage : chunk) {
+            failedMessages.put(mimeMessage, e);
+        }
+        return failedMessages;
+    }
+    
+    /**
+     * 将内容相同、只有收件人不同的邮件分为一组，每组合并为一封密送邮件
+     *
+     * 只合并只有一个收件人、没有抄送密送和附件的邮件；发件人、主题、正文（或模板及变量）和优先级都相同才视为同一内容。
+     * 未开启 mail.batch.group-identical 时每封邮件单独一组。
+     */
+    private List<List<MailMessage>> groupIdentical(List<MailMessage> mailMessages) {
+        MailProperties.Batch batch = mailProperties.getBatch();
+        int maxRecipients = batch.getMaxRecipientsPerMessage() != null ? batch.getMaxRecipientsPerMessage() : 1;
+        List<List<MailMessage>> groups = new ArrayList<>();
+        if (!Boolean.TRUE.equals(batch.getGroupIdentical()) || maxRecipients <= 1) {
+            for (MailMessage mailMessage : mailMessages) {
+                groups.add(Collections.singletonList(mailMessage));
+            }
+            return groups;
+        }
+        
+        // 每种内容当前未满的分组
+        Map<ContentKey, List<MailMessage>> openGroups = new HashMap<>();
+        for (MailMessage mailMessage : mailMessages) {
+            if (!StringUtils.hasText(mailMessage.getFrom())) {
+                mailMessage.setFrom(mailProperties.getSender().getFrom());
+            }
+            if (!isGroupable(mailMessage)) {
+                groups.add(Collections.singletonList(mailMessage));
+                continue;
+            }
+            ContentKey key = ContentKey.of(mailMessage);
+            List<MailMessage> group = openGroups.get(key);
+            if (group == null || group.size() >= maxRecipients) {
+                group = new ArrayList<>();
+                groups.add(group);
+                openGroups.put(key, group);
+            }
+            group.add(mailMessage);
+        }
+        return groups;
+    }
+    
+    private static boolean isGroupable(MailMessage mailMessage) {
+        return mailMessage.getTo() != null && mailMessage.getTo().size() == 1
+                && CollectionUtils.isEmpty(mailMessage.getCc())
+                && CollectionUtils.isEmpty(mailMessage.getBcc())
+                && CollectionUtils.isEmpty(mailMessage.getAttachments());
+    }
+    
+    /**
+     * 判断邮件内容是否相同的键
+     */
+    private record ContentKey(String from, String fromName, String subject, Boolean isHtml, Integer priority,
+                              String content, String templateName, Map<String, Object> templateVariables) {
+        
+        static ContentKey of(MailMessage mailMessage) {
+            return new ContentKey(mailMessage.getFrom(), mailMessage.getFromName(), mailMessage.getSubject(),
+                    mailMessage.getIsHtml(), mailMessage.getPriority(), mailMessage.getContent(),
+                    mailMessage.getTemplateName(), mailMessage.getTemplateVariables());
+        }
+    }
+    
+    /**
+     * 构建合并发送的邮件：内容按组内第一封邮件构建（模板只渲染一次），
+     * 全部收件人放入密送，To 头为 undisclosed-recipients，收件人之间互不可见
+     */
+    private MimeMessage buildGroupMessage(List<MailMessage> group) throws MessagingException, UnsupportedEncodingException {
+        MimeMessage mimeMessage = buildMimeMessage(group.get(0));
+        List<InternetAddress> recipients = new ArrayList<>(group.size());
+        for (MailMessage mailMessage : group) {
+            recipients.add(new InternetAddress(mailMessage.getTo().get(0)));
+        }
+        mimeMessage.setRecipients(Message.RecipientType.TO, (Address[]) null);
+        mimeMessage.setHeader("To", "undisclosed-recipients:;");
+        mimeMessage.setRecipients(Message.RecipientType.BCC, recipients.toArray(new InternetAddress[0]));
+        return mimeMessage;
+    }
+    
+    /**
+     * 标记发送失败，未达到重试上限时标记为重试
+     */
+    private void markFailed(MailMessage mailMessage, Exception e) {
+        // 更新状态为发送失败
+        mailMessage.setStatus(MailMessage.MailStatus.FAILED);
+        mailMessage.setErrorMessage(e.getMessage());
+        
+        // 如果重试次数未达到上限，标记为重试
+        int retryCount = mailMessage.getRetryCount() != null ? mailMessage.getRetryCount() : 0;
+        int maxRetryCount = mailMessage.getMaxRetryCount() != null ? mailMessage.getMaxRetryCount() : 0;
+        if (retryCount < maxRetryCount) {
+            mailMessage.setRetryCount(retryCount + 1);
+            mailMessage.setStatus(MailMessage.MailStatus.RETRY);
+        }
+        mailStatusStore.update(mailMessage);
+    }
+
+    /**
+     * 标记批量发送失败
+     *
+     * 直接批量发送没有重试调度（重试只由邮件队列负责），标记为 RETRY 的邮件不会再被发送，
+     * 因此直接标记为 FAILED，保留完整内容供 resendMail 手动重发。
+     */
+    private void markBatchFailed(MailMessage mailMessage, Exception e) {
+        mailMessage.setStatus(MailMessage.MailStatus.FAILED);
+        mailMessage.setErrorMessage(e.getMessage());
+        mailStatusStore.update(mailMessage);
+    }
 
     @Override
     @Async("mailTaskExecutor")
@@ -188,12 +470,14 @@ public class MailServiceImpl implements MailService {
 
     @Override
     public MailMessage getMailStatus(String mailId) {
-        return mailStore.get(mailId);
+        MailStatusRecord record = mailStatusStore.get(mailId);
+        return record != null ? record.toMailMessage() : null;
     }
 
     @Override
     public boolean resendMail(String mailId) {
-        MailMessage mailMessage = mailStore.get(mailId);
+        // 只有发送失败的邮件保留了完整内容
+        MailMessage mailMessage = mailStatusStore.getFailedMessage(mailId);
         if (mailMessage == null) {
             return false;
         }
@@ -213,22 +497,23 @@ public class MailServiceImpl implements MailService {
 
     @Override
     public boolean cancelMail(String mailId) {
-        MailMessage mailMessage = mailStore.get(mailId);
-        if (mailMessage == null || mailMessage.getStatus() != MailMessage.MailStatus.PENDING) {
+        MailStatusRecord record = mailStatusStore.get(mailId);
+        if (record == null || record.getStatus() != MailMessage.MailStatus.PENDING) {
             return false;
         }
         
-        mailStore.remove(mailId);
+        mailStatusStore.remove(mailId);
         return true;
     }
 
     @Override
     public List<MailMessage> getMailHistory(int page, int size) {
-        return mailStore.values().stream()
-                .sorted((m1, m2) -> m2.getCreateTime().compareTo(m1.getCreateTime()))
-                .skip((long) page * size)
-                .limit(size)
-                .toList();
+        return mailStatusStore.getHistory(page, size);
+    }
+
+    @Override
+    public List<MailMessage> getMailHistory(MailMessage.MailStatus status, MailHistoryCursor after, int limit) {
+        return mailStatusStore.getHistory(status, after, limit);
     }
 
     @Override
@@ -268,9 +553,55 @@ public class MailServiceImpl implements MailService {
      * 发送MIME邮件（支持HTML和附件）
      */
     private void sendMimeMessage(MailMessage mailMessage) throws MessagingException, UnsupportedEncodingException {
+        javaMailSender.send(createMimeMessage(mailMessage));
+    }
+    
+    /**
+     * 构建批量发送用的MIME邮件，纯文本邮件同样构建为MIME格式以便在同一连接上发送
+     */
+    private MimeMessage buildMimeMessage(MailMessage mailMessage) throws MessagingException, UnsupportedEncodingException {
+        if (!StringUtils.hasText(mailMessage.getFrom())) {
+            mailMessage.setFrom(mailProperties.getSender().getFrom());
+        }
+        if (Boolean.TRUE.equals(mailMessage.getIsHtml()) || StringUtils.hasText(mailMessage.getTemplateName())
+                || !CollectionUtils.isEmpty(mailMessage.getAttachments())) {
+            return createMimeMessage(mailMessage);
+        }
+        
+        MimeMessage mimeMessage = javaMailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, false, "UTF-8");
+        setHeaders(helper, mailMessage);
+        helper.setText(mailMessage.getContent() != null ? mailMessage.getContent() : "", false);
+        return mimeMessage;
+    }
+    
+    /**
+     * 构建MIME邮件（支持HTML和附件）
+     */
+    private MimeMessage createMimeMessage(MailMessage mailMessage) throws MessagingException, UnsupportedEncodingException {
         MimeMessage mimeMessage = javaMailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+        setHeaders(helper, mailMessage);
         
+        // 设置内容
+        String content = getMailContent(mailMessage);
+        helper.setText(content, mailMessage.getIsHtml());
+        
+        // 设置优先级
+        if (mailMessage.getPriority() != null) {
+            mimeMessage.setHeader("X-Priority", String.valueOf(mailMessage.getPriority()));
+        }
+        
+        // 添加附件
+        addAttachments(helper, mailMessage.getAttachments());
+        
+        return mimeMessage;
+    }
+    
+    /**
+     * 设置发送方、收件人和主题
+     */
+    private void setHeaders(MimeMessageHelper helper, MailMessage mailMessage) throws MessagingException, UnsupportedEncodingException {
         // 设置发送方
         if (StringUtils.hasText(mailMessage.getFromName())) {
             helper.setFrom(mailMessage.getFrom(), mailMessage.getFromName());
@@ -291,20 +622,6 @@ public class MailServiceImpl implements MailService {
         
         // 设置主题
         helper.setSubject(mailMessage.getSubject());
-        
-        // 设置内容
-        String content = getMailContent(mailMessage);
-        helper.setText(content, mailMessage.getIsHtml());
-        
-        // 设置优先级
-        if (mailMessage.getPriority() != null) {
-            mimeMessage.setHeader("X-Priority", String.valueOf(mailMessage.getPriority()));
-        }
-        
-        // 添加附件
-        addAttachments(helper, mailMessage.getAttachments());
-        
-        javaMailSender.send(mimeMessage);
     }
 
     /**
@@ -313,11 +630,7 @@ public class MailServiceImpl implements MailService {
     private String getMailContent(MailMessage mailMessage) {
         if (StringUtils.hasText(mailMessage.getTemplateName())) {
             // 使用模板生成内容
-            Context context = new Context();
-            if (mailMessage.getTemplateVariables() != null) {
-                context.setVariables(mailMessage.getTemplateVariables());
-            }
-            return templateEngine.process(mailMessage.getTemplateName(), context);
+            return mailTemplateRenderer.render(mailMessage.getTemplateName(), mailMessage.getTemplateVariables());
         } else {
             // 直接使用内容
             return mailMessage.getContent();
@@ -333,7 +646,10 @@ public class MailServiceImpl implements MailService {
         }
         
         for (MailAttachment attachment : attachments) {
-            if (StringUtils.hasText(attachment.getFilePath())) {
+            if (StringUtils.hasText(attachment.getHandle())) {
+                // 附件存储中的附件，发送时从文件流式读取
+                helper.addAttachment(attachment.getFileName(), resolveSpooled(attachment));
+            } else if (StringUtils.hasText(attachment.getFilePath())) {
                 // 文件路径附件
                 helper.addAttachment(attachment.getFileName(), new File(attachment.getFilePath()));
             } else if (attachment.getContent() != null) {
@@ -345,8 +661,11 @@ public class MailServiceImpl implements MailService {
             }
             
             // 处理内联附件
-            if (attachment.getInline() && StringUtils.hasText(attachment.getContentId())) {
-                if (StringUtils.hasText(attachment.getFilePath())) {
+            if (Boolean.TRUE.equals(attachment.getInline()) && StringUtils.hasText(attachment.getContentId())) {
+                if (StringUtils.hasText(attachment.getHandle())) {
+                    helper.addInline(attachment.getContentId(), resolveSpooled(attachment),
+                            StringUtils.hasText(attachment.getContentType()) ? attachment.getContentType() : "application/octet-stream");
+                } else if (StringUtils.hasText(attachment.getFilePath())) {
                     helper.addInline(attachment.getContentId(), new File(attachment.getFilePath()));
                 } else if (attachment.getContent() != null) {
                     helper.addInline(attachment.getContentId(), new ByteArrayResource(attachment.getContent()));
@@ -355,6 +674,14 @@ public class MailServiceImpl implements MailService {
         }
     }
 
+    private Resource resolveSpooled(MailAttachment attachment) throws MessagingException {
+        try {
+            return mailAttachmentSpool.resolve(attachment.getHandle());
+        } catch (FileNotFoundException e) {
+            throw new MessagingException(e.getMessage(), e);
+        }
+    }
+
     /**
      * 生成邮件ID
      */
@@ -0,0 +1,574 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.FileMetadataProperties;
+import com.windcore.dto.FileListCursor;
+import com.windcore.model.ContentDigest;
+import com.windcore.model.FileMetadata;
+import com.windcore.service.FileService;
+import com.windcore.storage.Hash128Index;
+import com.windcore.storage.MappedAppendLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于堆外内存映射日志的文件服务实现
+ *
+ * 文件元数据以二进制记录追加写入内存映射的段文件，堆内只保留
+ * ID和MD5（128位）到记录地址的基本类型索引，读取时才解码为 {@link FileMetadata}。
+ * 更新和删除以追加新记录的方式实现，重启时重新映射段文件并顺序回放即可恢复索引。
+ *
+ * 按业务类型的查询使用堆内的 (uploadTime, id) 有序索引，按文件名的查询使用 {@link FileNameIndex}，
+ * 两者都在回放时重建，分页查询只读取一页记录。
+ *
+ * 被覆盖和删除的旧记录超过 compaction-ratio 且不少于 compaction-min-bytes 时，定时任务把有效记录
+ * 复制到新段并删除旧段（压缩期间持有写锁），新段开头写入下一个可分配的ID，已删除文件的ID不会被重新分配。
+ * 已写入的数据按 force-interval-millis 定时刷盘，sync=true 时每次写入后刷盘；
+ * 刷盘和压缩在专用线程中执行，不受其他定时任务的影响。
+ *
+ * 通过 file.metadata.store=mapped 启用。
+ *
+ * @author windcore
+ */
+@Service
+@ConditionalOnProperty(prefix = "file.metadata", name = "store", havingValue = "mapped")
+public class MappedFileServiceImpl implements FileService {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileServiceImpl.class);
+
+    private static final long NOT_FOUND = -1L;
+
+    private final FileMetadataProperties properties;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong idGenerator = new AtomicLong(1);
+    private final FileNameIndex fileNameIndex = new FileNameIndex();
+
+    private MappedAppendLog appendLog;
+    private Hash128Index idIndex;
+    private Hash128Index md5Index;
+    private ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * 业务类型 -> 按 (uploadTime, id) 排序的记录地址，读写均需持有锁
+     */
+    private final Map<String, NavigableMap<FileListCursor, Long>> businessTypeIndex = new HashMap<>();
+
+    /**
+     * 有效记录占用的字节数，其余为被覆盖或删除的旧记录
+     */
+    private long liveBytes;
+
+    /**
+     * 上次刷盘后是否有新写入
+     */
+    private volatile boolean dirty;
+
+    public MappedFileServiceImpl(FileMetadataProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        FileMetadataProperties.Mapped mapped = properties.getMapped();
+        appendLog = new MappedAppendLog(Paths.get(mapped.getDir()), "file-metadata", mapped.getSegmentSize());
+        idIndex = new Hash128Index(mapped.getExpectedFiles());
+        md5Index = new Hash128Index(mapped.getExpectedFiles());
+
+        long start = System.currentTimeMillis();
+        appendLog.forEach((address, payload) -> {
+            if (payload[0] == FileMetadataCodec.RECORD_PUT) {
+                FileMetadata fileMetadata = FileMetadataCodec.decode(payload);
+                applyPut(fileMetadata, address, payload.length);
+                observeId(fileMetadata.getId());
+            } else if (payload[0] == FileMetadataCodec.RECORD_DELETE) {
+                String id = FileMetadataCodec.decodeDeletedId(payload);
+                applyDelete(id);
+                observeId(id);
+            } else if (payload[0] == FileMetadataCodec.RECORD_ID_MARK) {
+                idGenerator.accumulateAndGet(FileMetadataCodec.decodeIdMark(payload), Math::max);
+            }
+        });
+        log.info("文件元数据日志回放完成: 文件数={}, 有效数据={}字节, 日志={}字节, 耗时={}ms",
+                idIndex.size(), liveBytes, appendLog.usedBytes(), System.currentTimeMillis() - start);
+
+        long interval = mapped.getForceIntervalMillis();
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-metadata-maintain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdown();
+            try {
+                maintenanceExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (appendLog != null) {
+                appendLog.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 定时刷盘，并在旧记录过多时压缩日志
+     */
+    public void maintain() {
+        try {
+            if (dirty) {
+                dirty = false;
+                appendLog.force();
+            }
+            FileMetadataProperties.Mapped mapped = properties.getMapped();
+            long garbage = garbageBytes();
+            if (garbage >= mapped.getCompactionMinBytes()
+                    && garbage >= appendLog.usedBytes() * mapped.getCompactionRatio()) {
+                compact();
+            }
+        } catch (Exception e) {
+            log.error("文件元数据日志维护失败", e);
+        }
+    }
+
+    /**
+     * 压缩日志：把有效记录复制到新段，删除之前的全部段
+     *
+     * 复制的记录与原记录内容相同，压缩中途宕机时回放结果不变；
+     * 旧段按序号从小到大删除，剩余的段始终连续。
+     */
+    public void compact() throws IOException {
+        long start = System.currentTimeMillis();
+        long before;
+        int removed;
+        lock.writeLock().lock();
+        try {
+            before = appendLog.usedBytes();
+            long[] addresses = new long[idIndex.size()];
+            int[] count = new int[1];
+            idIndex.forEachValue(address -> addresses[count[0]++] = address);
+            Arrays.sort(addresses);
+
+            int firstSegment = appendLog.rollSegment();
+            // 旧段中可能有ID最大的已删除文件，删除前记下ID分配位置
+            append(FileMetadataCodec.encodeIdMark(idGenerator.get()));
+            for (long address : addresses) {
+                byte[] payload = appendLog.read(address);
+                relocate(FileMetadataCodec.decode(payload), address, append(payload));
+            }
+            appendLog.force();
+            removed = appendLog.truncateBefore(firstSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("文件元数据日志压缩完成: 删除段数={}, 压缩前={}字节, 压缩后={}字节, 耗时={}ms",
+                removed, before, appendLog.usedBytes(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 被覆盖或删除的旧记录占用的字节数（含段尾未使用的空间）
+     */
+    public long garbageBytes() {
+        lock.readLock().lock();
+        try {
+            return Math.max(0, appendLog.usedBytes() - liveBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FileMetadata findByMd5(String md5) {
+        if (md5 == null || md5.trim().isEmpty()) {
+            return null;
+        }
+
+        byte[] payload = readIndexed(md5Index, md5Key(md5));
+        if (payload == null) {
+            return null;
+        }
+        FileMetadata fileMetadata = FileMetadataCodec.decode(payload);
+        return sameDigest(md5, fileMetadata.getFileMd5()) ? fileMetadata : null;
+    }
+
+    @Override
+    public FileMetadata findById(String id) {
+        if (id == null || id.trim().isEmpty()) {
+            return null;
+        }
+
+        byte[] payload = readIndexed(idIndex, idKey(id));
+        if (payload == null) {
+            return null;
+        }
+        FileMetadata fileMetadata = FileMetadataCodec.decode(payload);
+        return id.equals(fileMetadata.getId()) ? fileMetadata : null;
+    }
+
+    @Override
+    public FileMetadata save(FileMetadata fileMetadata) {
+        if (fileMetadata == null) {
+            throw new IllegalArgumentException("文件元数据不能为空");
+        }
+
+        // 生成ID
+        if (fileMetadata.getId() == null || fileMetadata.getId().trim().isEmpty()) {
+            fileMetadata.setId(String.valueOf(idGenerator.getAndIncrement()));
+        }
+
+        // 设置上传时间
+        if (fileMetadata.getUploadTime() == null) {
+            fileMetadata.setUploadTime(LocalDateTime.now());
+        }
+
+        byte[] record = FileMetadataCodec.encode(fileMetadata);
+        lock.writeLock().lock();
+        try {
+            applyPut(fileMetadata, append(record), record.length);
+            syncIfConfigured();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("保存文件元数据: {}", fileMetadata);
+        return fileMetadata;
+    }
+
+    @Override
+    public FileMetadata update(FileMetadata fileMetadata) {
+        if (fileMetadata == null || fileMetadata.getId() == null) {
+            throw new IllegalArgumentException("文件元数据或ID不能为空");
+        }
+
+        FileMetadata existing;
+        lock.writeLock().lock();
+        try {
+            long[] key = idKey(fileMetadata.getId());
+            long address = idIndex.get(key[0], key[1]);
+            existing = address != NOT_FOUND ? FileMetadataCodec.decode(appendLog.read(address)) : null;
+            if (existing == null || !existing.getId().equals(fileMetadata.getId())) {
+                throw new IllegalArgumentException("文件不存在: " + fileMetadata.getId());
+            }
+
+            // 更新字段
+            if (fileMetadata.getFileName() != null) {
+                existing.setFileName(fileMetadata.getFileName());
+            }
+            if (fileMetadata.getSafeFileName() != null) {
+                existing.setSafeFileName(fileMetadata.getSafeFileName());
+            }
+            if (fileMetadata.getFilePath() != null) {
+                existing.setFilePath(fileMetadata.getFilePath());
+            }
+            if (fileMetadata.getFileType() != null) {
+                existing.setFileType(fileMetadata.getFileType());
+            }
+            if (fileMetadata.getFileSize() > 0) {
+                existing.setFileSize(fileMetadata.getFileSize());
+            }
+            if (fileMetadata.getBusinessType() != null) {
+                existing.setBusinessType(fileMetadata.getBusinessType());
+            }
+
+            byte[] record = FileMetadataCodec.encode(existing);
+            applyPut(existing, append(record), record.length);
+            syncIfConfigured();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("更新文件元数据: {}", existing);
+        return existing;
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+        if (id == null || id.trim().isEmpty()) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            long[] key = idKey(id);
+            if (idIndex.get(key[0], key[1]) == NOT_FOUND) {
+                return false;
+            }
+            append(FileMetadataCodec.encodeDelete(id));
+            applyDelete(id);
+            syncIfConfigured();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("删除文件元数据: 文件ID={}", id);
+        return true;
+    }
+
+    @Override
+    public List<FileMetadata> findByBusinessType(String businessType) {
+        return findByBusinessType(businessType, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<FileMetadata> findByBusinessType(String businessType, FileListCursor after, int limit) {
+        List<FileMetadata> result = new ArrayList<>();
+        if (businessType == null || businessType.trim().isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        // 锁内只复制一页记录，解码在锁外进行
+        List<byte[]> payloads = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableMap<FileListCursor, Long> index = businessTypeIndex.get(businessType);
+            if (index == null) {
+                return result;
+            }
+            NavigableMap<FileListCursor, Long> page = after != null ? index.tailMap(after, false) : index;
+            for (long address : page.values()) {
+                if (payloads.size() >= limit) {
+                    break;
+                }
+                payloads.add(appendLog.read(address));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (byte[] payload : payloads) {
+            result.add(FileMetadataCodec.decode(payload));
+        }
+        return result;
+    }
+
+    @Override
+    public List<FileMetadata> findByFileNameLike(String fileName) {
+        return findByFileNameLike(fileName, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<FileMetadata> findByFileNameLike(String fileName, FileListCursor after, int limit) {
+        List<FileMetadata> result = new ArrayList<>();
+        if (fileName == null || fileName.trim().isEmpty() || limit <= 0) {
+            return result;
+        }
+        for (String id : fileNameIndex.search(fileName, after, limit)) {
+            FileMetadata file = findById(id);
+            if (file != null) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean existsByMd5(String md5) {
+        return findByMd5(md5) != null;
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return idIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long countByBusinessType(String businessType) {
+        if (businessType == null || businessType.trim().isEmpty()) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            NavigableMap<FileListCursor, Long> index = businessTypeIndex.get(businessType);
+            return index != null ? index.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按索引读取记录；压缩会删除旧段，因此地址查找和读取需在同一次读锁内完成
+     */
+    private byte[] readIndexed(Hash128Index index, long[] key) {
+        lock.readLock().lock();
+        try {
+            long address = index.get(key[0], key[1]);
+            return address != NOT_FOUND ? appendLog.read(address) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long append(byte[] record) {
+        try {
+            long address = appendLog.append(record);
+            dirty = true;
+            return address;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入文件元数据日志失败", e);
+        }
+    }
+
+    private void syncIfConfigured() {
+        if (Boolean.TRUE.equals(properties.getMapped().getSync())) {
+            dirty = false;
+            appendLog.force();
+        }
+    }
+
+    /**
+     * 将记录写入索引，调用方需持有写锁（回放时单线程）
+     */
+    private void applyPut(FileMetadata fileMetadata, long address, int recordLength) {
+        long[] idKey = idKey(fileMetadata.getId());
+        long previous = idIndex.put(idKey[0], idKey[1], address);
+        if (previous != NOT_FOUND) {
+            removeSecondaryIndexes(previous);
+        }
+        if (fileMetadata.getFileMd5() != null) {
+            long[] md5Key = md5Key(fileMetadata.getFileMd5());
+            md5Index.put(md5Key[0], md5Key[1], address);
+        }
+        if (fileMetadata.getBusinessType() != null) {
+            businessTypeIndex.computeIfAbsent(fileMetadata.getBusinessType(), k -> new TreeMap<>())
+                    .put(FileListCursor.of(fileMetadata), address);
+        }
+        fileNameIndex.add(FileListCursor.of(fileMetadata), fileMetadata.getFileName());
+        liveBytes += MappedAppendLog.HEADER_SIZE + recordLength;
+    }
+
+    private void applyDelete(String id) {
+        long[] idKey = idKey(id);
+        long previous = idIndex.remove(idKey[0], idKey[1]);
+        if (previous != NOT_FOUND) {
+            removeSecondaryIndexes(previous);
+            fileNameIndex.remove(id);
+        }
+    }
+
+    /**
+     * 移除旧记录的MD5和业务类型索引，并从有效字节数中扣除
+     */
+    private void removeSecondaryIndexes(long address) {
+        byte[] payload = appendLog.read(address);
+        FileMetadata previous = FileMetadataCodec.decode(payload);
+        removeMd5Index(previous.getFileMd5(), address);
+        if (previous.getBusinessType() != null) {
+            NavigableMap<FileListCursor, Long> index = businessTypeIndex.get(previous.getBusinessType());
+            if (index != null && index.remove(FileListCursor.of(previous), address) && index.isEmpty()) {
+                businessTypeIndex.remove(previous.getBusinessType());
+            }
+        }
+        liveBytes -= MappedAppendLog.HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * 压缩时把索引从旧地址改为新地址，调用方需持有写锁
+     */
+    private void relocate(FileMetadata fileMetadata, long from, long to) {
+        long[] idKey = idKey(fileMetadata.getId());
+        idIndex.put(idKey[0], idKey[1], to);
+        if (fileMetadata.getFileMd5() != null) {
+            long[] md5Key = md5Key(fileMetadata.getFileMd5());
+            if (md5Index.get(md5Key[0], md5Key[1]) == from) {
+                md5Index.put(md5Key[0], md5Key[1], to);
+            }
+        }
+        if (fileMetadata.getBusinessType() != null) {
+            businessTypeIndex.get(fileMetadata.getBusinessType()).put(FileListCursor.of(fileMetadata), to);
+        }
+    }
+
+    /**
+     * 仅当MD5索引仍指向该记录时才移除，避免误删其他文件的索引
+     */
+    private void removeMd5Index(String md5, long address) {
+        if (md5 == null) {
+            return;
+        }
+        long[] key = md5Key(md5);
+        if (md5Index.get(key[0], key[1]) == address) {
+            md5Index.remove(key[0], key[1]);
+        }
+    }
+
+    private void observeId(String id) {
+        if (id != null && !id.isEmpty() && id.length() < 19 && id.chars().allMatch(Character::isDigit)) {
+            idGenerator.accumulateAndGet(Long.parseLong(id) + 1, Math::max);
+        }
+    }
+
+    // ---------------------------------------------------------------- 键
+
+    /**
+     * MD5键：十六进制摘要取前128位，其他格式按字符串哈希
+     */
+    private static long[] md5Key(String md5) {
+        ContentDigest digest = ContentDigest.tryParse(md5);
+        if (digest != null) {
+            return new long[]{digest.high64(), digest.low64()};
+        }
+        return idKey(md5);
+    }
+
+    private static boolean sameDigest(String expected, String actual) {
+        ContentDigest digest = ContentDigest.tryParse(expected);
+        return digest != null ? digest.matches(actual) : expected.equals(actual);
+    }
+
+    /**
+     * 字符串的128位哈希（两个不同种子的64位哈希），命中后仍需比对原值
+     */
+    private static long[] idKey(String value) {
+        long h1 = 0xCBF29CE484222325L;
+        long h2 = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h1 = (h1 ^ c) * 0x100000001B3L;
+            h2 = Long.rotateLeft(h2 ^ (c * 0xC2B2AE3D27D4EB4FL), 31) * 0x165667B19E3779F9L;
+        }
+        return new long[]{mix(h1), mix(h2)};
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,89 @@
+package com.windcore.service.impl;
+
+import java.util.List;
+
+/**
+ * 优先级队列的加权公平调度
+ *
+ * 采用平滑加权轮询：每次取邮件前每个优先级的当前值加上自身权重，当前值最大的优先级被选中并减去总权重。
+ * 所有队列都有积压时，各优先级按权重比例被消费（默认 16:8:4:2:1），低优先级不会被饿死。
+ *
+ * 老化：某个有积压的优先级超过 agingMillis 没有被消费过时排在最前面，保证低优先级的等待时间有上限。
+ * 调度状态只在本节点内维护，多节点部署时整体比例仍然近似成立。
+ *
+ * @author windcore
+ */
+class PriorityScheduler {
+
+    private static final int PRIORITY_COUNT = 5;
+
+    private final int[] weights = new int[PRIORITY_COUNT];
+    private final int totalWeight;
+    private final long agingMillis;
+
+    private final int[] currentWeights = new int[PRIORITY_COUNT];
+    private final long[] lastServedMillis = new long[PRIORITY_COUNT];
+
+    PriorityScheduler(List<Integer> priorityWeights, long agingMillis) {
+        int total = 0;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            Integer weight = priorityWeights != null && i < priorityWeights.size() ? priorityWeights.get(i) : null;
+            weights[i] = weight != null && weight > 0 ? weight : 1;
+            total += weights[i];
+        }
+        this.totalWeight = total;
+        this.agingMillis = agingMillis;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            lastServedMillis[i] = now;
+        }
+    }
+
+    /**
+     * 本次尝试取邮件的优先级顺序
+     *
+     * 第一个是老化的优先级（等待最久者）或轮询选中的优先级，其余按优先级从高到低排列，
+     * 调用方依次尝试直到取到邮件。
+     *
+     * @return 优先级（1-5）数组
+     */
+    synchronized int[] nextOrder() {
+        long now = System.currentTimeMillis();
+        int first = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (now - lastServedMillis[i] >= agingMillis && lastServedMillis[i] < oldest) {
+                oldest = lastServedMillis[i];
+                first = i;
+            }
+        }
+
+        if (first < 0) {
+            for (int i = 0; i < PRIORITY_COUNT; i++) {
+                currentWeights[i] += weights[i];
+                if (first < 0 || currentWeights[i] > currentWeights[first]) {
+                    first = i;
+                }
+            }
+            currentWeights[first] -= totalWeight;
+        }
+
+        int[] order = new int[PRIORITY_COUNT];
+        order[0] = first + 1;
+        int index = 1;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (i != first) {
+                order[index++] = i + 1;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * 记录某个优先级取到了邮件或当前没有积压，重新开始计算它的等待时间
+     */
+    synchronized void visited(int priority) {
+        lastServedMillis[priority - 1] = System.currentTimeMillis();
+    }
+}
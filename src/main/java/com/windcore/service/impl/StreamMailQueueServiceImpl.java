@@ -0,0 +1,497 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.RedisStreamCommands.XPendingOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamInfo.XInfoGroup;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 Redis Streams 的邮件队列服务实现（mail.queue.type=stream）
+ *
+ * 每个优先级一个流 mail:stream:{priority}，同一部署的所有节点加入同一个消费者组，
+ * 由 Redis 在消费者之间分配消息。取出的消息进入消费者的待确认列表（PEL），
+ * 处理完成后 XACK，条目保留在流中；定时任务按消费者组的进度用 XTRIM MINID 裁剪已确认的条目，
+ * 不会删除未投递或未确认的消息。消费者重启时先处理自己 PEL 中的消息。
+ *
+ * 空闲超过可见性超时的消息由消费者在取新消息前用 XCLAIM 认领到自己名下处理，条目留在流中的原位置，
+ * 不会重新追加到流尾，也不会出现两份。XCLAIM 会累加消息的投递次数，
+ * 投递次数达到 mail.queue.max-deliveries 的消息（例如每次都导致消费者退出的邮件）不再投递，直接移入失败队列。
+ *
+ * 投递语义为至少一次：空闲超过可见性超时的消息可能属于发送缓慢而非已退出的消费者，
+ * 重新投递后同一封邮件会被发送两次，因此 mail.queue.visibility-timeout-millis 应明显大于单封邮件的最长发送时间。
+ *
+ * @author windcore
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "mail.queue", name = "type", havingValue = "stream")
+public class StreamMailQueueServiceImpl extends AbstractMailQueueService {
+
+    private static final String MAIL_STREAM_KEY = "mail:stream";
+    /**
+     * 消息字段，值为邮件ID（升级前为完整的JSON邮件）
+     */
+    private static final byte[] PAYLOAD_FIELD = rawKey("payload");
+    private static final int RECOVER_BATCH_SIZE = 100;
+    /**
+     * 每次最多认领的超时消息数，认领后由同一个消费者逐条处理
+     */
+    private static final int RECLAIM_BATCH_SIZE = 10;
+    private static final int PENDING_SCAN_SIZE = 100;
+
+    /**
+     * 按优先级从高到低排列的流键
+     */
+    private static final byte[][] PRIORITY_STREAM_KEYS = new byte[5][];
+
+    static {
+        for (int priority = 1; priority <= 5; priority++) {
+            PRIORITY_STREAM_KEYS[priority - 1] = rawKey(getStreamKeyByPriority(priority));
+        }
+    }
+
+    private volatile boolean groupsReady;
+
+    /**
+     * 各消费者已进入PEL但尚未处理的消息：认领的超时消息和阻塞读取多返回的消息，每次取邮件时先处理这里
+     */
+    private final Map<String, Deque<ByteRecord>> claimedRecords = new ConcurrentHashMap<>();
+
+    /**
+     * 下次检查超时消息的时间，同一节点的消费者每个检查间隔只有一个执行认领
+     */
+    private final AtomicLong nextClaimMillis = new AtomicLong();
+
+    public StreamMailQueueServiceImpl(RedisTemplate<String, Object> redisTemplate, MailService mailService,
+                                      MailProperties mailProperties, MailAttachmentSpool mailAttachmentSpool,
+                                      MailRateLimiter mailRateLimiter, SmtpCircuitBreaker smtpCircuitBreaker,
+                                      MailEnqueueSpool mailEnqueueSpool) {
+        super(redisTemplate, mailService, mailProperties, mailAttachmentSpool, mailRateLimiter, smtpCircuitBreaker,
+                mailEnqueueSpool);
+    }
+
+    @Override
+    protected void enqueue(RedisConnection connection, int priority, byte[] entry) {
+        connection.streamCommands().xAdd(PRIORITY_STREAM_KEYS[priority - 1], Collections.singletonMap(PAYLOAD_FIELD, entry));
+    }
+
+    /**
+     * 从消费者组中读取一封邮件并发送
+     *
+     * 每次只处理一封，与消费者申请的一个熔断器许可对应。先处理已进入本消费者PEL的消息，
+     * 没有时认领超时消息，再按 {@link PriorityScheduler} 给出的顺序依次非阻塞读取；
+     * 全部为空时在所有流上阻塞读取，因此 blockPriority 在此实现中不需要轮换。
+     */
+    @Override
+    public boolean pollAndProcess(String consumerId, int blockPriority, int timeoutSeconds) {
+        ensureGroups();
+        Consumer consumer = Consumer.from(getGroup(), consumerId);
+        Deque<ByteRecord> backlog = claimedRecords.computeIfAbsent(consumerId, id -> new ArrayDeque<>());
+        if (backlog.isEmpty()) {
+            claimIdle(consumer, backlog);
+        }
+        ByteRecord record = backlog.pollFirst();
+        if (record == null) {
+            record = read(consumer, timeoutSeconds, backlog);
+        }
+        if (record == null) {
+            return false;
+        }
+
+        priorityScheduler.visited(priorityOf(record.getStream()));
+        handle(record);
+        return true;
+    }
+
+    /**
+     * 处理消费者PEL中上次运行未确认的邮件，投递次数已达上限的移入失败队列
+     */
+    @Override
+    public int recoverProcessing(String consumerId) {
+        ensureGroups();
+        claimedRecords.remove(consumerId);
+        Consumer consumer = Consumer.from(getGroup(), consumerId);
+        StreamReadOptions options = StreamReadOptions.empty().count(RECOVER_BATCH_SIZE);
+        int recovered = 0;
+        for (byte[] streamKey : PRIORITY_STREAM_KEYS) {
+            failExhausted(streamKey, consumer);
+            while (true) {
+                // 偏移量0读取的是本消费者已投递未确认的消息
+                List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                        readGroup(connection, consumer, options, StreamOffset.create(streamKey, ReadOffset.from("0"))));
+                if (records == null || records.isEmpty()) {
+                    break;
+                }
+                for (ByteRecord record : records) {
+                    handle(record);
+                    recovered++;
+                }
+            }
+        }
+        if (recovered > 0) {
+            log.warn("已处理消费者未确认的邮件，消费者: {}, 数量: {}", consumerId, recovered);
+        }
+        return recovered;
+    }
+
+    /**
+     * 裁剪已确认的条目
+     */
+    @Scheduled(fixedDelayString = "${mail.queue.reaper-interval-millis:10000}")
+    public void trimStreams() {
+        try {
+            ensureGroups();
+            for (byte[] streamKey : PRIORITY_STREAM_KEYS) {
+                trimAcknowledged(streamKey);
+            }
+
+        } catch (Exception e) {
+            log.error("裁剪已确认的消息时发生错误", e);
+        }
+    }
+
+    /**
+     * 等待消费的消息数（消费者组积压）
+     *
+     * 只读查询：消费者组已投递到流中最后一条消息时积压为0；否则为 XLEN 减去待确认数，
+     * 已确认但尚未被定时任务裁剪的条目也计入其中，积压会偏大。
+     */
+    @Override
+    protected long queueSize(int priority) {
+        ensureGroups();
+        byte[] streamKey = PRIORITY_STREAM_KEYS[priority - 1];
+        String group = getGroup();
+        return redisTemplate.execute((RedisCallback<Long>) connection -> {
+            Long length = connection.streamCommands().xLen(streamKey);
+            if (length == null || length == 0) {
+                return 0L;
+            }
+            String lastGenerated = connection.streamCommands().xInfo(streamKey).lastGeneratedId();
+            for (XInfoGroup info : connection.streamCommands().xInfoGroups(streamKey)) {
+                if (group.equals(info.groupName()) && lastGenerated.equals(info.lastDeliveredId())) {
+                    return 0L;
+                }
+            }
+            PendingMessagesSummary summary = connection.streamCommands().xPending(streamKey, group);
+            return Math.max(0, length - (summary != null ? summary.getTotalPendingMessages() : 0));
+        });
+    }
+
+    @Override
+    protected long processingCount() {
+        ensureGroups();
+        long pending = 0;
+        for (byte[] streamKey : PRIORITY_STREAM_KEYS) {
+            pending += pendingCount(streamKey);
+        }
+        return pending;
+    }
+
+    private void handle(ByteRecord record) {
+        byte[] raw = payloadOf(record);
+        MailMessage mailMessage = raw != null ? loadEntry(raw) : null;
+        if (mailMessage != null) {
+            processMailMessage(mailMessage);
+        } else if (raw != null) {
+            pushFailed(raw);
+        }
+        acknowledge(record.getStream(), record.getId());
+    }
+
+    /**
+     * 读取一封新消息；阻塞读取时每个流最多返回一条，均已进入本消费者的PEL，
+     * 按优先级处理第一条，其余留到下次取邮件时处理
+     */
+    private ByteRecord read(Consumer consumer, int timeoutSeconds, Deque<ByteRecord> backlog) {
+        int[] order = priorityScheduler.nextOrder();
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> {
+            StreamReadOptions options = StreamReadOptions.empty().count(1);
+            for (int priority : order) {
+                List<ByteRecord> result = readGroup(connection, consumer, options,
+                        StreamOffset.create(PRIORITY_STREAM_KEYS[priority - 1], ReadOffset.lastConsumed()));
+                if (result != null && !result.isEmpty()) {
+                    return result;
+                }
+                priorityScheduler.visited(priority);
+            }
+            return readGroup(connection, consumer, options.block(Duration.ofSeconds(timeoutSeconds)),
+                    allStreams(ReadOffset.lastConsumed()));
+        });
+        if (records == null || records.isEmpty()) {
+            return null;
+        }
+
+        List<ByteRecord> sorted = new ArrayList<>(records);
+        sorted.sort((a, b) -> Integer.compare(priorityOf(a.getStream()), priorityOf(b.getStream())));
+        backlog.addAll(sorted.subList(1, sorted.size()));
+        return sorted.get(0);
+    }
+
+    /**
+     * 将空闲超过可见性超时的待确认消息认领到本消费者名下
+     *
+     * XCLAIM 带最小空闲时间，认领成功会重置空闲时间，多个节点同时执行时同一条消息只会被认领一次。
+     * 原消费者可能仍在发送，重新投递可能导致重复发送（见类注释）。
+     */
+    private void claimIdle(Consumer consumer, Deque<ByteRecord> backlog) {
+        long now = System.currentTimeMillis();
+        long next = nextClaimMillis.get();
+        if (now < next || !nextClaimMillis.compareAndSet(next, now + mailProperties.getQueue().getReaperIntervalMillis())) {
+            return;
+        }
+
+        Duration minIdle = Duration.ofMillis(mailProperties.getQueue().getVisibilityTimeoutMillis());
+        String group = getGroup();
+        for (byte[] streamKey : PRIORITY_STREAM_KEYS) {
+            int room = RECLAIM_BATCH_SIZE - backlog.size();
+            if (room <= 0) {
+                break;
+            }
+            PendingMessages pending = redisTemplate.execute((RedisCallback<PendingMessages>) connection ->
+                    connection.streamCommands().xPending(streamKey, group,
+                            XPendingOptions.range(Range.unbounded(), (long) PENDING_SCAN_SIZE)));
+            if (pending == null || pending.isEmpty()) {
+                continue;
+            }
+
+            Map<RecordId, Long> deliveries = new HashMap<>();
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                    deliveries.put(message.getId(), message.getTotalDeliveryCount());
+                    if (deliveries.size() >= room) {
+                        break;
+                    }
+                }
+            }
+            if (deliveries.isEmpty()) {
+                continue;
+            }
+
+            List<ByteRecord> claimed = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xClaim(streamKey, group, consumer.getName(),
+                            XClaimOptions.minIdle(minIdle).ids(new ArrayList<>(deliveries.keySet()))));
+            if (claimed == null) {
+                continue;
+            }
+            List<ByteRecord> sorted = new ArrayList<>(claimed);
+            sorted.sort((a, b) -> compare(a.getId(), b.getId()));
+            for (ByteRecord record : sorted) {
+                long delivered = deliveries.getOrDefault(record.getId(), 0L);
+                if (delivered >= mailProperties.getQueue().getMaxDeliveries()) {
+                    failUndeliverable(streamKey, record, delivered);
+                } else {
+                    log.warn("邮件处理超时，重新投递，消息ID: {}, 流: {}, 已投递次数: {}",
+                            record.getId(), new String(streamKey, StandardCharsets.UTF_8), delivered);
+                    backlog.addLast(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * 本消费者PEL中投递次数已达上限的消息移入失败队列
+     */
+    private void failExhausted(byte[] streamKey, Consumer consumer) {
+        String group = getGroup();
+        long maxDeliveries = mailProperties.getQueue().getMaxDeliveries();
+        PendingMessages pending = redisTemplate.execute((RedisCallback<PendingMessages>) connection ->
+                connection.streamCommands().xPending(streamKey, group, XPendingOptions
+                        .range(Range.unbounded(), (long) PENDING_SCAN_SIZE).consumer(consumer.getName())));
+        if (pending == null) {
+            return;
+        }
+
+        Map<RecordId, Long> exhausted = new HashMap<>();
+        for (PendingMessage message : pending) {
+            if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                exhausted.put(message.getId(), message.getTotalDeliveryCount());
+            }
+        }
+        if (exhausted.isEmpty()) {
+            return;
+        }
+        // 认领给自己以读取消息内容
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(streamKey, group, consumer.getName(),
+                        XClaimOptions.minIdle(Duration.ZERO).ids(new ArrayList<>(exhausted.keySet()))));
+        if (records != null) {
+            for (ByteRecord record : records) {
+                failUndeliverable(streamKey, record, exhausted.get(record.getId()));
+            }
+        }
+    }
+
+    /**
+     * 多次投递都未确认的消息不再发送，标记失败并移入失败队列
+     */
+    private void failUndeliverable(byte[] streamKey, ByteRecord record, long delivered) {
+        byte[] raw = payloadOf(record);
+        MailMessage mailMessage = raw != null ? loadEntry(raw) : null;
+        if (mailMessage != null) {
+            log.error("邮件已投递{}次均未完成处理，不再重新投递，已移入失败队列，邮件ID: {}", delivered, mailMessage.getId());
+            mailMessage.setStatus(MailMessage.MailStatus.FAILED);
+            mailMessage.setErrorMessage("邮件已投递" + delivered + "次均未完成处理");
+            saveMessage(mailMessage);
+            pushFailed(mailMessage);
+        } else if (raw != null) {
+            pushFailed(raw);
+        }
+        acknowledge(streamKey, record.getId());
+    }
+
+    private void acknowledge(byte[] streamKey, RecordId recordId) {
+        String group = getGroup();
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.streamCommands().xAck(streamKey, group, recordId));
+    }
+
+    /**
+     * 裁剪所有消费者组都已确认的条目
+     *
+     * 每个组早于最早待确认消息的条目都已确认；没有待确认消息时，最后投递的消息及之前的条目都已确认。
+     * 取各组安全位置的最小值执行 XTRIM MINID，计算之后组的进度只会前进，裁剪不会删除未确认的消息。
+     */
+    private void trimAcknowledged(byte[] streamKey) {
+        RecordId minId = redisTemplate.execute((RedisCallback<RecordId>) connection -> {
+            RecordId safeId = null;
+            for (XInfoGroup group : connection.streamCommands().xInfoGroups(streamKey)) {
+                RecordId groupSafeId;
+                if (group.pendingCount() != null && group.pendingCount() > 0) {
+                    groupSafeId = connection.streamCommands().xPending(streamKey, group.groupName()).minRecordId();
+                } else {
+                    RecordId lastDelivered = RecordId.of(group.lastDeliveredId());
+                    groupSafeId = RecordId.of(lastDelivered.getTimestamp(), lastDelivered.getSequence() + 1);
+                }
+                if (safeId == null || compare(groupSafeId, safeId) < 0) {
+                    safeId = groupSafeId;
+                }
+            }
+            return safeId;
+        });
+        if (minId == null) {
+            return;
+        }
+        byte[] minIdBytes = rawKey(minId.getValue());
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.execute("XTRIM", streamKey, rawKey("MINID"), minIdBytes));
+    }
+
+    private static int compare(RecordId a, RecordId b) {
+        int result = Long.compare(a.getTimestamp(), b.getTimestamp());
+        return result != 0 ? result : Long.compare(a.getSequence(), b.getSequence());
+    }
+
+    private long pendingCount(byte[] streamKey) {
+        String group = getGroup();
+        PendingMessagesSummary summary = redisTemplate.execute((RedisCallback<PendingMessagesSummary>) connection ->
+                connection.streamCommands().xPending(streamKey, group));
+        return summary != null ? summary.getTotalPendingMessages() : 0;
+    }
+
+    /**
+     * 创建各优先级流及消费者组（已存在时忽略）
+     */
+    private void ensureGroups() {
+        if (groupsReady) {
+            return;
+        }
+        String group = getGroup();
+        for (byte[] streamKey : PRIORITY_STREAM_KEYS) {
+            try {
+                redisTemplate.execute((RedisCallback<String>) connection ->
+                        connection.streamCommands().xGroupCreate(streamKey, group, ReadOffset.from("0"), true));
+                log.info("已创建消费者组，流: {}, 组: {}", new String(streamKey), group);
+            } catch (Exception e) {
+                String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                if (message == null || !message.contains("BUSYGROUP")) {
+                    throw e;
+                }
+            }
+        }
+        groupsReady = true;
+    }
+
+    private String getGroup() {
+        return mailProperties.getQueue().getStreamGroup();
+    }
+
+    @SafeVarargs
+    private static List<ByteRecord> readGroup(RedisConnection connection, Consumer consumer, StreamReadOptions options,
+                                              StreamOffset<byte[]>... streams) {
+        return connection.streamCommands().xReadGroup(consumer, options, streams);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StreamOffset<byte[]>[] allStreams(ReadOffset offset) {
+        StreamOffset<byte[]>[] offsets = new StreamOffset[PRIORITY_STREAM_KEYS.length];
+        for (int i = 0; i < PRIORITY_STREAM_KEYS.length; i++) {
+            offsets[i] = StreamOffset.create(PRIORITY_STREAM_KEYS[i], offset);
+        }
+        return offsets;
+    }
+
+    private static byte[] payloadOf(ByteRecord record) {
+        Map<byte[], byte[]> value = record.getValue();
+        if (value == null) {
+            return null;
+        }
+        for (Map.Entry<byte[], byte[]> entry : value.entrySet()) {
+            if (Arrays.equals(PAYLOAD_FIELD, entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static int priorityOf(byte[] streamKey) {
+        for (int i = 0; i < PRIORITY_STREAM_KEYS.length; i++) {
+            if (Arrays.equals(PRIORITY_STREAM_KEYS[i], streamKey)) {
+                return i + 1;
+            }
+        }
+        return PRIORITY_STREAM_KEYS.length;
+    }
+
+    /**
+     * 根据优先级获取流键
+     */
+    private static String getStreamKeyByPriority(int priority) {
+        return MAIL_STREAM_KEY + ":" + priority;
+    }
+}
@@ -0,0 +1,158 @@
+package com.windcore.storage;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 128位键到long值的开放寻址哈希表
+ *
+ * 键和值都存放在基本类型数组中，每个条目固定占用24字节且不产生对象，
+ * 适合为堆外存储的记录建立百万级别的索引。值必须为非负数。
+ * 非线程安全，由调用方负责加锁。
+ *
+ * @author windcore
+ */
+public class Hash128Index {
+
+    private static final long EMPTY = -1L;
+    private static final long DELETED = -2L;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private long[] highs;
+    private long[] lows;
+    private long[] values;
+    private int size;
+    private int used;
+
+    public Hash128Index(int expectedSize) {
+        allocate(tableSizeFor(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR) + 1)));
+    }
+
+    /**
+     * 查找键对应的值
+     *
+     * @return 值，不存在时返回-1
+     */
+    public long get(long high, long low) {
+        int slot = find(high, low);
+        return slot >= 0 ? values[slot] : EMPTY;
+    }
+
+    /**
+     * 写入键值，已存在时覆盖
+     *
+     * @return 原值，不存在时返回-1
+     */
+    public long put(long high, long low, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("值必须为非负数: " + value);
+        }
+        int slot = find(high, low);
+        if (slot >= 0) {
+            long previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        if (used + 1 > values.length * MAX_LOAD_FACTOR) {
+            rehash(size + 1 > values.length * MAX_LOAD_FACTOR / 2 ? values.length * 2 : values.length);
+        }
+        insert(high, low, value);
+        return EMPTY;
+    }
+
+    /**
+     * 删除键
+     *
+     * @return 原值，不存在时返回-1
+     */
+    public long remove(long high, long low) {
+        int slot = find(high, low);
+        if (slot < 0) {
+            return EMPTY;
+        }
+        long previous = values[slot];
+        values[slot] = DELETED;
+        size--;
+        return previous;
+    }
+
+    /**
+     * 遍历所有值
+     */
+    public void forEachValue(LongConsumer consumer) {
+        for (long value : values) {
+            if (value >= 0) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(long high, long low) {
+        int mask = values.length - 1;
+        int slot = spread(high, low) & mask;
+        while (true) {
+            long value = values[slot];
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value != DELETED && highs[slot] == high && lows[slot] == low) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insert(long high, long low, long value) {
+        int mask = values.length - 1;
+        int slot = spread(high, low) & mask;
+        while (values[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (values[slot] == EMPTY) {
+            used++;
+        }
+        highs[slot] = high;
+        lows[slot] = low;
+        values[slot] = value;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] >= 0) {
+                insert(oldHighs[i], oldLows[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(values, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    private static int spread(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = Integer.highestOneBit(capacity - 1) << 1;
+        return n <= 0 ? 1 << 30 : n;
+    }
+}
@@ -0,0 +1,353 @@
+package com.windcore.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的分段追加日志
+ *
+ * 日志由若干固定大小的段文件组成，每条记录格式为 [int 长度][int CRC32][数据]，
+ * 记录不会跨段。记录地址为 (段序号 << 32) | 段内偏移，可直接用于随机读取。
+ * 数据位于堆外的页缓存中，重启时重新映射段文件并顺序扫描即可恢复。
+ *
+ * @author windcore
+ */
+@Slf4j
+public class MappedAppendLog implements Closeable {
+
+    /**
+     * 每条记录的头部大小（长度和校验和）
+     */
+    public static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    /**
+     * 第一个段的序号（头部的段可能已被删除）
+     */
+    private int baseSegment;
+
+    /**
+     * 当前写入段的写入位置
+     */
+    private int writePosition;
+
+    /**
+     * 记录访问器
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long address, byte[] payload);
+    }
+
+    /**
+     * 打开（或创建）日志
+     *
+     * @param directory 段文件目录
+     * @param prefix 段文件名前缀
+     * @param segmentSize 单个段文件大小（字节）
+     */
+    public MappedAppendLog(Path directory, String prefix, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("段大小不合法: " + segmentSize);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        List<Path> files = listSegmentFiles();
+        if (!files.isEmpty()) {
+            baseSegment = segmentIndexOf(files.get(0));
+        }
+        for (Path file : files) {
+            if (segmentIndexOf(file) != baseSegment + segments.size()) {
+                throw new IOException("追加日志段文件不连续: " + file);
+            }
+            segments.add(mapSegment(file));
+        }
+        if (segments.isEmpty()) {
+            segments.add(mapSegment(segmentFile(baseSegment)));
+        }
+        writePosition = scanEnd(segments.get(segments.size() - 1));
+
+        log.info("追加日志已打开: 目录={}, 段数={}, 当前写入位置={}", directory, segments.size(), writePosition);
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param payload 记录数据
+     * @return 记录地址
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("记录大小超过段大小: " + payload.length);
+        }
+        if (writePosition + recordSize > segmentSize) {
+            segments.add(mapSegment(segmentFile(baseSegment + segments.size())));
+            writePosition = 0;
+        }
+
+        int segmentIndex = baseSegment + segments.size() - 1;
+        MappedByteBuffer buffer = segments.get(segments.size() - 1).buffer;
+        int position = writePosition;
+
+        // 先写数据和校验和，最后写长度，长度非0即表示记录完整
+        buffer.put(position + HEADER_SIZE, payload);
+        buffer.putInt(position + 4, checksum(payload));
+        buffer.putInt(position, payload.length);
+
+        writePosition += recordSize;
+        return address(segmentIndex, position);
+    }
+
+    /**
+     * 读取一条记录
+     *
+     * @param address 记录地址
+     * @return 记录数据
+     */
+    public byte[] read(long address) {
+        Segment segment = segments.get(segmentOf(address) - baseSegment);
+        int position = positionOf(address);
+        int length = segment.buffer.getInt(position);
+        byte[] payload = new byte[length];
+        segment.buffer.get(position + HEADER_SIZE, payload);
+        return payload;
+    }
+
+    /**
+     * 按写入顺序遍历所有记录
+     */
+    public void forEach(RecordVisitor visitor) {
+        for (int i = 0; i < segments.size(); i++) {
+            MappedByteBuffer buffer = segments.get(i).buffer;
+            int position = 0;
+            while (true) {
+                byte[] payload = readValid(buffer, position);
+                if (payload == null) {
+                    break;
+                }
+                visitor.visit(address(baseSegment + i, position), payload);
+                position += HEADER_SIZE + payload.length;
+            }
+        }
+    }
+
+    /**
+     * 从指定地址开始按写入顺序读取记录
+     *
+     * 当前段在该地址之后没有完整记录时继续读取下一段。
+     *
+     * @param address 起始地址，为记录起始位置或上一次调用返回的地址
+     * @param maxRecords 最多读取的记录数
+     * @param visitor 记录访问器
+     * @return 最后一条已读取记录之后的地址，没有读到记录时返回原地址
+     */
+    public synchronized long readFrom(long address, int maxRecords, RecordVisitor visitor) {
+        int segmentIndex = Math.max(segmentOf(address), baseSegment);
+        int position = segmentIndex == segmentOf(address) ? positionOf(address) : 0;
+        long next = address;
+        int count = 0;
+        while (count < maxRecords && segmentIndex - baseSegment < segments.size()) {
+            byte[] payload = readValid(segments.get(segmentIndex - baseSegment).buffer, position);
+            if (payload == null) {
+                // 当前段已读完，最后一段的剩余部分尚未写入
+                if (segmentIndex - baseSegment == segments.size() - 1) {
+                    break;
+                }
+                segmentIndex++;
+                position = 0;
+                continue;
+            }
+            visitor.visit(address(segmentIndex, position), payload);
+            position += HEADER_SIZE + payload.length;
+            next = address(segmentIndex, position);
+            count++;
+        }
+        return next;
+    }
+
+    /**
+     * 结束当前段，之后的记录写入新段；当前段为空时不切换
+     *
+     * @return 之后的记录所在的段序号
+     */
+    public synchronized int rollSegment() throws IOException {
+        if (writePosition > 0) {
+            segments.add(mapSegment(segmentFile(baseSegment + segments.size())));
+            writePosition = 0;
+        }
+        return baseSegment + segments.size() - 1;
+    }
+
+    /**
+     * 删除序号小于指定值的段文件，当前写入段不会被删除
+     *
+     * @param segmentIndex 保留的第一个段序号
+     * @return 删除的段数
+     */
+    public synchronized int truncateBefore(int segmentIndex) throws IOException {
+        int removed = 0;
+        while (baseSegment < segmentIndex && segments.size() > 1) {
+            Segment segment = segments.remove(0);
+            segment.channel.close();
+            Files.deleteIfExists(segmentFile(baseSegment));
+            baseSegment++;
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * 当前写入位置的地址，即下一条记录的地址（当前段剩余空间不足时下一条记录写入新段）
+     */
+    public synchronized long endAddress() {
+        return address(baseSegment + segments.size() - 1, writePosition);
+    }
+
+    /**
+     * 第一个段的起始地址
+     */
+    public synchronized long startAddress() {
+        return address(baseSegment, 0);
+    }
+
+    /**
+     * 将已写入的数据刷到磁盘
+     */
+    public void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * 段数量
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 已占用的字节数（不含当前段的空闲部分）
+     */
+    public synchronized long usedBytes() {
+        return (long) (segments.size() - 1) * segmentSize + writePosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+        segments.clear();
+    }
+
+    public static int segmentOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    public static int positionOf(long address) {
+        return (int) address;
+    }
+
+    private static long address(int segment, int position) {
+        return ((long) segment << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 读取并校验指定位置的记录；没有完整记录时返回null
+     */
+    private byte[] readValid(MappedByteBuffer buffer, int position) {
+        if (position + HEADER_SIZE > segmentSize) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > segmentSize) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(position + HEADER_SIZE, payload);
+        if (checksum(payload) != buffer.getInt(position + 4)) {
+            log.warn("追加日志记录校验失败，截断于偏移 {}", position);
+            return null;
+        }
+        return payload;
+    }
+
+    private int scanEnd(Segment segment) {
+        int position = 0;
+        while (true) {
+            byte[] payload = readValid(segment.buffer, position);
+            if (payload == null) {
+                return position;
+            }
+            position += HEADER_SIZE + payload.length;
+        }
+    }
+
+    private Segment mapSegment(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(channel, buffer);
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("%s-%05d.log", prefix, index));
+    }
+
+    private int segmentIndexOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(prefix.length() + 1, name.length() - ".log".length()));
+    }
+
+    private List<Path> listSegmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(prefix + "-") && name.endsWith(".log");
+                    })
+                    .sorted()
+                    .forEach(files::add);
+        }
+        return files;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.windcore;
+
+import com.windcore.config.RedisConfig;
+import org.junit.jupiter.api.Assumptions;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 测试用的Redis连接：使用本机Redis的15号库，每次创建时清空；Redis不可用时跳过测试
+ *
+ * @author windcore
+ */
+public final class RedisTestSupport {
+
+    private static final int DATABASE = 15;
+
+    private RedisTestSupport() {
+    }
+
+    public static RedisTemplate<String, Object> redisTemplate() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration("localhost", 6379);
+        configuration.setDatabase(DATABASE);
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.serverCommands().flushDb();
+        } catch (Exception e) {
+            connectionFactory.destroy();
+            Assumptions.abort("Redis不可用: " + e.getMessage());
+        }
+        return new RedisConfig().redisTemplate(connectionFactory);
+    }
+
+    public static void close(RedisTemplate<String, Object> redisTemplate) {
+        if (redisTemplate != null && redisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory factory) {
+            factory.destroy();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.windcore.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmtpHostLimiterTest {
+
+    @Test
+    void limitsEachHostSeparately() throws Exception {
+        SmtpHostLimiter limiter = new SmtpHostLimiter(2);
+
+        assertTrue(limiter.acquire("smtp.a:587", 0));
+        assertTrue(limiter.acquire("smtp.a:587", 0));
+        assertFalse(limiter.acquire("smtp.a:587", 10));
+        assertTrue(limiter.acquire("smtp.b:587", 0));
+        assertEquals(Map.of("smtp.a:587", 2, "smtp.b:587", 1), limiter.getActiveCounts());
+
+        limiter.release("smtp.a:587");
+
+        assertTrue(limiter.acquire("smtp.a:587", 0));
+    }
+
+    @Test
+    void rejectsNonPositivePermits() {
+        assertThrows(IllegalArgumentException.class, () -> new SmtpHostLimiter(0));
+    }
+
+    @Test
+    void defaultPerHostLimitIsBelowThePoolSize() {
+        MailProperties mailProperties = new MailProperties();
+
+        assertTrue(new MailConfig(mailProperties).maxConcurrentPerHost() < mailProperties.getPool().getMaxTotal());
+
+        mailProperties.getPool().setMaxConcurrentPerHost(10);
+        assertEquals(mailProperties.getPool().getMaxTotal(), new MailConfig(mailProperties).maxConcurrentPerHost());
+
+        mailProperties.getPool().setEnabled(false);
+        assertEquals(10, new MailConfig(mailProperties).maxConcurrentPerHost());
+    }
+
+    @Test
+    void saturatedExecutorsRejectInsteadOfRunningInTheCaller() {
+        MailProperties mailProperties = new MailProperties();
+        mailProperties.getBatch().setParallelism(1);
+        mailProperties.getBatch().setQueueCapacity(1);
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) new MailConfig(mailProperties).mailBatchExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(release));
+            executor.execute(() -> await(release));
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+            }));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
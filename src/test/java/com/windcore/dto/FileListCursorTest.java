@@ -0,0 +1,44 @@
+package com.windcore.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileListCursorTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        FileListCursor cursor = new FileListCursor(LocalDateTime.of(2024, 5, 6, 7, 8, 9, 123456789), "id|with|bars");
+
+        FileListCursor decoded = FileListCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+        assertEquals("id|with|bars", decoded.getId());
+    }
+
+    @Test
+    void blankTokenMeansFirstPage() {
+        assertNull(FileListCursor.decode(null));
+        assertNull(FileListCursor.decode("  "));
+    }
+
+    @Test
+    void malformedTokenIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> FileListCursor.decode("not-a-cursor"));
+        assertThrows(IllegalArgumentException.class, () -> FileListCursor.decode("!!!"));
+    }
+
+    @Test
+    void ordersByUploadTimeThenId() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        assertTrue(new FileListCursor(time, "b").compareTo(new FileListCursor(time.plusNanos(1), "a")) < 0);
+        assertTrue(new FileListCursor(time, "a").compareTo(new FileListCursor(time, "b")) < 0);
+        assertTrue(new FileListCursor(null, "z").compareTo(new FileListCursor(time, "a")) < 0);
+    }
+}
@@ -0,0 +1,52 @@
+package com.windcore.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailHistoryCursorTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        MailHistoryCursor cursor = new MailHistoryCursor(LocalDateTime.of(2024, 5, 6, 7, 8, 9, 123456789), "MAIL|1");
+
+        MailHistoryCursor decoded = MailHistoryCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+        assertEquals("MAIL|1", decoded.getId());
+        assertTrue(cursor.encode().matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void missingCreateTimeRoundTrips() {
+        MailHistoryCursor cursor = new MailHistoryCursor(null, null);
+
+        assertEquals(cursor, MailHistoryCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void blankTokenMeansFirstPage() {
+        assertNull(MailHistoryCursor.decode(null));
+        assertNull(MailHistoryCursor.decode("  "));
+    }
+
+    @Test
+    void malformedTokenIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MailHistoryCursor.decode("not-a-cursor"));
+        assertThrows(IllegalArgumentException.class, () -> MailHistoryCursor.decode("!!!"));
+    }
+
+    @Test
+    void newestComesFirst() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        assertTrue(new MailHistoryCursor(time.plusNanos(1), "a").compareTo(new MailHistoryCursor(time, "b")) < 0);
+        assertTrue(new MailHistoryCursor(time, "b").compareTo(new MailHistoryCursor(time, "a")) < 0);
+        assertEquals(0, new MailHistoryCursor(time, "a").compareTo(new MailHistoryCursor(time, "a")));
+    }
+}
@@ -0,0 +1,71 @@
+package com.windcore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentDigestTest {
+
+    private static final String MD5 = "5eb63bbbe01eeed093cb22bb8f5acdc3";
+
+    @Test
+    void parsesHexIgnoringCaseAndRoundTrips() {
+        ContentDigest lower = ContentDigest.parse(MD5);
+        ContentDigest upper = ContentDigest.parse(MD5.toUpperCase());
+
+        assertEquals(lower, upper);
+        assertEquals(lower.hashCode(), upper.hashCode());
+        assertEquals(16, lower.length());
+        assertEquals(MD5, upper.toHex());
+        assertTrue(lower.matches(MD5.toUpperCase()));
+        assertFalse(lower.matches(MD5.substring(1) + "0"));
+    }
+
+    @Test
+    void rejectsMalformedHex() {
+        assertNull(ContentDigest.tryParse(null));
+        assertNull(ContentDigest.tryParse(""));
+        assertNull(ContentDigest.tryParse("abc"));
+        assertNull(ContentDigest.tryParse("zz"));
+        assertNull(ContentDigest.tryParse("éé"));
+        assertThrows(IllegalArgumentException.class, () -> ContentDigest.parse("xyz0"));
+    }
+
+    @Test
+    void binaryKeyIsPrefixFollowedByRawBytes() {
+        ContentDigest digest = ContentDigest.parse(MD5);
+
+        byte[] key = digest.toBinaryKey("upload:session:");
+
+        byte[] prefix = "upload:session:".getBytes(StandardCharsets.UTF_8);
+        assertEquals(prefix.length + 16, key.length);
+        assertArrayEquals(prefix, Arrays.copyOf(key, prefix.length));
+        assertArrayEquals(digest.toBytes(), Arrays.copyOfRange(key, prefix.length, key.length));
+    }
+
+    @Test
+    void exposesLeading128BitsAsLongs() {
+        ContentDigest digest = ContentDigest.parse(MD5);
+
+        assertEquals(0x5eb63bbbe01eeed0L, digest.high64());
+        assertEquals(0x93cb22bb8f5acdc3L, digest.low64());
+    }
+
+    @Test
+    void ofCopiesInput() {
+        byte[] bytes = {1, 2, 3};
+        ContentDigest digest = ContentDigest.of(bytes);
+        bytes[0] = 9;
+
+        assertEquals("010203", digest.toHex());
+        assertThrows(IllegalArgumentException.class, () -> ContentDigest.of(new byte[0]));
+    }
+}
@@ -0,0 +1,137 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailEnqueueSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    private MailProperties mailProperties;
+    private MailEnqueueSpool spool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mailProperties = new MailProperties();
+        mailProperties.getSpool().setDir(dir.toString());
+        mailProperties.getSpool().setSegmentSize(256);
+        spool = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        spool.close();
+    }
+
+    @Test
+    void entriesRoundTripInOrder() throws IOException {
+        append(0, 3);
+
+        List<MailEnqueueSpool.Entry> entries = spool.peek(10);
+
+        assertEquals(List.of("MAIL_0", "MAIL_1", "MAIL_2"), ids(entries));
+        assertEquals(3, entries.get(1).priority());
+        assertArrayEquals("body-1".getBytes(StandardCharsets.UTF_8), entries.get(1).payload());
+        // peek 不推进位置
+        assertEquals(ids(entries), ids(spool.peek(10)));
+        assertEquals(3, spool.getPendingCount());
+    }
+
+    @Test
+    void reopenResumesAfterTheCheckpoint() throws IOException {
+        append(0, 5);
+        spool.commit(spool.peek(2));
+        spool.close();
+
+        spool = open();
+
+        assertEquals(3, spool.getPendingCount());
+        assertEquals(List.of("MAIL_2", "MAIL_3", "MAIL_4"), ids(spool.peek(10)));
+    }
+
+    @Test
+    void uncommittedBatchIsReadAgainAfterRestart() throws IOException {
+        append(0, 4);
+        spool.commit(spool.peek(2));
+        // 第二批已读取但没有确认就退出
+        spool.peek(2);
+        spool.close();
+
+        spool = open();
+
+        assertEquals(List.of("MAIL_2", "MAIL_3"), ids(spool.peek(10)));
+    }
+
+    @Test
+    void drainedSegmentsAreDeleted() throws IOException {
+        append(0, 30);
+        assertTrue(segmentCount() > 2);
+
+        List<MailEnqueueSpool.Entry> entries;
+        while (!(entries = spool.peek(4)).isEmpty()) {
+            spool.commit(entries);
+        }
+
+        assertFalse(spool.hasPending());
+        assertEquals(1, segmentCount());
+        spool.close();
+        spool = open();
+        assertFalse(spool.hasPending());
+    }
+
+    @Test
+    void appendFailsWhenFull() throws IOException {
+        mailProperties.getSpool().setMaxBytes(100L);
+        append(0, 5);
+
+        assertThrows(IOException.class, () -> append(5, 1));
+    }
+
+    private MailEnqueueSpool open() throws IOException {
+        MailEnqueueSpool opened = new MailEnqueueSpool(mailProperties);
+        opened.init();
+        return opened;
+    }
+
+    private void append(int from, int count) throws IOException {
+        List<String> ids = new ArrayList<>();
+        int[] priorities = new int[count];
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            ids.add("MAIL_" + (from + i));
+            priorities[i] = 3;
+            payloads[i] = ("body-" + (from + i)).getBytes(StandardCharsets.UTF_8);
+        }
+        spool.append(ids, priorities, payloads);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    private static List<String> ids(List<MailEnqueueSpool.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        entries.forEach(entry -> ids.add(entry.mailId()));
+        return ids;
+    }
+}
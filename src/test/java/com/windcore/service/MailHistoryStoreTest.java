@@ -0,0 +1,58 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.mapper.MailHistoryMapper;
+import com.windcore.model.MailMessage;
+import com.windcore.pojo.MailHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class MailHistoryStoreTest {
+
+    @Test
+    void longRecipientListsAreCutAtAnAddressBoundary() {
+        List<String> to = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            to.add("user" + i + "@example.com");
+        }
+
+        String joined = MailHistoryStore.joinRecipients(to);
+
+        assertTrue(joined.length() <= MailHistoryStore.MAX_TO_ADDRESS_LENGTH);
+        String[] kept = joined.split(",");
+        assertEquals(to.subList(0, kept.length), List.of(kept));
+    }
+
+    @Test
+    void flushWritesTruncatedColumns() {
+        MailHistoryMapper mapper = mock(MailHistoryMapper.class);
+        List<MailHistory> written = new ArrayList<>();
+        doAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return written.size();
+        }).when(mapper).upsertBatch(any());
+        MailHistoryStore store = new MailHistoryStore(mapper, new MailProperties());
+        MailMessage mailMessage = MailMessage.builder()
+                .id("MAIL_1")
+                .to(List.of("a@example.com", "b@example.com"))
+                .subject("s".repeat(600))
+                .status(MailMessage.MailStatus.SUCCESS)
+                .build();
+
+        store.record(mailMessage);
+        store.flush();
+
+        assertEquals(1, written.size());
+        assertEquals("a@example.com,b@example.com", written.get(0).getToAddress());
+        assertEquals(MailHistoryStore.MAX_SUBJECT_LENGTH, written.get(0).getSubject().length());
+        assertEquals("SUCCESS", written.get(0).getStatus());
+    }
+}
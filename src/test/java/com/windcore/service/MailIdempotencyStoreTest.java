@@ -0,0 +1,151 @@
+package com.windcore.service;
+
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailProperties;
+import com.windcore.controller.MailController.SimpleMailRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MailIdempotencyStoreTest {
+
+    private static final byte[] KEY = "mail:idempotency:order-1".getBytes(StandardCharsets.UTF_8);
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailProperties mailProperties;
+    private MailIdempotencyStore store;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        mailProperties = new MailProperties();
+        store = new MailIdempotencyStore(redisTemplate, mailProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void repeatedRequestReturnsTheFirstMailId() {
+        AtomicInteger sends = new AtomicInteger();
+
+        MailIdempotencyStore.Result first = store.execute("order-1", request("a@example.com"),
+                () -> "MAIL_" + sends.incrementAndGet());
+        MailIdempotencyStore.Result second = store.execute("order-1", request("a@example.com"),
+                () -> "MAIL_" + sends.incrementAndGet());
+
+        assertEquals("MAIL_1", first.mailId());
+        assertFalse(first.duplicate());
+        assertEquals("MAIL_1", second.mailId());
+        assertTrue(second.duplicate());
+        assertEquals(1, sends.get());
+    }
+
+    @Test
+    void sameKeyWithDifferentRequestIsRejected() {
+        store.execute("order-1", request("a@example.com"), () -> "MAIL_1");
+
+        assertThrows(MailIdempotencyStore.MismatchException.class,
+                () -> store.execute("order-1", request("b@example.com"), () -> "MAIL_2"));
+    }
+
+    @Test
+    void requestWhileInProgressIsRejectedOrMismatched() {
+        store.execute("order-1", request("a@example.com"), () -> {
+            assertThrows(MailIdempotencyStore.InProgressException.class,
+                    () -> store.execute("order-1", request("a@example.com"), () -> "MAIL_2"));
+            assertThrows(MailIdempotencyStore.MismatchException.class,
+                    () -> store.execute("order-1", request("b@example.com"), () -> "MAIL_2"));
+            return "MAIL_1";
+        });
+    }
+
+    @Test
+    void failedSendReleasesTheKey() {
+        assertThrows(IllegalStateException.class, () -> store.execute("order-1", request("a@example.com"), () -> {
+            throw new IllegalStateException("smtp down");
+        }));
+
+        MailIdempotencyStore.Result retry = store.execute("order-1", request("a@example.com"), () -> "MAIL_2");
+
+        assertEquals("MAIL_2", retry.mailId());
+        assertFalse(retry.duplicate());
+    }
+
+    @Test
+    void releaseKeepsAnotherRequestsMarker() {
+        byte[] other = "\0pending:other".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IllegalStateException.class, () -> store.execute("order-1", request("a@example.com"), () -> {
+            // 本次标记已过期，另一个请求写入了自己的标记
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(KEY, other));
+            throw new IllegalStateException("smtp down");
+        }));
+
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(KEY));
+        assertEquals("\0pending:other", new String(value, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void slowSendKeepsTheMarkerAlive() {
+        mailProperties.getIdempotency().setPendingTtlSeconds(1L);
+
+        store.execute("order-1", request("a@example.com"), () -> {
+            sleep(2500);
+            assertThrows(MailIdempotencyStore.InProgressException.class,
+                    () -> store.execute("order-1", request("a@example.com"), () -> "MAIL_2"));
+            return "MAIL_1";
+        });
+
+        assertEquals("MAIL_1", store.execute("order-1", request("a@example.com"), () -> "MAIL_3").mailId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void redisFailureOnLookupSendsWithoutDeduplication() {
+        RedisTemplate<String, Object> failing = mock(RedisTemplate.class);
+        when(failing.execute(any(RedisCallback.class)))
+                .thenReturn(Boolean.FALSE)
+                .thenThrow(new RedisConnectionFailureException("connection reset"));
+        MailIdempotencyStore failOpen = new MailIdempotencyStore(failing, mailProperties);
+
+        MailIdempotencyStore.Result result = failOpen.execute("order-1", request("a@example.com"), () -> "MAIL_1");
+
+        assertEquals("MAIL_1", result.mailId());
+        assertFalse(result.duplicate());
+        failOpen.shutdown();
+    }
+
+    private static SimpleMailRequest request(String to) {
+        SimpleMailRequest request = new SimpleMailRequest();
+        request.setTo(to);
+        request.setSubject("订单确认");
+        request.setContent("您的订单已确认");
+        return request;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.windcore.service;
+
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailRateLimiterTest {
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailProperties mailProperties;
+    private MailRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        mailProperties = new MailProperties();
+        mailProperties.getSmtp().setHost("smtp.example.com");
+        MailProperties.RateLimit rateLimit = mailProperties.getRateLimit();
+        rateLimit.setEnabled(true);
+        rateLimit.setRelayPerSecond(1.0);
+        rateLimit.setRelayBurst(3);
+        rateLimit.setDomainPerSecond(1.0);
+        rateLimit.setDomainBurst(2);
+        rateLimiter = new MailRateLimiter(redisTemplate, mailProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void burstIsAllowedThenCallersWait() {
+        assertEquals(0, rateLimiter.acquire(message("a@one.com")));
+        assertEquals(0, rateLimiter.acquire(message("b@one.com")));
+
+        long wait = rateLimiter.acquire(message("c@one.com"));
+
+        assertTrue(wait > 0 && wait <= 1000, "wait=" + wait);
+        assertEquals(2, rateLimiter.getAllowedCount());
+        assertEquals(1, rateLimiter.getLimitedCount());
+    }
+
+    @Test
+    void limitedDomainDoesNotConsumeRelayTokens() {
+        rateLimiter.acquire(message("a@one.com"));
+        rateLimiter.acquire(message("b@one.com"));
+        assertTrue(rateLimiter.acquire(message("c@one.com")) > 0);
+
+        // 中继令牌桶只扣减了两次，另一个域名还能发送一封
+        assertEquals(0, rateLimiter.acquire(message("a@two.com")));
+        assertTrue(rateLimiter.acquire(message("b@two.com")) > 0);
+    }
+
+    @Test
+    void tokensRefillFromRedisTime() throws Exception {
+        mailProperties.getRateLimit().setDomainPerSecond(20.0);
+        mailProperties.getRateLimit().setDomainBurst(1);
+        assertEquals(0, rateLimiter.acquire(message("a@one.com")));
+        assertTrue(rateLimiter.acquire(message("b@one.com")) > 0);
+
+        Thread.sleep(100);
+
+        assertEquals(0, rateLimiter.acquire(message("c@one.com")));
+        String stamp = String.valueOf(redisTemplate.opsForHash().get("mail:ratelimit:domain:one.com", "ts"));
+        assertTrue(stamp.matches("\\d{13}"), stamp);
+    }
+
+    @Test
+    void disabledOrUnlimitedAlwaysAllows() {
+        mailProperties.getRateLimit().setRelayPerSecond(0.0);
+        mailProperties.getRateLimit().setDomainPerSecond(0.0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, rateLimiter.acquire(message("a@one.com")));
+        }
+
+        mailProperties.getRateLimit().setEnabled(false);
+        assertEquals(0, rateLimiter.acquire(message("a@one.com")));
+    }
+
+    @Test
+    void recipientDomainsAreNormalized() {
+        MailMessage mailMessage = MailMessage.builder()
+                .to(List.of("User <A@One.COM>", "b@one.com", "broken@"))
+                .cc(List.of("c@Two.com"))
+                .bcc(List.of("no-domain"))
+                .build();
+
+        assertEquals(Set.of("one.com", "two.com"), MailRateLimiter.recipientDomains(mailMessage));
+    }
+
+    private static MailMessage message(String to) {
+        return MailMessage.builder().id("MAIL_" + to).to(List.of(to)).build();
+    }
+}
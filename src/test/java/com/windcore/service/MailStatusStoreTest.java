@@ -0,0 +1,84 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import com.windcore.dto.MailHistoryCursor;
+import com.windcore.model.MailMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class MailStatusStoreTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private MailStatusStore mailStatusStore;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mailStatusStore = new MailStatusStore(new MailProperties(), mock(ObjectProvider.class));
+    }
+
+    @Test
+    void cursorPagesVisitEveryRecordOnce() {
+        // 相同创建时间的记录按ID排序
+        for (int i = 0; i < 25; i++) {
+            mailStatusStore.update(message("MAIL_" + (100 + i), BASE.plusSeconds(i / 3), MailMessage.MailStatus.SUCCESS));
+        }
+
+        List<String> ids = new ArrayList<>();
+        MailHistoryCursor cursor = null;
+        List<MailMessage> page;
+        do {
+            page = mailStatusStore.getHistory(null, cursor, 4);
+            for (MailMessage mailMessage : page) {
+                ids.add(mailMessage.getId());
+            }
+            if (!page.isEmpty()) {
+                MailMessage last = page.get(page.size() - 1);
+                // 游标经过字符串往返，与接口中的用法一致
+                cursor = MailHistoryCursor.decode(new MailHistoryCursor(last.getCreateTime(), last.getId()).encode());
+            }
+        } while (page.size() == 4);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 24; i >= 0; i--) {
+            expected.add("MAIL_" + (100 + i));
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    void statusChangeMovesRecordBetweenStatusIndexes() {
+        mailStatusStore.update(message("MAIL_1", BASE, MailMessage.MailStatus.PENDING));
+        mailStatusStore.update(message("MAIL_2", BASE.plusSeconds(1), MailMessage.MailStatus.PENDING));
+        mailStatusStore.update(message("MAIL_1", BASE, MailMessage.MailStatus.FAILED));
+
+        assertEquals(List.of("MAIL_2"), ids(mailStatusStore.getHistory(MailMessage.MailStatus.PENDING, null, 10)));
+        assertEquals(List.of("MAIL_1"), ids(mailStatusStore.getHistory(MailMessage.MailStatus.FAILED, null, 10)));
+        assertEquals(List.of("MAIL_2", "MAIL_1"), ids(mailStatusStore.getHistory(null, null, 10)));
+    }
+
+    private static List<String> ids(List<MailMessage> messages) {
+        List<String> ids = new ArrayList<>();
+        messages.forEach(mailMessage -> ids.add(mailMessage.getId()));
+        return ids;
+    }
+
+    private static MailMessage message(String id, LocalDateTime createTime, MailMessage.MailStatus status) {
+        return MailMessage.builder()
+                .id(id)
+                .to(List.of("user@example.com"))
+                .subject("subject")
+                .status(status)
+                .createTime(createTime)
+                .build();
+    }
+}
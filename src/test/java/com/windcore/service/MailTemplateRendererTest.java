@@ -0,0 +1,126 @@
+package com.windcore.service;
+
+import com.windcore.config.MailConfig;
+import com.windcore.config.MailProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailTemplateRendererTest {
+
+    private TemplateEngine templateEngine;
+    private MailTemplateRenderer renderer;
+
+    @BeforeEach
+    void setUp() {
+        MailProperties mailProperties = new MailProperties();
+        templateEngine = new MailConfig(mailProperties).emailTemplateEngine();
+        renderer = new MailTemplateRenderer(templateEngine, mailProperties);
+    }
+
+    @Test
+    void precompiledWelcomeMatchesTemplateEngine() {
+        List<Map<String, Object>> cases = new ArrayList<>();
+        cases.add(welcome("张三", "zhang@example.com", "2024-01-01 08:00:00", "https://example.com/a?x=1&y=2"));
+        cases.add(welcome("<script>alert('x')</script>", "\"quoted\"@example.com", "&amp;", "javascript:alert(1)"));
+        cases.add(welcome("", "", "", ""));
+        cases.add(welcome(null, null, null, "https://example.com"));
+        Map<String, Object> numbers = welcome("emoji 😀", "a@example.com", null, "https://example.com");
+        numbers.put("registerTime", 1_700_000_000_000L);
+        numbers.put("email", 42);
+        numbers.put("companyName", true);
+        cases.add(numbers);
+
+        for (Map<String, Object> variables : cases) {
+            assertEquals(process("welcome", variables), renderer.render("welcome", variables), variables.toString());
+        }
+
+        MailTemplateRenderer.TemplateMetrics metrics = metrics("welcome");
+        assertTrue(metrics.isPrecompiled());
+        assertEquals(cases.size(), metrics.getPrecompiledCount());
+    }
+
+    @Test
+    void unsupportedVariablesFallBackToTemplateEngine() {
+        // 属性没有默认值时null会删除该属性，日期类型的格式由模板引擎决定
+        Map<String, Object> missingUrl = welcome("张三", "zhang@example.com", "now", null);
+        Map<String, Object> dateValue = welcome("张三", "zhang@example.com", null, "https://example.com");
+        dateValue.put("registerTime", LocalDateTime.of(2024, 1, 1, 8, 0));
+
+        assertEquals(process("welcome", missingUrl), renderer.render("welcome", missingUrl));
+        assertEquals(process("welcome", dateValue), renderer.render("welcome", dateValue));
+        assertEquals(0, metrics("welcome").getPrecompiledCount());
+    }
+
+    @Test
+    void conditionalTemplatesUseTemplateEngine() {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("userName", "李四");
+        variables.put("resetCode", "<123456>");
+        variables.put("requestTime", "2024-01-01 08:00:00");
+
+        assertEquals(process("password-reset", variables), renderer.render("password-reset", variables));
+        assertFalse(metrics("password-reset").isPrecompiled());
+    }
+
+    @Test
+    void unparsedAttributeSyntaxUsesTemplateEngine() {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("userName", "王五");
+        variables.put("orderNo", "A-1001");
+        variables.put("detailUrl", "https://example.com/orders/A-1001");
+
+        assertEquals(process("quoted-attributes", variables), renderer.render("quoted-attributes", variables));
+        assertTrue(renderer.render("quoted-attributes", variables).contains("A-1001</span>"));
+        assertFalse(metrics("quoted-attributes").isPrecompiled());
+    }
+
+    @Test
+    void analyzeRejectsUnsupportedSyntax() {
+        assertNotNull(CompiledMailTemplate.analyze("<p th:text=\"${name ?: 'x'}\">n</p><a th:href=\"${url}\">u</a>"));
+        assertNull(CompiledMailTemplate.analyze("<p th:if=\"${name}\">n</p>"));
+        assertNull(CompiledMailTemplate.analyze("<p>[[${name}]]</p>"));
+        assertNull(CompiledMailTemplate.analyze("<p th:text=\"${user.name}\">n</p>"));
+        assertNull(CompiledMailTemplate.analyze("<p th:text=\"'Hi ' + ${name}\">n</p>"));
+        assertNull(CompiledMailTemplate.analyze("<p th:text='${name}'>n</p>"));
+        assertNull(CompiledMailTemplate.analyze("<p data-th-text=\"${name}\">n</p>"));
+        assertNull(CompiledMailTemplate.analyze("<p th:text = '${name}'>n</p><a th:href=\"${url}\">u</a>"));
+        assertNotNull(CompiledMailTemplate.analyze("<html xmlns:th=\"http://www.thymeleaf.org\"><p class=\"th-x\">n</p></html>"));
+    }
+
+    private String process(String templateName, Map<String, Object> variables) {
+        Context context = new Context();
+        context.setVariables(variables);
+        return templateEngine.process(templateName, context);
+    }
+
+    private MailTemplateRenderer.TemplateMetrics metrics(String templateName) {
+        return renderer.getMetrics().stream()
+                .filter(item -> item.getTemplateName().equals(templateName))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static Map<String, Object> welcome(String userName, String email, String registerTime, String url) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("userName", userName);
+        variables.put("email", email);
+        variables.put("registerTime", registerTime);
+        variables.put("activationUrl", url);
+        variables.put("unsubscribeUrl", url);
+        return variables;
+    }
+}
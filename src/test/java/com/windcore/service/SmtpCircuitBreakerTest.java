@@ -0,0 +1,143 @@
+package com.windcore.service;
+
+import com.windcore.config.MailProperties;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import org.eclipse.angus.mail.util.MailConnectException;
+import org.eclipse.angus.mail.util.SocketConnectException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import java.io.FileNotFoundException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmtpCircuitBreakerTest {
+
+    private MailProperties mailProperties;
+    private SmtpCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        mailProperties = new MailProperties();
+        mailProperties.getQueue().setWorkers(8);
+        MailProperties.CircuitBreaker config = mailProperties.getCircuitBreaker();
+        config.setWindowSize(4);
+        config.setMinCalls(4);
+        config.setFailureRateThreshold(0.5);
+        config.setOpenDurationMillis(50L);
+        circuitBreaker = new SmtpCircuitBreaker(mailProperties);
+    }
+
+    @Test
+    void opensWhenTransportFailuresReachTheThreshold() {
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.onFailure(new ConnectException("Connection refused"));
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onFailure(new ConnectException("Connection refused"));
+
+        assertEquals(SmtpCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void onlyConnectionFailuresAreCounted() {
+        assertTrue(SmtpCircuitBreaker.isTransportFailure(new ConnectException("refused")));
+        assertTrue(SmtpCircuitBreaker.isTransportFailure(new SocketTimeoutException("Read timed out")));
+        assertTrue(SmtpCircuitBreaker.isTransportFailure(new SocketConnectException("refused", null, "smtp", 25, 5000)));
+        assertTrue(SmtpCircuitBreaker.isTransportFailure(new AuthenticationFailedException("535")));
+        assertTrue(SmtpCircuitBreaker.isTransportFailure(new MessagingException("421 service not available")));
+        assertTrue(SmtpCircuitBreaker.isTransportFailure(new MailSendException(Map.of(new Object(),
+                new MailConnectException(new SocketConnectException("refused", null, "smtp", 25, 5000))))));
+
+        assertFalse(SmtpCircuitBreaker.isTransportFailure(new SendFailedException("550 mailbox unavailable")));
+        assertFalse(SmtpCircuitBreaker.isTransportFailure(new MessagingException("554 content rejected")));
+        assertFalse(SmtpCircuitBreaker.isTransportFailure(
+                new MessagingException("IOException while sending message", new FileNotFoundException("attachment.pdf"))));
+    }
+
+    @Test
+    void successWhileOpenDoesNotClose() {
+        open();
+
+        circuitBreaker.onSuccess(10);
+
+        assertEquals(SmtpCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void onlyTheProbeResultClosesTheBreaker() throws Exception {
+        open();
+        Thread.sleep(60);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(SmtpCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        // 半开状态只放行一次探测
+        assertFalse(CompletableFuture.supplyAsync(() -> circuitBreaker.tryAcquire()).get());
+        // 熔断前开始的其他线程的发送结果不影响状态
+        CompletableFuture.runAsync(() -> {
+            circuitBreaker.onSuccess(10);
+            circuitBreaker.release();
+        }).get();
+        assertEquals(SmtpCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.release();
+
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void failedProbeReopens() throws Exception {
+        open();
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure(new ConnectException("Connection refused"));
+        circuitBreaker.release();
+
+        assertEquals(SmtpCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void probeWithoutMailAllowsTheNextProbe() throws Exception {
+        open();
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.release();
+
+        assertTrue(CompletableFuture.supplyAsync(() -> circuitBreaker.tryAcquire()).get());
+    }
+
+    @Test
+    void concurrencyLimitHalvesAndRecovers() {
+        assertEquals(8, circuitBreaker.getConcurrencyLimit());
+
+        circuitBreaker.onSuccess(mailProperties.getCircuitBreaker().getTargetLatencyMillis() + 1);
+        assertEquals(4, circuitBreaker.getConcurrencyLimit());
+
+        for (int i = 0; i < 40; i++) {
+            circuitBreaker.onSuccess(10);
+        }
+        assertEquals(8, circuitBreaker.getConcurrencyLimit());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(new ConnectException("Connection refused"));
+        }
+        assertEquals(SmtpCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+}
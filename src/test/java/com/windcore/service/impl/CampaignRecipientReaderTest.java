@@ -0,0 +1,96 @@
+package com.windcore.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CampaignRecipientReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void csvQuotedFieldsAndLineEndings() throws IOException {
+        String csv = "\uFEFFemail,name,note\r\n"
+                + "a@example.com,\"Smith, John\",\"say \"\"hi\"\"\"\r\n"
+                + "\r\n"
+                + "b@example.com,Bob,\"line1\nline2\"\n";
+        try (CampaignRecipientReader reader = reader(csv, CampaignRecipientReader.FORMAT_CSV)) {
+            CampaignRecipientReader.Row first = reader.next();
+            assertEquals("a@example.com", first.values().get("email"));
+            assertEquals("Smith, John", first.values().get("name"));
+            assertEquals("say \"hi\"", first.values().get("note"));
+
+            CampaignRecipientReader.Row second = reader.next();
+            assertEquals("line1\nline2", second.values().get("note"));
+            assertEquals(5, second.lineNumber());
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void unbalancedQuoteIsCappedAndReadingResumes() throws IOException {
+        StringBuilder csv = new StringBuilder("email,name\n");
+        csv.append("broken@example.com,\"Bob\n");
+        int rows = 20_000;
+        for (int i = 0; i < rows; i++) {
+            csv.append("user").append(i).append("@example.com,User\n");
+        }
+
+        try (CampaignRecipientReader reader = reader(csv.toString(), CampaignRecipientReader.FORMAT_CSV)) {
+            CampaignRecipientReader.Row broken = reader.next();
+            assertNull(broken.values());
+            assertNotNull(broken.error());
+
+            int valid = 0;
+            CampaignRecipientReader.Row row;
+            while ((row = reader.next()) != null) {
+                assertNull(row.error(), row.error());
+                valid++;
+            }
+            // 只有超过上限之前被并入错误记录的行丢失，之后的行都能正常读取
+            assertTrue(valid > rows / 2, "valid=" + valid);
+            assertTrue(valid < rows);
+        }
+    }
+
+    @Test
+    void oversizedJsonLineIsSkipped() throws IOException {
+        String json = "{\"email\":\"" + "x".repeat(CampaignRecipientReader.MAX_RECORD_LENGTH) + "\"}\n"
+                + "\n"
+                + "{\"email\":\"a@example.com\",\"age\":3}\n";
+        try (CampaignRecipientReader reader = reader(json, CampaignRecipientReader.FORMAT_NDJSON)) {
+            CampaignRecipientReader.Row oversized = reader.next();
+            assertNull(oversized.values());
+            assertEquals(1, oversized.lineNumber());
+
+            CampaignRecipientReader.Row row = reader.next();
+            assertEquals("a@example.com", row.values().get("email"));
+            assertEquals(3, row.values().get("age"));
+            assertEquals(3, row.lineNumber());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void detectFormatUsesNameThenContentType() {
+        assertEquals(CampaignRecipientReader.FORMAT_CSV, CampaignRecipientReader.detectFormat("list.CSV", null));
+        assertEquals(CampaignRecipientReader.FORMAT_NDJSON, CampaignRecipientReader.detectFormat("list.jsonl", null));
+        assertEquals(CampaignRecipientReader.FORMAT_NDJSON,
+                CampaignRecipientReader.detectFormat("upload", "application/x-ndjson"));
+        assertNull(CampaignRecipientReader.detectFormat("list.xlsx", "application/octet-stream"));
+    }
+
+    private CampaignRecipientReader reader(String content, String format) {
+        return new CampaignRecipientReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+                format, objectMapper);
+    }
+}
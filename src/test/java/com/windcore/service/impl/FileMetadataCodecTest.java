@@ -0,0 +1,62 @@
+package com.windcore.service.impl;
+
+import com.windcore.model.FileMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileMetadataCodecTest {
+
+    @Test
+    void putRecordRoundTripsAllFields() {
+        FileMetadata file = new FileMetadata();
+        file.setId("42");
+        file.setFileName("报告 2024.pdf");
+        file.setSafeFileName("safe.pdf");
+        file.setFilePath("/data/uploads/safe.pdf");
+        file.setFileType("application/pdf");
+        file.setFileSize(123_456_789_012L);
+        file.setFileMd5("5eb63bbbe01eeed093cb22bb8f5acdc3");
+        file.setBusinessType("doc");
+        file.setUploadTime(LocalDateTime.of(2024, 2, 29, 23, 59, 59, 999_999_999));
+
+        byte[] record = FileMetadataCodec.encode(file);
+        FileMetadata decoded = FileMetadataCodec.decode(record);
+
+        assertEquals(FileMetadataCodec.RECORD_PUT, record[0]);
+        assertEquals(file.toString(), decoded.toString());
+    }
+
+    @Test
+    void nullFieldsStayNull() {
+        FileMetadata file = new FileMetadata();
+        file.setId("1");
+
+        FileMetadata decoded = FileMetadataCodec.decode(FileMetadataCodec.encode(file));
+
+        assertEquals("1", decoded.getId());
+        assertNull(decoded.getFileName());
+        assertNull(decoded.getFileMd5());
+        assertNull(decoded.getUploadTime());
+        assertEquals(0, decoded.getFileSize());
+    }
+
+    @Test
+    void deleteRecordCarriesId() {
+        byte[] record = FileMetadataCodec.encodeDelete("file-7");
+
+        assertEquals(FileMetadataCodec.RECORD_DELETE, record[0]);
+        assertEquals("file-7", FileMetadataCodec.decodeDeletedId(record));
+    }
+
+    @Test
+    void idMarkRecordCarriesNextId() {
+        byte[] record = FileMetadataCodec.encodeIdMark(1L << 40);
+
+        assertEquals(FileMetadataCodec.RECORD_ID_MARK, record[0]);
+        assertEquals(1L << 40, FileMetadataCodec.decodeIdMark(record));
+    }
+}
@@ -0,0 +1,72 @@
+package com.windcore.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class FileMetadataJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void closeFinishesQueuedRecords() throws IOException {
+        FileMetadataJournal journal = new FileMetadataJournal(dir, true, 16, Long.MAX_VALUE);
+        journal.open(record -> {
+        });
+        AtomicInteger applied = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            futures.add(journal.append(("record-" + i).getBytes(StandardCharsets.UTF_8), applied::incrementAndGet));
+        }
+
+        journal.close();
+
+        for (CompletableFuture<Void> future : futures) {
+            assertFalse(future.isCompletedExceptionally());
+            future.join();
+        }
+        assertEquals(2000, applied.get());
+        assertEquals(2000, replay().size());
+    }
+
+    @Test
+    void recordsSurviveSnapshotAndReopen() throws IOException {
+        FileMetadataJournal journal = new FileMetadataJournal(dir, false, 16, 1);
+        journal.open(record -> {
+        });
+        List<byte[]> state = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] record = ("record-" + i).getBytes(StandardCharsets.UTF_8);
+            journal.append(record, () -> state.add(record)).join();
+            if (journal.shouldSnapshot()) {
+                journal.snapshot(() -> new ArrayList<>(state));
+            }
+        }
+        journal.close();
+
+        List<String> replayed = replay();
+
+        assertEquals(10, replayed.size());
+        assertEquals("record-0", replayed.get(0));
+        assertEquals("record-9", replayed.get(9));
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        FileMetadataJournal journal = new FileMetadataJournal(dir, false, 16, Long.MAX_VALUE);
+        journal.open(record -> records.add(new String(record, StandardCharsets.UTF_8)));
+        journal.close();
+        return records;
+    }
+}
@@ -0,0 +1,137 @@
+package com.windcore.service.impl;
+
+import com.windcore.dto.FileListCursor;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileNameIndexTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void searchMatchesSubstringIgnoringCase() {
+        FileNameIndex index = new FileNameIndex();
+        index.add(key("1"), "Annual-Report.PDF");
+        index.add(key("2"), "report-draft.docx");
+        index.add(key("3"), "photo.jpg");
+
+        assertEquals(List.of("1", "2"), sorted(index.search("REPORT")));
+        assertEquals(List.of("1"), index.search("l-rep"));
+        assertTrue(index.search("missing").isEmpty());
+    }
+
+    @Test
+    void trigramHitsAreVerifiedAgainstTheName() {
+        FileNameIndex index = new FileNameIndex();
+        // 包含 abc 和 bcd 两个三元组，但不连续包含 abcd
+        index.add(key("1"), "abc-bcd");
+
+        assertTrue(index.search("abcd").isEmpty());
+    }
+
+    @Test
+    void shortKeywordsFallBackToScan() {
+        FileNameIndex index = new FileNameIndex();
+        index.add(key("1"), "a.txt");
+        index.add(key("2"), "b.txt");
+
+        assertFalse(FileNameIndex.isIndexed("a."));
+        assertTrue(FileNameIndex.isIndexed("a.t"));
+        assertEquals(List.of("1"), index.search("a."));
+        assertEquals(List.of("1", "2"), sorted(index.search("t")));
+    }
+
+    @Test
+    void renameAndRemoveDropStaleEntries() {
+        FileNameIndex index = new FileNameIndex();
+        index.add(key("1"), "old-name.txt");
+        index.add(key("1"), "new-name.txt");
+
+        assertTrue(index.search("old").isEmpty());
+        assertEquals(List.of("1"), index.search("new-name"));
+
+        index.remove("1");
+        assertTrue(index.search("name").isEmpty());
+        assertTrue(index.search("n").isEmpty());
+    }
+
+    @Test
+    void concurrentRenameNeverHidesTheFile() throws InterruptedException {
+        FileNameIndex index = new FileNameIndex();
+        index.add(key("1"), "report-alpha.pdf");
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread renamer = new Thread(() -> {
+            boolean alpha = false;
+            while (running.get()) {
+                index.add(key("1"), alpha ? "report-alpha.pdf" : "report-beta.pdf");
+                alpha = !alpha;
+            }
+        });
+        renamer.start();
+
+        AtomicInteger misses = new AtomicInteger();
+        try {
+            for (int i = 0; i < 20000; i++) {
+                if (index.search("report-").isEmpty()) {
+                    misses.incrementAndGet();
+                }
+            }
+        } finally {
+            running.set(false);
+            renamer.join();
+        }
+        assertEquals(0, misses.get());
+    }
+
+    @Test
+    void pagesResumeAfterCursorInUploadOrder() {
+        FileNameIndex index = new FileNameIndex();
+        for (int i = 20; i >= 1; i--) {
+            index.add(key(String.valueOf(i)), (i % 2 == 0 ? "even-" : "odd-") + i + ".log");
+        }
+
+        List<String> collected = new ArrayList<>();
+        FileListCursor after = null;
+        while (true) {
+            List<String> page = index.search("even", after, 3);
+            collected.addAll(page);
+            if (page.size() < 3) {
+                break;
+            }
+            after = key(page.get(page.size() - 1));
+        }
+        assertEquals(List.of("2", "4", "6", "8", "10", "12", "14", "16", "18", "20"), collected);
+
+        // 短关键字同样按游标分页
+        assertEquals(List.of("3", "5"), index.search("d-", key("1"), 2));
+    }
+
+    @Test
+    void changedUploadTimeMovesTheEntry() {
+        FileNameIndex index = new FileNameIndex();
+        index.add(key("1"), "report.pdf");
+        index.add(key("2"), "report.pdf");
+        index.add(new FileListCursor(BASE.plusDays(1), "1"), "report.pdf");
+
+        assertEquals(List.of("2", "1"), index.search("report"));
+        assertEquals(List.of("2", "1"), index.search("re"));
+    }
+
+    private static FileListCursor key(String id) {
+        return new FileListCursor(BASE.plusSeconds(Long.parseLong(id)), id);
+    }
+
+    private static List<String> sorted(List<String> ids) {
+        return ids.stream().sorted().toList();
+    }
+}
@@ -0,0 +1,194 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.FileMetadataProperties;
+import com.windcore.model.FileMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileServiceImplTest {
+
+    @TempDir
+    Path dir;
+
+    private FileServiceImpl service;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    void journalReplaysSavesUpdatesAndDeletes() throws IOException {
+        service = open(64L * 1024 * 1024);
+        service.save(file(null, "a.png", "avatar"));
+        service.save(file(null, "b.png", "avatar"));
+        service.save(file(null, "c.png", "doc"));
+        FileMetadata rename = new FileMetadata();
+        rename.setId("2");
+        rename.setFileName("renamed.png");
+        service.update(rename);
+        assertTrue(service.deleteById("3"));
+        service.close();
+
+        service = open(64L * 1024 * 1024);
+        assertEquals(2, service.count());
+        assertEquals("renamed.png", service.findById("2").getFileName());
+        assertNull(service.findById("3"));
+        assertEquals(2, service.countByBusinessType("avatar"));
+        assertEquals(1, service.findByFileNameLike("renamed").size());
+        assertEquals("4", service.save(file(null, "d.png", "doc")).getId());
+    }
+
+    @Test
+    void tornTailIsDroppedAndLaterWritesSurvive() throws IOException {
+        service = open(64L * 1024 * 1024);
+        service.save(file("1", "kept.txt", "doc"));
+        service.close();
+
+        // 模拟写到一半宕机：只写入了记录头和部分数据
+        Path journal = latest("journal-");
+        Files.write(journal, ByteBuffer.allocate(12).putInt(100).putInt(0).putInt(7).array(), StandardOpenOption.APPEND);
+
+        service = open(64L * 1024 * 1024);
+        assertEquals(1, service.count());
+        service.save(file("2", "after.txt", "doc"));
+        service.close();
+
+        service = open(64L * 1024 * 1024);
+        assertEquals(2, service.count());
+        assertEquals("after.txt", service.findById("2").getFileName());
+    }
+
+    @Test
+    void snapshotRotationKeepsStateAndDropsOldGenerations() throws Exception {
+        service = open(512);
+        for (int i = 1; i <= 200; i++) {
+            service.save(file(String.valueOf(i), "file-" + i, "type-" + (i % 4)));
+            if (i % 3 == 0) {
+                service.deleteById(String.valueOf(i - 1));
+            }
+        }
+        // 快照在后台写入，等待最新的快照出现
+        long deadline = System.currentTimeMillis() + 5000;
+        while (latest("snapshot-") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        long count = service.count();
+        service.close();
+
+        assertTrue(latest("snapshot-") != null);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.filter(path -> path.getFileName().toString().startsWith("journal-")).count() < 10);
+        }
+
+        service = open(512);
+        assertEquals(count, service.count());
+        assertNull(service.findById("2"));
+        assertEquals("file-200", service.findById("200").getFileName());
+    }
+
+    @Test
+    void failedJournalWriteLeavesMemoryUnchanged() throws IOException {
+        service = open(64L * 1024 * 1024);
+        service.save(file("1", "before.txt", "doc"));
+        // 关闭日志后写入必然失败
+        service.close();
+
+        assertThrows(IllegalStateException.class, () -> service.save(file("2", "lost.txt", "doc")));
+        FileMetadata rename = new FileMetadata();
+        rename.setId("1");
+        rename.setFileName("lost.txt");
+        assertThrows(IllegalStateException.class, () -> service.update(rename));
+        assertThrows(IllegalStateException.class, () -> service.deleteById("1"));
+
+        assertNull(service.findById("2"));
+        assertEquals("before.txt", service.findById("1").getFileName());
+        assertTrue(service.findByFileNameLike("lost").isEmpty());
+        service = null;
+    }
+
+    @Test
+    void storedObjectIsACopyOfTheCaller() throws IOException {
+        service = open(64L * 1024 * 1024);
+        FileMetadata file = file("1", "original.txt", "doc");
+        service.save(file);
+        file.setFileName("mutated.txt");
+
+        assertEquals("original.txt", service.findById("1").getFileName());
+        assertFalse(service.findByFileNameLike("original").isEmpty());
+    }
+
+    @Test
+    void concurrentWritersAreAllDurable() throws Exception {
+        service = open(64L * 1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String id = String.valueOf(i + 1);
+                futures.add(executor.submit(() -> service.save(file(id, "f-" + id, "bulk"))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(400, service.countByBusinessType("bulk"));
+        service.close();
+
+        service = open(64L * 1024 * 1024);
+        assertEquals(400, service.countByBusinessType("bulk"));
+    }
+
+    private FileServiceImpl open(long snapshotThreshold) throws IOException {
+        FileMetadataProperties properties = new FileMetadataProperties();
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDir(dir.toString());
+        properties.getJournal().setFsync(false);
+        properties.getJournal().setSnapshotThreshold(snapshotThreshold);
+        FileServiceImpl opened = new FileServiceImpl(properties);
+        opened.init();
+        return opened;
+    }
+
+    private Path latest(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)
+                            && !path.getFileName().toString().endsWith(".tmp"))
+                    .max(Path::compareTo)
+                    .orElse(null);
+        }
+    }
+
+    private static FileMetadata file(String id, String fileName, String businessType) {
+        FileMetadata file = new FileMetadata();
+        file.setId(id);
+        file.setFileName(fileName);
+        file.setBusinessType(businessType);
+        file.setUploadTime(LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(id != null ? Long.parseLong(id) : 0));
+        return file;
+    }
+}
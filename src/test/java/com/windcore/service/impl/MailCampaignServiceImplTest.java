@@ -0,0 +1,150 @@
+package com.windcore.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailConfig;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailCampaign;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailQueueService;
+import com.windcore.service.MailTemplateRenderer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MailCampaignServiceImplTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailQueueService mailQueueService;
+    private MailProperties mailProperties;
+    private final List<MailMessage> enqueued = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        mailQueueService = mock(MailQueueService.class);
+        when(mailQueueService.getQueueStatus()).thenReturn(new MailQueueService.QueueStatus());
+        doAnswer(invocation -> {
+            List<MailMessage> batch = invocation.getArgument(0);
+            enqueued.addAll(batch);
+            return List.of();
+        }).when(mailQueueService).addToQueueBatch(any());
+        mailProperties = new MailProperties();
+        mailProperties.getCampaign().setUploadDir(uploadDir.toString());
+        mailProperties.getQueue().setEnqueueBatchSize(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void enqueuesEveryValidRow() throws Exception {
+        MailCampaignServiceImpl service = service(Runnable::run);
+
+        MailCampaign started = service.startCampaign("welcome", "欢迎", Map.of("companyName", "windcore"), 2,
+                csv("email,userName\na@example.com,张三\nnot-an-address,李四\nb@example.com,王五\nc@example.com,赵六\n"));
+
+        MailCampaign campaign = service.getCampaign(started.getId());
+        assertEquals(MailCampaign.CampaignStatus.COMPLETED, campaign.getStatus());
+        assertEquals(4, campaign.getTotalRows());
+        assertEquals(3, campaign.getEnqueuedCount());
+        assertEquals(1, campaign.getSkippedCount());
+        assertEquals(List.of("a@example.com"), enqueued.get(0).getTo());
+        assertEquals("windcore", enqueued.get(0).getTemplateVariables().get("companyName"));
+        assertEquals(started.getId(), enqueued.get(2).getCampaignId());
+        assertEquals(0, Files.list(uploadDir).count());
+    }
+
+    @Test
+    void rejectedCampaignIsMarkedFailed() {
+        MailCampaignServiceImpl service = service(task -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        assertThrows(RejectedExecutionException.class, () ->
+                service.startCampaign("welcome", "欢迎", null, null, csv("email\na@example.com\n")));
+
+        assertTrue(enqueued.isEmpty());
+        assertEquals(0, uploadDir.toFile().list().length);
+    }
+
+    @Test
+    void staleRunningCampaignIsReportedFailed() {
+        MailCampaignServiceImpl service = service(Runnable::run);
+        MailCampaign campaign = MailCampaign.builder()
+                .id("CAMPAIGN_STALE")
+                .status(MailCampaign.CampaignStatus.RUNNING)
+                .createTime(LocalDateTime.now().minusHours(1))
+                .updateTime(LocalDateTime.now().minusMinutes(10))
+                .build();
+        redisTemplate.opsForValue().set("mail:campaign:CAMPAIGN_STALE", campaign);
+
+        assertEquals(MailCampaign.CampaignStatus.FAILED, service.getCampaign("CAMPAIGN_STALE").getStatus());
+        assertFalse(service.cancelCampaign("CAMPAIGN_STALE"));
+
+        campaign.setId("CAMPAIGN_ACTIVE");
+        campaign.setUpdateTime(LocalDateTime.now());
+        redisTemplate.opsForValue().set("mail:campaign:CAMPAIGN_ACTIVE", campaign);
+        assertEquals(MailCampaign.CampaignStatus.RUNNING, service.getCampaign("CAMPAIGN_ACTIVE").getStatus());
+    }
+
+    @Test
+    void campaignExecutorRejectsBeyondConcurrency() throws Exception {
+        mailProperties.getCampaign().setConcurrency(1);
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) new MailConfig(mailProperties).mailCampaignExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+            }));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private MailCampaignServiceImpl service(Executor executor) {
+        return new MailCampaignServiceImpl(mailQueueService, mock(MailTemplateRenderer.class), mailProperties,
+                redisTemplate, new ObjectMapper(), executor);
+    }
+
+    private static MockMultipartFile csv(String content) {
+        return new MockMultipartFile("file", "recipients.csv", "text/csv", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
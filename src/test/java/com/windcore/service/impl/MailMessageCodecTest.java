@@ -0,0 +1,179 @@
+package com.windcore.service.impl;
+
+import com.windcore.model.MailAttachment;
+import com.windcore.model.MailMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailMessageCodecTest {
+
+    @Test
+    void everyFieldRoundTrips() {
+        MailMessage mailMessage = fullMessage();
+
+        MailMessage decoded = MailMessageCodec.decode(MailMessageCodec.encode(mailMessage));
+
+        assertEquals(mailMessage.toString(), decoded.toString());
+        assertArrayEquals(mailMessage.getAttachments().get(0).getContent(), decoded.getAttachments().get(0).getContent());
+    }
+
+    @Test
+    void unsetFieldsStayNull() {
+        MailMessage mailMessage = new MailMessage();
+        mailMessage.setId("MAIL_1");
+        mailMessage.setIsHtml(null);
+        mailMessage.setPriority(null);
+        mailMessage.setStatus(null);
+        mailMessage.setRetryCount(null);
+        mailMessage.setMaxRetryCount(null);
+
+        MailMessage decoded = MailMessageCodec.decode(MailMessageCodec.encode(mailMessage));
+
+        assertEquals(mailMessage, decoded);
+    }
+
+    @Test
+    void templateVariableTypesArePreserved() {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("string", "值");
+        variables.put("int", -7);
+        variables.put("long", Long.MIN_VALUE);
+        variables.put("double", 0.1);
+        variables.put("decimal", new BigDecimal("12345678901234567890.123"));
+        variables.put("bigInteger", new BigInteger("123456789012345678901234567890"));
+        variables.put("true", true);
+        variables.put("false", false);
+        variables.put("null", null);
+        variables.put("list", Arrays.asList(1, "two", null));
+        variables.put("map", Map.of("nested", List.of(3L)));
+        variables.put("localDateTime", LocalDateTime.of(2024, 2, 29, 13, 45, 6, 789_000_000));
+        variables.put("localDate", LocalDate.of(2024, 2, 29));
+        variables.put("localTime", LocalTime.of(23, 59, 1));
+        variables.put("instant", Instant.ofEpochSecond(1_700_000_000L, 5));
+        variables.put("offset", OffsetDateTime.of(2024, 1, 1, 8, 0, 0, 0, ZoneOffset.ofHours(8)));
+        variables.put("zoned", ZonedDateTime.of(2024, 6, 1, 12, 0, 0, 0, ZoneId.of("Asia/Shanghai")));
+        variables.put("date", new Date(1_700_000_000_123L));
+        MailMessage mailMessage = MailMessage.builder().id("MAIL_1").templateVariables(variables).build();
+
+        Map<String, Object> decoded = MailMessageCodec.decode(MailMessageCodec.encode(mailMessage)).getTemplateVariables();
+
+        assertEquals(variables, decoded);
+        assertEquals(new ArrayList<>(variables.keySet()), new ArrayList<>(decoded.keySet()));
+        assertEquals(Integer.class, decoded.get("int").getClass());
+        assertEquals(Long.class, decoded.get("long").getClass());
+    }
+
+    @Test
+    void beanDatesBecomeIsoStrings() {
+        MailMessage mailMessage = MailMessage.builder()
+                .id("MAIL_1")
+                .templateVariables(Map.of("order", new Order("A-1", LocalDateTime.of(2024, 1, 2, 3, 4, 5))))
+                .build();
+
+        Map<String, Object> decoded = MailMessageCodec.decode(MailMessageCodec.encode(mailMessage)).getTemplateVariables();
+
+        assertEquals(Map.of("id", "A-1", "createdAt", "2024-01-02T03:04:05"), decoded.get("order"));
+    }
+
+    @Test
+    void unknownTagsAreSkipped() {
+        byte[] encoded = MailMessageCodec.encode(fullMessage());
+        // 在结束标签前插入新版本才有的字段
+        ByteArrayOutputStream withUnknown = new ByteArrayOutputStream();
+        withUnknown.write(encoded, 0, encoded.length - 1);
+        byte[] payload = "future".getBytes(StandardCharsets.UTF_8);
+        withUnknown.write(200 & 0x7F | 0x80);
+        withUnknown.write(200 >>> 7);
+        withUnknown.write(payload.length);
+        withUnknown.writeBytes(payload);
+        withUnknown.write(0);
+
+        MailMessage decoded = MailMessageCodec.decode(withUnknown.toByteArray());
+
+        assertEquals(fullMessage().toString(), decoded.toString());
+    }
+
+    @Test
+    void detectsEncodedDataAndRejectsCorruption() {
+        byte[] encoded = MailMessageCodec.encode(fullMessage());
+
+        assertTrue(MailMessageCodec.isEncoded(encoded));
+        assertFalse(MailMessageCodec.isEncoded("{\"id\":\"MAIL_1\"}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(MailMessageCodec.isEncoded("MAIL_1".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> MailMessageCodec.decode(Arrays.copyOf(encoded, encoded.length / 2)));
+    }
+
+    @Test
+    void emptyCollectionsAreKept() {
+        MailMessage mailMessage = MailMessage.builder().id("MAIL_1").to(List.of()).cc(List.of("")).build();
+
+        MailMessage decoded = MailMessageCodec.decode(MailMessageCodec.encode(mailMessage));
+
+        assertEquals(List.of(), decoded.getTo());
+        assertEquals(List.of(""), decoded.getCc());
+        assertNull(decoded.getBcc());
+    }
+
+    private static MailMessage fullMessage() {
+        MailAttachment attachment = new MailAttachment();
+        attachment.setFileName("报表.pdf");
+        attachment.setContentType("application/pdf");
+        attachment.setSize(3L);
+        attachment.setFilePath("/tmp/report.pdf");
+        attachment.setContent(new byte[]{1, 2, 3});
+        attachment.setInline(true);
+        attachment.setContentId("cid-1");
+        attachment.setHandle("sha256:abc");
+        return MailMessage.builder()
+                .id("MAIL_1")
+                .from("sender@example.com")
+                .fromName("发件人")
+                .to(List.of("a@example.com", "b@example.com"))
+                .cc(List.of("c@example.com"))
+                .bcc(List.of("d@example.com"))
+                .subject("主题")
+                .content("<p>内容</p>")
+                .isHtml(true)
+                .templateName("notification")
+                .templateVariables(new LinkedHashMap<>(Map.of("name", "张三")))
+                .attachments(new ArrayList<>(List.of(attachment)))
+                .priority(1)
+                .status(MailMessage.MailStatus.RETRY)
+                .createTime(LocalDateTime.of(2024, 1, 1, 0, 0, 0, 1))
+                .sendTime(LocalDateTime.of(1969, 12, 31, 23, 59, 59))
+                .errorMessage("550 rejected")
+                .retryCount(2)
+                .maxRetryCount(5)
+                .campaignId("CAMPAIGN_1")
+                .build();
+    }
+
+    public record Order(String id, LocalDateTime createdAt) {
+    }
+}
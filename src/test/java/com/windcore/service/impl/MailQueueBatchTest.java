@@ -0,0 +1,203 @@
+package com.windcore.service.impl;
+
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailAttachment;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailQueueService;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MailQueueBatchTest {
+
+    @TempDir
+    Path spoolDir;
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailProperties mailProperties;
+    private MailAttachmentSpool mailAttachmentSpool;
+
+    /**
+     * 写入第几封邮件的队列条目时模拟Redis连接中断，-1表示不中断
+     */
+    private int failAtEntry = -1;
+    private final AtomicInteger entries = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        mailProperties = new MailProperties();
+        mailProperties.getQueue().setEnqueueBatchSize(2);
+        mailAttachmentSpool = mock(MailAttachmentSpool.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void allMailsAreQueuedInOrder() {
+        List<String> ids = newService().addToQueueBatch(messages(5));
+
+        assertEquals(List.of("MAIL_0", "MAIL_1", "MAIL_2", "MAIL_3", "MAIL_4"), ids);
+        assertEquals(5, redisTemplate.opsForList().size("mail:queue:3"));
+    }
+
+    @Test
+    void encodingFailureQueuesNothing() throws IOException {
+        when(mailAttachmentSpool.spool(any(MailAttachment.class))).thenThrow(new IOException("disk full"));
+        List<MailMessage> mailMessages = messages(5);
+        mailMessages.get(4).setAttachments(new ArrayList<>(List.of(new MailAttachment())));
+
+        assertThrows(UncheckedIOException.class, () -> newService().addToQueueBatch(mailMessages));
+
+        assertEquals(0, redisTemplate.opsForList().size("mail:queue:3"));
+        assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey("mail:info:MAIL_0")));
+    }
+
+    @Test
+    void failureAfterFirstBatchReportsQueuedIds() {
+        failAtEntry = 5;
+        MailQueueServiceImpl queueService = newService();
+
+        MailQueueService.PartialEnqueueException e = assertThrows(MailQueueService.PartialEnqueueException.class,
+                () -> queueService.addToQueueBatch(messages(5)));
+
+        assertEquals(List.of("MAIL_0", "MAIL_1", "MAIL_2", "MAIL_3"), e.getQueuedIds());
+        assertEquals(4, redisTemplate.opsForList().size("mail:queue:3"));
+        // 失败的批次在事务中，邮件信息也没有写入
+        assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey("mail:info:MAIL_4")));
+
+        // 连接没有停留在未完成的事务中
+        failAtEntry = -1;
+        queueService.addToQueue(message("MAIL_AFTER"));
+        assertEquals(5, redisTemplate.opsForList().size("mail:queue:3"));
+        assertTrue(Boolean.TRUE.equals(redisTemplate.hasKey("mail:info:MAIL_AFTER")));
+    }
+
+    @Test
+    void failureInFirstBatchIsRethrown() {
+        failAtEntry = 1;
+
+        assertThrows(RedisConnectionFailureException.class, () -> newService().addToQueueBatch(messages(3)));
+
+        assertEquals(0, redisTemplate.opsForList().size("mail:queue:3"));
+    }
+
+    @Test
+    void drainSkipsMailsAlreadyInRedis() throws IOException {
+        MailEnqueueSpool spool = openSpool();
+        MailQueueServiceImpl queueService = newService(spool);
+        // 写入超时但实际已执行的批次，随后又写入了暂存
+        queueService.addToQueue(message("MAIL_0"));
+        spool.append(List.of("MAIL_0", "MAIL_1"), new int[]{3, 3},
+                new byte[][]{MailMessageCodec.encode(message("MAIL_0")), MailMessageCodec.encode(message("MAIL_1"))});
+
+        queueService.drainEnqueueSpool();
+        // 再次转存（如确认前退出）不会重复入队
+        queueService.drainEnqueueSpool();
+
+        assertEquals(List.of("MAIL_0", "MAIL_1"), queued());
+        assertFalse(spool.hasPending());
+        spool.close();
+    }
+
+    @Test
+    void mailsQueuedWhileSpoolIsPendingFollowTheSpool() throws IOException {
+        MailEnqueueSpool spool = openSpool();
+        MailQueueServiceImpl queueService = newService(spool);
+        spool.append(List.of("MAIL_0"), new int[]{3}, new byte[][]{MailMessageCodec.encode(message("MAIL_0"))});
+
+        queueService.addToQueueBatch(messages(3).subList(1, 3));
+        assertEquals(List.of(), queued());
+
+        queueService.drainEnqueueSpool();
+        queueService.addToQueue(message("MAIL_3"));
+
+        assertEquals(List.of("MAIL_0", "MAIL_1", "MAIL_2", "MAIL_3"), queued());
+        spool.close();
+    }
+
+    private MailEnqueueSpool openSpool() throws IOException {
+        mailProperties.getSpool().setDir(spoolDir.toString());
+        MailEnqueueSpool spool = new MailEnqueueSpool(mailProperties);
+        spool.init();
+        return spool;
+    }
+
+    /**
+     * 队列中的邮件ID，按消费顺序（队列右端先出）
+     */
+    private List<String> queued() {
+        List<byte[]> raw = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange("mail:queue:3".getBytes(StandardCharsets.UTF_8), 0, -1));
+        List<String> ids = new ArrayList<>();
+        raw.forEach(entry -> ids.add(0, new String(entry, StandardCharsets.UTF_8)));
+        return ids;
+    }
+
+    private MailQueueServiceImpl newService(MailEnqueueSpool spool) {
+        return new MailQueueServiceImpl(redisTemplate, mock(MailService.class), mailProperties, mailAttachmentSpool,
+                mock(MailRateLimiter.class), mock(SmtpCircuitBreaker.class), spool);
+    }
+
+    private MailQueueServiceImpl newService() {
+        return new MailQueueServiceImpl(redisTemplate, mock(MailService.class), mailProperties, mailAttachmentSpool,
+                mock(MailRateLimiter.class), mock(SmtpCircuitBreaker.class), mock(MailEnqueueSpool.class)) {
+            @Override
+            protected void enqueue(RedisConnection connection, int priority, byte[] entry) {
+                if (entries.incrementAndGet() == failAtEntry) {
+                    throw new RedisConnectionFailureException("simulated: " + new String(entry, StandardCharsets.UTF_8));
+                }
+                super.enqueue(connection, priority, entry);
+            }
+        };
+    }
+
+    private static List<MailMessage> messages(int count) {
+        List<MailMessage> mailMessages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            mailMessages.add(message("MAIL_" + i));
+        }
+        return mailMessages;
+    }
+
+    private static MailMessage message(String id) {
+        return MailMessage.builder()
+                .id(id)
+                .to(Collections.singletonList("user@example.com"))
+                .subject("subject")
+                .content("content")
+                .priority(3)
+                .build();
+    }
+}
@@ -0,0 +1,203 @@
+package com.windcore.service.impl;
+
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MailQueueServiceImplTest {
+
+    private static final String CONSUMER = "test-host:0";
+    private static final String PROCESSING_KEY = "mail:processing:" + CONSUMER;
+    private static final String DEADLINE_KEY = "mail:processing:deadlines";
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailService mailService;
+    private MailProperties mailProperties;
+    private MailQueueServiceImpl queueService;
+
+    /**
+     * 发送时的回调，用于在“发送过程中”检查或修改Redis状态
+     */
+    private Runnable duringSend = () -> {
+    };
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        mailService = mock(MailService.class);
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            MailMessage mailMessage = invocation.getArgument(0);
+            duringSend.run();
+            sent.add(mailMessage.getId());
+            return mailMessage.getId();
+        });
+        mailProperties = new MailProperties();
+        queueService = new MailQueueServiceImpl(redisTemplate, mailService, mailProperties,
+                mock(MailAttachmentSpool.class), mock(MailRateLimiter.class), mock(SmtpCircuitBreaker.class),
+                mock(MailEnqueueSpool.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void deadlineIsRegisteredTogetherWithTheMove() {
+        queueService.addToQueue(message("MAIL_1", 3));
+        duringSend = () -> {
+            assertEquals(1, listSize(PROCESSING_KEY));
+            assertEquals(1, redisTemplate.opsForZSet().zCard(DEADLINE_KEY));
+        };
+
+        assertTrue(queueService.pollAndProcess(CONSUMER, 3, 1));
+
+        assertEquals(List.of("MAIL_1"), sent);
+        assertEquals(0, listSize(PROCESSING_KEY));
+        assertEquals(0, redisTemplate.opsForZSet().zCard(DEADLINE_KEY));
+    }
+
+    @Test
+    void higherPriorityIsServedFirst() {
+        queueService.addToQueue(message("MAIL_LOW", 5));
+        queueService.addToQueue(message("MAIL_HIGH", 1));
+
+        assertTrue(queueService.pollAndProcess(CONSUMER, 3, 1));
+        assertTrue(queueService.pollAndProcess(CONSUMER, 3, 1));
+
+        assertEquals(List.of("MAIL_HIGH", "MAIL_LOW"), sent);
+    }
+
+    @Test
+    void expiredMessageIsRequeuedByTheReaper() {
+        mailProperties.getQueue().setVisibilityTimeoutMillis(-1000L);
+        queueService.addToQueue(message("MAIL_1", 2));
+        // 发送期间另一个节点的回收任务认为它已超时
+        duringSend = () -> queueService.requeueExpiredMessages();
+
+        assertTrue(queueService.pollAndProcess(CONSUMER, 3, 1));
+
+        assertEquals(1, listSize("mail:queue:2"));
+        assertEquals(0, listSize(PROCESSING_KEY));
+        assertEquals(0, redisTemplate.opsForZSet().zCard(DEADLINE_KEY));
+    }
+
+    @Test
+    void reaperCleansDeadlinesOfAcknowledgedMessages() {
+        byte[] member = (CONSUMER + "|MAIL_GONE").getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.zSetCommands().zAdd(DEADLINE_KEY.getBytes(StandardCharsets.UTF_8), 1, member));
+
+        queueService.requeueExpiredMessages();
+
+        assertEquals(0, redisTemplate.opsForZSet().zCard(DEADLINE_KEY));
+    }
+
+    @Test
+    void legacyDeadlineMemberStillRequeues() {
+        queueService.addToQueue(message("MAIL_OLD", 3));
+        redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.listCommands().rPopLPush(
+                "mail:queue:3".getBytes(StandardCharsets.UTF_8), PROCESSING_KEY.getBytes(StandardCharsets.UTF_8)));
+        // 升级前写入的成员：JSON字符串 "consumerId|mailId"
+        redisTemplate.opsForZSet().add(DEADLINE_KEY, CONSUMER + "|MAIL_OLD", 1);
+
+        queueService.requeueExpiredMessages();
+
+        assertEquals(1, listSize("mail:queue:3"));
+        assertEquals(0, listSize(PROCESSING_KEY));
+        assertEquals(0, redisTemplate.opsForZSet().zCard(DEADLINE_KEY));
+    }
+
+    @Test
+    void recoverProcessingRequeuesEverything() {
+        queueService.addToQueue(message("MAIL_1", 3));
+        queueService.addToQueue(message("MAIL_2", 3));
+        for (int i = 0; i < 2; i++) {
+            redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.listCommands().rPopLPush(
+                    "mail:queue:3".getBytes(StandardCharsets.UTF_8), PROCESSING_KEY.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertEquals(2, queueService.recoverProcessing(CONSUMER));
+
+        assertEquals(2, listSize("mail:queue:3"));
+        assertEquals(0, listSize(PROCESSING_KEY));
+    }
+
+    @Test
+    void blockingWaitPicksUpNewMessages() throws Exception {
+        assertFalse(queueService.pollAndProcess(CONSUMER, 3, 1));
+
+        CompletableFuture<Boolean> polled = CompletableFuture.supplyAsync(() -> queueService.pollAndProcess(CONSUMER, 3, 5));
+        Thread.sleep(300);
+        queueService.addToQueue(message("MAIL_LATE", 3));
+
+        assertTrue(polled.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("MAIL_LATE"), sent);
+        assertEquals(0, redisTemplate.opsForZSet().zCard(DEADLINE_KEY));
+    }
+
+    @Test
+    void unloadableEntriesGoToTheFailedQueues() {
+        byte[] queueKey = "mail:queue:3".getBytes(StandardCharsets.UTF_8);
+        // 邮件信息已过期的ID条目，以及无法解析的旧格式条目
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.listCommands().lPush(queueKey,
+                "MAIL_EXPIRED".getBytes(StandardCharsets.UTF_8), "{broken".getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(queueService.pollAndProcess(CONSUMER, 3, 1));
+        assertTrue(queueService.pollAndProcess(CONSUMER, 3, 1));
+
+        assertEquals(List.of("MAIL_EXPIRED"), rawList("mail:failed:queue"));
+        assertEquals(List.of("{broken"), rawList("mail:failed:unreadable"));
+        assertEquals(0, listSize(PROCESSING_KEY));
+        assertTrue(sent.isEmpty());
+    }
+
+    private List<String> rawList(String key) {
+        List<byte[]> entries = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange(key.getBytes(StandardCharsets.UTF_8), 0, -1));
+        List<String> values = new ArrayList<>();
+        entries.forEach(entry -> values.add(new String(entry, StandardCharsets.UTF_8)));
+        return values;
+    }
+
+    private long listSize(String key) {
+        Long size = redisTemplate.opsForList().size(key);
+        return size != null ? size : 0;
+    }
+
+    private static MailMessage message(String id, int priority) {
+        return MailMessage.builder()
+                .id(id)
+                .to(Collections.singletonList("user@example.com"))
+                .subject("subject")
+                .content("content")
+                .priority(priority)
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+package com.windcore.service.impl;
+
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 重试集合的认领（CLAIM_DUE_SCRIPT）和释放（RELEASE_SCRIPT）脚本
+ */
+class MailRetryScheduleTest {
+
+    private static final String SCHEDULE_KEY = AbstractMailQueueService.MAIL_RETRY_SCHEDULE_KEY;
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailProperties mailProperties;
+
+    /**
+     * 转移每封邮件时执行的回调，模拟转移过程中邮件再次被安排重试
+     */
+    private Runnable onEnqueue = () -> {
+    };
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        mailProperties = new MailProperties();
+        mailProperties.getRetry().setInitialDelayMillis(0L);
+        mailProperties.getRetry().setJitter(0.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void dueRetryIsPromotedAndReleased() {
+        MailQueueServiceImpl queueService = newService();
+        MailMessage due = message("MAIL_DUE");
+        queueService.saveMessage(due);
+        queueService.scheduleRetry(due);
+        redisTemplate.opsForZSet().add(SCHEDULE_KEY, "MAIL_LATER", System.currentTimeMillis() + 3600_000);
+
+        queueService.promoteDueRetries();
+
+        assertEquals(1, redisTemplate.opsForList().size("mail:queue:3"));
+        assertNull(redisTemplate.opsForZSet().score(SCHEDULE_KEY, "MAIL_DUE"));
+        assertNotNull(redisTemplate.opsForZSet().score(SCHEDULE_KEY, "MAIL_LATER"));
+    }
+
+    @Test
+    void rescheduledDuringPromotionIsNotReleased() {
+        MailQueueServiceImpl queueService = newService();
+        MailMessage due = message("MAIL_1");
+        queueService.saveMessage(due);
+        queueService.scheduleRetry(due);
+        long rescheduledAt = System.currentTimeMillis() + 3600_000;
+        onEnqueue = () -> redisTemplate.opsForZSet().add(SCHEDULE_KEY, "MAIL_1", rescheduledAt);
+
+        queueService.promoteDueRetries();
+
+        assertEquals((double) rescheduledAt, redisTemplate.opsForZSet().score(SCHEDULE_KEY, "MAIL_1"));
+    }
+
+    @Test
+    void expiredMailInfoIsDropped() {
+        MailQueueServiceImpl queueService = newService();
+        redisTemplate.opsForZSet().add(SCHEDULE_KEY, "MAIL_GONE", 1);
+
+        queueService.promoteDueRetries();
+
+        assertEquals(0, redisTemplate.opsForZSet().zCard(SCHEDULE_KEY));
+        assertEquals(0, redisTemplate.opsForList().size("mail:queue:3"));
+    }
+
+    @Test
+    void concurrentNodesPromoteEachRetryOnce() throws Exception {
+        mailProperties.getRetry().setBatchSize(7);
+        MailQueueServiceImpl first = newService();
+        MailQueueServiceImpl second = newService();
+        for (int i = 0; i < 200; i++) {
+            MailMessage mailMessage = message("MAIL_" + i);
+            first.saveMessage(mailMessage);
+            first.scheduleRetry(mailMessage);
+        }
+
+        CompletableFuture.allOf(CompletableFuture.runAsync(first::promoteDueRetries),
+                CompletableFuture.runAsync(second::promoteDueRetries)).get();
+
+        // 队列条目是原始字节的邮件ID
+        List<byte[]> queued = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange("mail:queue:3".getBytes(StandardCharsets.UTF_8), 0, -1));
+        assertEquals(200, queued.size());
+        assertEquals(200, new HashSet<>(queued.stream().map(entry -> new String(entry, StandardCharsets.UTF_8)).toList()).size());
+        assertEquals(0, redisTemplate.opsForZSet().zCard(SCHEDULE_KEY));
+    }
+
+    @Test
+    void leaseKeepsClaimedRetryInvisible() {
+        mailProperties.getRetry().setLeaseMillis(3600_000L);
+        MailQueueServiceImpl queueService = newService();
+        MailMessage due = message("MAIL_1");
+        queueService.saveMessage(due);
+        queueService.scheduleRetry(due);
+        // 转移时节点宕机：已认领但未释放
+        onEnqueue = () -> {
+            throw new IllegalStateException("crash");
+        };
+
+        queueService.promoteDueRetries();
+
+        Double score = redisTemplate.opsForZSet().score(SCHEDULE_KEY, "MAIL_1");
+        assertNotNull(score);
+        assertTrue(score > System.currentTimeMillis() + 3000_000);
+    }
+
+    private MailQueueServiceImpl newService() {
+        return new MailQueueServiceImpl(redisTemplate, mock(MailService.class), mailProperties,
+                mock(MailAttachmentSpool.class), mock(MailRateLimiter.class), mock(SmtpCircuitBreaker.class),
+                mock(MailEnqueueSpool.class)) {
+            @Override
+            protected void enqueue(RedisConnection connection, int priority, byte[] entry) {
+                onEnqueue.run();
+                super.enqueue(connection, priority, entry);
+            }
+        };
+    }
+
+    private static MailMessage message(String id) {
+        return MailMessage.builder()
+                .id(id)
+                .to(Collections.singletonList("user@example.com"))
+                .subject("subject")
+                .content("content")
+                .priority(3)
+                .retryCount(1)
+                .build();
+    }
+}
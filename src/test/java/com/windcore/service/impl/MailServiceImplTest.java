@@ -0,0 +1,220 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailHistoryStore;
+import com.windcore.service.MailStatusStore;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MailServiceImplTest {
+
+    private final Session session = Session.getInstance(new Properties());
+
+    private JavaMailSender javaMailSender;
+    private MailProperties mailProperties;
+    private MailStatusStore mailStatusStore;
+    private MailServiceImpl mailService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        javaMailSender = mock(JavaMailSender.class);
+        when(javaMailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(session));
+        mailProperties = new MailProperties();
+        mailProperties.getSender().setFrom("sender@example.com");
+        ObjectProvider<MailHistoryStore> noHistory = mock(ObjectProvider.class);
+        mailStatusStore = new MailStatusStore(mailProperties, noHistory);
+        mailService = new MailServiceImpl(javaMailSender, null, mailProperties, Runnable::run, null, mailStatusStore);
+    }
+
+    @Test
+    void failedBatchMessagesAreMarkedFailedNotRetry() throws MessagingException {
+        doAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            MimeMessage[] messages = Arrays.copyOf(arguments, arguments.length, MimeMessage[].class);
+            Map<Object, Exception> failed = new LinkedHashMap<>();
+            for (MimeMessage message : messages) {
+                if (message.getAllRecipients()[0].toString().startsWith("bad")) {
+                    failed.put(message, new MessagingException("550 rejected"));
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new MailSendException(failed);
+            }
+            return null;
+        }).when(javaMailSender).send(any(MimeMessage[].class));
+
+        MailMessage good = message("good@example.com");
+        MailMessage bad = message("bad@example.com");
+        List<String> results = mailService.sendBatchMail(Arrays.asList(good, bad));
+
+        assertEquals(good.getId(), results.get(0));
+        assertNull(results.get(1));
+        assertEquals(MailMessage.MailStatus.SUCCESS, good.getStatus());
+        assertEquals(MailMessage.MailStatus.FAILED, bad.getStatus());
+        assertEquals(0, bad.getRetryCount());
+        assertEquals(MailMessage.MailStatus.FAILED, mailStatusStore.get(bad.getId()).getStatus());
+        // 失败邮件保留完整内容，可以手动重发
+        assertNotNull(mailStatusStore.getFailedMessage(bad.getId()));
+    }
+
+    @Test
+    void chunksRejectedByTheExecutorAreFailedNotSentInline() {
+        mailProperties.getBatch().setChunkSize(1);
+        List<Runnable> accepted = new ArrayList<>();
+        Executor oneSlot = task -> {
+            if (!accepted.isEmpty()) {
+                throw new RejectedExecutionException("full");
+            }
+            accepted.add(task);
+            task.run();
+        };
+        mailService = new MailServiceImpl(javaMailSender, null, mailProperties, oneSlot, null, mailStatusStore);
+
+        MailMessage first = message("a@example.com");
+        MailMessage second = message("b@example.com");
+        List<String> results = mailService.sendBatchMail(Arrays.asList(first, second));
+
+        assertEquals(first.getId(), results.get(0));
+        assertNull(results.get(1));
+        assertEquals(MailMessage.MailStatus.FAILED, second.getStatus());
+        verify(javaMailSender, times(1)).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void batchIsRejectedWhenNoChunkCanBeSubmitted() {
+        mailService = new MailServiceImpl(javaMailSender, null, mailProperties, task -> {
+            throw new RejectedExecutionException("full");
+        }, null, mailStatusStore);
+
+        MailMessage mailMessage = message("a@example.com");
+
+        assertThrows(RejectedExecutionException.class, () -> mailService.sendBatchMail(List.of(mailMessage)));
+        assertEquals(MailMessage.MailStatus.FAILED, mailMessage.getStatus());
+        verify(javaMailSender, never()).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void connectionFailureFailsWholeChunk() {
+        doAnswer(invocation -> {
+            throw new MailSendException("Connection refused");
+        }).when(javaMailSender).send(any(MimeMessage[].class));
+
+        MailMessage first = message("a@example.com");
+        MailMessage second = message("b@example.com");
+        mailService.sendBatchMail(Arrays.asList(first, second));
+
+        assertEquals(MailMessage.MailStatus.FAILED, first.getStatus());
+        assertEquals(MailMessage.MailStatus.FAILED, second.getStatus());
+    }
+
+    @Test
+    void groupIsSplitOnlyForRejectedRecipients() throws Exception {
+        mailProperties.getBatch().setGroupIdentical(true);
+        List<Integer> sendSizes = new ArrayList<>();
+        doAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            MimeMessage[] messages = Arrays.copyOf(arguments, arguments.length, MimeMessage[].class);
+            Map<Object, Exception> failed = new LinkedHashMap<>();
+            for (MimeMessage mimeMessage : messages) {
+                Address[] recipients = mimeMessage.getRecipients(Message.RecipientType.BCC) != null
+                        ? mimeMessage.getRecipients(Message.RecipientType.BCC)
+                        : mimeMessage.getRecipients(Message.RecipientType.TO);
+                sendSizes.add(recipients.length);
+                List<Address> invalid = new ArrayList<>();
+                for (Address recipient : recipients) {
+                    if (recipient.toString().toLowerCase().startsWith("bad")) {
+                        invalid.add(recipient);
+                    }
+                }
+                if (!invalid.isEmpty()) {
+                    failed.put(mimeMessage, new SendFailedException("550 mailbox unavailable", null,
+                            new Address[0], new Address[0], invalid.toArray(new Address[0])));
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new MailSendException(failed);
+            }
+            return null;
+        }).when(javaMailSender).send(any(MimeMessage[].class));
+
+        MailMessage first = message("a@example.com");
+        MailMessage bad = message("BAD@example.com");
+        MailMessage third = message("c@example.com");
+        mailService.sendBatchMail(Arrays.asList(first, bad, third));
+
+        assertEquals(MailMessage.MailStatus.SUCCESS, first.getStatus());
+        assertEquals(MailMessage.MailStatus.FAILED, bad.getStatus());
+        assertEquals(MailMessage.MailStatus.SUCCESS, third.getStatus());
+        // 合并发送一次，之后只有未被拒收的两个收件人单独重发
+        assertEquals(List.of(3, 1, 1), sendSizes);
+    }
+
+    @Test
+    void groupFailureUnrelatedToRecipientsFailsTheWholeGroup() {
+        mailProperties.getBatch().setGroupIdentical(true);
+        List<Integer> sendCalls = new ArrayList<>();
+        doAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            Map<Object, Exception> failed = new LinkedHashMap<>();
+            for (Object mimeMessage : arguments) {
+                failed.put(mimeMessage, new MessagingException("554 message content rejected"));
+            }
+            sendCalls.add(arguments.length);
+            throw new MailSendException(failed);
+        }).when(javaMailSender).send(any(MimeMessage[].class));
+
+        MailMessage first = message("a@example.com");
+        MailMessage second = message("b@example.com");
+        mailService.sendBatchMail(Arrays.asList(first, second));
+
+        assertEquals(MailMessage.MailStatus.FAILED, first.getStatus());
+        assertEquals(MailMessage.MailStatus.FAILED, second.getStatus());
+        assertEquals("554 message content rejected", second.getErrorMessage());
+        assertEquals(List.of(1), sendCalls);
+    }
+
+    private static MailMessage message(String to) {
+        return MailMessage.builder()
+                .id("MAIL_" + to)
+                .to(Collections.singletonList(to))
+                .subject("subject")
+                .content("content")
+                .isHtml(false)
+                .retryCount(0)
+                .maxRetryCount(3)
+                .build();
+    }
+}
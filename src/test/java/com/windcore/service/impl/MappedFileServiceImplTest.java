@@ -0,0 +1,142 @@
+package com.windcore.service.impl;
+
+import com.windcore.config.FileMetadataProperties;
+import com.windcore.dto.FileListCursor;
+import com.windcore.model.FileMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedFileServiceImplTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path dir;
+
+    private MappedFileServiceImpl service;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    void reopenRestoresIndexes() throws IOException {
+        service = open();
+        service.save(file("1", "avatar", "a.png", "0123456789abcdef0123456789abcdef"));
+        service.save(file("2", "avatar", "b.png", null));
+        service.save(file("3", "doc", "report.pdf", null));
+        FileMetadata rename = new FileMetadata();
+        rename.setId("2");
+        rename.setFileName("renamed.png");
+        service.update(rename);
+        service.deleteById("3");
+        service.close();
+
+        service = open();
+        assertEquals(2, service.count());
+        assertEquals("1", service.findByMd5("0123456789ABCDEF0123456789ABCDEF").getId());
+        assertEquals("renamed.png", service.findById("2").getFileName());
+        assertNull(service.findById("3"));
+        assertEquals(2, service.countByBusinessType("avatar"));
+        assertEquals(0, service.countByBusinessType("doc"));
+        assertEquals(List.of("2"), ids(service.findByFileNameLike("renamed")));
+        // 新ID接在回放到的最大ID之后
+        assertEquals("4", service.save(file(null, "doc", "x", null)).getId());
+    }
+
+    @Test
+    void businessTypePagesFollowCursor() throws IOException {
+        service = open();
+        for (int i = 1; i <= 10; i++) {
+            service.save(file(String.valueOf(i), i % 2 == 0 ? "even" : "odd", "file-" + i, null));
+        }
+
+        List<FileMetadata> first = service.findByBusinessType("even", null, 3);
+        assertEquals(List.of("2", "4", "6"), ids(first));
+        List<FileMetadata> second = service.findByBusinessType("even", FileListCursor.of(first.get(2)), 3);
+        assertEquals(List.of("8", "10"), ids(second));
+        assertEquals(List.of("7", "8", "9", "10"),
+                ids(service.findByFileNameLike("file-", FileListCursor.of(service.findById("6")), 10)));
+    }
+
+    @Test
+    void compactionDropsSupersededRecordsAndSurvivesReopen() throws IOException {
+        service = open();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 1; i <= 5; i++) {
+                FileMetadata file = file(String.valueOf(i), "type-" + (round % 3), "name-" + round + "-" + i, null);
+                file.setFileSize(round);
+                service.save(file);
+            }
+        }
+        service.save(file("6", "gone", "gone", null));
+        service.deleteById("6");
+
+        long garbageBefore = service.garbageBytes();
+        service.compact();
+        assertTrue(service.garbageBytes() < garbageBefore / 4);
+        assertEquals(5, service.count());
+        assertEquals(5, service.countByBusinessType("type-1"));
+        assertEquals(49, service.findById("3").getFileSize());
+
+        service.close();
+        service = open();
+        assertEquals(5, service.count());
+        assertNull(service.findById("6"));
+        assertEquals("name-49-3", service.findById("3").getFileName());
+        assertEquals(5, service.findByBusinessType("type-1").size());
+    }
+
+    @Test
+    void deletedIdsAreNotReusedAfterCompaction() throws IOException {
+        service = open();
+        FileMetadata first = service.save(file(null, "doc", "a", null));
+        FileMetadata last = service.save(file(null, "doc", "b", null));
+        service.deleteById(last.getId());
+        service.compact();
+        service.close();
+
+        service = open();
+        FileMetadata next = service.save(file(null, "doc", "c", null));
+
+        assertEquals("1", first.getId());
+        assertEquals(Long.parseLong(last.getId()) + 1, Long.parseLong(next.getId()));
+    }
+
+    private MappedFileServiceImpl open() throws IOException {
+        FileMetadataProperties properties = new FileMetadataProperties();
+        properties.getMapped().setDir(dir.toString());
+        properties.getMapped().setSegmentSize(4096);
+        properties.getMapped().setExpectedFiles(4);
+        MappedFileServiceImpl opened = new MappedFileServiceImpl(properties);
+        opened.init();
+        return opened;
+    }
+
+    private static FileMetadata file(String id, String businessType, String fileName, String md5) {
+        FileMetadata file = new FileMetadata();
+        file.setId(id);
+        file.setBusinessType(businessType);
+        file.setFileName(fileName);
+        file.setFileMd5(md5);
+        file.setUploadTime(id != null ? BASE.plusSeconds(Long.parseLong(id)) : null);
+        return file;
+    }
+
+    private static List<String> ids(List<FileMetadata> files) {
+        return files.stream().map(FileMetadata::getId).toList();
+    }
+}
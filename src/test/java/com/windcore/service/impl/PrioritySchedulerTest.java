@@ -0,0 +1,70 @@
+package com.windcore.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrioritySchedulerTest {
+
+    private static final long NO_AGING = Long.MAX_VALUE;
+
+    @Test
+    void firstChoicesFollowWeightsOverOneCycle() {
+        PriorityScheduler scheduler = new PriorityScheduler(List.of(16, 8, 4, 2, 1), NO_AGING);
+        int[] counts = new int[5];
+        for (int i = 0; i < 31 * 10; i++) {
+            counts[scheduler.nextOrder()[0] - 1]++;
+        }
+
+        assertArrayEquals(new int[]{160, 80, 40, 20, 10}, counts);
+    }
+
+    @Test
+    void lowPriorityIsNotServedInBursts() {
+        PriorityScheduler scheduler = new PriorityScheduler(List.of(3, 1, 1, 1, 1), NO_AGING);
+        int longestRun = 0;
+        int run = 0;
+        for (int i = 0; i < 70; i++) {
+            run = scheduler.nextOrder()[0] == 1 ? run + 1 : 0;
+            longestRun = Math.max(longestRun, run);
+        }
+
+        // 平滑加权轮询把高权重的选择分散在整个周期中
+        assertEquals(2, longestRun);
+    }
+
+    @Test
+    void remainingPrioritiesAreInDescendingOrder() {
+        PriorityScheduler scheduler = new PriorityScheduler(List.of(1, 1, 1, 1, 100), NO_AGING);
+
+        assertArrayEquals(new int[]{5, 1, 2, 3, 4}, scheduler.nextOrder());
+    }
+
+    @Test
+    void agedPriorityGoesFirst() throws InterruptedException {
+        PriorityScheduler scheduler = new PriorityScheduler(List.of(16, 8, 4, 2, 1), 50);
+        Thread.sleep(80);
+        for (int priority = 1; priority <= 4; priority++) {
+            scheduler.visited(priority);
+        }
+
+        assertEquals(5, scheduler.nextOrder()[0]);
+        scheduler.visited(5);
+        assertEquals(1, scheduler.nextOrder()[0]);
+    }
+
+    @Test
+    void missingOrInvalidWeightsDefaultToOne() {
+        PriorityScheduler scheduler = new PriorityScheduler(Arrays.asList(0, null, -3), NO_AGING);
+        int[] counts = new int[5];
+        for (int i = 0; i < 50; i++) {
+            counts[scheduler.nextOrder()[0] - 1]++;
+        }
+
+        assertArrayEquals(new int[]{10, 10, 10, 10, 10}, counts);
+    }
+}
@@ -0,0 +1,196 @@
+package com.windcore.service.impl;
+
+import com.windcore.RedisTestSupport;
+import com.windcore.config.MailProperties;
+import com.windcore.model.MailMessage;
+import com.windcore.service.MailAttachmentSpool;
+import com.windcore.service.MailEnqueueSpool;
+import com.windcore.service.MailRateLimiter;
+import com.windcore.service.MailService;
+import com.windcore.service.SmtpCircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StreamMailQueueServiceImplTest {
+
+    private static final byte[] STREAM_3 = "mail:stream:3".getBytes(StandardCharsets.UTF_8);
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private MailProperties mailProperties;
+    private StreamMailQueueServiceImpl queueService;
+
+    private Runnable duringSend = () -> {
+    };
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = RedisTestSupport.redisTemplate();
+        MailService mailService = mock(MailService.class);
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            MailMessage mailMessage = invocation.getArgument(0);
+            duringSend.run();
+            sent.add(mailMessage.getId());
+            return mailMessage.getId();
+        });
+        mailProperties = new MailProperties();
+        mailProperties.getQueue().setType("stream");
+        queueService = new StreamMailQueueServiceImpl(redisTemplate, mailService, mailProperties,
+                mock(MailAttachmentSpool.class), mock(MailRateLimiter.class), mock(SmtpCircuitBreaker.class),
+                mock(MailEnqueueSpool.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RedisTestSupport.close(redisTemplate);
+    }
+
+    @Test
+    void acknowledgedEntriesAreTrimmedButPendingOnesAreKept() {
+        queueService.addToQueue(message("MAIL_1"));
+        queueService.addToQueue(message("MAIL_2"));
+        duringSend = () -> {
+            // 发送第一封时裁剪：第一封待确认，第二封未投递，都不能删除
+            queueService.trimStreams();
+            assertEquals(2, streamLength());
+        };
+
+        assertTrue(queueService.pollAndProcess("c-0", 3, 1));
+        assertEquals(2, streamLength(), "确认后条目保留到下次裁剪");
+        // 查询积压不裁剪
+        queueService.queueSize(3);
+        assertEquals(2, streamLength());
+        queueService.trimStreams();
+        assertEquals(1, streamLength());
+        assertEquals(1, queueService.queueSize(3));
+
+        duringSend = () -> {
+        };
+        assertTrue(queueService.pollAndProcess("c-0", 3, 1));
+        assertEquals(0, queueService.queueSize(3), "已全部投递时积压为0");
+        queueService.trimStreams();
+
+        assertEquals(List.of("MAIL_1", "MAIL_2"), sent);
+        assertEquals(0, streamLength());
+        assertEquals(0, queueService.queueSize(3));
+        assertEquals(0, queueService.processingCount());
+    }
+
+    @Test
+    void idleMessageOfDeadConsumerIsClaimedInPlace() {
+        mailProperties.getQueue().setVisibilityTimeoutMillis(0L);
+        queueService.addToQueue(message("MAIL_1"));
+        takeAs("dead");
+        queueService.addToQueue(message("MAIL_2"));
+
+        assertTrue(queueService.pollAndProcess("c-0", 3, 1));
+        assertTrue(queueService.pollAndProcess("c-0", 3, 1));
+
+        // 超时的邮件先于之后入队的邮件发送，且没有重新追加到流中
+        assertEquals(List.of("MAIL_1", "MAIL_2"), sent);
+        assertEquals(2, streamLength());
+        assertEquals(0, queueService.processingCount());
+        queueService.trimStreams();
+        assertEquals(0, streamLength());
+    }
+
+    @Test
+    void messageDeliveredTooOftenIsMovedToFailedQueue() {
+        mailProperties.getQueue().setVisibilityTimeoutMillis(0L);
+        mailProperties.getQueue().setMaxDeliveries(2);
+        queueService.addToQueue(message("MAIL_1"));
+        takeAs("dead-1");
+        // 第二个消费者认领后同样退出
+        redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> connection.streamCommands()
+                .xClaim(STREAM_3, "mail-workers", "dead-2", XClaimOptions.minIdle(Duration.ZERO)
+                        .ids(connection.streamCommands().xPending(STREAM_3, "mail-workers").minRecordId())));
+
+        assertFalse(queueService.pollAndProcess("c-0", 3, 1));
+
+        assertEquals(List.of(), sent);
+        assertEquals(0, queueService.processingCount());
+        assertEquals(List.of("MAIL_1"), failedQueue());
+    }
+
+    @Test
+    void recoverProcessingHandlesOwnPendingMessages() {
+        queueService.addToQueue(message("MAIL_1"));
+        takeAs("c-0");
+
+        assertEquals(1, queueService.recoverProcessing("c-0"));
+
+        assertEquals(List.of("MAIL_1"), sent);
+        assertEquals(0, queueService.processingCount());
+    }
+
+    @Test
+    void recoverProcessingFailsMessagesDeliveredTooOften() {
+        mailProperties.getQueue().setMaxDeliveries(1);
+        queueService.addToQueue(message("MAIL_1"));
+        takeAs("c-0");
+
+        assertEquals(0, queueService.recoverProcessing("c-0"));
+
+        assertEquals(List.of(), sent);
+        assertEquals(0, queueService.processingCount());
+        assertEquals(List.of("MAIL_1"), failedQueue());
+    }
+
+    /**
+     * 以指定消费者取出一条消息但不确认
+     */
+    private void takeAs(String consumerName) {
+        // 创建消费者组
+        queueService.processingCount();
+        List<ByteRecord> taken = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xReadGroup(Consumer.from("mail-workers", consumerName),
+                        StreamReadOptions.empty().count(1), StreamOffset.create(STREAM_3, ReadOffset.lastConsumed())));
+        assertEquals(1, taken.size());
+    }
+
+    private List<String> failedQueue() {
+        List<byte[]> raw = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange("mail:failed:queue".getBytes(StandardCharsets.UTF_8), 0, -1));
+        List<String> ids = new ArrayList<>();
+        raw.forEach(entry -> ids.add(new String(entry, StandardCharsets.UTF_8)));
+        return ids;
+    }
+
+    private long streamLength() {
+        Long length = redisTemplate.execute((RedisCallback<Long>) connection -> connection.streamCommands().xLen(STREAM_3));
+        return length != null ? length : 0;
+    }
+
+    private static MailMessage message(String id) {
+        return MailMessage.builder()
+                .id(id)
+                .to(Collections.singletonList("user@example.com"))
+                .subject("subject")
+                .content("content")
+                .priority(3)
+                .build();
+    }
+}
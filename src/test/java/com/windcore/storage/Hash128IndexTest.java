@@ -0,0 +1,77 @@
+package com.windcore.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Hash128IndexTest {
+
+    @Test
+    void putGetRemove() {
+        Hash128Index index = new Hash128Index(4);
+
+        assertEquals(-1L, index.put(1, 2, 10));
+        assertEquals(10L, index.put(1, 2, 11));
+        assertEquals(-1L, index.put(2, 1, 20));
+
+        assertEquals(11L, index.get(1, 2));
+        assertEquals(20L, index.get(2, 1));
+        assertEquals(-1L, index.get(1, 1));
+        assertEquals(2, index.size());
+
+        assertEquals(11L, index.remove(1, 2));
+        assertEquals(-1L, index.remove(1, 2));
+        assertEquals(-1L, index.get(1, 2));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void rejectsNegativeValues() {
+        Hash128Index index = new Hash128Index(4);
+
+        assertThrows(IllegalArgumentException.class, () -> index.put(1, 1, -1));
+    }
+
+    @Test
+    void growsPastExpectedSize() {
+        Hash128Index index = new Hash128Index(16);
+        for (int i = 0; i < 10_000; i++) {
+            index.put(i, ~i, i);
+        }
+
+        assertEquals(10_000, index.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, index.get(i, ~i));
+        }
+    }
+
+    @Test
+    void tombstonesDoNotBreakProbingOrLeakSlots() {
+        Hash128Index index = new Hash128Index(16);
+        // 同一高位、不同低位的键大量写入后删除一半，仍需找到探测链后面的键
+        for (int i = 0; i < 1000; i++) {
+            index.put(7, i, i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            index.remove(7, i);
+        }
+        for (int i = 1; i < 1000; i += 2) {
+            assertEquals(i, index.get(7, i));
+        }
+
+        // 反复写入删除：墓碑在重建时被清理，表不会因墓碑占满而无限扩容或死循环
+        for (int round = 0; round < 50_000; round++) {
+            index.put(9, round, round);
+            index.remove(9, round);
+        }
+        assertEquals(500, index.size());
+
+        Set<Long> values = new HashSet<>();
+        index.forEachValue(values::add);
+        assertEquals(500, values.size());
+    }
+}
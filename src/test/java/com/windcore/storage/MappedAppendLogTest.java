@@ -0,0 +1,120 @@
+package com.windcore.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedAppendLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackRecordsByAddressAndAfterReopen() throws IOException {
+        List<Long> addresses = new ArrayList<>();
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            for (int i = 0; i < 40; i++) {
+                addresses.add(log.append(record(i)));
+            }
+            assertArrayEquals(record(7), log.read(addresses.get(7)));
+            assertEquals(true, log.segmentCount() > 1);
+        }
+
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            List<String> replayed = new ArrayList<>();
+            log.forEach((address, payload) -> replayed.add(new String(payload, StandardCharsets.UTF_8)));
+            assertEquals(40, replayed.size());
+            assertEquals("record-39", replayed.get(39));
+
+            // 重新打开后从原写入位置之后继续追加
+            long next = log.append(record(40));
+            assertEquals(true, next > addresses.get(39));
+            assertArrayEquals(record(40), log.read(next));
+        }
+    }
+
+    @Test
+    void tornTailIsIgnoredOnReopen() throws IOException {
+        long last;
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            log.append(record(1));
+            last = log.append(record(2));
+        }
+        // 破坏最后一条记录的数据，校验和不再匹配
+        try (Stream<Path> files = Files.list(dir);
+             RandomAccessFile file = new RandomAccessFile(files.findFirst().orElseThrow().toFile(), "rw")) {
+            file.seek(MappedAppendLog.positionOf(last) + MappedAppendLog.HEADER_SIZE);
+            file.write('X');
+        }
+
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            List<String> replayed = new ArrayList<>();
+            log.forEach((address, payload) -> replayed.add(new String(payload, StandardCharsets.UTF_8)));
+            assertEquals(List.of("record-1"), replayed);
+            // 新记录覆盖损坏的尾部
+            assertEquals(last, log.append(record(3)));
+        }
+    }
+
+    @Test
+    void readFromResumesAcrossSegments() throws IOException {
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            for (int i = 0; i < 30; i++) {
+                log.append(record(i));
+            }
+
+            List<String> read = new ArrayList<>();
+            long cursor = log.startAddress();
+            while (true) {
+                long next = log.readFrom(cursor, 7, (address, payload) -> read.add(new String(payload, StandardCharsets.UTF_8)));
+                if (next == cursor) {
+                    break;
+                }
+                cursor = next;
+            }
+            assertEquals(30, read.size());
+            assertEquals("record-29", read.get(29));
+            assertEquals(log.endAddress(), cursor);
+        }
+    }
+
+    @Test
+    void truncateAndRollKeepSegmentsContiguous() throws IOException {
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            for (int i = 0; i < 30; i++) {
+                log.append(record(i));
+            }
+            int first = log.rollSegment();
+            assertEquals(first, log.rollSegment());
+            long kept = log.append(record(100));
+
+            int removed = log.truncateBefore(first);
+            assertEquals(first, removed);
+            assertEquals(1, log.segmentCount());
+            assertEquals(log.startAddress(), kept);
+        }
+
+        try (MappedAppendLog log = new MappedAppendLog(dir, "test", SEGMENT_SIZE)) {
+            List<String> replayed = new ArrayList<>();
+            log.forEach((address, payload) -> replayed.add(new String(payload, StandardCharsets.UTF_8)));
+            assertEquals(List.of("record-100"), replayed);
+        }
+    }
+
+    private static byte[] record(int i) {
+        return ("record-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}